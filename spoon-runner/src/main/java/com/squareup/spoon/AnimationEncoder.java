@@ -0,0 +1,11 @@
+package com.squareup.spoon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/** Combines the screenshots of a test into a single animation. */
+interface AnimationEncoder {
+  /** Write {@code frames}, in order, as a looping animation to {@code animation}. */
+  void encode(List<File> frames, File animation) throws IOException;
+}
@@ -0,0 +1,32 @@
+package com.squareup.spoon;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** File formats for the animations of tests which take multiple screenshots. */
+public enum AnimationFormat {
+  /** 256 color animated GIF. */
+  GIF("gif") {
+    @Override AnimationEncoder createEncoder(ForkJoinPool pool) {
+      return new GifEncoder(pool);
+    }
+  },
+  /** Lossless animated PNG which reuses the compressed data of PNG screenshots. */
+  APNG("png") {
+    @Override AnimationEncoder createEncoder(ForkJoinPool pool) {
+      return new ApngEncoder(pool);
+    }
+  };
+
+  private final String extension;
+
+  AnimationFormat(String extension) {
+    this.extension = extension;
+  }
+
+  /** File extension, without the leading dot. */
+  String getExtension() {
+    return extension;
+  }
+
+  abstract AnimationEncoder createEncoder(ForkJoinPool pool);
+}
@@ -0,0 +1,297 @@
+package com.squareup.spoon;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.squareup.spoon.SpoonUtils.PNG_SIGNATURE;
+
+/**
+ * Writes screenshots as a lossless animated PNG.
+ * <p>
+ * When every frame is a PNG with the same header, the frames' compressed image data is copied into
+ * the animation as-is without being decoded or compressed again. Otherwise each frame is drawn
+ * onto a common canvas and re-encoded, in parallel, first.
+ */
+final class ApngEncoder implements AnimationEncoder {
+  /** 1.5 seconds per frame, matching the GIF animations. */
+  private static final int DELAY_NUMERATOR = 150;
+  private static final int DELAY_DENOMINATOR = 100;
+  private static final byte DISPOSE_OP_NONE = 0;
+  private static final byte BLEND_OP_SOURCE = 0;
+
+  private final ForkJoinPool pool;
+
+  ApngEncoder(ForkJoinPool pool) {
+    this.pool = checkNotNull(pool);
+  }
+
+  @Override public void encode(List<File> frames, File apng) throws IOException {
+    checkArgument(!frames.isEmpty(), "No frames to encode.");
+
+    List<ByteSource> sources = new ArrayList<>(frames.size());
+    Header header = null;
+    for (File frame : frames) {
+      ByteSource source = Files.asByteSource(frame);
+      Header frameHeader = readHeader(source);
+      if (frameHeader == null || (header != null && !header.equals(frameHeader))) {
+        sources = null;
+        break;
+      }
+      header = frameHeader;
+      sources.add(source);
+    }
+    if (sources == null) {
+      sources = reencode(frames);
+      header = readHeader(sources.get(0));
+    }
+
+    try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(apng)))) {
+      out.write(PNG_SIGNATURE);
+      writeChunk(out, "IHDR", header.imageHeader);
+      // Animation control: frame count and loop forever.
+      writeChunk(out, "acTL", ByteBuffer.allocate(8).putInt(sources.size()).putInt(0).array());
+      if (header.palette != null) {
+        writeChunk(out, "PLTE", header.palette);
+      }
+      if (header.transparency != null) {
+        writeChunk(out, "tRNS", header.transparency);
+      }
+
+      // Frame control and frame data chunks share a single sequence.
+      int sequence = 0;
+      for (int i = 0; i < sources.size(); i++) {
+        writeChunk(out, "fcTL", frameControl(sequence++, header.width(), header.height()));
+        try (ChunkReader chunks = ChunkReader.open(sources.get(i))) {
+          while (chunks.next()) {
+            if (!chunks.type.equals("IDAT")) {
+              chunks.skip();
+            } else if (i == 0) {
+              // The first frame doubles as the still image shown by non-animating viewers.
+              writeChunk(out, "IDAT", chunks.data());
+            } else {
+              writeChunk(out, "fdAT", sequence++, chunks.data());
+            }
+          }
+        }
+      }
+      writeChunk(out, "IEND", new byte[0]);
+    }
+  }
+
+  /** Draw every frame onto a common canvas and encode it as a PNG with a shared header. */
+  private List<ByteSource> reencode(List<File> frames) throws IOException {
+    int width = 0;
+    int height = 0;
+    for (File frame : frames) {
+      Dimension size = SpoonUtils.readImageSize(frame);
+      width = Math.max(size.width, width);
+      height = Math.max(size.height, height);
+    }
+
+    List<ForkJoinTask<ByteSource>> tasks = new ArrayList<>(frames.size());
+    for (File frame : frames) {
+      int canvasWidth = width;
+      int canvasHeight = height;
+      tasks.add(ForkJoinTask.adapt(() -> {
+        BufferedImage image = ImageIO.read(frame);
+        if (image == null) {
+          throw new IOException("Unable to decode " + frame);
+        }
+        BufferedImage canvas =
+            new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(canvas, "png", png);
+        return ByteSource.wrap(png.toByteArray());
+      }));
+    }
+    SpoonUtils.invokeAll(pool, tasks);
+
+    List<ByteSource> sources = new ArrayList<>(frames.size());
+    for (ForkJoinTask<ByteSource> task : tasks) {
+      sources.add(task.join());
+    }
+    return sources;
+  }
+
+  /** Read the chunks preceding the image data, or null if {@code png} is not a PNG. */
+  private static Header readHeader(ByteSource png) throws IOException {
+    try (ChunkReader chunks = ChunkReader.open(png)) {
+      if (chunks == null) {
+        return null;
+      }
+      byte[] imageHeader = null;
+      byte[] palette = null;
+      byte[] transparency = null;
+      while (chunks.next()) {
+        switch (chunks.type) {
+          case "IHDR":
+            imageHeader = chunks.data();
+            break;
+          case "PLTE":
+            palette = chunks.data();
+            break;
+          case "tRNS":
+            transparency = chunks.data();
+            break;
+          case "IDAT":
+            return imageHeader != null ? new Header(imageHeader, palette, transparency) : null;
+          default:
+            chunks.skip();
+        }
+      }
+      return null; // No image data.
+    }
+  }
+
+  private static byte[] frameControl(int sequence, int width, int height) {
+    return ByteBuffer.allocate(26)
+        .putInt(sequence)
+        .putInt(width)
+        .putInt(height)
+        .putInt(0) // X offset.
+        .putInt(0) // Y offset.
+        .putShort((short) DELAY_NUMERATOR)
+        .putShort((short) DELAY_DENOMINATOR)
+        .put(DISPOSE_OP_NONE)
+        .put(BLEND_OP_SOURCE)
+        .array();
+  }
+
+  private static void writeChunk(DataOutputStream out, String type, byte[] data)
+      throws IOException {
+    writeChunk(out, type, new byte[0], data);
+  }
+
+  private static void writeChunk(DataOutputStream out, String type, int sequence, byte[] data)
+      throws IOException {
+    writeChunk(out, type, ByteBuffer.allocate(4).putInt(sequence).array(), data);
+  }
+
+  private static void writeChunk(DataOutputStream out, String type, byte[] prefix, byte[] data)
+      throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(prefix);
+    crc.update(data);
+
+    out.writeInt(prefix.length + data.length);
+    out.write(typeBytes);
+    out.write(prefix);
+    out.write(data);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /** The chunks which must be identical across frames for their image data to be reused. */
+  private static final class Header {
+    final byte[] imageHeader;
+    final byte[] palette;
+    final byte[] transparency;
+
+    Header(byte[] imageHeader, byte[] palette, byte[] transparency) {
+      this.imageHeader = imageHeader;
+      this.palette = palette;
+      this.transparency = transparency;
+    }
+
+    int width() {
+      return ByteBuffer.wrap(imageHeader).getInt(0);
+    }
+
+    int height() {
+      return ByteBuffer.wrap(imageHeader).getInt(4);
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Header that = (Header) o;
+      return Arrays.equals(imageHeader, that.imageHeader)
+          && Arrays.equals(palette, that.palette)
+          && Arrays.equals(transparency, that.transparency);
+    }
+
+    @Override public int hashCode() {
+      int result = Arrays.hashCode(imageHeader);
+      result = 31 * result + Arrays.hashCode(palette);
+      result = 31 * result + Arrays.hashCode(transparency);
+      return result;
+    }
+  }
+
+  /** Reads the chunks of a PNG one at a time. Each must be either read or skipped. */
+  private static final class ChunkReader implements Closeable {
+    private final DataInputStream in;
+    private int length;
+    String type;
+
+    /** Open {@code png} positioned before its first chunk, or null if it is not a PNG. */
+    static ChunkReader open(ByteSource png) throws IOException {
+      DataInputStream in = new DataInputStream(png.openBufferedStream());
+      byte[] signature = new byte[PNG_SIGNATURE.length];
+      int read = ByteStreams.read(in, signature, 0, signature.length);
+      if (read != signature.length || !Arrays.equals(signature, PNG_SIGNATURE)) {
+        in.close();
+        return null;
+      }
+      return new ChunkReader(in);
+    }
+
+    private ChunkReader(DataInputStream in) {
+      this.in = in;
+    }
+
+    /** Advance to the next chunk, returning false once the image end is reached. */
+    boolean next() throws IOException {
+      length = in.readInt();
+      byte[] typeBytes = new byte[4];
+      in.readFully(typeBytes);
+      type = new String(typeBytes, StandardCharsets.US_ASCII);
+      return !type.equals("IEND");
+    }
+
+    byte[] data() throws IOException {
+      byte[] data = new byte[length];
+      in.readFully(data);
+      in.readInt(); // CRC.
+      return data;
+    }
+
+    void skip() throws IOException {
+      ByteStreams.skipFully(in, length + 4L); // Data and CRC.
+    }
+
+    @Override public void close() throws IOException {
+      in.close();
+    }
+  }
+}
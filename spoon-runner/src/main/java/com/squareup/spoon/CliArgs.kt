@@ -2,8 +2,10 @@ package com.squareup.spoon
 
 import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner.TestSize
 import com.xenomachina.argparser.ArgParser
+import com.xenomachina.argparser.InvalidArgumentException
 import java.io.File
 import java.time.Duration
+import java.util.Locale
 
 internal class CliArgs(parser: ArgParser) {
   /* A transform that coerces the normal String type to be nullable. */
@@ -53,6 +55,45 @@ internal class CliArgs(parser: ArgParser) {
 
   val disableGif by parser.flagging("--disable-gif", help = "Disable GIF generation")
 
+  val animationFormat by parser.storing("--animation-format",
+      help = "Animation format for tests with multiple screenshots: gif (default) or apng",
+      transform = {
+        try {
+          AnimationFormat.valueOf(toUpperCase(Locale.US))
+        } catch (e: IllegalArgumentException) {
+          throw InvalidArgumentException("Animation format must be gif or apng: $this")
+        }
+      })
+      .default(AnimationFormat.GIF)
+
+  val noThumbnails by parser.flagging("--no-thumbnails",
+      help = "Disable screenshot thumbnails, showing full-size screenshots on report pages")
+
+  val baseline by parser.storing<File?>("--baseline",
+      help = "Output directory of a previous run to compare screenshots with",
+      transform = ::File).default(null)
+
+  val compactJson by parser.flagging("--compact-json",
+      help = "Write result.json without indentation, writing repeated stack traces once")
+
+  val archive by parser.flagging("--archive",
+      help = "Also write the results to a binary result.bin archive")
+
+  val history by parser.storing<File?>("--history",
+      help = "Directory in which to record test outcomes across runs",
+      transform = ::File).default(null)
+
+  val singlePage by parser.flagging("--single-page-report",
+      help = "Write the report as one page which loads compressed data files as needed")
+
+  val zip by parser.storing<File?>("--zip",
+      help = "Zip archive to write the report and its files into instead of the output directory",
+      transform = ::File).default(null)
+
+  val dashboard by parser.storing<Int?>("--dashboard",
+      help = "Port on which to serve a live dashboard of the run's progress",
+      transform = String::toInt).default(null)
+
   val adbTimeout by parser.storing<Duration?>("--adb-timeout",
       help = "Maximum execution time per test. Parsed by java.time.Duration.",
       transform = Duration::parse).default(null)
@@ -68,3 +109,44 @@ internal class CliArgs(parser: ArgParser) {
 
   val coverage by parser.flagging("Enable code coverage")
 }
+
+/** Arguments of the {@code serve} command, which serves the report of an output directory. */
+internal class ServeArgs(parser: ArgParser) {
+  val output by parser.positional("output", help = "Output directory of a run",
+      transform = ::File)
+
+  val port by parser.storing("--port",
+      help = "Port on which to serve the report, or 0 for any free port. " +
+          "Defaults to ${SpoonServer.DEFAULT_PORT}",
+      transform = {
+        try {
+          toInt()
+        } catch (e: NumberFormatException) {
+          throw InvalidArgumentException("Port must be a number: $this")
+        }
+      })
+      .default(SpoonServer.DEFAULT_PORT)
+
+  val history by parser.storing<File?>("--history",
+      help = "Directory in which test outcomes across runs were recorded",
+      transform = ::File).default(null)
+}
+
+/** Arguments of the {@code merge} command, which combines the output directories of runs. */
+internal class MergeArgs(parser: ArgParser) {
+  val output by parser.positional("output", help = "Directory of the merged output",
+      transform = ::File)
+
+  val inputs by parser.positionalList("inputs", help = "Output directories of the runs to merge",
+      transform = ::File)
+
+  val title by parser.storing<String?>("--title",
+      help = "Title of the merged report. Defaults to that of the first input",
+      transform = { this }).default(null)
+
+  val move by parser.flagging("--move",
+      help = "Move the artifacts of the inputs instead of hard linking them")
+
+  val incremental by parser.flagging("--incremental",
+      help = "Merge into an earlier merged output, rendering only the pages which changed")
+}
@@ -19,7 +19,7 @@ public final class DeviceDetails {
   private final boolean isEmulator;
   private final String avdName;
 
-  private DeviceDetails(String model, String manufacturer, String version, int apiLevel,
+  DeviceDetails(String model, String manufacturer, String version, int apiLevel,
       String language, String region, boolean emulator, String avdName) {
     this.model = model;
     this.manufacturer = manufacturer;
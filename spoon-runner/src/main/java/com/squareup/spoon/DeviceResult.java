@@ -3,6 +3,7 @@ package com.squareup.spoon;
 import com.squareup.spoon.misc.StackTrace;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,23 +17,41 @@ import static java.util.Collections.unmodifiableMap;
 
 /** Represents the results of executing instrumentation tests on a single device. */
 public final class DeviceResult {
+  /** The steps of a run on a device whose durations are recorded. */
+  public enum Phase {
+    /** Installing the application and instrumentation APKs and granting their permissions. */
+    INSTALL,
+    /** Running the instrumentation tests. */
+    TEST_RUN,
+    /** Mapping the device log to the individual tests. */
+    LOG_MAPPING,
+    /** Pulling screenshots, files, and coverage from the device. */
+    PULL,
+    /** Removing screenshots and files from the device. */
+    CLEANUP,
+    /** Creating thumbnails, animations, and baseline comparisons of the screenshots. */
+    POST_PROCESSING
+  }
+
   private final boolean installFailed;
   private final String installMessage;
   private final DeviceDetails deviceDetails;
   private final Map<DeviceTest, DeviceTestResult> testResults;
   private final long started;
   private final long duration;
+  private final Map<Phase, Long> phaseDurations;
   private final List<StackTrace> exceptions;
 
-  private DeviceResult(boolean installFailed, String installMessage, DeviceDetails deviceDetails,
+  DeviceResult(boolean installFailed, String installMessage, DeviceDetails deviceDetails,
       Map<DeviceTest, DeviceTestResult> testResults, long started, long duration,
-      List<StackTrace> exceptions) {
+      Map<Phase, Long> phaseDurations, List<StackTrace> exceptions) {
     this.installFailed = installFailed;
     this.installMessage = installMessage;
     this.deviceDetails = deviceDetails;
     this.started = started;
-    this.testResults = unmodifiableMap(new TreeMap<>(testResults));
+    this.testResults = TestResultMap.copyOf(testResults);
     this.duration = duration;
+    this.phaseDurations = unmodifiableMap(new TreeMap<>(phaseDurations));
     this.exceptions = unmodifiableList(new ArrayList<>(exceptions));
   }
 
@@ -70,16 +89,45 @@ public final class DeviceResult {
     return started;
   }
 
-  /** Length (in seconds) of execution of all tests on device, or {@code -1} if none ran. */
+  /** Length (in milliseconds) of execution of all tests on device, or {@code -1} if none ran. */
   public long getDuration() {
     return duration;
   }
 
+  /** Length (in milliseconds) of each phase of the run which completed, in phase order. */
+  public Map<Phase, Long> getPhaseDurations() {
+    return phaseDurations;
+  }
+
   /** Exceptions that occurred during execution. */
   public List<StackTrace> getExceptions() {
     return exceptions;
   }
 
+  /**
+   * A copy of this result with its individual test results replaced by {@code testResults} and
+   * {@code exceptions} appended to its own.
+   */
+  DeviceResult withTestResults(Map<DeviceTest, DeviceTestResult> testResults,
+      List<StackTrace> exceptions) {
+    checkNotNull(testResults);
+    checkNotNull(exceptions);
+    List<StackTrace> allExceptions = new ArrayList<>(this.exceptions);
+    allExceptions.addAll(exceptions);
+    return new DeviceResult(installFailed, installMessage, deviceDetails, testResults, started,
+        duration, phaseDurations, allExceptions);
+  }
+
+  /** A copy of this result which records {@code duration} milliseconds for {@code phase}. */
+  DeviceResult withPhaseDuration(Phase phase, long duration) {
+    checkNotNull(phase);
+    checkArgument(duration >= 0, "Duration must not be negative.");
+    Map<Phase, Long> phaseDurations = new TreeMap<>(this.phaseDurations);
+    phaseDurations.put(phase, duration);
+    return new DeviceResult(installFailed, installMessage, deviceDetails, testResults, started,
+        this.duration, phaseDurations, exceptions);
+  }
+
   static class Builder {
     private boolean installFailed = false;
     private String installMessage = null;
@@ -88,6 +136,8 @@ public final class DeviceResult {
     private final long started = new Date().getTime();
     private long start;
     private long duration = -1;
+    private final Map<Phase, Long> phaseStarts = new EnumMap<>(Phase.class);
+    private final Map<Phase, Long> phaseDurations = new EnumMap<>(Phase.class);
     private final List<StackTrace> exceptions = new ArrayList<>();
 
     public Builder addTestResultBuilder(DeviceTest test,
@@ -126,7 +176,23 @@ public final class DeviceResult {
     public Builder endTests() {
       checkArgument(start != 0, "Start was not called.");
       checkArgument(duration == -1, "End was already called.");
-      duration = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+      duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      return this;
+    }
+
+    public Builder startPhase(Phase phase) {
+      checkNotNull(phase);
+      checkArgument(!phaseStarts.containsKey(phase), "Start already called for %s.", phase);
+      phaseStarts.put(phase, System.nanoTime());
+      return this;
+    }
+
+    public Builder endPhase(Phase phase) {
+      checkNotNull(phase);
+      checkArgument(phaseStarts.containsKey(phase), "Start was not called for %s.", phase);
+      checkArgument(!phaseDurations.containsKey(phase), "End was already called for %s.", phase);
+      long elapsed = System.nanoTime() - phaseStarts.get(phase);
+      phaseDurations.put(phase, TimeUnit.NANOSECONDS.toMillis(elapsed));
       return this;
     }
 
@@ -150,7 +216,7 @@ public final class DeviceResult {
       }
 
       return new DeviceResult(installFailed, installMessage, deviceDetails, testResults, started,
-          duration, exceptions);
+          duration, phaseDurations, exceptions);
     }
   }
 }
@@ -4,22 +4,38 @@ import com.android.ddmlib.testrunner.TestIdentifier;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-/** Represents a single test method. */
+/**
+ * Represents a single test method. There is one instance per test, shared by the results of all
+ * devices.
+ */
 public final class DeviceTest implements Comparable<DeviceTest> {
   static DeviceTest from(TestIdentifier testIdentifier) {
-    return new DeviceTest(testIdentifier.getClassName(), testIdentifier.getTestName());
+    return of(testIdentifier.getClassName(), testIdentifier.getTestName());
   }
 
+  /** The canonical instance for a test. */
+  static DeviceTest of(String className, String methodName) {
+    checkNotNull(className);
+    checkNotNull(methodName);
+    return TestRegistry.intern(className, methodName);
+  }
+
+  private final transient int id; // Local to this process, so not serialized.
   private final String className;
   private final String methodName;
 
-  DeviceTest(String className, String methodName) {
-    checkNotNull(className);
-    checkNotNull(methodName);
+  /** Only called by {@link TestRegistry}. Use {@link #of} instead. */
+  DeviceTest(int id, String className, String methodName) {
+    this.id = id;
     this.className = className;
     this.methodName = methodName;
   }
 
+  /** Dense, run-wide id of this test, assigned by {@link TestRegistry}. */
+  int getId() {
+    return id;
+  }
+
   /** Test class name. */
   public String getClassName() {
     return className;
@@ -30,20 +46,14 @@ public final class DeviceTest implements Comparable<DeviceTest> {
     return methodName;
   }
 
-  @Override public boolean equals(Object o) {
-    if (this == o) return true;
-    if (o == null || getClass() != o.getClass()) return false;
+  // Instances are canonical so identity equality and hashing suffice.
 
-    DeviceTest that = (DeviceTest) o;
-    if (!className.equals(that.className)) return false;
-    if (!methodName.equals(that.methodName)) return false;
-    return true;
+  @Override public boolean equals(Object o) {
+    return this == o;
   }
 
   @Override public int hashCode() {
-    int result = className.hashCode();
-    result = 31 * result + methodName.hashCode();
-    return result;
+    return id;
   }
 
   @Override public String toString() {
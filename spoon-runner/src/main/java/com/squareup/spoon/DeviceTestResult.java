@@ -5,13 +5,16 @@ import com.squareup.spoon.misc.StackTrace;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.squareup.spoon.SpoonLogger.logError;
 import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
 
 /** Represents the result of a single test method on a single device. */
 public final class DeviceTestResult {
@@ -23,16 +26,22 @@ public final class DeviceTestResult {
   private final StackTrace exception;
   private final long duration;
   private final List<File> screenshots;
+  private final Map<File, File> thumbnails;
+  private final Map<File, ScreenshotDiff> screenshotDiffs;
   private final List<File> files;
   private final File animatedGif;
   private final List<LogCatMessage> log;
 
-  private DeviceTestResult(Status status, StackTrace exception, long duration,
-      List<File> screenshots, File animatedGif, List<LogCatMessage> log, List<File> files) {
+  DeviceTestResult(Status status, StackTrace exception, long duration,
+      List<File> screenshots, Map<File, File> thumbnails,
+      Map<File, ScreenshotDiff> screenshotDiffs, File animatedGif, List<LogCatMessage> log,
+      List<File> files) {
     this.status = status;
     this.exception = exception;
     this.duration = duration;
     this.screenshots = unmodifiableList(new ArrayList<>(screenshots));
+    this.thumbnails = unmodifiableMap(new LinkedHashMap<>(thumbnails));
+    this.screenshotDiffs = unmodifiableMap(new LinkedHashMap<>(screenshotDiffs));
     this.files = unmodifiableList(new ArrayList<>(files));
     this.animatedGif = animatedGif;
     this.log = unmodifiableList(new ArrayList<>(log));
@@ -48,7 +57,7 @@ public final class DeviceTestResult {
     return exception;
   }
 
-  /** Length of test execution, in seconds. */
+  /** Length of test execution, in milliseconds. */
   public long getDuration() {
     return duration;
   }
@@ -58,6 +67,16 @@ public final class DeviceTestResult {
     return screenshots;
   }
 
+  /** Downscaled copies of screenshots, keyed by the screenshot. */
+  public Map<File, File> getThumbnails() {
+    return thumbnails;
+  }
+
+  /** Comparisons of screenshots with a baseline run, keyed by the screenshot. */
+  public Map<File, ScreenshotDiff> getScreenshotDiffs() {
+    return screenshotDiffs;
+  }
+
   /** Animated GIF of screenshots. */
   public File getAnimatedGif() {
     return animatedGif;
@@ -72,6 +91,27 @@ public final class DeviceTestResult {
     return log;
   }
 
+  /** A copy of this result which references {@code animatedGif}. */
+  DeviceTestResult withAnimatedGif(File animatedGif) {
+    checkNotNull(animatedGif);
+    return new DeviceTestResult(status, exception, duration, screenshots, thumbnails,
+        screenshotDiffs, animatedGif, log, files);
+  }
+
+  /** A copy of this result which references {@code thumbnails} of its screenshots. */
+  DeviceTestResult withThumbnails(Map<File, File> thumbnails) {
+    checkNotNull(thumbnails);
+    return new DeviceTestResult(status, exception, duration, screenshots, thumbnails,
+        screenshotDiffs, animatedGif, log, files);
+  }
+
+  /** A copy of this result which references comparisons of its screenshots with a baseline. */
+  DeviceTestResult withScreenshotDiffs(Map<File, ScreenshotDiff> screenshotDiffs) {
+    checkNotNull(screenshotDiffs);
+    return new DeviceTestResult(status, exception, duration, screenshots, thumbnails,
+        screenshotDiffs, animatedGif, log, files);
+  }
+
   public static class Builder {
     private final List<File> screenshots = new ArrayList<>();
     private final List<File> files = new ArrayList<>();
@@ -110,7 +150,7 @@ public final class DeviceTestResult {
       if (duration != -1) {
         logError("Test was already marked as ended!");
       }
-      duration = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+      duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
       return this;
     }
 
@@ -137,8 +177,8 @@ public final class DeviceTestResult {
       if (log == null) {
         log = Collections.emptyList();
       }
-      return new DeviceTestResult(status, exception, duration,
-              screenshots, animatedGif, log, files);
+      return new DeviceTestResult(status, exception, duration, screenshots,
+              Collections.emptyMap(), Collections.emptyMap(), animatedGif, log, files);
     }
   }
 }
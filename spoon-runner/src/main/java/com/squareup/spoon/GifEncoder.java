@@ -0,0 +1,227 @@
+package com.squareup.spoon;
+
+import com.madgag.gif.fmsware.NeuQuant;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.imageio.ImageIO;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes screenshots as an animated GIF89a whose frames are quantized and compressed in parallel.
+ * <p>
+ * A single global palette is learned from a sample of the frames. Every frame is then decoded,
+ * mapped onto that palette and LZW-compressed independently, and the finished blocks are written
+ * out in order.
+ */
+final class GifEncoder implements AnimationEncoder {
+  private static final int DELAY_CENTISECONDS = 150;
+  /** Maximum number of frames sampled to learn the shared palette. */
+  private static final int PALETTE_SAMPLE_FRAMES = 8;
+  private static final int PALETTE_BITS = 8;
+  private static final int COLOR_CACHE_BITS = 12;
+  private static final int COLOR_CACHE_SIZE = 1 << COLOR_CACHE_BITS;
+  private static final int WHITE = 0xFFFFFF;
+
+  private final ForkJoinPool pool;
+
+  GifEncoder(ForkJoinPool pool) {
+    this.pool = checkNotNull(pool);
+  }
+
+  @Override public void encode(List<File> frames, File gif) throws IOException {
+    checkArgument(!frames.isEmpty(), "No frames to encode.");
+
+    // Size the canvas from the image headers rather than decoding every frame up front.
+    int width = 0;
+    int height = 0;
+    for (File frame : frames) {
+      Dimension size = SpoonUtils.readImageSize(frame);
+      width = Math.max(size.width, width);
+      height = Math.max(size.height, height);
+    }
+
+    Palette palette = learnPalette(frames, width, height);
+
+    List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(frames.size());
+    for (File frame : frames) {
+      int canvasWidth = width;
+      int canvasHeight = height;
+      tasks.add(ForkJoinTask.adapt(() -> encodeFrame(frame, canvasWidth, canvasHeight, palette)));
+    }
+    SpoonUtils.invokeAll(pool, tasks);
+
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(gif))) {
+      out.write(new byte[] {'G', 'I', 'F', '8', '9', 'a'});
+
+      // Logical screen descriptor with a 256 color global color table.
+      writeShort(out, width);
+      writeShort(out, height);
+      out.write(0x80 | 0x70 | (PALETTE_BITS - 1));
+      out.write(0); // Background color index.
+      out.write(0); // Pixel aspect ratio.
+      out.write(palette.colors);
+
+      // Netscape application extension to loop forever.
+      out.write(new byte[] {0x21, (byte) 0xff, 0x0b});
+      out.write("NETSCAPE2.0".getBytes("US-ASCII"));
+      out.write(new byte[] {0x03, 0x01, 0x00, 0x00, 0x00});
+
+      for (ForkJoinTask<byte[]> task : tasks) {
+        out.write(task.join());
+      }
+      out.write(0x3b); // Trailer.
+    }
+  }
+
+  /** Learn a palette from up to {@link #PALETTE_SAMPLE_FRAMES} evenly spaced frames. */
+  private Palette learnPalette(List<File> frames, int width, int height) throws IOException {
+    int sampleCount = Math.min(frames.size(), PALETTE_SAMPLE_FRAMES);
+    List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      File frame = frames.get(i * frames.size() / sampleCount);
+      tasks.add(ForkJoinTask.adapt(() -> {
+        // Keep every n-th pixel so the combined sample is no larger than a single frame.
+        byte[] pixels = readPixels(frame, width, height);
+        byte[] sample = new byte[pixels.length / 3 / sampleCount * 3];
+        for (int from = 0, to = 0; to < sample.length; from += 3 * sampleCount, to += 3) {
+          System.arraycopy(pixels, from, sample, to, 3);
+        }
+        return sample;
+      }));
+    }
+    SpoonUtils.invokeAll(pool, tasks);
+
+    ByteArrayOutputStream samples = new ByteArrayOutputStream();
+    for (ForkJoinTask<byte[]> task : tasks) {
+      byte[] sample = task.join();
+      samples.write(sample, 0, sample.length);
+    }
+    byte[] pixels = samples.toByteArray();
+    NeuQuant quantizer = new NeuQuant(pixels, pixels.length, 1 /* highest quality */);
+    byte[] colors = quantizer.process();
+    // Convert the palette from BGR to RGB.
+    for (int i = 0; i < colors.length; i += 3) {
+      byte temp = colors[i];
+      colors[i] = colors[i + 2];
+      colors[i + 2] = temp;
+    }
+    return new Palette(quantizer, colors);
+  }
+
+  private static byte[] encodeFrame(File frame, int width, int height, Palette palette)
+      throws IOException {
+    byte[] pixels = readPixels(frame, width, height);
+    byte[] indexed = palette.map(pixels);
+    pixels = null; // Allow the decoded frame to be collected while compressing.
+    byte[] data = LzwEncoder.encode(indexed, PALETTE_BITS);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 20);
+    // Graphic control extension: restore to background, white is transparent.
+    out.write(new byte[] {0x21, (byte) 0xf9, 0x04, (2 << 2) | 1});
+    writeShort(out, DELAY_CENTISECONDS);
+    out.write(palette.transparentIndex);
+    out.write(0);
+
+    // Image descriptor covering the whole canvas, using the global color table.
+    out.write(0x2c);
+    writeShort(out, 0);
+    writeShort(out, 0);
+    writeShort(out, width);
+    writeShort(out, height);
+    out.write(0);
+
+    out.write(data);
+    return out.toByteArray();
+  }
+
+  /** Decode {@code frame} into BGR pixels drawn onto a {@code width} by {@code height} canvas. */
+  private static byte[] readPixels(File frame, int width, int height) throws IOException {
+    BufferedImage image = ImageIO.read(frame);
+    if (image == null) {
+      throw new IOException("Unable to decode " + frame);
+    }
+    if (image.getWidth() != width || image.getHeight() != height
+        || image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+      BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+      Graphics2D graphics = canvas.createGraphics();
+      graphics.drawImage(image, 0, 0, null);
+      graphics.dispose();
+      image = canvas;
+    }
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+  }
+
+  private static final class Palette {
+    final NeuQuant quantizer;
+    final byte[] colors;
+    final int transparentIndex;
+
+    Palette(NeuQuant quantizer, byte[] colors) {
+      this.quantizer = quantizer;
+      this.colors = colors;
+      this.transparentIndex = closest(colors, WHITE);
+    }
+
+    /** Map BGR {@code pixels} to palette indices. Safe to call from multiple threads. */
+    byte[] map(byte[] pixels) {
+      // Screenshots are dominated by runs of flat color so memoize recent lookups.
+      int[] cacheKeys = new int[COLOR_CACHE_SIZE];
+      byte[] cacheValues = new byte[COLOR_CACHE_SIZE];
+      Arrays.fill(cacheKeys, -1);
+
+      byte[] indexed = new byte[pixels.length / 3];
+      for (int i = 0, k = 0; i < indexed.length; i++, k += 3) {
+        int b = pixels[k] & 0xff;
+        int g = pixels[k + 1] & 0xff;
+        int r = pixels[k + 2] & 0xff;
+        int color = (b << 16) | (g << 8) | r;
+        int slot = (color * 0x9E3779B1) >>> (Integer.SIZE - COLOR_CACHE_BITS);
+        if (cacheKeys[slot] != color) {
+          cacheKeys[slot] = color;
+          cacheValues[slot] = (byte) quantizer.map(b, g, r);
+        }
+        indexed[i] = cacheValues[slot];
+      }
+      return indexed;
+    }
+
+    private static int closest(byte[] colors, int rgb) {
+      int r = (rgb >> 16) & 0xff;
+      int g = (rgb >> 8) & 0xff;
+      int b = rgb & 0xff;
+      int closest = 0;
+      int minDistance = Integer.MAX_VALUE;
+      for (int i = 0; i < colors.length; i += 3) {
+        int dr = r - (colors[i] & 0xff);
+        int dg = g - (colors[i + 1] & 0xff);
+        int db = b - (colors[i + 2] & 0xff);
+        int distance = dr * dr + dg * dg + db * db;
+        if (distance < minDistance) {
+          minDistance = distance;
+          closest = i / 3;
+        }
+      }
+      return closest;
+    }
+  }
+}
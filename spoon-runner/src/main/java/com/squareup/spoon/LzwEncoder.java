@@ -0,0 +1,127 @@
+package com.squareup.spoon;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Variable-length-code LZW compressor for GIF image data. Output is the minimum code size byte
+ * followed by the compressed codes packed into data sub-blocks and the block terminator.
+ */
+final class LzwEncoder {
+  private static final int MAX_BITS = 12;
+  private static final int MAX_CODES = 1 << MAX_BITS;
+  /** Prime slightly larger than {@link #MAX_CODES} so the string table stays around 80% full. */
+  private static final int TABLE_SIZE = 5003;
+  private static final int MAX_BLOCK_SIZE = 255;
+
+  /** Compress {@code pixels}, each an index into a palette of {@code 2^minCodeSize} colors. */
+  static byte[] encode(byte[] pixels, int minCodeSize) {
+    return new LzwEncoder(minCodeSize).compress(pixels);
+  }
+
+  private final int minCodeSize;
+  private final int clearCode;
+  private final int endCode;
+  /** String table keys ({@code suffix << MAX_BITS | prefix}) and their codes, by hash slot. */
+  private final int[] keys = new int[TABLE_SIZE];
+  private final int[] codes = new int[TABLE_SIZE];
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final byte[] block = new byte[MAX_BLOCK_SIZE];
+  private int blockLength;
+  private int codeSize;
+  private int nextCode;
+  private boolean clearing;
+  private int bitBuffer;
+  private int bitCount;
+
+  private LzwEncoder(int minCodeSize) {
+    this.minCodeSize = minCodeSize;
+    this.clearCode = 1 << minCodeSize;
+    this.endCode = clearCode + 1;
+  }
+
+  private byte[] compress(byte[] pixels) {
+    out.write(minCodeSize);
+    resetTable();
+    codeSize = minCodeSize + 1;
+    writeCode(clearCode);
+
+    int prefix = pixels.length > 0 ? pixels[0] & 0xff : 0;
+    pixels:
+    for (int i = 1; i < pixels.length; i++) {
+      int suffix = pixels[i] & 0xff;
+      int key = (suffix << MAX_BITS) | prefix;
+      int slot = (suffix << 4) ^ prefix; // Hash, as in compress(1).
+      int step = slot == 0 ? 1 : TABLE_SIZE - slot;
+      while (keys[slot] != -1) {
+        if (keys[slot] == key) {
+          prefix = codes[slot];
+          continue pixels;
+        }
+        slot -= step;
+        if (slot < 0) {
+          slot += TABLE_SIZE;
+        }
+      }
+
+      writeCode(prefix);
+      prefix = suffix;
+      if (nextCode < MAX_CODES) {
+        keys[slot] = key;
+        codes[slot] = nextCode++;
+      } else {
+        // The table is full. Start over with a fresh one.
+        resetTable();
+        clearing = true;
+        writeCode(clearCode);
+      }
+    }
+    writeCode(prefix);
+    writeCode(endCode);
+
+    if (bitCount > 0) {
+      writeByte(bitBuffer & 0xff);
+    }
+    flushBlock();
+    out.write(0); // Block terminator.
+    return out.toByteArray();
+  }
+
+  private void resetTable() {
+    Arrays.fill(keys, -1);
+    nextCode = clearCode + 2;
+  }
+
+  private void writeCode(int code) {
+    bitBuffer |= code << bitCount;
+    bitCount += codeSize;
+    while (bitCount >= 8) {
+      writeByte(bitBuffer & 0xff);
+      bitBuffer >>>= 8;
+      bitCount -= 8;
+    }
+
+    // Keep the code size in lockstep with the decoder, which grows its table one code later.
+    if (clearing) {
+      codeSize = minCodeSize + 1;
+      clearing = false;
+    } else if (nextCode > (1 << codeSize) - 1 && codeSize < MAX_BITS) {
+      codeSize++;
+    }
+  }
+
+  private void writeByte(int b) {
+    block[blockLength++] = (byte) b;
+    if (blockLength == MAX_BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  private void flushBlock() {
+    if (blockLength > 0) {
+      out.write(blockLength);
+      out.write(block, 0, blockLength);
+      blockLength = 0;
+    }
+  }
+}
@@ -0,0 +1,354 @@
+package com.squareup.spoon;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes a zip archive whose entries can be added from several threads at once. Each entry is
+ * compressed into memory by the thread adding it and only then appended to the archive, so entries
+ * added in parallel are compressed in parallel. Files which are already compressed, like images,
+ * are stored as they are.
+ * <p>
+ * Archives with more entries or bytes than the original zip format allows use its zip64
+ * extensions. A single entry must be smaller than 4 GB.
+ */
+public final class ParallelZipWriter implements Closeable {
+  /** Extensions of files whose contents deflate would not make smaller. */
+  private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(
+      Arrays.asList("png", "gif", "jpg", "jpeg", "webp", "gz", "zip"));
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END = 0x06054b50;
+  private static final int ZIP64_END = 0x06064b50;
+  private static final int ZIP64_END_LOCATOR = 0x07064b50;
+  private static final int ZIP64_EXTRA = 0x0001;
+  private static final int VERSION = 20;
+  private static final int ZIP64_VERSION = 45;
+  /** Names are always UTF-8. */
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final long MAX_32 = 0xffffffffL;
+  private static final int MAX_16 = 0xffff;
+
+  private final OutputStream out;
+  /** Deflaters hold native buffers, so they are reused rather than made for every entry. */
+  private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+  private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+  private final int time;
+  private final int date;
+  private long position;
+  private long count;
+  private boolean closed;
+
+  public ParallelZipWriter(File file) throws IOException {
+    this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+    Calendar now = Calendar.getInstance();
+    this.time = now.get(Calendar.HOUR_OF_DAY) << 11 | now.get(Calendar.MINUTE) << 5
+        | now.get(Calendar.SECOND) >> 1;
+    this.date = Math.max(0, now.get(Calendar.YEAR) - 1980) << 9
+        | (now.get(Calendar.MONTH) + 1) << 5 | now.get(Calendar.DAY_OF_MONTH);
+  }
+
+  /**
+   * A stream which adds an entry named {@code name} holding what was written to it once it is
+   * closed. Unless the name is that of an already compressed file, what is written is deflated
+   * as it is written.
+   */
+  public OutputStream newEntry(String name) {
+    return new Entry(name);
+  }
+
+  /** Add an entry named {@code name} holding {@code bytes}. */
+  public void write(String name, byte[] bytes) throws IOException {
+    try (OutputStream entry = newEntry(name)) {
+      entry.write(bytes);
+    }
+  }
+
+  /** Add an entry named {@code name} holding the contents of {@code file}. */
+  public void write(String name, File file) throws IOException {
+    if (!isCompressed(name)) {
+      try (OutputStream entry = newEntry(name)) {
+        Files.copy(file.toPath(), entry);
+      }
+      return;
+    }
+    // Stored entries are copied straight from the file rather than through memory.
+    long size = file.length();
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, read);
+      }
+    }
+    synchronized (this) {
+      writeHeaders(name, false, crc.getValue(), size, size);
+      try (InputStream in = new FileInputStream(file)) {
+        long copied = 0;
+        int read;
+        while (copied < size && (read = in.read(buffer, 0, (int) Math.min(buffer.length,
+            size - copied))) != -1) {
+          out.write(buffer, 0, read);
+          copied += read;
+        }
+        if (copied != size) {
+          throw new IOException("File changed while being written: " + file);
+        }
+      }
+      position += size;
+    }
+  }
+
+  /**
+   * Add every file under {@code directory} as an entry named by its path relative to it. The
+   * files are compressed in parallel.
+   */
+  public void writeTree(File directory) throws IOException {
+    Path root = directory.toPath();
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(root)) {
+      files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    try {
+      files.parallelStream().forEach(file -> {
+        try {
+          write(root.relativize(file).toString().replace(File.separatorChar, '/'), file.toFile());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Write the archive's directory of entries and close it. */
+  @Override public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      long start = position;
+      centralDirectory.writeTo(out);
+      long size = centralDirectory.size();
+      position += size;
+      boolean zip64 = count >= MAX_16 || start >= MAX_32 || size >= MAX_32;
+      if (zip64) {
+        long end = position;
+        writeInt(out, ZIP64_END);
+        writeLong(out, 44);
+        writeShort(out, ZIP64_VERSION);
+        writeShort(out, ZIP64_VERSION);
+        writeInt(out, 0);
+        writeInt(out, 0);
+        writeLong(out, count);
+        writeLong(out, count);
+        writeLong(out, size);
+        writeLong(out, start);
+        writeInt(out, ZIP64_END_LOCATOR);
+        writeInt(out, 0);
+        writeLong(out, end);
+        writeInt(out, 1);
+      }
+      writeInt(out, END);
+      writeShort(out, 0);
+      writeShort(out, 0);
+      writeShort(out, (int) Math.min(count, MAX_16));
+      writeShort(out, (int) Math.min(count, MAX_16));
+      writeInt(out, Math.min(size, MAX_32));
+      writeInt(out, Math.min(start, MAX_32));
+      writeShort(out, 0);
+    } finally {
+      out.close();
+      Deflater deflater;
+      while ((deflater = deflaters.poll()) != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  static boolean isCompressed(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot != -1
+        && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.US));
+  }
+
+  private synchronized void append(String name, boolean deflated, long crc, long size,
+      byte[] data, int length) throws IOException {
+    writeHeaders(name, deflated, crc, size, length);
+    out.write(data, 0, length);
+    position += length;
+  }
+
+  /**
+   * Write an entry's local header and record it in the directory. Its data must follow. Sizes
+   * always fit the original format, so only the entry's offset can need the zip64 extension.
+   */
+  private void writeHeaders(String name, boolean deflated, long crc, long size,
+      long compressedSize) throws IOException {
+    checkState(!closed, "Closed.");
+    checkArgument(size < MAX_32 && compressedSize < MAX_32, "Entry too large: %s", name);
+    byte[] nameBytes = name.getBytes(UTF_8);
+    int method = deflated ? 8 : 0;
+    long offset = position;
+
+    writeInt(out, LOCAL_HEADER);
+    writeShort(out, VERSION);
+    writeShort(out, FLAG_UTF8);
+    writeShort(out, method);
+    writeShort(out, time);
+    writeShort(out, date);
+    writeInt(out, crc);
+    writeInt(out, compressedSize);
+    writeInt(out, size);
+    writeShort(out, nameBytes.length);
+    writeShort(out, 0);
+    out.write(nameBytes);
+    position += 30 + nameBytes.length;
+
+    boolean zip64 = offset >= MAX_32;
+    OutputStream directory = centralDirectory;
+    writeInt(directory, CENTRAL_HEADER);
+    writeShort(directory, ZIP64_VERSION);
+    writeShort(directory, zip64 ? ZIP64_VERSION : VERSION);
+    writeShort(directory, FLAG_UTF8);
+    writeShort(directory, method);
+    writeShort(directory, time);
+    writeShort(directory, date);
+    writeInt(directory, crc);
+    writeInt(directory, compressedSize);
+    writeInt(directory, size);
+    writeShort(directory, nameBytes.length);
+    writeShort(directory, zip64 ? 12 : 0);
+    writeShort(directory, 0);
+    writeShort(directory, 0);
+    writeShort(directory, 0);
+    writeInt(directory, 0);
+    writeInt(directory, Math.min(offset, MAX_32));
+    directory.write(nameBytes);
+    if (zip64) {
+      writeShort(directory, ZIP64_EXTRA);
+      writeShort(directory, 8);
+      writeLong(directory, offset);
+    }
+    count += 1;
+  }
+
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write(value);
+    out.write(value >>> 8);
+  }
+
+  private static void writeInt(OutputStream out, long value) throws IOException {
+    writeShort(out, (int) value & MAX_16);
+    writeShort(out, (int) (value >>> 16) & MAX_16);
+  }
+
+  private static void writeLong(OutputStream out, long value) throws IOException {
+    writeInt(out, value & MAX_32);
+    writeInt(out, value >>> 32);
+  }
+
+  /**
+   * Buffers what is written to it, deflated unless it is already compressed, and appends it as an
+   * entry once closed.
+   */
+  private final class Entry extends OutputStream {
+    private final String name;
+    private final CRC32 crc = new CRC32();
+    /** Null if the entry is stored. */
+    private final Deflater deflater;
+    private final Buffer data = new Buffer();
+    private final byte[] chunk;
+    private boolean done;
+
+    Entry(String name) {
+      this.name = name;
+      if (isCompressed(name)) {
+        this.deflater = null;
+        this.chunk = null;
+      } else {
+        Deflater pooled = deflaters.poll();
+        this.deflater =
+            (pooled != null) ? pooled : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        this.chunk = new byte[8192];
+      }
+    }
+
+    @Override public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override public void write(byte[] bytes, int offset, int length) throws IOException {
+      checkState(!done, "Closed.");
+      crc.update(bytes, offset, length);
+      if (deflater == null) {
+        data.write(bytes, offset, length);
+        return;
+      }
+      deflater.setInput(bytes, offset, length);
+      while (!deflater.needsInput()) {
+        deflate();
+      }
+    }
+
+    @Override public void close() throws IOException {
+      if (done) {
+        return;
+      }
+      done = true;
+      if (deflater == null) {
+        append(name, false, crc.getValue(), data.size(), data.bytes(), data.size());
+        return;
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        deflate();
+      }
+      long size = deflater.getBytesRead();
+      deflater.reset();
+      deflaters.add(deflater);
+      append(name, true, crc.getValue(), size, data.bytes(), data.size());
+    }
+
+    private void deflate() {
+      data.write(chunk, 0, deflater.deflate(chunk));
+    }
+  }
+
+  /** Exposes its array so the entry's data is not copied again to be appended. */
+  private static final class Buffer extends ByteArrayOutputStream {
+    byte[] bytes() {
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.testrunner.ITestRunListener;
+import com.android.ddmlib.testrunner.TestIdentifier;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A step in running the tests on one device, reported to a {@link RunProgress} as it happens.
+ * Devices run in another process report them as lines of their standard out which start with
+ * {@link #PREFIX}.
+ */
+final class ProgressEvent {
+  static final String PREFIX = "spoon-progress ";
+
+  enum Type {
+    /** The device was found and is having the APKs installed. */
+    DEVICE,
+    RUN_STARTED,
+    TEST_STARTED,
+    TEST_FAILED,
+    TEST_ENDED,
+    RUN_ENDED,
+    /** The device has finished, successfully or not. */
+    DONE
+  }
+
+  static ProgressEvent device(String name) {
+    return new ProgressEvent(Type.DEVICE, name, 0, null, null);
+  }
+
+  static ProgressEvent runStarted(int testCount) {
+    return new ProgressEvent(Type.RUN_STARTED, null, testCount, null, null);
+  }
+
+  static ProgressEvent test(Type type, TestIdentifier test) {
+    return new ProgressEvent(type, null, 0, test.getClassName(), test.getTestName());
+  }
+
+  static ProgressEvent runEnded() {
+    return new ProgressEvent(Type.RUN_ENDED, null, 0, null, null);
+  }
+
+  static ProgressEvent done() {
+    return new ProgressEvent(Type.DONE, null, 0, null, null);
+  }
+
+  final Type type;
+  final String name;
+  final int testCount;
+  final String className;
+  final String methodName;
+
+  private ProgressEvent(Type type, String name, int testCount, String className,
+      String methodName) {
+    this.type = type;
+    this.name = name;
+    this.testCount = testCount;
+    this.className = className;
+    this.methodName = methodName;
+  }
+
+  /** Reports a device's test run as events. */
+  static final class Listener implements ITestRunListener {
+    private final Consumer<ProgressEvent> events;
+
+    Listener(Consumer<ProgressEvent> events) {
+      this.events = events;
+    }
+
+    @Override public void testRunStarted(String runName, int testCount) {
+      events.accept(runStarted(testCount));
+    }
+
+    @Override public void testStarted(TestIdentifier test) {
+      events.accept(test(Type.TEST_STARTED, test));
+    }
+
+    @Override public void testFailed(TestIdentifier test, String trace) {
+      events.accept(test(Type.TEST_FAILED, test));
+    }
+
+    @Override public void testAssumptionFailure(TestIdentifier test, String trace) {
+    }
+
+    @Override public void testIgnored(TestIdentifier test) {
+    }
+
+    @Override public void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
+      events.accept(test(Type.TEST_ENDED, test));
+    }
+
+    @Override public void testRunFailed(String errorMessage) {
+    }
+
+    @Override public void testRunStopped(long elapsedTime) {
+    }
+
+    @Override public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
+      events.accept(runEnded());
+    }
+  }
+}
@@ -0,0 +1,469 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.squareup.spoon.misc.StackTrace;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A compact binary encoding of a {@link SpoonSummary}, read through a memory mapping so that a
+ * single device's or test's result can be loaded without decoding the rest of the file.
+ * <p>
+ * Every string is stored once in a table at the end of the file and referenced by its index.
+ * Numbers are variable length and zig-zag encoded, except for the fixed width offsets of the
+ * header and indexes. Enum constants are stored as strings, by name:
+ * <pre>
+ * header:       "SPNR", version, string table offset, device index offset
+ * summary:      title, test size, start, duration
+ * devices:      for each device, its result followed by the index of its tests
+ * device index: count, then serial, result offset, and test index offset of each device
+ * test index:   count, then class name, method name, and result offset of each test, sorted
+ * strings:      count, count + 1 offsets of UTF-8 data, data
+ * </pre>
+ */
+public final class ResultArchive {
+  public static final String FILE_NAME = "result.bin";
+  static final byte[] MAGIC = {'S', 'P', 'N', 'R'};
+  static final int VERSION = 2;
+  private static final int HEADER_SIZE = MAGIC.length + 12;
+  private static final int INDEX_ENTRY_SIZE = 12;
+
+  /**
+   * Map {@code file} into memory and read its header. The offsets and counts of the header,
+   * indexes, and string table are checked to lie within the file, so that one which is truncated
+   * or corrupt is rejected here rather than when its results are read.
+   */
+  public static ResultArchive open(File file) throws IOException {
+    checkNotNull(file);
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    byte[] magic = new byte[MAGIC.length];
+    if (buffer.remaining() < HEADER_SIZE) {
+      throw new IOException("Not a result archive: " + file);
+    }
+    buffer.get(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException("Not a result archive: " + file);
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported result archive version " + version + ": " + file);
+    }
+    return new ResultArchive(file, buffer);
+  }
+
+  private final ByteBuffer buffer;
+  private final int stringsOffset;
+  private final int stringCount;
+  private final int stringData;
+  private final String[] strings;
+  private final String title;
+  private final IRemoteAndroidTestRunner.TestSize testSize;
+  private final long started;
+  private final long duration;
+  /** Offsets of each device's result and test index, by serial in their original order. */
+  private final Map<String, int[]> devices = new LinkedHashMap<>();
+
+  private ResultArchive(File file, ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    stringsOffset = buffer.getInt();
+    int devicesOffset = buffer.getInt();
+
+    // String offsets must ascend and end within the file for every string to be decodable.
+    stringCount = readCount(file, stringsOffset, 4);
+    checkRange(file, stringsOffset + 4L, (stringCount + 1L) * 4);
+    stringData = stringsOffset + 4 + (stringCount + 1) * 4;
+    int previous = 0;
+    for (int i = 0; i <= stringCount; i++) {
+      int offset = buffer.getInt(stringsOffset + 4 + i * 4);
+      if (offset < previous) {
+        throw new IOException("Corrupt result archive string table: " + file);
+      }
+      previous = offset;
+    }
+    checkRange(file, stringData, previous);
+    strings = new String[stringCount];
+
+    int deviceCount = readCount(file, devicesOffset, INDEX_ENTRY_SIZE);
+    for (int i = 0; i < deviceCount; i++) {
+      int entry = devicesOffset + 4 + i * INDEX_ENTRY_SIZE;
+      int serial = checkString(file, buffer.getInt(entry));
+      int offset = buffer.getInt(entry + 4);
+      checkRange(file, offset, 1);
+      int testIndex = buffer.getInt(entry + 8);
+      int testCount = readCount(file, testIndex, INDEX_ENTRY_SIZE);
+      for (int j = 0; j < testCount; j++) {
+        int test = testIndex + 4 + j * INDEX_ENTRY_SIZE;
+        checkString(file, buffer.getInt(test));
+        checkString(file, buffer.getInt(test + 4));
+        checkRange(file, buffer.getInt(test + 8), 1);
+      }
+      devices.put(string(serial), new int[] {offset, testIndex});
+    }
+
+    Decoder summary = new Decoder(HEADER_SIZE);
+    try {
+      title = summary.readString();
+      testSize = summary.readEnum(IRemoteAndroidTestRunner.TestSize.class);
+      started = summary.readLong();
+      duration = summary.readLong();
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupt result archive summary: " + file, e);
+    }
+  }
+
+  /**
+   * Read the count at {@code offset} of a table whose entries are {@code entrySize} bytes, checking
+   * that the table lies within the file.
+   */
+  private int readCount(File file, int offset, int entrySize) throws IOException {
+    checkRange(file, offset, 4);
+    int count = buffer.getInt(offset);
+    if (count < 0) {
+      throw new IOException("Corrupt result archive at offset " + offset + ": " + file);
+    }
+    checkRange(file, offset + 4L, (long) count * entrySize);
+    return count;
+  }
+
+  private void checkRange(File file, long offset, long length) throws IOException {
+    if (offset < HEADER_SIZE || length < 0 || offset + length > buffer.limit()) {
+      throw new IOException("Truncated or corrupt result archive at offset " + offset + ": "
+          + file);
+    }
+  }
+
+  private int checkString(File file, int id) throws IOException {
+    if (id < 0 || id >= stringCount) {
+      throw new IOException("Corrupt result archive string reference " + id + ": " + file);
+    }
+    return id;
+  }
+
+  /** Execution title. */
+  public String getTitle() {
+    return title;
+  }
+
+  /** Size of tests, or null if all were run. */
+  public IRemoteAndroidTestRunner.TestSize getTestSize() {
+    return testSize;
+  }
+
+  /** Execution start time. */
+  public long getStarted() {
+    return started;
+  }
+
+  /** Length of overall execution, in milliseconds. */
+  public long getDuration() {
+    return duration;
+  }
+
+  /** Serial numbers of the devices with a result. */
+  public Set<String> getSerials() {
+    return Collections.unmodifiableSet(devices.keySet());
+  }
+
+  /** The tests run on the device {@code serial}, or an empty list if there is no such device. */
+  public List<DeviceTest> getTests(String serial) {
+    checkNotNull(serial);
+    int[] device = devices.get(serial);
+    if (device == null) {
+      return Collections.emptyList();
+    }
+    int index = device[1];
+    int count = buffer.getInt(index);
+    List<DeviceTest> tests = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int entry = index + 4 + i * INDEX_ENTRY_SIZE;
+      tests.add(DeviceTest.of(string(buffer.getInt(entry)), string(buffer.getInt(entry + 4))));
+    }
+    return tests;
+  }
+
+  /** The complete result of the device {@code serial}, or null if there is no such device. */
+  public DeviceResult getDeviceResult(String serial) {
+    checkNotNull(serial);
+    int[] device = devices.get(serial);
+    return device != null ? readDevice(device[0], device[1]) : null;
+  }
+
+  /**
+   * The result of a single test on the device {@code serial}, or null if it did not run there.
+   * Only that test's result is decoded.
+   */
+  public DeviceTestResult getTestResult(String serial, String className, String methodName) {
+    checkNotNull(serial);
+    checkNotNull(className);
+    checkNotNull(methodName);
+    int[] device = devices.get(serial);
+    if (device == null) {
+      return null;
+    }
+    int index = device[1];
+    int low = 0;
+    int high = buffer.getInt(index) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int entry = index + 4 + middle * INDEX_ENTRY_SIZE;
+      int comparison = string(buffer.getInt(entry)).compareTo(className);
+      if (comparison == 0) {
+        comparison = string(buffer.getInt(entry + 4)).compareTo(methodName);
+      }
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return new Decoder(buffer.getInt(entry + 8)).readTestResult();
+      }
+    }
+    return null;
+  }
+
+  /** Decode the entire archive. */
+  public SpoonSummary toSummary() {
+    Map<String, DeviceResult> results = new HashMap<>();
+    for (String serial : devices.keySet()) {
+      results.put(serial, getDeviceResult(serial));
+    }
+    return new SpoonSummary(title, testSize, started, duration, results);
+  }
+
+  /**
+   * Convert the archive to the {@code result.json} it was created from. Devices are decoded and
+   * written one at a time.
+   */
+  public void writeJson(Writer out, boolean compact) throws IOException {
+    Gson gson = compact ? SpoonUtils.COMPACT_GSON : SpoonUtils.GSON;
+    JsonWriter writer = gson.newJsonWriter(out);
+    writer.setHtmlSafe(true); // Like Gson.toJson.
+    Iterable<Map.Entry<String, DeviceResult>> results = () -> {
+      Iterator<String> serials = devices.keySet().iterator();
+      return new Iterator<Map.Entry<String, DeviceResult>>() {
+        @Override public boolean hasNext() {
+          return serials.hasNext();
+        }
+
+        @Override public Map.Entry<String, DeviceResult> next() {
+          String serial = serials.next();
+          return new AbstractMap.SimpleImmutableEntry<>(serial, getDeviceResult(serial));
+        }
+      };
+    };
+    SpoonJson.writeSummary(writer, title, testSize, started, duration, results, compact);
+    writer.flush();
+  }
+
+  private DeviceResult readDevice(int offset, int testIndex) {
+    Decoder decoder = new Decoder(offset);
+    boolean installFailed = decoder.readBoolean();
+    String installMessage = decoder.readString();
+    DeviceDetails details = null;
+    if (decoder.readBoolean()) {
+      details = new DeviceDetails(decoder.readString(), decoder.readString(), decoder.readString(),
+          decoder.readInt(), decoder.readString(), decoder.readString(), decoder.readBoolean(),
+          decoder.readString());
+    }
+    long started = decoder.readLong();
+    long duration = decoder.readLong();
+    Map<DeviceResult.Phase, Long> phaseDurations = new EnumMap<>(DeviceResult.Phase.class);
+    for (int i = decoder.readInt(); i > 0; i--) {
+      DeviceResult.Phase phase = decoder.readEnum(DeviceResult.Phase.class);
+      long phaseDuration = decoder.readLong();
+      // Phases added by a later version are left out.
+      if (phase != null) {
+        phaseDurations.put(phase, phaseDuration);
+      }
+    }
+    List<StackTrace> exceptions = new ArrayList<>();
+    for (int i = decoder.readInt(); i > 0; i--) {
+      exceptions.add(decoder.readStackTrace());
+    }
+
+    Map<DeviceTest, DeviceTestResult> testResults = new HashMap<>();
+    int count = buffer.getInt(testIndex);
+    for (int i = 0; i < count; i++) {
+      int entry = testIndex + 4 + i * INDEX_ENTRY_SIZE;
+      DeviceTest test =
+          DeviceTest.of(string(buffer.getInt(entry)), string(buffer.getInt(entry + 4)));
+      testResults.put(test, new Decoder(buffer.getInt(entry + 8)).readTestResult());
+    }
+    return new DeviceResult(installFailed, installMessage, details, testResults, started, duration,
+        phaseDurations, exceptions);
+  }
+
+  /** The string at {@code id} in the string table, decoded on first use. */
+  private String string(int id) {
+    String value = strings[id];
+    if (value == null) {
+      int offsets = stringsOffset + 4;
+      int start = buffer.getInt(offsets + id * 4);
+      int end = buffer.getInt(offsets + (id + 1) * 4);
+      byte[] bytes = new byte[end - start];
+      ByteBuffer data = buffer.duplicate();
+      data.position(stringData + start);
+      data.get(bytes);
+      value = new String(bytes, UTF_8);
+      strings[id] = value;
+    }
+    return value;
+  }
+
+  /** Reads values sequentially from a position of the archive. */
+  private final class Decoder {
+    private final ByteBuffer in;
+
+    Decoder(int offset) {
+      in = buffer.duplicate();
+      in.position(offset);
+    }
+
+    boolean readBoolean() {
+      return in.get() != 0;
+    }
+
+    int readInt() {
+      return (int) readLong();
+    }
+
+    long readLong() {
+      long zigZag = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = in.get();
+        zigZag |= (long) (b & 0x7f) << shift;
+        shift += 7;
+      } while (b < 0);
+      return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    String readString() {
+      int id = readInt();
+      return id != 0 ? string(id - 1) : null;
+    }
+
+    /** The constant named by the next string, or null if there is none of that name. */
+    <E extends Enum<E>> E readEnum(Class<E> type) {
+      String name = readString();
+      return name != null ? SpoonJson.enumValue(type, name) : null;
+    }
+
+    File readFile() {
+      String path = readString();
+      return path != null ? new File(path) : null;
+    }
+
+    List<File> readFiles() {
+      int count = readInt();
+      // Every file takes at least a byte, which bounds what a corrupt count can allocate.
+      List<File> files = new ArrayList<>(Math.min(count, in.remaining()));
+      for (int i = 0; i < count; i++) {
+        files.add(readFile());
+      }
+      return files;
+    }
+
+    StackTrace readStackTrace() {
+      if (!readBoolean()) {
+        return null;
+      }
+      String className = readString();
+      String message = readString();
+      Deque<StackTrace.Element> elements = new ArrayDeque<>();
+      for (int i = readInt(); i > 0; i--) {
+        elements.add(new StackTrace.Element(readString(), readString(), readInt(), readString(),
+            readBoolean()));
+      }
+      return new StackTrace(className, message, elements, readStackTrace());
+    }
+
+    DeviceTestResult readTestResult() {
+      DeviceTestResult.Status status = readEnum(DeviceTestResult.Status.class);
+      StackTrace exception = readStackTrace();
+      long duration = readLong();
+      List<File> screenshots = readFiles();
+      Map<File, File> thumbnails = new LinkedHashMap<>();
+      for (int i = readInt(); i > 0; i--) {
+        thumbnails.put(readFile(), readFile());
+      }
+      Map<File, ScreenshotDiff> screenshotDiffs = new LinkedHashMap<>();
+      for (int i = readInt(); i > 0; i--) {
+        File screenshot = readFile();
+        screenshotDiffs.put(screenshot, new ScreenshotDiff(readFile(), readInt(), readFile()));
+      }
+      List<File> files = readFiles();
+      File animatedGif = readFile();
+      int count = readInt();
+      List<LogCatMessage> log = new ArrayList<>(Math.min(count, in.remaining()));
+      for (int i = 0; i < count; i++) {
+        Log.LogLevel logLevel = readEnum(Log.LogLevel.class);
+        int pid = readInt();
+        int tid = readInt();
+        String appName = readString();
+        String tag = readString();
+        LogCatTimestamp timestamp = null;
+        if (readBoolean()) {
+          timestamp = new LogCatTimestamp(readInt(), readInt(), readInt(), readInt(), readInt(),
+              readInt());
+        }
+        LogCatHeader header = new LogCatHeader(logLevel, pid, tid, appName, tag, timestamp);
+        log.add(new LogCatMessage(header, readString()));
+      }
+      return new DeviceTestResult(status, exception, duration, screenshots, thumbnails,
+          screenshotDiffs, animatedGif, log, files);
+    }
+  }
+
+  /**
+   * Convert an archive back to JSON.
+   * <p>
+   * Usage: {@code ResultArchive <archive> [<json output>]}. Writes to standard out unless an
+   * output file is given.
+   */
+  public static void main(String... args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: ResultArchive <archive> [<json output>]");
+      System.exit(1);
+    }
+    ResultArchive archive = open(new File(args[0]));
+    try (Writer out = new BufferedWriter(args.length == 2
+        ? new OutputStreamWriter(new FileOutputStream(args[1]), UTF_8)
+        : new OutputStreamWriter(System.out, UTF_8))) {
+      archive.writeJson(out, false);
+    }
+  }
+}
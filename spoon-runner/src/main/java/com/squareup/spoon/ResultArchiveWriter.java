@@ -0,0 +1,272 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.google.common.io.CountingOutputStream;
+import com.squareup.spoon.misc.StackTrace;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.squareup.spoon.ResultArchive.FILE_NAME;
+import static com.squareup.spoon.ResultArchive.MAGIC;
+import static com.squareup.spoon.ResultArchive.VERSION;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Writes a {@link SpoonSummary} in the binary format read by {@link ResultArchive}. Devices are
+ * written one after another as they are encoded; only the string table is held until the end.
+ */
+final class ResultArchiveWriter {
+  /**
+   * Write {@code summary} to {@code file}. The archive is written next to it and moved there once
+   * complete, so a partly written archive is never seen at {@code file}.
+   */
+  static void write(SpoonSummary summary, File file) throws IOException {
+    File temp = File.createTempFile(FILE_NAME, ".tmp", file.getAbsoluteFile().getParentFile());
+    try {
+      new ResultArchiveWriter().writeTo(summary, temp);
+      Files.move(temp.toPath(), file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+    } finally {
+      temp.delete();
+    }
+  }
+
+  private final Map<String, Integer> strings = new LinkedHashMap<>();
+  private CountingOutputStream counter;
+  private DataOutputStream out;
+
+  private ResultArchiveWriter() {
+  }
+
+  private void writeTo(SpoonSummary summary, File file) throws IOException {
+    long stringsOffset;
+    long devicesOffset;
+    counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    out = new DataOutputStream(counter);
+    try {
+      out.write(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(0); // String table offset, filled in below.
+      out.writeInt(0); // Device index offset, filled in below.
+
+      writeString(summary.getTitle());
+      writeEnum(summary.getTestSize());
+      writeLong(summary.getStarted());
+      writeLong(summary.getDuration());
+
+      List<int[]> devices = new ArrayList<>();
+      for (Map.Entry<String, DeviceResult> entry : summary.getResults().entrySet()) {
+        int serial = id(entry.getKey());
+        int offset = position();
+        int testIndex = writeDevice(entry.getValue());
+        devices.add(new int[] {serial, offset, testIndex});
+      }
+
+      devicesOffset = position();
+      writeIndex(devices);
+      stringsOffset = position();
+      writeStringTable();
+    } finally {
+      out.close();
+    }
+
+    try (RandomAccessFile header = new RandomAccessFile(file, "rw")) {
+      header.seek(MAGIC.length + 4);
+      header.writeInt((int) stringsOffset);
+      header.writeInt((int) devicesOffset);
+    }
+  }
+
+  /** Write a device's result followed by the index of its tests, returning the index's offset. */
+  private int writeDevice(DeviceResult result) throws IOException {
+    out.writeBoolean(result.getInstallFailed());
+    writeString(result.getInstallMessage());
+    DeviceDetails details = result.getDeviceDetails();
+    out.writeBoolean(details != null);
+    if (details != null) {
+      writeString(details.getModel());
+      writeString(details.getManufacturer());
+      writeString(details.getVersion());
+      writeInt(details.getApiLevel());
+      writeString(details.getLanguage());
+      writeString(details.getRegion());
+      out.writeBoolean(details.isEmulator());
+      writeString(details.getAvdName());
+    }
+    writeLong(result.getStarted());
+    writeLong(result.getDuration());
+    writeInt(result.getPhaseDurations().size());
+    for (Map.Entry<DeviceResult.Phase, Long> entry : result.getPhaseDurations().entrySet()) {
+      writeEnum(entry.getKey());
+      writeLong(entry.getValue());
+    }
+    writeInt(result.getExceptions().size());
+    for (StackTrace exception : result.getExceptions()) {
+      writeStackTrace(exception);
+    }
+
+    // Test results are sorted by test, which lets readers binary search the index for one.
+    List<int[]> tests = new ArrayList<>();
+    for (Map.Entry<DeviceTest, DeviceTestResult> entry : result.getTestResults().entrySet()) {
+      DeviceTest test = entry.getKey();
+      int className = id(test.getClassName());
+      int methodName = id(test.getMethodName());
+      int offset = position();
+      writeTestResult(entry.getValue());
+      tests.add(new int[] {className, methodName, offset});
+    }
+    int testIndex = position();
+    writeIndex(tests);
+    return testIndex;
+  }
+
+  private void writeTestResult(DeviceTestResult result) throws IOException {
+    writeEnum(result.getStatus());
+    writeStackTrace(result.getException());
+    writeLong(result.getDuration());
+    writeFiles(result.getScreenshots());
+    writeInt(result.getThumbnails().size());
+    for (Map.Entry<File, File> entry : result.getThumbnails().entrySet()) {
+      writeFile(entry.getKey());
+      writeFile(entry.getValue());
+    }
+    writeInt(result.getScreenshotDiffs().size());
+    for (Map.Entry<File, ScreenshotDiff> entry : result.getScreenshotDiffs().entrySet()) {
+      ScreenshotDiff diff = entry.getValue();
+      writeFile(entry.getKey());
+      writeFile(diff.getBaseline());
+      writeInt(diff.getChangedPixels());
+      writeFile(diff.getDiffImage());
+    }
+    writeFiles(result.getFiles());
+    writeFile(result.getAnimatedGif());
+    writeInt(result.getLog().size());
+    for (LogCatMessage message : result.getLog()) {
+      LogCatHeader header = message.getHeader();
+      writeEnum(header.getLogLevel());
+      writeInt(header.getPid());
+      writeInt(header.getTid());
+      writeString(header.getAppName());
+      writeString(header.getTag());
+      out.writeBoolean(header.getTimestamp() != null);
+      if (header.getTimestamp() != null) {
+        for (int value : SpoonJson.timestampValues(header.getTimestamp())) {
+          writeInt(value);
+        }
+      }
+      writeString(message.getMessage());
+    }
+  }
+
+  private void writeStackTrace(StackTrace trace) throws IOException {
+    out.writeBoolean(trace != null);
+    if (trace == null) {
+      return;
+    }
+    writeString(trace.getClassName());
+    writeString(trace.getMessage());
+    writeInt(trace.getElements().size());
+    for (StackTrace.Element element : trace.getElements()) {
+      writeString(element.getClassName());
+      writeString(element.getFileName());
+      writeInt(element.getLine());
+      writeString(element.getMethodName());
+      out.writeBoolean(element.isNative());
+    }
+    writeStackTrace(trace.getCause());
+  }
+
+  private void writeFiles(List<File> files) throws IOException {
+    writeInt(files.size());
+    for (File file : files) {
+      writeFile(file);
+    }
+  }
+
+  private void writeFile(File file) throws IOException {
+    writeString(file != null ? file.getAbsolutePath() : null);
+  }
+
+  /** Write a reference to {@code value} in the string table, or zero for null. */
+  private void writeString(String value) throws IOException {
+    writeInt(value != null ? id(value) + 1 : 0);
+  }
+
+  /**
+   * Write {@code value} by its name, which unlike its ordinal still reads back as the same constant
+   * when constants are added or reordered.
+   */
+  private void writeEnum(Enum<?> value) throws IOException {
+    writeString(value != null ? value.name() : null);
+  }
+
+  private int id(String value) {
+    Integer id = strings.get(value);
+    if (id == null) {
+      id = strings.size();
+      strings.put(value, id);
+    }
+    return id;
+  }
+
+  /** Write fixed width entries which can be read without decoding those before them. */
+  private void writeIndex(List<int[]> entries) throws IOException {
+    out.writeInt(entries.size());
+    for (int[] entry : entries) {
+      for (int value : entry) {
+        out.writeInt(value);
+      }
+    }
+  }
+
+  private void writeStringTable() throws IOException {
+    List<byte[]> encoded = new ArrayList<>(strings.size());
+    for (String value : strings.keySet()) {
+      encoded.add(value.getBytes(UTF_8));
+    }
+    out.writeInt(encoded.size());
+    int offset = 0;
+    for (byte[] bytes : encoded) {
+      out.writeInt(offset);
+      offset += bytes.length;
+    }
+    out.writeInt(offset);
+    for (byte[] bytes : encoded) {
+      out.write(bytes);
+    }
+  }
+
+  /** Write a variable length, zig-zag encoded signed value. */
+  private void writeInt(int value) throws IOException {
+    writeLong(value);
+  }
+
+  /** Write a variable length, zig-zag encoded signed value. */
+  private void writeLong(long value) throws IOException {
+    long zigZag = (value << 1) ^ (value >> 63);
+    while ((zigZag & ~0x7FL) != 0) {
+      out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+      zigZag >>>= 7;
+    }
+    out.writeByte((int) zigZag);
+  }
+
+  private int position() throws IOException {
+    long position = counter.getCount();
+    if (position > Integer.MAX_VALUE) {
+      throw new IOException("Result archive exceeds 2 GB.");
+    }
+    return (int) position;
+  }
+}
@@ -0,0 +1,204 @@
+package com.squareup.spoon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The progress of a run so far, updated by the devices' {@link ProgressEvent}s as they happen.
+ * Safe to use from several threads. Updates only record the event, so they never wait on whoever
+ * is watching.
+ */
+public final class RunProgress {
+  enum State {
+    WAITING, INSTALLING, RUNNING, DONE
+  }
+
+  private final String title;
+  private final LongSupplier clock;
+  private final Map<String, Device> devices = new LinkedHashMap<>();
+  private long version;
+
+  RunProgress(String title, Collection<String> serials) {
+    this(title, serials, System::currentTimeMillis);
+  }
+
+  RunProgress(String title, Collection<String> serials, LongSupplier clock) {
+    this.title = checkNotNull(title);
+    this.clock = clock;
+    for (String serial : serials) {
+      devices.put(serial, new Device(serial));
+    }
+  }
+
+  /** Increases whenever the progress changes. */
+  public synchronized long getVersion() {
+    return version;
+  }
+
+  synchronized void apply(String serial, ProgressEvent event) {
+    Device device = devices.computeIfAbsent(serial, Device::new);
+    version += 1;
+    switch (event.type) {
+      case DEVICE:
+        device.name = event.name;
+        device.state = State.INSTALLING;
+        break;
+      case RUN_STARTED:
+        device.state = State.RUNNING;
+        device.expected += event.testCount;
+        if (device.runStarted == 0) {
+          device.runStarted = clock.getAsLong();
+        }
+        break;
+      case TEST_STARTED:
+        device.current = event.className + '#' + event.methodName;
+        device.currentFailed = false;
+        break;
+      case TEST_FAILED:
+        device.currentFailed = true;
+        break;
+      case TEST_ENDED:
+        device.results.append(device.currentFailed ? 'f' : 'p');
+        if (device.currentFailed) {
+          device.failed += 1;
+        } else {
+          device.passed += 1;
+        }
+        device.current = null;
+        device.currentFailed = false;
+        device.lastEnded = clock.getAsLong();
+        break;
+      case RUN_ENDED:
+        device.current = null;
+        break;
+      case DONE:
+        device.state = State.DONE;
+        device.current = null;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown event: " + event.type);
+    }
+  }
+
+  /** A copy of the progress so far, with the rate at which tests are running. */
+  public synchronized Snapshot snapshot() {
+    long now = clock.getAsLong();
+    List<Snapshot.Device> deviceSnapshots = new ArrayList<>(devices.size());
+    int passed = 0;
+    int failed = 0;
+    int expected = 0;
+    long firstStarted = Long.MAX_VALUE;
+    Long remaining = null;
+    for (Device device : devices.values()) {
+      deviceSnapshots.add(device.snapshot());
+      passed += device.passed;
+      failed += device.failed;
+      expected += Math.max(device.expected, device.passed + device.failed);
+      if (device.runStarted != 0) {
+        firstStarted = Math.min(firstStarted, device.runStarted);
+      }
+      // Devices run side by side, so the run ends when the slowest is done.
+      Long deviceRemaining = device.remaining(now);
+      if (deviceRemaining != null) {
+        remaining = (remaining == null) ? deviceRemaining : Math.max(remaining, deviceRemaining);
+      }
+    }
+    double testsPerMinute = 0;
+    if (firstStarted < now) {
+      testsPerMinute = (passed + failed) * 60000.0 / (now - firstStarted);
+    }
+    return new Snapshot(title, passed, failed, expected, testsPerMinute, remaining,
+        deviceSnapshots);
+  }
+
+  private static final class Device {
+    final String serial;
+    final StringBuilder results = new StringBuilder();
+    String name;
+    State state = State.WAITING;
+    String current;
+    boolean currentFailed;
+    int passed;
+    int failed;
+    int expected;
+    long runStarted;
+    long lastEnded;
+
+    Device(String serial) {
+      this.serial = serial;
+    }
+
+    /** Estimated milliseconds until this device is done, or null if that is not yet known. */
+    Long remaining(long now) {
+      int done = passed + failed;
+      if (state != State.RUNNING || done == 0) {
+        return null;
+      }
+      long perTest = (lastEnded - runStarted) / done;
+      // Count the time spent on the current test against the remaining.
+      long remaining = Math.max(0, expected - done) * perTest - (now - lastEnded);
+      return Math.max(0, remaining);
+    }
+
+    Snapshot.Device snapshot() {
+      return new Snapshot.Device(serial, name != null ? name : serial, state.name().toLowerCase(),
+          current, passed, failed, Math.max(expected, passed + failed), results.toString());
+    }
+  }
+
+  /** The progress at one moment, as shown by the dashboard. */
+  public static final class Snapshot {
+    public final String title;
+    public final int passed;
+    public final int failed;
+    /** Tests which will have run once every device is done, as far as is known. */
+    public final int expected;
+    public final double testsPerMinute;
+    /** Estimated milliseconds until the last device is done, or null if not yet known. */
+    public final Long remaining;
+    public final List<Device> devices;
+
+    Snapshot(String title, int passed, int failed, int expected, double testsPerMinute,
+        Long remaining, List<Device> devices) {
+      this.title = title;
+      this.passed = passed;
+      this.failed = failed;
+      this.expected = expected;
+      this.testsPerMinute = testsPerMinute;
+      this.remaining = remaining;
+      this.devices = devices;
+    }
+
+    public static final class Device {
+      public final String serial;
+      public final String name;
+      /** One of waiting, installing, running and done. */
+      public final String state;
+      /** The test running now, as {@code class#method}, or null. */
+      public final String current;
+      public final int passed;
+      public final int failed;
+      public final int expected;
+      /** The outcome of each test run so far in order, {@code p} if it passed or {@code f}. */
+      public final String results;
+
+      Device(String serial, String name, String state, String current, int passed, int failed,
+          int expected, String results) {
+        this.serial = serial;
+        this.name = name;
+        this.state = state;
+        this.current = current;
+        this.passed = passed;
+        this.failed = failed;
+        this.expected = expected;
+        this.results = results;
+      }
+    }
+  }
+}
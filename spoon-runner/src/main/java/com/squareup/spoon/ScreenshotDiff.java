@@ -0,0 +1,38 @@
+package com.squareup.spoon;
+
+import java.io.File;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/** Comparison of a screenshot with the matching screenshot of a baseline run. */
+public final class ScreenshotDiff {
+  private final File baseline;
+  private final int changedPixels;
+  private final File diffImage;
+
+  ScreenshotDiff(File baseline, int changedPixels, File diffImage) {
+    this.baseline = checkNotNull(baseline);
+    this.changedPixels = changedPixels;
+    this.diffImage = diffImage;
+  }
+
+  /** The baseline screenshot this was compared with. */
+  public File getBaseline() {
+    return baseline;
+  }
+
+  /** Whether the screenshot differs visibly from its baseline. */
+  public boolean isChanged() {
+    return changedPixels > 0;
+  }
+
+  /** Number of visibly different pixels. */
+  public int getChangedPixels() {
+    return changedPixels;
+  }
+
+  /** Image highlighting the changed pixels, or null if unchanged. */
+  public File getDiffImage() {
+    return diffImage;
+  }
+}
@@ -0,0 +1,174 @@
+package com.squareup.spoon;
+
+import com.google.common.io.Files;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+import static com.squareup.spoon.internal.Constants.NAME_SEPARATOR;
+
+/** Compares screenshots with those of a baseline run and draws what changed. */
+final class ScreenshotDiffer {
+  /**
+   * Largest perceived color difference, as a fraction of the maximum, for pixels to count as
+   * equal. Absorbs anti-aliasing and color rounding noise.
+   */
+  private static final double THRESHOLD = 0.1;
+  /** Maximum possible value of {@link #colorDelta}. */
+  private static final double MAX_DELTA = 35215;
+  private static final double MAX_EQUAL_DELTA = MAX_DELTA * THRESHOLD * THRESHOLD;
+  private static final int CHANGED_COLOR = 0xFFFF0000;
+  /** Opacity of unchanged pixels drawn over white in the diff image. */
+  private static final double UNCHANGED_ALPHA = 0.1;
+
+  /**
+   * Pair each screenshot with the baseline screenshot of the same tag in {@code baselineDir}.
+   * Screenshot names begin with their capture time, so the n-th screenshot of a tag is matched
+   * with the n-th baseline screenshot of that tag.
+   */
+  static Map<File, File> matchBaseline(List<File> screenshots, File baselineDir) {
+    Map<File, File> matches = new LinkedHashMap<>();
+    File[] baselines = baselineDir.listFiles(File::isFile);
+    if (baselines == null) {
+      return matches;
+    }
+    Arrays.sort(baselines);
+    Map<String, List<File>> baselinesByTag = new HashMap<>();
+    for (File baseline : baselines) {
+      baselinesByTag.computeIfAbsent(tag(baseline), tag -> new ArrayList<>()).add(baseline);
+    }
+
+    Map<String, Integer> occurrences = new HashMap<>();
+    for (File screenshot : screenshots) {
+      String tag = tag(screenshot);
+      int occurrence = occurrences.merge(tag, 1, Integer::sum) - 1;
+      List<File> candidates = baselinesByTag.get(tag);
+      if (candidates != null && occurrence < candidates.size()) {
+        matches.put(screenshot, candidates.get(occurrence));
+      }
+    }
+    return matches;
+  }
+
+  private static String tag(File screenshot) {
+    String name = screenshot.getName();
+    return name.substring(name.indexOf(NAME_SEPARATOR) + 1);
+  }
+
+  /**
+   * Compare {@code screenshot} with {@code baseline}, writing a diff image to {@code diffImage} if
+   * they differ.
+   */
+  static ScreenshotDiff compare(File screenshot, File baseline, File diffImage)
+      throws IOException {
+    if (Files.equal(screenshot, baseline)) {
+      return new ScreenshotDiff(baseline, 0, null);
+    }
+
+    BufferedImage actualImage = read(screenshot);
+    BufferedImage expectedImage = read(baseline);
+    int width = actualImage.getWidth();
+    int height = actualImage.getHeight();
+    boolean sameSize =
+        width == expectedImage.getWidth() && height == expectedImage.getHeight();
+    int[] actual = pixels(actualImage);
+    int[] expected = pixels(expectedImage);
+
+    // Differing encoders or metadata often leave the pixels intact. Look for the first visible
+    // change before doing any more work.
+    if (sameSize && firstChange(actual, expected) == actual.length) {
+      return new ScreenshotDiff(baseline, 0, null);
+    }
+
+    int diffWidth = Math.max(width, expectedImage.getWidth());
+    int diffHeight = Math.max(height, expectedImage.getHeight());
+    int[] diff = new int[diffWidth * diffHeight];
+    int changedPixels = 0;
+    for (int y = 0; y < diffHeight; y++) {
+      for (int x = 0; x < diffWidth; x++) {
+        boolean inActual = x < width && y < height;
+        boolean inExpected = x < expectedImage.getWidth() && y < expectedImage.getHeight();
+        int expectedPixel = inExpected ? expected[y * expectedImage.getWidth() + x] : 0;
+        if (inActual && inExpected && !isVisible(actual[y * width + x], expectedPixel)) {
+          diff[y * diffWidth + x] = fade(expectedPixel);
+        } else {
+          diff[y * diffWidth + x] = CHANGED_COLOR;
+          changedPixels++;
+        }
+      }
+    }
+
+    BufferedImage image = new BufferedImage(diffWidth, diffHeight, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, diffWidth, diffHeight, diff, 0, diffWidth);
+    diffImage.getParentFile().mkdirs();
+    ImageIO.write(image, "png", diffImage);
+    return new ScreenshotDiff(baseline, changedPixels, diffImage);
+  }
+
+  /** Index of the first visibly different pixel, or the length of the rasters if none. */
+  private static int firstChange(int[] actual, int[] expected) {
+    for (int i = 0; i < actual.length; i++) {
+      if (isVisible(actual[i], expected[i])) {
+        return i;
+      }
+    }
+    return actual.length;
+  }
+
+  private static boolean isVisible(int actual, int expected) {
+    return actual != expected && colorDelta(actual, expected) > MAX_EQUAL_DELTA;
+  }
+
+  /** Squared distance of two RGB colors in the YIQ color space, weighted by perception. */
+  private static double colorDelta(int a, int b) {
+    int dr = ((a >> 16) & 0xff) - ((b >> 16) & 0xff);
+    int dg = ((a >> 8) & 0xff) - ((b >> 8) & 0xff);
+    int db = (a & 0xff) - (b & 0xff);
+    double y = dr * 0.29889531 + dg * 0.58662247 + db * 0.11448223;
+    double i = dr * 0.59597799 - dg * 0.27417610 - db * 0.32180189;
+    double q = dr * 0.21147017 - dg * 0.52261711 + db * 0.31114694;
+    return 0.5053 * y * y + 0.299 * i * i + 0.1957 * q * q;
+  }
+
+  /** Gray, mostly transparent over white, version of {@code rgb}. */
+  private static int fade(int rgb) {
+    double luma = ((rgb >> 16) & 0xff) * 0.29889531
+        + ((rgb >> 8) & 0xff) * 0.58662247
+        + (rgb & 0xff) * 0.11448223;
+    int gray = (int) (255 + (luma - 255) * UNCHANGED_ALPHA);
+    return 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+  }
+
+  private static BufferedImage read(File image) throws IOException {
+    BufferedImage decoded = ImageIO.read(image);
+    if (decoded == null) {
+      throw new IOException("Unable to decode " + image);
+    }
+    return decoded;
+  }
+
+  /** RGB pixels of {@code image}, shared with the image itself when already in that layout. */
+  private static int[] pixels(BufferedImage image) {
+    if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+      return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+    int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0,
+        image.getWidth());
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] &= 0xFFFFFF; // Screenshots are opaque; ignore alpha.
+    }
+    return pixels;
+  }
+
+  private ScreenshotDiffer() {
+    // No instances.
+  }
+}
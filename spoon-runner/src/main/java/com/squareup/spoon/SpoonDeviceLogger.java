@@ -45,7 +45,7 @@ final class SpoonDeviceLogger implements LogCatListener {
         if (current == null) {
           Matcher match = MESSAGE_START.matcher(message.getMessage());
           if (match.matches() && TEST_RUNNER.equals(message.getTag())) {
-            current = new DeviceTest(match.group(2), match.group(1));
+            current = DeviceTest.of(match.group(2), match.group(1));
             pid = message.getPid();
 
             List<LogCatMessage> deviceLogMessages = new ArrayList<>();
@@ -9,8 +9,6 @@ import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner;
 import com.android.ddmlib.testrunner.ITestRunListener;
 import com.android.ddmlib.testrunner.RemoteAndroidTestRunner;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
@@ -25,17 +23,23 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import static com.android.ddmlib.FileListingService.FileEntry;
 import static com.android.ddmlib.SyncService.getNullProgressMonitor;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.squareup.spoon.DeviceResult.Phase.CLEANUP;
+import static com.squareup.spoon.DeviceResult.Phase.INSTALL;
+import static com.squareup.spoon.DeviceResult.Phase.LOG_MAPPING;
+import static com.squareup.spoon.DeviceResult.Phase.PULL;
+import static com.squareup.spoon.DeviceResult.Phase.TEST_RUN;
 import static com.squareup.spoon.SpoonLogger.logDebug;
 import static com.squareup.spoon.SpoonLogger.logError;
 import static com.squareup.spoon.SpoonLogger.logInfo;
+import static com.squareup.spoon.SpoonUtils.COMPACT_GSON;
 import static com.squareup.spoon.SpoonUtils.GSON;
-import static com.squareup.spoon.SpoonUtils.createAnimatedGif;
 import static com.squareup.spoon.SpoonUtils.obtainDirectoryFileEntry;
 import static com.squareup.spoon.SpoonUtils.obtainRealDevice;
 import static com.squareup.spoon.internal.Constants.SPOON_FILES;
@@ -62,7 +66,6 @@ public final class SpoonDeviceRunner {
   private final int shardIndex;
   private final int numShards;
   private final boolean debug;
-  private final boolean noAnimations;
   private final Duration adbTimeout;
   private final List<String> instrumentationArgs;
   private final String className;
@@ -78,6 +81,10 @@ public final class SpoonDeviceRunner {
   private boolean codeCoverage;
   private final List<ITestRunListener> testRunListeners;
   private final boolean grantAll;
+  /** Where to report progress when run in this process, or null. */
+  private final transient RunProgress progress;
+  /** Whether to report progress on standard out when run in another process. */
+  private boolean reportProgress;
 
   /**
    * Create a test runner for a single device.
@@ -95,12 +102,14 @@ public final class SpoonDeviceRunner {
    * @param methodName Test method name to run or {@code null} to run all tests.  Must also pass
    * {@code className}.
    * @param testRunListeners Additional TestRunListener or empty list.
+   * @param progress Progress of the run to report to or {@code null}.
    */
   SpoonDeviceRunner(File sdk, File apk, File testApk, File output, String serial, int shardIndex,
-      int numShards, boolean debug, boolean noAnimations, Duration adbTimeout, String classpath,
+      int numShards, boolean debug, Duration adbTimeout, String classpath,
       SpoonInstrumentationInfo instrumentationInfo, List<String> instrumentationArgs,
       String className, String methodName, IRemoteAndroidTestRunner.TestSize testSize,
-      List<ITestRunListener> testRunListeners, boolean codeCoverage, boolean grantAll) {
+      List<ITestRunListener> testRunListeners, boolean codeCoverage, boolean grantAll,
+      RunProgress progress) {
     this.sdk = sdk;
     this.apk = apk;
     this.testApk = testApk;
@@ -108,7 +117,6 @@ public final class SpoonDeviceRunner {
     this.shardIndex = shardIndex;
     this.numShards = numShards;
     this.debug = debug;
-    this.noAnimations = noAnimations;
     this.adbTimeout = adbTimeout;
     this.instrumentationArgs = instrumentationArgs;
     this.className = className;
@@ -125,6 +133,7 @@ public final class SpoonDeviceRunner {
     this.coverageDir = FileUtils.getFile(output, COVERAGE_DIR, serial);
     this.testRunListeners = testRunListeners;
     this.grantAll = grantAll;
+    this.progress = progress;
   }
 
   /** Serialize to disk and start {@link #main(String...)} in another process. */
@@ -135,6 +144,7 @@ public final class SpoonDeviceRunner {
     work.mkdirs();
 
     // Write our configuration to a file in the output directory.
+    reportProgress = progress != null;
     try (FileWriter executionWriter = new FileWriter(new File(work, FILE_EXECUTION))) {
       GSON.toJson(this, executionWriter);
     }
@@ -159,6 +169,11 @@ public final class SpoonDeviceRunner {
     try (BufferedReader stdout = new BufferedReader(new InputStreamReader(stream))) {
       String s;
       while ((s = stdout.readLine()) != null) {
+        if (progress != null && s.startsWith(ProgressEvent.PREFIX)) {
+          progress.apply(serial,
+              GSON.fromJson(s.substring(ProgressEvent.PREFIX.length()), ProgressEvent.class));
+          continue;
+        }
         logDebug(debug, "[%s] %s %s", serial, tag, s);
       }
     }
@@ -184,50 +199,18 @@ public final class SpoonDeviceRunner {
     final DeviceDetails deviceDetails = DeviceDetails.createForDevice(device);
     result.setDeviceDetails(deviceDetails);
     logDebug(debug, "[%s] setDeviceDetails %s", serial, deviceDetails);
+    Consumer<ProgressEvent> reporter = progressReporter();
+    if (reporter != null) {
+      reporter.accept(ProgressEvent.device(deviceDetails.getName()));
+    }
 
     DdmPreferences.setTimeOut((int) adbTimeout.toMillis());
 
-    // Now install the main application and the instrumentation application.
-    try {
-      String extraArgument = "";
-      if (grantAll && deviceDetails.getApiLevel() >= DeviceDetails.MARSHMALLOW_API_LEVEL) {
-        extraArgument = "-g";
-      }
-      device.installPackage(apk.getAbsolutePath(), true, extraArgument);
-    } catch (InstallException e) {
-      logInfo("InstallException while install app apk on device [%s]", serial);
-      e.printStackTrace(System.out);
-      return result.markInstallAsFailed(
-              "Unable to install application APK.").addException(e).build();
-    }
-    try {
-      device.installPackage(testApk.getAbsolutePath(), true);
-    } catch (InstallException e) {
-      logInfo("InstallException while install test apk on device [%s]", serial);
-      e.printStackTrace(System.out);
-      return result.markInstallAsFailed(
-              "Unable to install instrumentation APK.").addException(e).build();
-    }
-
-    // If this is Android Marshmallow or above grant WRITE_EXTERNAL_STORAGE
-    if (deviceDetails.getApiLevel() >= DeviceDetails.MARSHMALLOW_API_LEVEL) {
-      String appPackage = instrumentationInfo.getApplicationPackage();
-      try {
-        CollectingOutputReceiver grantOutputReceiver = new CollectingOutputReceiver();
-        device.executeShellCommand(
-            "pm grant " + appPackage + " android.permission.READ_EXTERNAL_STORAGE",
-            grantOutputReceiver);
-        device.executeShellCommand(
-            "pm grant " + appPackage + " android.permission.WRITE_EXTERNAL_STORAGE",
-            grantOutputReceiver);
-      } catch (Exception e) {
-        logInfo("Exception while granting external storage access to application apk"
-            + "on device [%s]", serial);
-        e.printStackTrace(System.out);
-        return result.markInstallAsFailed(
-            "Unable to grant external storage access to application APK.").addException(e).build();
-      }
+    result.startPhase(INSTALL);
+    if (!install(device, deviceDetails, result)) {
+      return result.build();
     }
+    result.endPhase(INSTALL);
 
     // Create the output directory, if it does not already exist.
     work.mkdirs();
@@ -236,6 +219,7 @@ public final class SpoonDeviceRunner {
     SpoonDeviceLogger deviceLogger = new SpoonDeviceLogger(device);
 
     // Run all the tests! o/
+    result.startPhase(TEST_RUN);
     try {
       logDebug(debug, "About to actually run tests for [%s]", serial);
       RemoteAndroidTestRunner runner = new RemoteAndroidTestRunner(testPackage, testRunner, device);
@@ -283,22 +267,32 @@ public final class SpoonDeviceRunner {
       if (testRunListeners != null) {
         listeners.addAll(testRunListeners);
       }
+      if (reporter != null) {
+        listeners.add(new ProgressEvent.Listener(reporter));
+      }
       runner.run(listeners);
     } catch (Exception e) {
       result.addException(e);
     }
+    result.endPhase(TEST_RUN);
 
+    result.startPhase(LOG_MAPPING);
     mapLogsToTests(deviceLogger, result);
+    result.endPhase(LOG_MAPPING);
 
     try {
       logDebug(debug, "About to grab screenshots and prepare output for [%s]", serial);
+      result.startPhase(PULL);
       pullDeviceFiles(device);
       if (codeCoverage) {
         pullCoverageFile(device);
       }
+      result.endPhase(PULL);
 
+      result.startPhase(CLEANUP);
       cleanScreenshotsDirectory(result);
       cleanFilesDirectory(result);
+      result.endPhase(CLEANUP);
 
     } catch (Exception e) {
       result.addException(e);
@@ -308,6 +302,68 @@ public final class SpoonDeviceRunner {
     return result.build();
   }
 
+  /** Where to send this device's progress events, or null if they are not reported. */
+  private Consumer<ProgressEvent> progressReporter() {
+    if (progress != null) {
+      return event -> progress.apply(serial, event);
+    }
+    if (reportProgress) {
+      // The parent process picks these lines out of standard out.
+      return event -> System.out.println(ProgressEvent.PREFIX + COMPACT_GSON.toJson(event));
+    }
+    return null;
+  }
+
+  /**
+   * Install the main application and the instrumentation application and grant their permissions.
+   * Returns false after marking the install as failed on {@code result} if that fails.
+   */
+  private boolean install(IDevice device, DeviceDetails deviceDetails,
+      DeviceResult.Builder result) {
+    try {
+      String extraArgument = "";
+      if (grantAll && deviceDetails.getApiLevel() >= DeviceDetails.MARSHMALLOW_API_LEVEL) {
+        extraArgument = "-g";
+      }
+      device.installPackage(apk.getAbsolutePath(), true, extraArgument);
+    } catch (InstallException e) {
+      logInfo("InstallException while install app apk on device [%s]", serial);
+      e.printStackTrace(System.out);
+      result.markInstallAsFailed("Unable to install application APK.").addException(e);
+      return false;
+    }
+    try {
+      device.installPackage(testApk.getAbsolutePath(), true);
+    } catch (InstallException e) {
+      logInfo("InstallException while install test apk on device [%s]", serial);
+      e.printStackTrace(System.out);
+      result.markInstallAsFailed("Unable to install instrumentation APK.").addException(e);
+      return false;
+    }
+
+    // If this is Android Marshmallow or above grant WRITE_EXTERNAL_STORAGE
+    if (deviceDetails.getApiLevel() >= DeviceDetails.MARSHMALLOW_API_LEVEL) {
+      String appPackage = instrumentationInfo.getApplicationPackage();
+      try {
+        CollectingOutputReceiver grantOutputReceiver = new CollectingOutputReceiver();
+        device.executeShellCommand(
+            "pm grant " + appPackage + " android.permission.READ_EXTERNAL_STORAGE",
+            grantOutputReceiver);
+        device.executeShellCommand(
+            "pm grant " + appPackage + " android.permission.WRITE_EXTERNAL_STORAGE",
+            grantOutputReceiver);
+      } catch (Exception e) {
+        logInfo("Exception while granting external storage access to application apk"
+            + "on device [%s]", serial);
+        e.printStackTrace(System.out);
+        result.markInstallAsFailed(
+            "Unable to grant external storage access to application APK.").addException(e);
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void addCodeCoverageInstrumentationArgs(RemoteAndroidTestRunner runner, IDevice device)
           throws Exception {
     String coveragePath = getExternalStoragePath(device, COVERAGE_FILE);
@@ -355,7 +411,6 @@ public final class SpoonDeviceRunner {
     // Move all children of the screenshot directory into the image folder.
     File[] classNameDirs = screenshotDir.listFiles();
     if (classNameDirs != null) {
-      Multimap<DeviceTest, File> testScreenshots = ArrayListMultimap.create();
       for (File classNameDir : classNameDirs) {
         String className = classNameDir.getName();
         File destDir = new File(imageDir, className);
@@ -370,32 +425,15 @@ public final class SpoonDeviceRunner {
         for (File screenshot : screenshots) {
           String methodName = screenshot.getParentFile().getName();
 
-          DeviceTest testIdentifier = new DeviceTest(className, methodName);
+          DeviceTest testIdentifier = DeviceTest.of(className, methodName);
           DeviceTestResult.Builder builder = result.getMethodResultBuilder(testIdentifier);
           if (builder != null) {
             builder.addScreenshot(screenshot);
-            testScreenshots.put(testIdentifier, screenshot);
           } else {
             logError("Unable to find test for %s", testIdentifier);
           }
         }
       }
-
-      logDebug(debug, "Generating animated gifs for [%s]", serial);
-      // Don't generate animations if the switch is present
-      if (!noAnimations) {
-        // Make animated GIFs for all the tests which have screenshots.
-        for (DeviceTest deviceTest : testScreenshots.keySet()) {
-          List<File> screenshots = new ArrayList<>(testScreenshots.get(deviceTest));
-          if (screenshots.size() == 1) {
-            continue; // Do not make an animated GIF if there is only one screenshot.
-          }
-          File animatedGif = FileUtils.getFile(imageDir, deviceTest.getClassName(),
-              deviceTest.getMethodName() + ".gif");
-          createAnimatedGif(screenshots, animatedGif);
-          result.getMethodResultBuilder(deviceTest).setAnimatedGif(animatedGif);
-        }
-      }
     }
   }
 
@@ -418,7 +456,7 @@ public final class SpoonDeviceRunner {
         // corresponding method result.
         for (File file : files) {
           String methodName = file.getParentFile().getName();
-          DeviceTest testIdentifier = new DeviceTest(className, methodName);
+          DeviceTest testIdentifier = DeviceTest.of(className, methodName);
           final DeviceTestResult.Builder resultBuilder =
               result.getMethodResultBuilder(testIdentifier);
           if (resultBuilder != null) {
@@ -535,9 +573,9 @@ public final class SpoonDeviceRunner {
       DeviceResult result = target.run(adb);
       AndroidDebugBridge.terminate();
 
-      // Write device result file.
+      // Write device result file. Only the parent process reads it, so skip pretty printing.
       try (FileWriter writer = new FileWriter(new File(outputDir, FILE_RESULT))) {
-        GSON.toJson(result, writer);
+        COMPACT_GSON.toJson(result, writer);
       }
     } catch (Throwable ex) {
       logInfo("ERROR: Unable to execute test for target.  Exception message: %s", ex.getMessage());
@@ -0,0 +1,932 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.squareup.spoon.misc.StackTrace;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON adapters for the result model. They read and write the same documents as Gson's
+ * reflection based adapters, but do so field by field as the model is walked, without building
+ * intermediate trees for map keys or reflecting on every object.
+ */
+final class SpoonJson {
+  /**
+   * Create a builder which knows how to read and write files and the result model. If
+   * {@code compact}, each document writes the stack traces and frames it repeats only once, and
+   * refers to them by their number in its {@link Traces table} after that. Either reads both.
+   */
+  static GsonBuilder newGsonBuilder(boolean compact) {
+    return new GsonBuilder() //
+        .registerTypeAdapter(File.class, FILE) //
+        .registerTypeAdapter(SpoonSummary.class,
+            adapter(SpoonJson::writeSummary, SpoonJson::readSummary, compact)) //
+        .registerTypeAdapter(DeviceResult.class,
+            adapter(SpoonJson::writeDeviceResult, SpoonJson::readDeviceResult, compact)) //
+        .registerTypeAdapter(DeviceTestResult.class,
+            adapter(SpoonJson::writeTestResult, SpoonJson::readTestResult, compact)) //
+        .registerTypeAdapter(StackTrace.class,
+            adapter(SpoonJson::writeStackTrace, SpoonJson::readStackTrace, compact)) //
+        .registerTypeAdapter(LogCatMessage.class, LOG_MESSAGE) //
+        .enableComplexMapKeySerialization();
+  }
+
+  private static void writeStackTrace(JsonWriter out, StackTrace trace, Traces traces)
+      throws IOException {
+    traces.write(out, trace);
+  }
+
+  private static StackTrace readStackTrace(JsonReader in, Traces traces) throws IOException {
+    return traces.read(in);
+  }
+
+  private interface Writer<T> {
+    void write(JsonWriter out, T value, Traces traces) throws IOException;
+  }
+
+  private interface Reader<T> {
+    T read(JsonReader in, Traces traces) throws IOException;
+  }
+
+  /** An adapter which reads and writes each document with a {@link Traces table} of its own. */
+  private static <T> TypeAdapter<T> adapter(Writer<T> writer, Reader<T> reader,
+      boolean compact) {
+    return new TypeAdapter<T>() {
+      @Override public void write(JsonWriter out, T value) throws IOException {
+        writer.write(out, value, new Traces(compact));
+      }
+
+      @Override public T read(JsonReader in) throws IOException {
+        return reader.read(in, new Traces(compact));
+      }
+    };
+  }
+
+  static final TypeAdapter<File> FILE = new TypeAdapter<File>() {
+    @Override public void write(JsonWriter out, File file) throws IOException {
+      if (file == null) {
+        out.nullValue();
+      } else {
+        out.value(file.getAbsolutePath());
+      }
+    }
+
+    @Override public File read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return new File(in.nextString());
+    }
+  };
+
+  /**
+   * The stack traces and frames of one document, numbered in the order they are completed in it:
+   * a trace after its cause. A run's failures share most of their frames, and often whole traces,
+   * so compact documents write each only once and then its number, which is read back as the same
+   * instance. Numbers only refer back, so devices can still be written and read one at a time.
+   */
+  static final class Traces {
+    private final boolean compact;
+    /** When writing compactly, the numbers of what was written. */
+    private final Map<StackTrace, Integer> traceNumbers = new HashMap<>();
+    private final Map<StackTrace.Element, Integer> elementNumbers = new HashMap<>();
+    /** When reading, what was read by its number. */
+    private final List<StackTrace> traces = new ArrayList<>();
+    private final List<StackTrace.Element> elements = new ArrayList<>();
+
+    Traces(boolean compact) {
+      this.compact = compact;
+    }
+
+    void write(JsonWriter out, StackTrace trace) throws IOException {
+      if (trace == null) {
+        out.nullValue();
+        return;
+      }
+      if (compact) {
+        Integer number = traceNumbers.get(trace);
+        if (number != null) {
+          out.value(number);
+          return;
+        }
+      }
+      out.beginObject();
+      out.name("className").value(trace.getClassName());
+      out.name("message").value(trace.getMessage());
+      out.name("elements").beginArray();
+      for (StackTrace.Element element : trace.getElements()) {
+        write(out, element);
+      }
+      out.endArray();
+      out.name("cause");
+      write(out, trace.getCause());
+      out.endObject();
+      if (compact) {
+        traceNumbers.put(trace, traceNumbers.size());
+      }
+    }
+
+    private void write(JsonWriter out, StackTrace.Element element) throws IOException {
+      if (compact) {
+        Integer number = elementNumbers.get(element);
+        if (number != null) {
+          out.value(number);
+          return;
+        }
+      }
+      out.beginObject();
+      out.name("className").value(element.getClassName());
+      out.name("fileName").value(element.getFileName());
+      out.name("line").value(element.getLine());
+      out.name("methodName").value(element.getMethodName());
+      out.name("isNative").value(element.isNative());
+      out.endObject();
+      if (compact) {
+        elementNumbers.put(element, elementNumbers.size());
+      }
+    }
+
+    /** Read a trace, which is {@link StackTrace#intern() interned}. */
+    StackTrace read(JsonReader in) throws IOException {
+      switch (in.peek()) {
+        case NULL:
+          in.nextNull();
+          return null;
+        case NUMBER:
+          return reference(in, traces, "stack trace");
+        default:
+          break;
+      }
+      String className = null;
+      String message = null;
+      Deque<StackTrace.Element> elements = new ArrayDeque<>();
+      StackTrace cause = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "className":
+            className = nextString(in);
+            break;
+          case "message":
+            message = nextString(in);
+            break;
+          case "elements":
+            in.beginArray();
+            while (in.hasNext()) {
+              elements.add(readElement(in));
+            }
+            in.endArray();
+            break;
+          case "cause":
+            cause = read(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      StackTrace trace = new StackTrace(className, message, elements, cause).intern();
+      traces.add(trace);
+      return trace;
+    }
+
+    /** What the next number refers to, which must be the number of something already read. */
+    private static <T> T reference(JsonReader in, List<T> read, String kind) throws IOException {
+      String path = in.getPath();
+      int number = in.nextInt();
+      if (number < 0 || number >= read.size()) {
+        throw new JsonSyntaxException(
+            "Reference to " + kind + " " + number + " before it was read at " + path);
+      }
+      return read.get(number);
+    }
+
+    private StackTrace.Element readElement(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NUMBER) {
+        return reference(in, elements, "stack frame");
+      }
+      String className = null;
+      String fileName = null;
+      int line = 0;
+      String methodName = null;
+      boolean isNative = false;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "className":
+            className = nextString(in);
+            break;
+          case "fileName":
+            fileName = nextString(in);
+            break;
+          case "line":
+            line = in.nextInt();
+            break;
+          case "methodName":
+            methodName = nextString(in);
+            break;
+          case "isNative":
+            isNative = in.nextBoolean();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      StackTrace.Element element = StackTrace.intern(
+          new StackTrace.Element(className, fileName, line, methodName, isNative));
+      elements.add(element);
+      return element;
+    }
+  }
+
+  /**
+   * Log messages keep the field names of ddmlib's classes, which are what reflection used to
+   * produce.
+   */
+  static final TypeAdapter<LogCatMessage> LOG_MESSAGE = new TypeAdapter<LogCatMessage>() {
+    @Override public void write(JsonWriter out, LogCatMessage message) throws IOException {
+      if (message == null) {
+        out.nullValue();
+        return;
+      }
+      LogCatHeader header = message.getHeader();
+      out.beginObject();
+      out.name("mHeader").beginObject();
+      Log.LogLevel logLevel = header.getLogLevel();
+      out.name("mLogLevel").value(logLevel != null ? logLevel.name() : null);
+      out.name("mPid").value(header.getPid());
+      out.name("mTid").value(header.getTid());
+      out.name("mAppName").value(header.getAppName());
+      out.name("mTag").value(header.getTag());
+      out.name("mTimestamp");
+      writeTimestamp(out, header.getTimestamp());
+      out.endObject();
+      out.name("mMessage").value(message.getMessage());
+      out.endObject();
+    }
+
+    @Override public LogCatMessage read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      LogCatHeader header = null;
+      String message = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "mHeader":
+            header = readHeader(in);
+            break;
+          case "mMessage":
+            message = nextString(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new LogCatMessage(header, message);
+    }
+
+    private LogCatHeader readHeader(JsonReader in) throws IOException {
+      Log.LogLevel logLevel = null;
+      int pid = 0;
+      int tid = 0;
+      String appName = null;
+      String tag = null;
+      LogCatTimestamp timestamp = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "mLogLevel":
+            logLevel = nextEnum(in, Log.LogLevel.class);
+            break;
+          case "mPid":
+            pid = in.nextInt();
+            break;
+          case "mTid":
+            tid = in.nextInt();
+            break;
+          case "mAppName":
+            appName = nextString(in);
+            break;
+          case "mTag":
+            tag = nextString(in);
+            break;
+          case "mTimestamp":
+            timestamp = readTimestamp(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new LogCatHeader(logLevel, pid, tid, appName, tag, timestamp);
+    }
+  };
+
+  /**
+   * Fields of {@link LogCatTimestamp}, which has no accessors for them. They are looked up once so
+   * that each timestamp costs only plain field reads.
+   */
+  private static final String[] TIMESTAMP_FIELDS = {
+      "mMonth", "mDay", "mHour", "mMinute", "mSecond", "mMilli"
+  };
+  private static final Field[] TIMESTAMP_ACCESSORS = new Field[TIMESTAMP_FIELDS.length];
+
+  static {
+    try {
+      for (int i = 0; i < TIMESTAMP_FIELDS.length; i++) {
+        TIMESTAMP_ACCESSORS[i] = LogCatTimestamp.class.getDeclaredField(TIMESTAMP_FIELDS[i]);
+        TIMESTAMP_ACCESSORS[i].setAccessible(true);
+      }
+    } catch (NoSuchFieldException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /** The month, day, hour, minute, second, and millisecond of {@code timestamp}. */
+  static int[] timestampValues(LogCatTimestamp timestamp) {
+    int[] values = new int[TIMESTAMP_ACCESSORS.length];
+    try {
+      for (int i = 0; i < TIMESTAMP_ACCESSORS.length; i++) {
+        values[i] = TIMESTAMP_ACCESSORS[i].getInt(timestamp);
+      }
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+    return values;
+  }
+
+  private static void writeTimestamp(JsonWriter out, LogCatTimestamp timestamp)
+      throws IOException {
+    if (timestamp == null) {
+      out.nullValue();
+      return;
+    }
+    int[] values = timestampValues(timestamp);
+    out.beginObject();
+    for (int i = 0; i < TIMESTAMP_FIELDS.length; i++) {
+      out.name(TIMESTAMP_FIELDS[i]).value(values[i]);
+    }
+    out.endObject();
+  }
+
+  private static LogCatTimestamp readTimestamp(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    int[] values = new int[TIMESTAMP_FIELDS.length];
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      int index = indexOf(TIMESTAMP_FIELDS, name);
+      if (index != -1) {
+        values[index] = in.nextInt();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return new LogCatTimestamp(values[0], values[1], values[2], values[3], values[4], values[5]);
+  }
+
+  private static void writeTestResult(JsonWriter out, DeviceTestResult result, Traces traces)
+      throws IOException {
+    if (result == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name("status").value(result.getStatus() != null ? result.getStatus().name() : null);
+    out.name("exception");
+    traces.write(out, result.getException());
+    out.name("duration").value(result.getDuration());
+    out.name("screenshots");
+    writeFiles(out, result.getScreenshots());
+    out.name("thumbnails").beginObject();
+    for (Map.Entry<File, File> entry : result.getThumbnails().entrySet()) {
+      out.name(entry.getKey().getAbsolutePath());
+      FILE.write(out, entry.getValue());
+    }
+    out.endObject();
+    out.name("screenshotDiffs").beginObject();
+    for (Map.Entry<File, ScreenshotDiff> entry : result.getScreenshotDiffs().entrySet()) {
+      ScreenshotDiff diff = entry.getValue();
+      out.name(entry.getKey().getAbsolutePath()).beginObject();
+      out.name("baseline");
+      FILE.write(out, diff.getBaseline());
+      out.name("changedPixels").value(diff.getChangedPixels());
+      out.name("diffImage");
+      FILE.write(out, diff.getDiffImage());
+      out.endObject();
+    }
+    out.endObject();
+    out.name("files");
+    writeFiles(out, result.getFiles());
+    out.name("animatedGif");
+    FILE.write(out, result.getAnimatedGif());
+    out.name("log").beginArray();
+    for (LogCatMessage message : result.getLog()) {
+      LOG_MESSAGE.write(out, message);
+    }
+    out.endArray();
+    out.endObject();
+  }
+
+  private static DeviceTestResult readTestResult(JsonReader in, Traces traces)
+      throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    DeviceTestResult.Status status = null;
+    StackTrace exception = null;
+    long duration = 0;
+    List<File> screenshots = new ArrayList<>();
+    Map<File, File> thumbnails = new LinkedHashMap<>();
+    Map<File, ScreenshotDiff> screenshotDiffs = new LinkedHashMap<>();
+    List<File> files = new ArrayList<>();
+    File animatedGif = null;
+    List<LogCatMessage> log = new ArrayList<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "status":
+          status = nextEnum(in, DeviceTestResult.Status.class);
+          break;
+        case "exception":
+          exception = traces.read(in);
+          break;
+        case "duration":
+          duration = in.nextLong();
+          break;
+        case "screenshots":
+          readFiles(in, screenshots);
+          break;
+        case "thumbnails":
+          in.beginObject();
+          while (in.hasNext()) {
+            thumbnails.put(new File(in.nextName()), FILE.read(in));
+          }
+          in.endObject();
+          break;
+        case "screenshotDiffs":
+          in.beginObject();
+          while (in.hasNext()) {
+            screenshotDiffs.put(new File(in.nextName()), readScreenshotDiff(in));
+          }
+          in.endObject();
+          break;
+        case "files":
+          readFiles(in, files);
+          break;
+        case "animatedGif":
+          animatedGif = FILE.read(in);
+          break;
+        case "log":
+          in.beginArray();
+          while (in.hasNext()) {
+            log.add(LOG_MESSAGE.read(in));
+          }
+          in.endArray();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new DeviceTestResult(status, exception, duration, screenshots, thumbnails,
+        screenshotDiffs, animatedGif, log, files);
+  }
+
+  private static ScreenshotDiff readScreenshotDiff(JsonReader in) throws IOException {
+    File baseline = null;
+    int changedPixels = 0;
+    File diffImage = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "baseline":
+          baseline = FILE.read(in);
+          break;
+        case "changedPixels":
+          changedPixels = in.nextInt();
+          break;
+        case "diffImage":
+          diffImage = FILE.read(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new ScreenshotDiff(baseline, changedPixels, diffImage);
+  }
+
+  /**
+   * Device results. Their test results are keyed by an object, which is written as an array of
+   * key and value pairs. Like Gson's own map adapter, an empty map is written as an empty object.
+   */
+  private static void writeDeviceResult(JsonWriter out, DeviceResult result, Traces traces)
+      throws IOException {
+    if (result == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name("installFailed").value(result.getInstallFailed());
+    out.name("installMessage").value(result.getInstallMessage());
+    out.name("deviceDetails");
+    writeDeviceDetails(out, result.getDeviceDetails());
+    out.name("testResults");
+    if (result.getTestResults().isEmpty()) {
+      out.beginObject().endObject();
+    } else {
+      out.beginArray();
+      for (Map.Entry<DeviceTest, DeviceTestResult> entry : result.getTestResults().entrySet()) {
+        DeviceTest test = entry.getKey();
+        out.beginArray();
+        out.beginObject();
+        out.name("className").value(test.getClassName());
+        out.name("methodName").value(test.getMethodName());
+        out.endObject();
+        writeTestResult(out, entry.getValue(), traces);
+        out.endArray();
+      }
+      out.endArray();
+    }
+    out.name("started").value(result.getStarted());
+    out.name("duration").value(result.getDuration());
+    out.name("phaseDurations").beginObject();
+    for (Map.Entry<DeviceResult.Phase, Long> entry : result.getPhaseDurations().entrySet()) {
+      out.name(entry.getKey().name()).value(entry.getValue());
+    }
+    out.endObject();
+    out.name("exceptions").beginArray();
+    for (StackTrace exception : result.getExceptions()) {
+      traces.write(out, exception);
+    }
+    out.endArray();
+    out.endObject();
+  }
+
+  private static DeviceResult readDeviceResult(JsonReader in, Traces traces) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    boolean installFailed = false;
+    String installMessage = null;
+    DeviceDetails deviceDetails = null;
+    Map<DeviceTest, DeviceTestResult> testResults = new HashMap<>();
+    long started = 0;
+    long duration = 0;
+    Map<DeviceResult.Phase, Long> phaseDurations = new HashMap<>();
+    List<StackTrace> exceptions = new ArrayList<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "installFailed":
+          installFailed = in.nextBoolean();
+          break;
+        case "installMessage":
+          installMessage = nextString(in);
+          break;
+        case "deviceDetails":
+          deviceDetails = readDeviceDetails(in);
+          break;
+        case "testResults":
+          if (in.peek() == JsonToken.BEGIN_OBJECT) {
+            in.skipValue(); // Empty.
+            break;
+          }
+          in.beginArray();
+          while (in.hasNext()) {
+            in.beginArray();
+            DeviceTest test = readDeviceTest(in);
+            testResults.put(test, readTestResult(in, traces));
+            in.endArray();
+          }
+          in.endArray();
+          break;
+        case "started":
+          started = in.nextLong();
+          break;
+        case "duration":
+          duration = in.nextLong();
+          break;
+        case "phaseDurations":
+          in.beginObject();
+          while (in.hasNext()) {
+            DeviceResult.Phase phase = enumValue(DeviceResult.Phase.class, in.nextName());
+            long phaseDuration = in.nextLong();
+            // Phases added by a later version are left out.
+            if (phase != null) {
+              phaseDurations.put(phase, phaseDuration);
+            }
+          }
+          in.endObject();
+          break;
+        case "exceptions":
+          in.beginArray();
+          while (in.hasNext()) {
+            exceptions.add(traces.read(in));
+          }
+          in.endArray();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new DeviceResult(installFailed, installMessage, deviceDetails, testResults, started,
+        duration, phaseDurations, exceptions);
+  }
+
+  private static DeviceTest readDeviceTest(JsonReader in) throws IOException {
+    String className = null;
+    String methodName = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "className":
+          className = nextString(in);
+          break;
+        case "methodName":
+          methodName = nextString(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return DeviceTest.of(className, methodName);
+  }
+
+  private static void writeDeviceDetails(JsonWriter out, DeviceDetails details)
+      throws IOException {
+    if (details == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name("model").value(details.getModel());
+    out.name("manufacturer").value(details.getManufacturer());
+    out.name("version").value(details.getVersion());
+    out.name("apiLevel").value(details.getApiLevel());
+    out.name("language").value(details.getLanguage());
+    out.name("region").value(details.getRegion());
+    out.name("isEmulator").value(details.isEmulator());
+    out.name("avdName").value(details.getAvdName());
+    out.endObject();
+  }
+
+  private static DeviceDetails readDeviceDetails(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String model = null;
+    String manufacturer = null;
+    String version = null;
+    int apiLevel = DeviceDetails.UNKNOWN_API_LEVEL;
+    String language = null;
+    String region = null;
+    boolean emulator = false;
+    String avdName = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "model":
+          model = nextString(in);
+          break;
+        case "manufacturer":
+          manufacturer = nextString(in);
+          break;
+        case "version":
+          version = nextString(in);
+          break;
+        case "apiLevel":
+          apiLevel = in.nextInt();
+          break;
+        case "language":
+          language = nextString(in);
+          break;
+        case "region":
+          region = nextString(in);
+          break;
+        case "isEmulator":
+          emulator = in.nextBoolean();
+          break;
+        case "avdName":
+          avdName = nextString(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new DeviceDetails(model, manufacturer, version, apiLevel, language, region, emulator,
+        avdName);
+  }
+
+  private static void writeSummary(JsonWriter out, SpoonSummary summary, Traces traces)
+      throws IOException {
+    if (summary == null) {
+      out.nullValue();
+      return;
+    }
+    writeSummary(out, summary.getTitle(), summary.getTestSize(), summary.getStarted(),
+        summary.getDuration(), summary.getResults().entrySet(), traces);
+  }
+
+  private static SpoonSummary readSummary(JsonReader in, Traces traces) throws IOException {
+    Map<String, DeviceResult> results = new HashMap<>();
+    SpoonSummary summary = readSummary(in, traces, results::put);
+    return summary != null ? new SpoonSummary(summary.getTitle(), summary.getTestSize(),
+        summary.getStarted(), summary.getDuration(), results) : null;
+  }
+
+  /** Receives the device results of a summary one at a time, as each is read. */
+  interface DeviceResults {
+    void add(String serial, DeviceResult result) throws IOException;
+  }
+
+  /**
+   * Read a summary, passing each device's result to {@code results} as soon as it is read rather
+   * than holding them all. The summary returned has no results.
+   */
+  static SpoonSummary readSummary(JsonReader in, DeviceResults results) throws IOException {
+    return readSummary(in, new Traces(false), results);
+  }
+
+  private static SpoonSummary readSummary(JsonReader in, Traces traces, DeviceResults results)
+      throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String title = null;
+    IRemoteAndroidTestRunner.TestSize testSize = null;
+    long started = 0;
+    long duration = 0;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "title":
+          title = nextString(in);
+          break;
+        case "testSize":
+          testSize = nextEnum(in, IRemoteAndroidTestRunner.TestSize.class);
+          break;
+        case "started":
+          started = in.nextLong();
+          break;
+        case "duration":
+          duration = in.nextLong();
+          break;
+        case "results":
+          in.beginObject();
+          while (in.hasNext()) {
+            results.add(in.nextName(), readDeviceResult(in, traces));
+          }
+          in.endObject();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new SpoonSummary(title, testSize, started, duration, Collections.emptyMap());
+  }
+
+  /** Read the serials of a summary's devices, skipping their results. */
+  static List<String> readSerials(JsonReader in) throws IOException {
+    List<String> serials = new ArrayList<>();
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return serials;
+    }
+    in.beginObject();
+    while (in.hasNext()) {
+      if (!in.nextName().equals("results")) {
+        in.skipValue();
+        continue;
+      }
+      in.beginObject();
+      while (in.hasNext()) {
+        serials.add(in.nextName());
+        in.skipValue();
+      }
+      in.endObject();
+    }
+    in.endObject();
+    return serials;
+  }
+
+  /**
+   * Write a summary whose device results are supplied, and may be created, one at a time. If
+   * {@code compact}, stack traces and frames which were already written are written as their
+   * number in the {@link Traces table}.
+   */
+  static void writeSummary(JsonWriter out, String title, IRemoteAndroidTestRunner.TestSize testSize,
+      long started, long duration, Iterable<Map.Entry<String, DeviceResult>> results,
+      boolean compact) throws IOException {
+    writeSummary(out, title, testSize, started, duration, results, new Traces(compact));
+  }
+
+  private static void writeSummary(JsonWriter out, String title,
+      IRemoteAndroidTestRunner.TestSize testSize, long started, long duration,
+      Iterable<Map.Entry<String, DeviceResult>> results, Traces traces) throws IOException {
+    out.beginObject();
+    out.name("title").value(title);
+    out.name("testSize").value(testSize != null ? testSize.name() : null);
+    out.name("started").value(started);
+    out.name("duration").value(duration);
+    out.name("results").beginObject();
+    for (Map.Entry<String, DeviceResult> entry : results) {
+      out.name(entry.getKey());
+      writeDeviceResult(out, entry.getValue(), traces);
+    }
+    out.endObject();
+    out.endObject();
+  }
+
+  private static void writeFiles(JsonWriter out, List<File> files) throws IOException {
+    out.beginArray();
+    for (File file : files) {
+      FILE.write(out, file);
+    }
+    out.endArray();
+  }
+
+  private static void readFiles(JsonReader in, List<File> files) throws IOException {
+    in.beginArray();
+    while (in.hasNext()) {
+      files.add(FILE.read(in));
+    }
+    in.endArray();
+  }
+
+  /** The next string, or null if the next value is null. */
+  private static String nextString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  /** The next constant of {@code type}, or null if it is null or unknown, as Gson reads it. */
+  private static <E extends Enum<E>> E nextEnum(JsonReader in, Class<E> type)
+      throws IOException {
+    String name = nextString(in);
+    return name != null ? enumValue(type, name) : null;
+  }
+
+  /** The constant of {@code type} named {@code name}, or null if there is none. */
+  static <E extends Enum<E>> E enumValue(Class<E> type, String name) {
+    try {
+      return Enum.valueOf(type, name);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static int indexOf(String[] names, String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private SpoonJson() {
+    // No instances.
+  }
+}
@@ -6,11 +6,11 @@ import java.util.Date;
 import java.util.Locale;
 
 /** Simple logger interface. */
-final class SpoonLogger {
+public final class SpoonLogger {
   private static final ThreadLocal<DateFormat> DATE_FORMAT =
       ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US));
 
-  static void logError(String message, Object... args) {
+  public static void logError(String message, Object... args) {
     System.err.println(getPrefix() + String.format(message, args));
   }
 
@@ -0,0 +1,387 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.stream.JsonReader;
+import com.squareup.spoon.html.HtmlRenderer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.squareup.spoon.SpoonDeviceRunner.COVERAGE_DIR;
+import static com.squareup.spoon.SpoonDeviceRunner.COVERAGE_FILE;
+import static com.squareup.spoon.SpoonDeviceRunner.FILE_DIR;
+import static com.squareup.spoon.SpoonDeviceRunner.IMAGE_DIR;
+import static com.squareup.spoon.SpoonDeviceRunner.JUNIT_DIR;
+import static com.squareup.spoon.SpoonPostProcessor.DIFF_DIR;
+import static com.squareup.spoon.SpoonPostProcessor.THUMBNAIL_DIR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Combines the output directories of runs on several hosts, such as CI machines which each ran a
+ * shard of the tests, into one output directory with a single report.
+ * <p>
+ * Devices keep their serial unless another input already has a device with it, in which case a
+ * suffix is added. Artifacts are hard linked, or moved, into the merged output rather than copied,
+ * and their paths in the results are rewritten to match.
+ * <p>
+ * When merging incrementally into the output of an earlier merge, such as after another host's
+ * results arrive or a shard is retried, only the report pages whose content changed are rendered
+ * again.
+ */
+public final class SpoonMerger {
+  /** Directories holding a subdirectory of artifacts per device, named by its sanitized serial. */
+  private static final List<String> DEVICE_DIRS =
+      ImmutableList.of(IMAGE_DIR, FILE_DIR, COVERAGE_DIR, THUMBNAIL_DIR, DIFF_DIR);
+
+  private final List<File> inputs;
+  private final File output;
+  private final String title;
+  private final boolean move;
+  private final boolean incremental;
+
+  private SpoonMerger(List<File> inputs, File output, String title, boolean move,
+      boolean incremental) {
+    this.inputs = inputs;
+    this.output = output;
+    this.title = title;
+    this.move = move;
+    this.incremental = incremental;
+  }
+
+  /** Merge the inputs into the output directory and render its report. */
+  public SpoonSummary merge() {
+    try {
+      if (incremental) {
+        // Artifacts are cheap to link again, unlike the pages which are kept where unchanged.
+        for (String dir : DEVICE_DIRS) {
+          FileUtils.deleteDirectory(new File(output, dir));
+        }
+        FileUtils.deleteDirectory(new File(output, JUNIT_DIR));
+      } else {
+        FileUtils.deleteDirectory(output);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to clean output directory: " + output, e);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(inputs.size(), Runtime.getRuntime().availableProcessors()));
+    try {
+      // Only the serials are read up front. The results are read a device at a time as they are
+      // relocated, so no input's results are held other than as they are in the merged output.
+      List<Future<List<String>>> scans = new ArrayList<>();
+      for (File input : inputs) {
+        scans.add(executor.submit(() -> readSerials(input)));
+      }
+
+      // Serials are assigned in input order so that repeated merges are stable.
+      Set<String> takenDirectories = new HashSet<>();
+      List<Map<String, String>> renames = new ArrayList<>();
+      for (Future<List<String>> scan : scans) {
+        Map<String, String> rename = new LinkedHashMap<>();
+        for (String serial : new TreeSet<>(await(scan))) {
+          rename.put(serial, uniqueSerial(serial, takenDirectories));
+        }
+        renames.add(rename);
+      }
+
+      List<Future<SpoonSummary>> relocations = new ArrayList<>();
+      for (int i = 0; i < inputs.size(); i++) {
+        File input = inputs.get(i);
+        Map<String, String> rename = renames.get(i);
+        relocations.add(executor.submit(() -> relocate(input, rename)));
+      }
+      List<SpoonSummary> summaries = new ArrayList<>();
+      Map<String, DeviceResult> results = new LinkedHashMap<>();
+      for (Future<SpoonSummary> relocation : relocations) {
+        SpoonSummary summary = await(relocation);
+        summaries.add(summary);
+        results.putAll(summary.getResults());
+      }
+
+      SpoonSummary merged = mergeSummaries(summaries, results);
+      new HtmlRenderer(merged, SpoonUtils.GSON, output, null, incremental).render();
+      mergeCoverage(results.keySet());
+      return merged;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private SpoonSummary mergeSummaries(List<SpoonSummary> summaries,
+      Map<String, DeviceResult> results) {
+    long started = Long.MAX_VALUE;
+    long ended = Long.MIN_VALUE;
+    Set<IRemoteAndroidTestRunner.TestSize> testSizes = new HashSet<>();
+    for (SpoonSummary summary : summaries) {
+      started = Math.min(started, summary.getStarted());
+      ended = Math.max(ended, summary.getStarted() + summary.getDuration());
+      testSizes.add(summary.getTestSize());
+    }
+    String title = this.title != null ? this.title : summaries.get(0).getTitle();
+    IRemoteAndroidTestRunner.TestSize testSize =
+        testSizes.size() == 1 ? testSizes.iterator().next() : null;
+    return new SpoonSummary(title, testSize, started, ended - started, results);
+  }
+
+  static SpoonSummary readSummary(File input) throws IOException {
+    try (JsonReader reader = openResultJson(input)) {
+      return SpoonUtils.GSON.fromJson(reader, SpoonSummary.class);
+    }
+  }
+
+  private static List<String> readSerials(File input) throws IOException {
+    try (JsonReader reader = openResultJson(input)) {
+      return SpoonJson.readSerials(reader);
+    }
+  }
+
+  private static JsonReader openResultJson(File input) throws IOException {
+    File json = new File(input, "result.json");
+    if (!json.isFile()) {
+      throw new IllegalArgumentException("No result.json in " + input);
+    }
+    return new JsonReader(
+        new BufferedReader(new InputStreamReader(Files.newInputStream(json.toPath()), UTF_8)));
+  }
+
+  /** {@code serial}, with a suffix if its artifact directories would clash with another's. */
+  private static String uniqueSerial(String serial, Set<String> takenDirectories) {
+    String unique = serial;
+    for (int suffix = 2; !takenDirectories.add(SpoonUtils.sanitizeSerial(unique)); suffix++) {
+      unique = serial + "_" + suffix;
+    }
+    return unique;
+  }
+
+  /**
+   * Read an input's results a device at a time, linking or moving each device's artifacts and
+   * rewriting their paths in its result as it is read. Returns the input's summary with the
+   * relocated results under their new serials.
+   */
+  private SpoonSummary relocate(File input, Map<String, String> rename) throws IOException {
+    Map<String, DeviceResult> results = new HashMap<>();
+    SpoonSummary summary;
+    try (JsonReader reader = openResultJson(input)) {
+      summary = SpoonJson.readSummary(reader, (serial, result) -> {
+        String renamed = rename.get(serial);
+        checkState(renamed != null, "Device %s of %s was not scanned.", serial, input);
+        String from = SpoonUtils.sanitizeSerial(serial);
+        String to = SpoonUtils.sanitizeSerial(renamed);
+        for (String dir : DEVICE_DIRS) {
+          transferTree(FileUtils.getFile(input, dir, from), FileUtils.getFile(output, dir, to));
+        }
+        transfer(FileUtils.getFile(input, JUNIT_DIR, from + ".xml"),
+            FileUtils.getFile(output, JUNIT_DIR, to + ".xml"));
+        results.put(renamed, relocate(result, from, to));
+      });
+    }
+    checkArgument(summary != null, "No results in %s", input);
+    return new SpoonSummary(summary.getTitle(), summary.getTestSize(), summary.getStarted(),
+        summary.getDuration(), results);
+  }
+
+  private DeviceResult relocate(DeviceResult result, String from, String to) {
+    Map<DeviceTest, DeviceTestResult> testResults = new LinkedHashMap<>();
+    for (Map.Entry<DeviceTest, DeviceTestResult> entry : result.getTestResults().entrySet()) {
+      DeviceTestResult test = entry.getValue();
+      Map<File, File> thumbnails = new LinkedHashMap<>();
+      for (Map.Entry<File, File> thumbnail : test.getThumbnails().entrySet()) {
+        thumbnails.put(relocate(thumbnail.getKey(), from, to),
+            relocate(thumbnail.getValue(), from, to));
+      }
+      Map<File, ScreenshotDiff> diffs = new LinkedHashMap<>();
+      for (Map.Entry<File, ScreenshotDiff> diff : test.getScreenshotDiffs().entrySet()) {
+        ScreenshotDiff value = diff.getValue();
+        // The baseline is outside of the input, so it is left where it is.
+        diffs.put(relocate(diff.getKey(), from, to), new ScreenshotDiff(value.getBaseline(),
+            value.getChangedPixels(), relocate(value.getDiffImage(), from, to)));
+      }
+      testResults.put(entry.getKey(), new DeviceTestResult(test.getStatus(), test.getException(),
+          test.getDuration(), relocate(test.getScreenshots(), from, to), thumbnails, diffs,
+          relocate(test.getAnimatedGif(), from, to), test.getLog(),
+          relocate(test.getFiles(), from, to)));
+    }
+    return new DeviceResult(result.getInstallFailed(), result.getInstallMessage(),
+        result.getDeviceDetails(), testResults, result.getStarted(), result.getDuration(),
+        result.getPhaseDurations(), result.getExceptions());
+  }
+
+  private List<File> relocate(List<File> files, String from, String to) {
+    List<File> relocated = new ArrayList<>(files.size());
+    for (File file : files) {
+      relocated.add(relocate(file, from, to));
+    }
+    return relocated;
+  }
+
+  /**
+   * The path in the merged output of an artifact of the device {@code from}. Results hold the
+   * paths on the host which ran the tests, so the artifact is found by its device directory, such
+   * as {@code image/<serial>}, rather than by the input directory.
+   */
+  private File relocate(File file, String from, String to) {
+    if (file == null) {
+      return null;
+    }
+    Path path = file.toPath();
+    for (int i = path.getNameCount() - 2; i >= 0; i--) {
+      if (DEVICE_DIRS.contains(path.getName(i).toString())
+          && path.getName(i + 1).toString().equals(from)) {
+        Path relocated = output.toPath().resolve(path.getName(i).toString()).resolve(to);
+        if (i + 2 < path.getNameCount()) {
+          relocated = relocated.resolve(path.subpath(i + 2, path.getNameCount()));
+        }
+        return relocated.toFile();
+      }
+    }
+    return file;
+  }
+
+  private void transferTree(File from, File to) throws IOException {
+    if (!from.isDirectory()) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(from.toPath())) {
+      files.filter(Files::isRegularFile).forEach(file -> {
+        try {
+          transfer(file.toFile(), to.toPath().resolve(from.toPath().relativize(file)).toFile());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Hard link or move {@code from} to {@code to}, falling back to a copy across file systems. */
+  private void transfer(File from, File to) throws IOException {
+    if (!from.isFile()) {
+      return;
+    }
+    Files.createDirectories(to.toPath().getParent());
+    if (move) {
+      Files.move(from.toPath(), to.toPath());
+      return;
+    }
+    try {
+      Files.createLink(to.toPath(), from.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(from.toPath(), to.toPath());
+    }
+  }
+
+  private void mergeCoverage(Set<String> serials) {
+    Set<String> covered = new LinkedHashSet<>();
+    for (String serial : serials) {
+      File coverage = FileUtils.getFile(output, COVERAGE_DIR, SpoonUtils.sanitizeSerial(serial),
+          COVERAGE_FILE);
+      if (coverage.isFile()) {
+        covered.add(serial);
+      }
+    }
+    if (!covered.isEmpty()) {
+      try {
+        SpoonCoverageMerger.mergeCoverageFiles(covered, output);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to merge coverage files.", e);
+      }
+    }
+  }
+
+  private static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException("Unable to merge outputs.", cause);
+    }
+  }
+
+  public static class Builder {
+    private final List<File> inputs = new ArrayList<>();
+    private File output;
+    private String title;
+    private boolean move;
+    private boolean incremental;
+
+    /** Add the output directory of a run to merge. */
+    public Builder addInput(File input) {
+      checkNotNull(input, "Input directory not specified.");
+      checkArgument(input.isDirectory(), "Input directory does not exist: %s", input);
+      inputs.add(input);
+      return this;
+    }
+
+    /** Set the directory of the merged output. It is cleared first unless merging incrementally. */
+    public Builder setOutputDirectory(File output) {
+      checkNotNull(output, "Output directory not specified.");
+      this.output = output;
+      return this;
+    }
+
+    /** Set the title of the merged report. Defaults to the title of the first input. */
+    public Builder setTitle(String title) {
+      this.title = title;
+      return this;
+    }
+
+    /** Whether to move the artifacts of the inputs instead of hard linking them. */
+    public Builder setMove(boolean move) {
+      this.move = move;
+      return this;
+    }
+
+    /**
+     * Whether to merge into the output of an earlier merge, rendering only the report pages whose
+     * content has changed since.
+     */
+    public Builder setIncremental(boolean incremental) {
+      this.incremental = incremental;
+      return this;
+    }
+
+    public SpoonMerger build() {
+      checkArgument(!inputs.isEmpty(), "No input directories specified.");
+      checkNotNull(output, "Output directory not specified.");
+      checkArgument(!(move && incremental),
+          "Artifacts cannot be moved when merging incrementally.");
+      Path outputPath = output.getAbsoluteFile().toPath().normalize();
+      for (File input : inputs) {
+        Path inputPath = input.getAbsoluteFile().toPath().normalize();
+        checkArgument(!inputPath.startsWith(outputPath) && !outputPath.startsWith(inputPath),
+            "Output directory must not contain or be inside an input: %s", input);
+      }
+      return new SpoonMerger(ImmutableList.copyOf(inputs), output, title, move, incremental);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package com.squareup.spoon;
+
+import com.squareup.spoon.misc.StackTrace;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.getRootCause;
+import static com.squareup.spoon.DeviceResult.Phase.POST_PROCESSING;
+import static com.squareup.spoon.SpoonDeviceRunner.IMAGE_DIR;
+import static com.squareup.spoon.SpoonLogger.logDebug;
+import static com.squareup.spoon.SpoonLogger.logError;
+
+/**
+ * Runs the CPU-heavy processing of device artifacts (e.g., thumbnails and animations) on a pool
+ * sized to the host's cores which is shared by all devices. Devices hand their results off and move
+ * on while the work for every device is interleaved across the pool.
+ */
+final class SpoonPostProcessor {
+  static final String THUMBNAIL_DIR = "thumbnail";
+  static final String DIFF_DIR = "diff";
+
+  private final File output;
+  private final boolean thumbnails;
+  private final boolean animations;
+  private final AnimationFormat animationFormat;
+  private final File baseline;
+  private final boolean debug;
+  private final ForkJoinPool pool;
+  private final AnimationEncoder animationEncoder;
+
+  /**
+   * @param output Path to output directory.
+   * @param thumbnails Whether to create a thumbnail of every screenshot.
+   * @param animations Whether to create animations of tests with multiple screenshots.
+   * @param animationFormat File format of the animations.
+   * @param baseline Output directory of a previous run to compare screenshots with, or null.
+   * @param debug Whether or not debug logging is enabled.
+   */
+  SpoonPostProcessor(File output, boolean thumbnails, boolean animations,
+      AnimationFormat animationFormat, File baseline, boolean debug) {
+    this.output = output;
+    this.thumbnails = thumbnails;
+    this.animations = animations;
+    this.animationFormat = checkNotNull(animationFormat);
+    this.baseline = baseline;
+    this.debug = debug;
+    this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    this.animationEncoder = animationFormat.createEncoder(pool);
+  }
+
+  /**
+   * Schedule processing of a single device's result. The returned future completes with a copy of
+   * {@code result} whose test results reference their generated artifacts once all of them are
+   * ready, and which records the time taken as its {@link DeviceResult.Phase#POST_PROCESSING}
+   * phase.
+   */
+  CompletableFuture<DeviceResult> process(String serial, DeviceResult result) {
+    checkNotNull(serial);
+    checkNotNull(result);
+    long start = System.nanoTime();
+
+    List<StackTrace> exceptions = Collections.synchronizedList(new ArrayList<>());
+    Map<DeviceTest, CompletableFuture<DeviceTestResult>> pending = new LinkedHashMap<>();
+    for (Map.Entry<DeviceTest, DeviceTestResult> entry : result.getTestResults().entrySet()) {
+      DeviceTest test = entry.getKey();
+      DeviceTestResult testResult = entry.getValue();
+      // Do not make an animation if there is only one screenshot.
+      boolean animate = animations && testResult.getScreenshots().size() > 1;
+      if (testResult.getScreenshots().isEmpty() || (!thumbnails && !animate && baseline == null)) {
+        continue;
+      }
+      CompletableFuture<DeviceTestResult> processed = thumbnails
+          ? createThumbnails(serial, test, testResult)
+          : CompletableFuture.completedFuture(testResult);
+      if (animate) {
+        processed = processed.thenCombine(createAnimation(serial, test, testResult, exceptions),
+            (withThumbnails, animation) -> animation != null
+                ? withThumbnails.withAnimatedGif(animation)
+                : withThumbnails);
+      }
+      if (baseline != null) {
+        processed = processed.thenCombine(compareWithBaseline(serial, test, testResult),
+            DeviceTestResult::withScreenshotDiffs);
+      }
+      pending.put(test, processed);
+    }
+    if (pending.isEmpty()) {
+      return CompletableFuture.completedFuture(result);
+    }
+
+    logDebug(debug, "Scheduled processing of %d tests for [%s]", pending.size(), serial);
+    CompletableFuture<?>[] futures = pending.values().toArray(new CompletableFuture<?>[0]);
+    return CompletableFuture.allOf(futures).thenApply(ignored -> {
+      Map<DeviceTest, DeviceTestResult> testResults = new LinkedHashMap<>(result.getTestResults());
+      for (Map.Entry<DeviceTest, CompletableFuture<DeviceTestResult>> entry : pending.entrySet()) {
+        testResults.put(entry.getKey(), entry.getValue().join());
+      }
+      long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      logDebug(debug, "Processing done for [%s] in %d ms", serial, elapsed);
+      return result.withTestResults(testResults, exceptions)
+          .withPhaseDuration(POST_PROCESSING, elapsed);
+    });
+  }
+
+  /**
+   * Write a thumbnail of each screenshot. Screenshots whose thumbnail cannot be created are left
+   * without one so that the report falls back to the original.
+   */
+  private CompletableFuture<DeviceTestResult> createThumbnails(String serial, DeviceTest test,
+      DeviceTestResult testResult) {
+    Map<File, CompletableFuture<File>> thumbnails = new LinkedHashMap<>();
+    for (File screenshot : testResult.getScreenshots()) {
+      File thumbnail = FileUtils.getFile(output, THUMBNAIL_DIR, serial, test.getClassName(),
+          test.getMethodName(), FilenameUtils.getBaseName(screenshot.getName()) + ".jpg");
+      thumbnails.put(screenshot, CompletableFuture.supplyAsync(() -> {
+        try {
+          ThumbnailWriter.write(screenshot, thumbnail);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return thumbnail;
+      }, pool).exceptionally(e -> {
+        logError("Unable to create thumbnail of %s: %s", screenshot, getRootCause(e).getMessage());
+        return null;
+      }));
+    }
+
+    CompletableFuture<?>[] futures = thumbnails.values().toArray(new CompletableFuture<?>[0]);
+    return CompletableFuture.allOf(futures).thenApply(ignored -> {
+      Map<File, File> created = new LinkedHashMap<>();
+      for (Map.Entry<File, CompletableFuture<File>> entry : thumbnails.entrySet()) {
+        File thumbnail = entry.getValue().join();
+        if (thumbnail != null) {
+          created.put(entry.getKey(), thumbnail);
+        }
+      }
+      return testResult.withThumbnails(created);
+    });
+  }
+
+  /**
+   * Compare each screenshot with the matching one of the baseline run. Screenshots without a match,
+   * or which cannot be compared, are left without a comparison.
+   */
+  private CompletableFuture<Map<File, ScreenshotDiff>> compareWithBaseline(String serial,
+      DeviceTest test, DeviceTestResult testResult) {
+    File baselineDir = FileUtils.getFile(baseline, IMAGE_DIR, serial, test.getClassName(),
+        test.getMethodName());
+    Map<File, File> matches = ScreenshotDiffer.matchBaseline(testResult.getScreenshots(),
+        baselineDir);
+    Map<File, CompletableFuture<ScreenshotDiff>> diffs = new LinkedHashMap<>();
+    for (Map.Entry<File, File> match : matches.entrySet()) {
+      File screenshot = match.getKey();
+      File diffImage = FileUtils.getFile(output, DIFF_DIR, serial, test.getClassName(),
+          test.getMethodName(), FilenameUtils.getBaseName(screenshot.getName()) + ".png");
+      diffs.put(screenshot, CompletableFuture.supplyAsync(() -> {
+        try {
+          return ScreenshotDiffer.compare(screenshot, match.getValue(), diffImage);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, pool).exceptionally(e -> {
+        logError("Unable to compare %s with baseline: %s", screenshot,
+            getRootCause(e).getMessage());
+        return null;
+      }));
+    }
+
+    CompletableFuture<?>[] futures = diffs.values().toArray(new CompletableFuture<?>[0]);
+    return CompletableFuture.allOf(futures).thenApply(ignored -> {
+      Map<File, ScreenshotDiff> compared = new LinkedHashMap<>();
+      for (Map.Entry<File, CompletableFuture<ScreenshotDiff>> entry : diffs.entrySet()) {
+        ScreenshotDiff diff = entry.getValue().join();
+        if (diff != null) {
+          compared.put(entry.getKey(), diff);
+        }
+      }
+      return compared;
+    });
+  }
+
+  /** Encode the screenshots as an animation. Completes with null if that fails. */
+  private CompletableFuture<File> createAnimation(String serial, DeviceTest test,
+      DeviceTestResult testResult, List<StackTrace> exceptions) {
+    File animation = FileUtils.getFile(output, IMAGE_DIR, serial, test.getClassName(),
+        test.getMethodName() + "." + animationFormat.getExtension());
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        animationEncoder.encode(testResult.getScreenshots(), animation);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return animation;
+    }, pool).exceptionally(e -> {
+      logError("Unable to create animation for %s on [%s]", test, serial);
+      exceptions.add(StackTrace.from(e.getCause() != null ? e.getCause() : e));
+      return null;
+    });
+  }
+
+  /** Release the pool's threads. Work which was already scheduled still runs to completion. */
+  void shutdown() {
+    pool.shutdown();
+  }
+}
@@ -5,7 +5,10 @@ import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner;
 import com.android.ddmlib.testrunner.ITestRunListener;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.gson.Gson;
+import com.squareup.spoon.html.HtmlDashboard;
 import com.squareup.spoon.html.HtmlRenderer;
+import com.squareup.spoon.html.SinglePageRenderer;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
@@ -16,6 +19,7 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -28,6 +32,7 @@ import static com.squareup.spoon.DeviceTestResult.Status;
 import static com.squareup.spoon.SpoonInstrumentationInfo.parseFromFile;
 import static com.squareup.spoon.SpoonLogger.logDebug;
 import static com.squareup.spoon.SpoonLogger.logInfo;
+import static java.util.Collections.synchronizedList;
 import static java.util.Collections.synchronizedSet;
 
 /** Represents a collection of devices and the test configuration to be executed. */
@@ -44,6 +49,15 @@ public final class SpoonRunner {
   private final File output;
   private final boolean debug;
   private final boolean noAnimations;
+  private final AnimationFormat animationFormat;
+  private final boolean noThumbnails;
+  private final File baseline;
+  private final boolean compactJson;
+  private final boolean resultArchive;
+  private final File historyDirectory;
+  private final boolean singlePageReport;
+  private final File outputZip;
+  private final Integer dashboardPort;
   private final Duration adbTimeout;
   private final List<String> instrumentationArgs;
   private final String className;
@@ -61,11 +75,14 @@ public final class SpoonRunner {
   private final boolean grantAll;
 
   private SpoonRunner(String title, File androidSdk, File applicationApk, File instrumentationApk,
-      File output, boolean debug, boolean noAnimations, Duration adbTimeout, Set<String> serials,
-      Set<String> skipDevices, boolean shard, String classpath, List<String> instrumentationArgs,
-      String className, String methodName, IRemoteAndroidTestRunner.TestSize testSize,
-      boolean failIfNoDeviceConnected, List<ITestRunListener> testRunListeners, boolean sequential,
-      File initScript, boolean grantAll, boolean terminateAdb, boolean codeCoverage) {
+      File output, boolean debug, boolean noAnimations, AnimationFormat animationFormat,
+      boolean noThumbnails, File baseline, boolean compactJson, boolean resultArchive,
+      File historyDirectory, boolean singlePageReport, File outputZip, Integer dashboardPort,
+      Duration adbTimeout, Set<String> serials, Set<String> skipDevices, boolean shard,
+      String classpath, List<String> instrumentationArgs, String className, String methodName,
+      IRemoteAndroidTestRunner.TestSize testSize, boolean failIfNoDeviceConnected,
+      List<ITestRunListener> testRunListeners, boolean sequential, File initScript,
+      boolean grantAll, boolean terminateAdb, boolean codeCoverage) {
     this.title = title;
     this.androidSdk = androidSdk;
     this.applicationApk = applicationApk;
@@ -73,6 +90,15 @@ public final class SpoonRunner {
     this.output = output;
     this.debug = debug;
     this.noAnimations = noAnimations;
+    this.animationFormat = animationFormat;
+    this.noThumbnails = noThumbnails;
+    this.baseline = baseline;
+    this.compactJson = compactJson;
+    this.resultArchive = resultArchive;
+    this.historyDirectory = historyDirectory;
+    this.singlePageReport = singlePageReport;
+    this.outputZip = outputZip;
+    this.dashboardPort = dashboardPort;
     this.adbTimeout = adbTimeout;
     this.instrumentationArgs = instrumentationArgs;
     this.className = className;
@@ -106,6 +132,7 @@ public final class SpoonRunner {
     checkArgument(instrumentationApk.exists(), "Could not find instrumentation APK.");
 
     AndroidDebugBridge adb = SpoonUtils.initAdb(androidSdk, adbTimeout);
+    HtmlDashboard dashboard = null;
 
     try {
       final SpoonInstrumentationInfo testInfo = parseFromFile(instrumentationApk);
@@ -122,30 +149,116 @@ public final class SpoonRunner {
         throw new RuntimeException("No device(s) found.");
       }
 
-      // Execute all the things...
-      SpoonSummary summary = runTests(adb, serials, testInfo);
-      // ...and render to HTML
-      new HtmlRenderer(summary, SpoonUtils.GSON, output).render();
-      if (codeCoverage) {
+      RunProgress progress = null;
+      if (dashboardPort != null) {
+        progress = new RunProgress(title, serials);
+        dashboard = new HtmlDashboard(progress);
         try {
-          SpoonCoverageMerger.mergeCoverageFiles(serials, output);
-          logDebug(debug, "Merging of coverage files done.");
-        } catch (IOException exception) {
-          throw new RuntimeException("Error while merging coverage files. "
-              + "Did you set the \"testCoverageEnabled\" flag in your build.gradle?", exception);
+          dashboard.start(dashboardPort);
+        } catch (IOException e) {
+          throw new RuntimeException("Unable to start dashboard.", e);
         }
+        logInfo("Showing progress at http://localhost:%d/", dashboard.getPort());
+      }
+
+      // Coverage is merged as each device finishes.
+      CoverageMerger coverage = codeCoverage ? new CoverageMerger(output) : null;
+      // Execute all the things...
+      SpoonSummary summary = runTests(adb, serials, testInfo, progress, coverage);
+      // ...and render to HTML
+      Gson gson = compactJson ? SpoonUtils.COMPACT_GSON : SpoonUtils.GSON;
+      if (outputZip == null) {
+        writeReport(summary, gson, coverage, null);
+      } else {
+        writeReportZip(summary, gson, coverage);
       }
 
       return parseOverallSuccess(summary);
     } finally {
+      if (dashboard != null) {
+        dashboard.close();
+      }
       if (terminateAdb) {
         AndroidDebugBridge.terminate();
       }
     }
   }
 
+  /**
+   * Write the report and the files which go with it, into {@code zip} if not null. Files written
+   * by other steps are left in the output directory.
+   */
+  private void writeReport(SpoonSummary summary, Gson gson, CoverageMerger coverage,
+      ParallelZipWriter zip) {
+    if (coverage != null) {
+      try {
+        coverage.save();
+        logDebug(debug, "Merging of coverage files done.");
+      } catch (IOException exception) {
+        throw new RuntimeException("Error while merging coverage files. "
+            + "Did you set the \"testCoverageEnabled\" flag in your build.gradle?", exception);
+      }
+    }
+    renderHtml(summary, gson, zip);
+    if (resultArchive) {
+      try {
+        ResultArchiveWriter.write(summary, new File(output, ResultArchive.FILE_NAME));
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to write result archive.", e);
+      }
+    }
+  }
+
+  /**
+   * Write the report into {@link #outputZip}, followed by everything in the output directory,
+   * like the screenshots pulled from the devices, which is then deleted.
+   */
+  private void writeReportZip(SpoonSummary summary, Gson gson, CoverageMerger coverage) {
+    try (ParallelZipWriter zip = new ParallelZipWriter(outputZip)) {
+      writeReport(summary, gson, coverage, zip);
+      if (output.isDirectory()) {
+        zip.writeTree(output);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write report archive: " + outputZip, e);
+    }
+    try {
+      FileUtils.deleteDirectory(output);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to clean output directory: " + output, e);
+    }
+    logInfo("Report written to %s", outputZip);
+  }
+
+  /** Render the report, first recording the run in the test history if one is used. */
+  private void renderHtml(SpoonSummary summary, Gson gson, ParallelZipWriter zip) {
+    if (historyDirectory == null) {
+      renderHtml(summary, gson, null, zip);
+      return;
+    }
+    try (TestHistory history = TestHistory.open(historyDirectory)) {
+      history.append(summary);
+      renderHtml(summary, gson, history, zip);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to update test history.", e);
+    }
+  }
+
+  private void renderHtml(SpoonSummary summary, Gson gson, TestHistory history,
+      ParallelZipWriter zip) {
+    if (singlePageReport) {
+      // Only a few files, so they are written to the output directory and archived with it.
+      new SinglePageRenderer(summary, gson, output, history).render();
+    } else if (zip != null) {
+      new HtmlRenderer(summary, gson, output, history).render(zip);
+    } else {
+      new HtmlRenderer(summary, gson, output, history).render();
+    }
+  }
+
   private SpoonSummary runTests(AndroidDebugBridge adb, Set<String> serials,
-      final SpoonInstrumentationInfo testInfo) {
+      final SpoonInstrumentationInfo testInfo, final RunProgress progress,
+      final CoverageMerger coverage) {
     int targetCount = serials.size();
     logInfo("Executing instrumentation suite on %d device(s).", targetCount);
 
@@ -168,18 +281,29 @@ public final class SpoonRunner {
 
     executeInitScript();
 
+    final SpoonPostProcessor postProcessor = new SpoonPostProcessor(output, !noThumbnails,
+        !noAnimations, animationFormat, baseline, debug);
+    final List<CompletableFuture<Void>> processing = synchronizedList(new ArrayList<>());
+
     if (targetCount == 1) {
       // Since there is only one device just execute it synchronously in this process.
       String serial = Iterables.getOnlyElement(serials);
       String safeSerial = SpoonUtils.sanitizeSerial(serial);
       try {
         logDebug(debug, "[%s] Starting execution.", serial);
-        summary.addResult(safeSerial, getTestRunner(serial, 0, 0, testInfo).run(adb));
+        DeviceResult result = getTestRunner(serial, 0, 0, testInfo, progress).run(adb);
+        processing.add(postProcess(postProcessor, summary, safeSerial, result));
       } catch (Exception e) {
         logDebug(debug, "[%s] Execution exception!", serial);
         e.printStackTrace(System.out);
         summary.addResult(safeSerial, new DeviceResult.Builder().addException(e).build());
       } finally {
+        if (coverage != null) {
+          coverage.add(serial);
+        }
+        if (progress != null) {
+          progress.apply(serial, ProgressEvent.done());
+        }
         logDebug(debug, "[%s] Execution done.", serial);
       }
     } else {
@@ -196,12 +320,19 @@ public final class SpoonRunner {
         Runnable runnable = new Runnable() {
           @Override public void run() {
             try {
-              summary.addResult(safeSerial,
-                  getTestRunner(serial, safeShardIndex, numShards, testInfo).runInNewProcess());
+              DeviceResult result = getTestRunner(serial, safeShardIndex, numShards, testInfo,
+                  progress).runInNewProcess();
+              processing.add(postProcess(postProcessor, summary, safeSerial, result));
             } catch (Exception e) {
               e.printStackTrace(System.out);
               summary.addResult(safeSerial, new DeviceResult.Builder().addException(e).build());
             } finally {
+              if (coverage != null) {
+                coverage.add(serial);
+              }
+              if (progress != null) {
+                progress.apply(serial, ProgressEvent.done());
+              }
               done.countDown();
               remaining.remove(serial);
               logDebug(debug, "[%s] Execution done. (%s remaining %s)", serial, done.getCount(),
@@ -224,6 +355,14 @@ public final class SpoonRunner {
       }
     }
 
+    // Wait for the artifacts of the last devices to finish processing.
+    logDebug(debug, "Waiting on post-processing of %d device(s).", processing.size());
+    try {
+      CompletableFuture.allOf(processing.toArray(new CompletableFuture<?>[0])).join();
+    } finally {
+      postProcessor.shutdown();
+    }
+
     if (!debug) {
       // Clean up anything in the work directory.
       try {
@@ -235,6 +374,13 @@ public final class SpoonRunner {
     return summary.end().build();
   }
 
+  /** Hand {@code result} off for post-processing and add it to the summary once complete. */
+  private static CompletableFuture<Void> postProcess(SpoonPostProcessor postProcessor,
+      SpoonSummary.Builder summary, String serial, DeviceResult result) {
+    return postProcessor.process(serial, result)
+        .thenAccept(processed -> summary.addResult(serial, processed));
+  }
+
   /** Execute the script file specified in param --init-script */
   private void executeInitScript() {
     if (initScript != null && initScript.exists()) {
@@ -281,11 +427,11 @@ public final class SpoonRunner {
   }
 
   private SpoonDeviceRunner getTestRunner(String serial, int shardIndex, int numShards,
-      SpoonInstrumentationInfo testInfo) {
+      SpoonInstrumentationInfo testInfo, RunProgress progress) {
     return new SpoonDeviceRunner(androidSdk, applicationApk, instrumentationApk, output, serial,
-        shardIndex, numShards, debug, noAnimations, adbTimeout, classpath, testInfo,
+        shardIndex, numShards, debug, adbTimeout, classpath, testInfo,
         instrumentationArgs, className, methodName, testSize, testRunListeners, codeCoverage,
-        grantAll);
+        grantAll, progress);
   }
 
   /** Build a test suite for the specified devices and configuration. */
@@ -303,6 +449,15 @@ public final class SpoonRunner {
     private String className;
     private String methodName;
     private boolean noAnimations;
+    private AnimationFormat animationFormat = AnimationFormat.GIF;
+    private boolean noThumbnails;
+    private File baseline;
+    private boolean compactJson;
+    private boolean resultArchive;
+    private File historyDirectory;
+    private boolean singlePageReport;
+    private File outputZip;
+    private Integer dashboardPort;
     private IRemoteAndroidTestRunner.TestSize testSize;
     private Duration adbTimeout = DEFAULT_ADB_TIMEOUT;
     private boolean failIfNoDeviceConnected;
@@ -364,6 +519,85 @@ public final class SpoonRunner {
       return this;
     }
 
+    /** File format of the animations of tests with multiple screenshots. Defaults to GIF. */
+    public Builder setAnimationFormat(AnimationFormat animationFormat) {
+      checkNotNull(animationFormat, "Animation format cannot be null.");
+      this.animationFormat = animationFormat;
+      return this;
+    }
+
+    /**
+     * Whether to leave out the thumbnails of screenshots, in which case report pages show the
+     * full-size screenshots.
+     */
+    public Builder setNoThumbnails(boolean noThumbnails) {
+      this.noThumbnails = noThumbnails;
+      return this;
+    }
+
+    /** Output directory of a previous run to compare screenshots with. */
+    public Builder setBaseline(File baseline) {
+      checkNotNull(baseline, "Baseline directory not specified.");
+      checkArgument(baseline.isDirectory(), "Baseline directory does not exist.");
+      this.baseline = baseline;
+      return this;
+    }
+
+    /** Whether to write {@code result.json} without indentation. Defaults to pretty printing. */
+    public Builder setCompactJson(boolean compactJson) {
+      this.compactJson = compactJson;
+      return this;
+    }
+
+    /** Whether to also write the results to a binary {@link ResultArchive}. */
+    public Builder setResultArchive(boolean resultArchive) {
+      this.resultArchive = resultArchive;
+      return this;
+    }
+
+    /**
+     * Directory of a {@link TestHistory} to record the run in. Test pages then show each test's
+     * recent outcomes and durations. It should be outside of the output directory, which is
+     * cleared before each run.
+     */
+    public Builder setHistoryDirectory(File historyDirectory) {
+      checkNotNull(historyDirectory, "History directory not specified.");
+      this.historyDirectory = historyDirectory;
+      return this;
+    }
+
+    /**
+     * Whether to write the report as a single page which loads the results from compressed data
+     * files, rather than as a page per device, test and log. Large runs are written as far fewer
+     * files. The report must then be served over HTTP.
+     */
+    public Builder setSinglePageReport(boolean singlePageReport) {
+      this.singlePageReport = singlePageReport;
+      return this;
+    }
+
+    /**
+     * Write the report and every file which goes with it into the zip archive {@code outputZip}
+     * rather than leaving them in the output directory, which is only used while the tests run.
+     * Pages are compressed as they are rendered, and screenshots and animations, which are
+     * already compressed, are stored as they are.
+     */
+    public Builder setOutputZip(File outputZip) {
+      checkNotNull(outputZip, "Output zip not specified.");
+      this.outputZip = outputZip;
+      return this;
+    }
+
+    /**
+     * Serve a page showing the progress of the run on {@code port} of the local machine while it
+     * runs, or on any free port if it is 0. The address is logged once the run starts.
+     */
+    public Builder setDashboardPort(int port) {
+      checkArgument(port >= 0 && port <= 65535, "Invalid dashboard port: %s", port);
+      this.dashboardPort = port;
+      return this;
+    }
+
     /** Set ADB timeout. */
     public Builder setAdbTimeout(Duration value) {
       this.adbTimeout = value;
@@ -466,11 +700,18 @@ public final class SpoonRunner {
         checkArgument(!isNullOrEmpty(className),
             "Must specify class name if you're specifying a method name.");
       }
+      if (outputZip != null) {
+        checkArgument(!outputZip.getAbsoluteFile().toPath()
+                .startsWith(output.getAbsoluteFile().toPath()),
+            "Output zip must be outside of the output directory, which is deleted.");
+      }
 
       return new SpoonRunner(title, androidSdk, applicationApk, instrumentationApk, output, debug,
-          noAnimations, adbTimeout, serials, skipDevices, shard, classpath,
-          instrumentationArgs, className, methodName, testSize, failIfNoDeviceConnected,
-          testRunListeners, sequential, initScript, grantAll, terminateAdb, codeCoverage);
+          noAnimations, animationFormat, noThumbnails, baseline, compactJson, resultArchive,
+          historyDirectory, singlePageReport, outputZip, dashboardPort, adbTimeout, serials,
+          skipDevices, shard, classpath, instrumentationArgs, className, methodName, testSize,
+          failIfNoDeviceConnected, testRunListeners, sequential, initScript, grantAll, terminateAdb,
+          codeCoverage);
     }
   }
 
@@ -0,0 +1,40 @@
+package com.squareup.spoon;
+
+import com.squareup.spoon.html.HtmlServer;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Serves the report of an output directory on a local port, rendering each page when it is first
+ * viewed. This is much quicker than rendering every page up front when only a few of a large
+ * run's pages will be looked at. The results are read from {@code result.bin} if there is one,
+ * otherwise from {@code result.json}.
+ */
+public final class SpoonServer {
+  static final int DEFAULT_PORT = 8080;
+
+  static SpoonSummary readSummary(File output) throws IOException {
+    File archive = new File(output, ResultArchive.FILE_NAME);
+    if (archive.isFile()) {
+      return ResultArchive.open(archive).toSummary();
+    }
+    return SpoonMerger.readSummary(output);
+  }
+
+  /**
+   * Serve the report of {@code output} on {@code port}, or on any free port if it is 0, showing
+   * each test's outcomes in the history in {@code historyDirectory}, if not null.
+   */
+  static HtmlServer serve(File output, int port, File historyDirectory) throws IOException {
+    SpoonSummary summary = readSummary(output);
+    TestHistory history = (historyDirectory != null) ? TestHistory.open(historyDirectory) : null;
+    HtmlServer server = new HtmlServer(summary, output, history);
+    server.start(port);
+    SpoonLogger.logInfo("Serving %s at http://localhost:%d/", output, server.getPort());
+    return server;
+  }
+
+  private SpoonServer() {
+    // No instances.
+  }
+}
@@ -2,15 +2,19 @@ package com.squareup.spoon;
 
 import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner;
 
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSortedSet;
 
 /** Result summary of executing instrumentation on multiple devices. */
 public final class SpoonSummary {
@@ -20,7 +24,7 @@ public final class SpoonSummary {
   private final long duration;
   private final Map<String, DeviceResult> results;
 
-  private SpoonSummary(String title, IRemoteAndroidTestRunner.TestSize testSize, long started,
+  SpoonSummary(String title, IRemoteAndroidTestRunner.TestSize testSize, long started,
       long duration, Map<String, DeviceResult> results) {
     this.title = title;
     this.testSize = testSize;
@@ -44,7 +48,7 @@ public final class SpoonSummary {
     return started;
   }
 
-  /** Length of overall execution, in seconds. */
+  /** Length of overall execution, in milliseconds. */
   public long getDuration() {
     return duration;
   }
@@ -54,6 +58,21 @@ public final class SpoonSummary {
     return results;
   }
 
+  /** Every test run on at least one device, in test order. */
+  public SortedSet<DeviceTest> getTests() {
+    BitSet ids = new BitSet(TestRegistry.size());
+    for (DeviceResult result : results.values()) {
+      for (DeviceTest test : result.getTestResults().keySet()) {
+        ids.set(test.getId());
+      }
+    }
+    SortedSet<DeviceTest> tests = new TreeSet<>();
+    for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+      tests.add(TestRegistry.get(id));
+    }
+    return unmodifiableSortedSet(tests);
+  }
+
   static class Builder {
     private final Map<String, DeviceResult> results = new HashMap<>();
     private String title;
@@ -97,7 +116,7 @@ public final class SpoonSummary {
     Builder end() {
       checkState(start != 0, "Start must be called before end.");
       checkState(duration == -1, "End already called.");
-      duration = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+      duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
       return this;
     }
 
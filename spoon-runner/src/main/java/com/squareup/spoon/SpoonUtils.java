@@ -4,24 +4,26 @@ import com.android.ddmlib.AndroidDebugBridge;
 import com.android.ddmlib.DdmPreferences;
 import com.android.ddmlib.IDevice;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.TypeAdapter;
-import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
-import com.madgag.gif.fmsware.AnimatedGifEncoder;
-import java.awt.Color;
-import java.awt.image.BufferedImage;
+import java.awt.Dimension;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.time.Duration;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import org.apache.commons.io.FileUtils;
 
 import static com.android.ddmlib.FileListingService.FileEntry;
@@ -30,23 +32,19 @@ import static com.android.ddmlib.FileListingService.TYPE_DIRECTORY;
 /** Utilities for executing instrumentation tests on devices. */
 public final class SpoonUtils {
   private static final Pattern SERIAL_VALIDATION = Pattern.compile("[^a-zA-Z0-9_-]");
-  static final Gson GSON = new GsonBuilder() //
-      .registerTypeAdapter(File.class, new TypeAdapter<File>() {
-        @Override public void write(JsonWriter jsonWriter, File file) throws IOException {
-          if (file == null) {
-            jsonWriter.nullValue();
-          } else {
-            jsonWriter.value(file.getAbsolutePath());
-          }
-        }
-
-        @Override public File read(JsonReader jsonReader) throws IOException {
-          return new File(jsonReader.nextString());
-        }
-      }) //
-      .enableComplexMapKeySerialization() //
+  static final byte[] PNG_SIGNATURE = {
+      (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+  };
+  /** Signature, IHDR chunk length, and IHDR chunk type preceding the image dimensions. */
+  private static final int PNG_IHDR_DATA_OFFSET = 16;
+  static final Gson GSON = SpoonJson.newGsonBuilder(false) //
       .setPrettyPrinting() //
       .create();
+  /**
+   * Like {@link #GSON} but without any whitespace, and with repeated stack traces and frames
+   * written once, for files which are large or not for people.
+   */
+  static final Gson COMPACT_GSON = SpoonJson.newGsonBuilder(true).create();
 
   /** Fetch or create a real device that corresponds to a device model. */
   static IDevice obtainRealDevice(AndroidDebugBridge adb, String serial) {
@@ -125,28 +123,65 @@ public final class SpoonUtils {
     return adb;
   }
 
-  static void createAnimatedGif(List<File> testScreenshots, File animatedGif) throws IOException {
-    AnimatedGifEncoder encoder = new AnimatedGifEncoder();
-    encoder.start(animatedGif.getAbsolutePath());
-    encoder.setDelay(1500 /* 1.5 seconds */);
-    encoder.setQuality(1 /* highest */);
-    encoder.setRepeat(0 /* infinite */);
-    encoder.setTransparent(Color.WHITE);
-
-    int width = 0;
-    int height = 0;
-    for (File testScreenshot : testScreenshots) {
-      BufferedImage bufferedImage = ImageIO.read(testScreenshot);
-      width = Math.max(bufferedImage.getWidth(), width);
-      height = Math.max(bufferedImage.getHeight(), height);
+  /**
+   * Read the dimensions of an image without decoding it. PNGs are read straight from their
+   * {@code IHDR} chunk while other formats defer to the header parsing of their
+   * {@link ImageReader}.
+   */
+  static Dimension readImageSize(File image) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(image))) {
+      byte[] header = new byte[PNG_IHDR_DATA_OFFSET];
+      in.readFully(header);
+      if (isPngHeader(header)) {
+        return new Dimension(in.readInt(), in.readInt());
+      }
+    } catch (EOFException ignored) {
+      // Too short to be a PNG.
+    }
+
+    try (ImageInputStream in = ImageIO.createImageInputStream(image)) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        throw new IOException("Unknown image format: " + image);
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        return new Dimension(reader.getWidth(0), reader.getHeight(0));
+      } finally {
+        reader.dispose();
+      }
     }
-    encoder.setSize(width, height);
+  }
 
-    for (File testScreenshot : testScreenshots) {
-      encoder.addFrame(ImageIO.read(testScreenshot));
+  /** Run {@code tasks} on {@code pool}, joining in on the work if already running inside of it. */
+  static void invokeAll(ForkJoinPool pool, List<? extends ForkJoinTask<?>> tasks)
+      throws IOException {
+    try {
+      if (ForkJoinTask.getPool() == pool) {
+        ForkJoinTask.invokeAll(tasks);
+      } else {
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+      }
+    } catch (RuntimeException e) {
+      // Checked exceptions from the frames arrive wrapped.
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+      }
+      throw e;
     }
+  }
 
-    encoder.finish();
+  private static boolean isPngHeader(byte[] header) {
+    for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+      if (header[i] != PNG_SIGNATURE[i]) {
+        return false;
+      }
+    }
+    // The first chunk of every PNG is IHDR, beginning with the width and height.
+    return header[12] == 'I' && header[13] == 'H' && header[14] == 'D' && header[15] == 'R';
   }
 
   private static void waitForAdb(AndroidDebugBridge adb, Duration timeOut) {
@@ -0,0 +1,417 @@
+package com.squareup.spoon;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A file based store of the outcome and duration of every test on every device across runs.
+ * <p>
+ * The store is a directory of three files:
+ * <ul>
+ * <li>{@code names}: the test names, device serials, and status names, each appended once when
+ * first seen.</li>
+ * <li>{@code outcomes}: one fixed size record per test result, only ever appended to. Each
+ * record links to the previous record of the same test, so a test's recent outcomes are read
+ * without scanning those of other tests.</li>
+ * <li>{@code heads}: the latest record of each test. It is replaced after every append and
+ * rebuilt from the outcomes if it is missing or behind them.</li>
+ * </ul>
+ * Appends are made under a lock of the outcomes file, after reading what others have appended
+ * since, so several processes may share a store.
+ */
+public final class TestHistory implements Closeable {
+  static final String NAMES_FILE = "names";
+  static final String OUTCOMES_FILE = "outcomes";
+  static final String HEADS_FILE = "heads";
+  /** Start, duration, previous record, and the name ids of the test, serial, and status. */
+  private static final int RECORD_SIZE = 8 + 8 + 4 + 4 + 4 + 4;
+  private static final int NONE = -1;
+  /**
+   * File locks are held by the whole JVM, so appends to one store from within it are first
+   * serialized on its directory.
+   */
+  private static final ConcurrentMap<Path, Object> APPEND_LOCKS = new ConcurrentHashMap<>();
+
+  /** Open the store in {@code directory}, creating it if it does not exist. */
+  public static TestHistory open(File directory) throws IOException {
+    checkNotNull(directory);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create history directory: " + directory);
+    }
+    return new TestHistory(directory);
+  }
+
+  private final File directory;
+  private final Object appendLock;
+  private final FileChannel outcomes;
+  private final List<String> names = new ArrayList<>();
+  private final Map<String, Integer> nameIds = new HashMap<>();
+  private int namesLength;
+  /** The latest record of each test, by name id. */
+  private int[] heads = new int[0];
+  private int recordCount;
+
+  private TestHistory(File directory) throws IOException {
+    this.directory = directory;
+    appendLock = APPEND_LOCKS.computeIfAbsent(directory.getCanonicalFile().toPath(),
+        path -> new Object());
+    readNames();
+    outcomes = FileChannel.open(new File(directory, OUTCOMES_FILE).toPath(), CREATE, READ,
+        WRITE);
+    // A partial record is either being appended or left by an interrupted append.
+    recordCount = (int) (outcomes.size() / RECORD_SIZE);
+    readHeads();
+  }
+
+  /** Append the outcome of every test on every device of {@code summary}. */
+  void append(SpoonSummary summary) throws IOException {
+    checkNotNull(summary);
+    synchronized (appendLock) {
+      FileLock lock = outcomes.lock();
+      try {
+        catchUp();
+        appendLocked(summary);
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  /** Append {@code summary} while holding the lock, having read what others appended. */
+  private void appendLocked(SpoonSummary summary) throws IOException {
+    ByteArrayOutputStream newNames = new ByteArrayOutputStream();
+    DataOutputStream namesOut = new DataOutputStream(newNames);
+    ByteArrayOutputStream newRecords = new ByteArrayOutputStream();
+    DataOutputStream recordsOut = new DataOutputStream(newRecords);
+    int written = recordCount;
+    Map<String, DeviceResult> results = new TreeMap<>(summary.getResults());
+    for (Map.Entry<String, DeviceResult> device : results.entrySet()) {
+      int serial = nameId(device.getKey(), namesOut);
+      for (Map.Entry<DeviceTest, DeviceTestResult> entry
+          : device.getValue().getTestResults().entrySet()) {
+        int test = nameId(testName(entry.getKey()), namesOut);
+        DeviceTestResult result = entry.getValue();
+        recordsOut.writeLong(summary.getStarted());
+        recordsOut.writeLong(result.getDuration());
+        recordsOut.writeInt(test < heads.length ? heads[test] : NONE);
+        recordsOut.writeInt(test);
+        recordsOut.writeInt(serial);
+        recordsOut.writeInt(nameId(result.getStatus().name(), namesOut));
+        setHead(test, written++);
+      }
+    }
+
+    // Names are written before the records which refer to them.
+    if (newNames.size() > 0) {
+      File namesFile = new File(directory, NAMES_FILE);
+      try (FileChannel channel = FileChannel.open(namesFile.toPath(), CREATE, WRITE)) {
+        // Overwrite a partial name left by an interrupted append.
+        channel.truncate(namesLength);
+        writeFully(channel, ByteBuffer.wrap(newNames.toByteArray()), namesLength);
+      }
+      namesLength += newNames.size();
+    }
+    writeFully(outcomes, ByteBuffer.wrap(newRecords.toByteArray()),
+        (long) recordCount * RECORD_SIZE);
+    recordCount = written;
+    writeHeads();
+  }
+
+  /**
+   * The most recent outcomes of {@code test} on any device, newest first, up to {@code count} of
+   * them.
+   */
+  public List<Outcome> getLastOutcomes(DeviceTest test, int count) {
+    checkNotNull(test);
+    checkArgument(count >= 0, "Count must not be negative.");
+    Integer id = nameIds.get(testName(test));
+    if (id == null || id >= heads.length) {
+      return Collections.emptyList();
+    }
+    List<Outcome> outcomes = new ArrayList<>();
+    ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    int index = heads[id];
+    while (index != NONE && outcomes.size() < count) {
+      readRecord(index, record);
+      long started = record.getLong();
+      long duration = record.getLong();
+      index = record.getInt();
+      record.getInt(); // Test.
+      String serial = names.get(record.getInt());
+      DeviceTestResult.Status status =
+          SpoonJson.enumValue(DeviceTestResult.Status.class, names.get(record.getInt()));
+      outcomes.add(new Outcome(started, serial, status, duration));
+    }
+    return outcomes;
+  }
+
+  /** Statistics of the most recent outcomes of {@code test}, up to {@code count} of them. */
+  public Stats getStats(DeviceTest test, int count) {
+    List<Outcome> outcomes = getLastOutcomes(test, count);
+    int failures = 0;
+    List<Long> durations = new ArrayList<>();
+    for (Outcome outcome : outcomes) {
+      if (outcome.getStatus() == DeviceTestResult.Status.PASS) {
+        durations.add(outcome.getDuration());
+      } else {
+        failures += 1;
+      }
+    }
+    Collections.sort(durations);
+    return new Stats(outcomes.size(), failures, percentile(durations, 50),
+        percentile(durations, 95));
+  }
+
+  @Override public void close() throws IOException {
+    outcomes.close();
+  }
+
+  /** The nearest rank percentile of sorted {@code values}, or -1 if there are none. */
+  static long percentile(List<Long> values, int percentile) {
+    if (values.isEmpty()) {
+      return -1;
+    }
+    int rank = (int) Math.ceil(percentile / 100.0 * values.size());
+    return values.get(Math.max(rank, 1) - 1);
+  }
+
+  private static String testName(DeviceTest test) {
+    return test.getClassName() + "#" + test.getMethodName();
+  }
+
+  private int nameId(String name, DataOutputStream newNames) throws IOException {
+    Integer id = nameIds.get(name);
+    if (id == null) {
+      id = names.size();
+      names.add(name);
+      nameIds.put(name, id);
+      newNames.writeUTF(name);
+    }
+    return id;
+  }
+
+  private void setHead(int test, int record) {
+    if (test >= heads.length) {
+      int length = heads.length;
+      heads = Arrays.copyOf(heads, Math.max(test + 1, length * 2));
+      Arrays.fill(heads, length, heads.length, NONE);
+    }
+    heads[test] = record;
+  }
+
+  private void readRecord(int index, ByteBuffer record) {
+    record.clear();
+    try {
+      long position = (long) index * RECORD_SIZE;
+      while (record.hasRemaining()) {
+        int read = outcomes.read(record, position + record.position());
+        if (read < 0) {
+          throw new EOFException("Truncated history record " + index);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read test history.", e);
+    }
+    record.flip();
+  }
+
+  /** Read the names and records appended by others since they were last read or written. */
+  private void catchUp() throws IOException {
+    readNames();
+    int count = (int) (outcomes.size() / RECORD_SIZE);
+    // Appends are made under the lock, so a partial record was left by an interrupted one.
+    outcomes.truncate((long) count * RECORD_SIZE);
+    readRecords(recordCount, count);
+    recordCount = count;
+  }
+
+  /** Read the names after those already read. */
+  private void readNames() throws IOException {
+    File file = new File(directory, NAMES_FILE);
+    if (!file.exists()) {
+      return;
+    }
+    CountingInputStream counter =
+        new CountingInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+    try (DataInputStream in = new DataInputStream(counter)) {
+      ByteStreams.skipFully(counter, namesLength);
+      while (true) {
+        String name;
+        try {
+          name = in.readUTF();
+        } catch (EOFException e) {
+          break; // End of file, or a partial name which the next append overwrites.
+        }
+        nameIds.put(name, names.size());
+        names.add(name);
+        namesLength = (int) counter.getCount();
+      }
+    }
+  }
+
+  /** Read the heads, then bring them up to date with any records appended after they were. */
+  private void readHeads() throws IOException {
+    int covered = 0;
+    File file = new File(directory, HEADS_FILE);
+    if (file.exists()) {
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+        int count = in.readInt();
+        int[] heads = new int[in.readInt()];
+        for (int i = 0; i < heads.length; i++) {
+          heads[i] = in.readInt();
+        }
+        if (count <= recordCount) {
+          covered = count;
+          this.heads = heads;
+        }
+      } catch (EOFException e) {
+        // Rebuilt below.
+      }
+    }
+    if (covered < recordCount) {
+      if (covered == 0) {
+        heads = new int[0];
+      }
+      readRecords(covered, recordCount);
+    }
+  }
+
+  /** Make the records from {@code from} until {@code to} the heads of their tests. */
+  private void readRecords(int from, int to) {
+    ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    for (int index = from; index < to; index++) {
+      readRecord(index, record);
+      setHead(record.getInt(8 + 8 + 4), index);
+    }
+  }
+
+  private void writeHeads() throws IOException {
+    File file = new File(directory, HEADS_FILE);
+    File temporary = new File(directory, HEADS_FILE + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporary.toPath())))) {
+      out.writeInt(recordCount);
+      out.writeInt(heads.length);
+      for (int head : heads) {
+        out.writeInt(head);
+      }
+    }
+    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    channel.force(false);
+  }
+
+  /** The outcome of a test on one device in one run. */
+  public static final class Outcome {
+    private final long started;
+    private final String serial;
+    private final DeviceTestResult.Status status;
+    private final long duration;
+
+    Outcome(long started, String serial, DeviceTestResult.Status status, long duration) {
+      this.started = started;
+      this.serial = serial;
+      this.status = status;
+      this.duration = duration;
+    }
+
+    /** Start time of the run. */
+    public long getStarted() {
+      return started;
+    }
+
+    /** Serial number of the device. */
+    public String getSerial() {
+      return serial;
+    }
+
+    /** Execution status. */
+    public DeviceTestResult.Status getStatus() {
+      return status;
+    }
+
+    /** Length of the test execution, in milliseconds. */
+    public long getDuration() {
+      return duration;
+    }
+  }
+
+  /** Failure rate and durations of a test's recent outcomes. */
+  public static final class Stats {
+    private final int outcomes;
+    private final int failures;
+    private final long medianDuration;
+    private final long p95Duration;
+
+    Stats(int outcomes, int failures, long medianDuration, long p95Duration) {
+      this.outcomes = outcomes;
+      this.failures = failures;
+      this.medianDuration = medianDuration;
+      this.p95Duration = p95Duration;
+    }
+
+    /** Number of outcomes. */
+    public int getOutcomes() {
+      return outcomes;
+    }
+
+    /** Number of outcomes which did not pass. */
+    public int getFailures() {
+      return failures;
+    }
+
+    /** Fraction of outcomes which did not pass, or zero if there are none. */
+    public double getFailureRate() {
+      return outcomes != 0 ? (double) failures / outcomes : 0;
+    }
+
+    /** Median duration of passing outcomes in milliseconds, or -1 if there are none. */
+    public long getMedianDuration() {
+      return medianDuration;
+    }
+
+    /** 95th percentile duration of passing outcomes in milliseconds, or -1 if there are none. */
+    public long getP95Duration() {
+      return p95Duration;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.squareup.spoon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical {@link DeviceTest} instances for the tests of a run. Every device's results, and every
+ * result read back from JSON or an archive, share one instance per test and one class name string
+ * per test class. Each test is given a dense id, in the order they are first seen, with which
+ * results can be indexed by arrays instead of maps.
+ */
+final class TestRegistry {
+  private static final Map<String, Map<String, DeviceTest>> TESTS = new HashMap<>();
+  private static final List<DeviceTest> BY_ID = new ArrayList<>();
+
+  /** The canonical instance for a test, created with the next free id if it is new. */
+  static synchronized DeviceTest intern(String className, String methodName) {
+    Map<String, DeviceTest> methods = TESTS.get(className);
+    if (methods == null) {
+      methods = new HashMap<>();
+      TESTS.put(className, methods);
+    }
+    DeviceTest test = methods.get(methodName);
+    if (test == null) {
+      // Share the class name of the class's other tests so that it is held once.
+      String canonicalClassName = methods.isEmpty() ? className
+          : methods.values().iterator().next().getClassName();
+      test = new DeviceTest(BY_ID.size(), canonicalClassName, methodName);
+      methods.put(methodName, test);
+      BY_ID.add(test);
+    }
+    return test;
+  }
+
+  /** The test with {@code id}. */
+  static synchronized DeviceTest get(int id) {
+    return BY_ID.get(id);
+  }
+
+  /** One more than the highest id given out so far. */
+  static synchronized int size() {
+    return BY_ID.size();
+  }
+
+  private TestRegistry() {
+    // No instances.
+  }
+}
@@ -0,0 +1,97 @@
+package com.squareup.spoon;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map of a device's test results. Results are held in an array indexed by
+ * {@linkplain DeviceTest#getId() test id}, and iterated in test order.
+ */
+final class TestResultMap extends AbstractMap<DeviceTest, DeviceTestResult> {
+  private static final TestResultMap EMPTY =
+      new TestResultMap(new DeviceTest[0], 0, new DeviceTestResult[0]);
+
+  static TestResultMap copyOf(Map<DeviceTest, DeviceTestResult> results) {
+    if (results instanceof TestResultMap) {
+      return (TestResultMap) results;
+    }
+    if (results.isEmpty()) {
+      return EMPTY;
+    }
+    DeviceTest[] tests = results.keySet().toArray(new DeviceTest[results.size()]);
+    Arrays.sort(tests);
+    int minId = Integer.MAX_VALUE;
+    int maxId = Integer.MIN_VALUE;
+    for (DeviceTest test : tests) {
+      minId = Math.min(minId, test.getId());
+      maxId = Math.max(maxId, test.getId());
+    }
+    DeviceTestResult[] byId = new DeviceTestResult[maxId - minId + 1];
+    for (DeviceTest test : tests) {
+      byId[test.getId() - minId] = results.get(test);
+    }
+    return new TestResultMap(tests, minId, byId);
+  }
+
+  /** The tests with a result, in test order. */
+  private final DeviceTest[] tests;
+  /** The id of the result at index zero of {@link #results}. */
+  private final int offset;
+  private final DeviceTestResult[] results;
+  private final Set<Entry<DeviceTest, DeviceTestResult>> entrySet = new EntrySet();
+
+  private TestResultMap(DeviceTest[] tests, int offset, DeviceTestResult[] results) {
+    this.tests = tests;
+    this.offset = offset;
+    this.results = results;
+  }
+
+  @Override public DeviceTestResult get(Object key) {
+    if (!(key instanceof DeviceTest)) {
+      return null;
+    }
+    int index = ((DeviceTest) key).getId() - offset;
+    return index >= 0 && index < results.length ? results[index] : null;
+  }
+
+  @Override public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override public int size() {
+    return tests.length;
+  }
+
+  @Override public Set<Entry<DeviceTest, DeviceTestResult>> entrySet() {
+    return entrySet;
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<DeviceTest, DeviceTestResult>> {
+    @Override public int size() {
+      return tests.length;
+    }
+
+    @Override public Iterator<Entry<DeviceTest, DeviceTestResult>> iterator() {
+      return new Iterator<Entry<DeviceTest, DeviceTestResult>>() {
+        private int next;
+
+        @Override public boolean hasNext() {
+          return next < tests.length;
+        }
+
+        @Override public Entry<DeviceTest, DeviceTestResult> next() {
+          if (next == tests.length) {
+            throw new NoSuchElementException();
+          }
+          DeviceTest test = tests[next++];
+          return new SimpleImmutableEntry<>(test, results[test.getId() - offset]);
+        }
+      };
+    }
+  }
+}
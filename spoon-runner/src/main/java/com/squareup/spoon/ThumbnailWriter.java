@@ -0,0 +1,81 @@
+package com.squareup.spoon;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/** Writes small JPEG copies of screenshots for report pages to show in place of the originals. */
+final class ThumbnailWriter {
+  /** Twice the width of a thumbnail column so they stay sharp on high density displays. */
+  static final int MAX_WIDTH = 320;
+  private static final float JPEG_QUALITY = 0.85f;
+
+  static void write(File image, File thumbnail) throws IOException {
+    BufferedImage source = read(image);
+    int width = Math.min(MAX_WIDTH, source.getWidth());
+    int height = Math.max(1, Math.round(source.getHeight() * width / (float) source.getWidth()));
+
+    BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics.setColor(Color.WHITE); // JPEG has no transparency.
+    graphics.fillRect(0, 0, width, height);
+    graphics.drawImage(source, 0, 0, width, height, null);
+    graphics.dispose();
+
+    thumbnail.getParentFile().mkdirs();
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    try (OutputStream file = new FileOutputStream(thumbnail);
+         ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(JPEG_QUALITY);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(scaled, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  /**
+   * Decode {@code image}, skipping pixels down to no less than twice the thumbnail width. This
+   * avoids holding the full resolution image while leaving enough detail for smooth scaling.
+   */
+  private static BufferedImage read(File image) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(image)) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        throw new IOException("Unknown image format: " + image);
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        int subsampling = Math.max(1, reader.getWidth(0) / (MAX_WIDTH * 2));
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  private ThumbnailWriter() {
+    // No instances.
+  }
+}
@@ -3,15 +3,76 @@ package com.squareup.spoon
 
 import com.squareup.spoon.SpoonDeviceRunner.COVERAGE_DIR
 import com.squareup.spoon.SpoonDeviceRunner.COVERAGE_FILE
+import com.squareup.spoon.SpoonLogger.logInfo
 import org.jacoco.core.tools.ExecFileLoader
 import java.io.File
+import java.io.FileNotFoundException
 import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+
+internal const val MERGED_COVERAGE_FILE = "merged-coverage.ec"
 
 @Throws(IOException::class)
 internal fun mergeCoverageFiles(serials: Set<String>, outputDirectory: File) {
-  val execFileLoader = ExecFileLoader()
-  serials.map(SpoonUtils::sanitizeSerial).forEach { serial ->
-    execFileLoader.load(File(outputDirectory, "$COVERAGE_DIR/$serial/$COVERAGE_FILE"))
+  val merger = CoverageMerger(outputDirectory)
+  serials.forEach { merger.add(it) }
+  merger.save()
+}
+
+/**
+ * Merges the coverage pulled from each device into one file. Devices are added as they finish, so
+ * only saving the merged coverage is left for the end of the run. A device whose coverage is
+ * missing or can't be read is left out rather than failing the merge.
+ */
+internal class CoverageMerger(private val outputDirectory: File) {
+  private val merged = ExecFileLoader()
+  private var devices = 0
+
+  /** Merge the coverage of [serial], returning false if it was left out. */
+  fun add(serial: String): Boolean {
+    val safeSerial = SpoonUtils.sanitizeSerial(serial)
+    val file = File(outputDirectory, "$COVERAGE_DIR/$safeSerial/$COVERAGE_FILE")
+    if (!file.isFile) {
+      logInfo("[%s] No coverage file at %s.", serial, file)
+      return false
+    }
+    // Read outside of the lock so devices finishing together are read in parallel.
+    val device = ExecFileLoader()
+    try {
+      device.load(file)
+    } catch (e: IOException) {
+      logInfo("[%s] Unable to read coverage file %s: %s", serial, file, e)
+      return false
+    }
+    synchronized(this) {
+      device.sessionInfoStore.accept(merged.sessionInfoStore)
+      device.executionDataStore.accept(merged.executionDataStore)
+      devices++
+    }
+    return true
+  }
+
+  /**
+   * Write the merged coverage to `coverage/merged-coverage.ec`, replacing it in one move so a
+   * partly written file is never seen there.
+   */
+  @Synchronized @Throws(IOException::class)
+  fun save(): File {
+    val directory = File(outputDirectory, COVERAGE_DIR)
+    if (devices == 0) {
+      throw FileNotFoundException("No coverage files in $directory")
+    }
+    val file = File(directory, MERGED_COVERAGE_FILE)
+    directory.mkdirs()
+    val temp = File.createTempFile(MERGED_COVERAGE_FILE, ".tmp", directory)
+    try {
+      merged.save(temp, false)
+      Files.move(temp.toPath(), file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING)
+    } finally {
+      temp.delete()
+    }
+    return file
   }
-  execFileLoader.save(File(outputDirectory, "$COVERAGE_DIR/merged-coverage.ec"), false)
 }
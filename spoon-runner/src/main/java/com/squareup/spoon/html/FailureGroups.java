@@ -0,0 +1,218 @@
+package com.squareup.spoon.html;
+
+import com.squareup.spoon.DeviceResult;
+import com.squareup.spoon.DeviceTest;
+import com.squareup.spoon.DeviceTestResult;
+import com.squareup.spoon.SpoonSummary;
+import com.squareup.spoon.misc.StackTrace;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Groups the failures of a run which look like the same bug, so a crash which fails hundreds of
+ * tests on every device shows as one group rather than as thousands of exceptions.
+ * <p>
+ * Failures are grouped by the {@link Fingerprint} of their exception: the class of its root cause
+ * and the top {@link #FRAMES} frames of that cause which are in the app rather than in the
+ * platform or the test framework. Messages and line numbers are left out, as they vary with the
+ * test and the build for the same bug.
+ */
+final class FailureGroups {
+  static final int FRAMES = 5;
+
+  /** Packages of frames which are not the app's, so say little about which bug was hit. */
+  private static final String[] FRAMEWORK_PACKAGES = {
+      "java.", "javax.", "sun.", "jdk.", "kotlin.", "kotlinx.", "android.", "dalvik.",
+      "libcore.", "com.android.", "androidx.test.", "android.support.test.", "junit.",
+      "org.junit.", "org.hamcrest.", "org.mockito.", "com.google.common.truth."
+  };
+
+  /** The groups of the failed tests in {@code summary}, most failures first. */
+  static List<Group> from(SpoonSummary summary) {
+    Map<Fingerprint, Group.Builder> groups = new HashMap<>();
+    for (Map.Entry<String, DeviceResult> result : summary.getResults().entrySet()) {
+      String serial = result.getKey();
+      for (Map.Entry<DeviceTest, DeviceTestResult> entry
+          : result.getValue().getTestResults().entrySet()) {
+        StackTrace exception = entry.getValue().getException();
+        if (entry.getValue().getStatus() != DeviceTestResult.Status.FAIL || exception == null) {
+          continue;
+        }
+        StackTrace root = rootCause(exception);
+        groups.computeIfAbsent(Fingerprint.of(root), Group.Builder::new)
+            .add(serial, entry.getKey(), root);
+      }
+    }
+
+    List<Group.Builder> sorted = new ArrayList<>(groups.values());
+    sorted.sort(Comparator.comparingInt((Group.Builder group) -> -group.failures)
+        .thenComparing(group -> group.fingerprint.toString()));
+    List<Group> built = new ArrayList<>(sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      built.add(sorted.get(i).build(i));
+    }
+    return built;
+  }
+
+  static StackTrace rootCause(StackTrace exception) {
+    while (exception.getCause() != null) {
+      exception = exception.getCause();
+    }
+    return exception;
+  }
+
+  static boolean isAppFrame(StackTrace.Element element) {
+    String className = element.getClassName();
+    for (String framework : FRAMEWORK_PACKAGES) {
+      if (className.startsWith(framework)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** What failures of the same bug have in common. */
+  static final class Fingerprint {
+    /** The fingerprint of failures whose root cause is {@code root}. */
+    static Fingerprint of(StackTrace root) {
+      List<String> frames = root.getElements()
+          .stream()
+          .filter(FailureGroups::isAppFrame)
+          .limit(FRAMES)
+          .map(element -> element.getClassName() + "." + element.getMethodName())
+          .collect(toList());
+      if (frames.isEmpty()) {
+        // Nothing of the app was on the stack, so the framework's frames are all there is.
+        frames = root.getElements()
+            .stream()
+            .limit(FRAMES)
+            .map(element -> element.getClassName() + "." + element.getMethodName())
+            .collect(toList());
+      }
+      return new Fingerprint(root.getClassName(), frames);
+    }
+
+    final String className;
+    final List<String> frames;
+
+    Fingerprint(String className, List<String> frames) {
+      this.className = className;
+      this.frames = frames;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Fingerprint)) {
+        return false;
+      }
+      Fingerprint other = (Fingerprint) o;
+      return Objects.equals(className, other.className) && frames.equals(other.frames);
+    }
+
+    @Override public int hashCode() {
+      return 31 * Objects.hashCode(className) + frames.hashCode();
+    }
+
+    @Override public String toString() {
+      return className + frames;
+    }
+  }
+
+  /** Failures which share a fingerprint, as shown on the index page. */
+  static final class Group {
+    public final int id;
+    public final String className;
+    /** The first app frame, or null if there were no frames. */
+    public final String topFrame;
+    public final List<String> frames;
+    /** The root cause of one of the failures, as their messages can differ. */
+    public final String message;
+    public final int failures;
+    /** How many failures, of how many tests, on how many devices. */
+    public final String summary;
+    public final List<Test> tests;
+
+    Group(int id, String className, List<String> frames, String message, int failures,
+        int deviceCount, List<Test> tests) {
+      this.id = id;
+      this.className = className;
+      this.topFrame = frames.isEmpty() ? null : frames.get(0);
+      this.frames = frames;
+      this.message = message;
+      this.failures = failures;
+      this.summary = plural(failures, "failure") + " of " + plural(tests.size(), "test") + " on "
+          + plural(deviceCount, "device");
+      this.tests = tests;
+    }
+
+    static final class Builder {
+      final Fingerprint fingerprint;
+      final Map<DeviceTest, Integer> tests = new TreeMap<>();
+      final Set<String> devices = new HashSet<>();
+      String message;
+      int failures;
+
+      Builder(Fingerprint fingerprint) {
+        this.fingerprint = fingerprint;
+      }
+
+      void add(String serial, DeviceTest test, StackTrace root) {
+        tests.merge(test, 1, Integer::sum);
+        devices.add(serial);
+        if (message == null) {
+          message = root.toString();
+        }
+        failures += 1;
+      }
+
+      Group build(int id) {
+        List<Test> tests = new ArrayList<>(this.tests.size());
+        for (Map.Entry<DeviceTest, Integer> entry : this.tests.entrySet()) {
+          tests.add(Test.from(entry.getKey(), entry.getValue()));
+        }
+        return new Group(id, fingerprint.className, fingerprint.frames, message, failures,
+            devices.size(), tests);
+      }
+    }
+  }
+
+  /** A test which failed in a group, and on how many devices. */
+  static final class Test {
+    static Test from(DeviceTest test, int devices) {
+      String className = test.getClassName();
+      return new Test(className, test.getMethodName(), HtmlUtils.getClassSimpleName(className),
+          devices);
+    }
+
+    public final String className;
+    public final String methodName;
+    public final String classSimpleName;
+    public final String devices;
+
+    Test(String className, String methodName, String classSimpleName, int devices) {
+      this.className = className;
+      this.methodName = methodName;
+      this.classSimpleName = classSimpleName;
+      this.devices = plural(devices, "device");
+    }
+  }
+
+  private static String plural(int count, String noun) {
+    return count + " " + noun + (count != 1 ? "s" : "");
+  }
+
+  private FailureGroups() {
+    // No instances.
+  }
+}
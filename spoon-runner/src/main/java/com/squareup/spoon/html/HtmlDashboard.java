@@ -0,0 +1,220 @@
+package com.squareup.spoon.html;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.google.common.io.Resources;
+import com.google.gson.Gson;
+import com.squareup.spoon.RunProgress;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serves a page showing a {@link RunProgress} while the run is going, which is pushed to the
+ * browser with server-sent events.
+ * <p>
+ * The progress is published every {@link #PUBLISH_INTERVAL_MS} if it changed. Each browser is
+ * only ever sent the latest progress, and one which has not taken the last yet has it replaced
+ * rather than queued, so a slow browser holds at most one pending update and never holds up the
+ * run.
+ */
+public final class HtmlDashboard implements Closeable {
+  static final long PUBLISH_INTERVAL_MS = 500;
+  /** Comment lines sent when idle so proxies and browsers keep the connection open. */
+  private static final long KEEP_ALIVE_MS = 15000;
+  private static final Mustache PAGE = new DefaultMustacheFactory().compile("page/dashboard.html");
+  private static final List<String> STATIC_ASSETS = Arrays.asList("bootstrap.min.css",
+      "bootstrap-responsive.min.css", "bootstrap.min.js", "jquery.min.js", "spoon.css",
+      "spoon-util.js", "spoon-dashboard.js");
+
+  private final RunProgress progress;
+  private final Gson gson = new Gson();
+  private final Set<Client> clients = new CopyOnWriteArraySet<>();
+  private volatile String latest;
+  private long publishedVersion = -1;
+  private HttpServer server;
+  private ExecutorService executor;
+  private ScheduledExecutorService publisher;
+
+  public HtmlDashboard(RunProgress progress) {
+    this.progress = progress;
+  }
+
+  /** Start serving on {@code port} of the loopback address, or any free port if it is 0. */
+  public void start(int port) throws IOException {
+    checkState(server == null, "Already started.");
+    publish();
+    ThreadFactory daemons = runnable -> {
+      Thread thread = new Thread(runnable, "spoon-dashboard");
+      thread.setDaemon(true);
+      return thread;
+    };
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    // Every open page holds a thread while it waits for updates.
+    executor = Executors.newCachedThreadPool(daemons);
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+    publisher = Executors.newSingleThreadScheduledExecutor(daemons);
+    publisher.scheduleWithFixedDelay(this::publish, PUBLISH_INTERVAL_MS, PUBLISH_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** The port being served on. */
+  public int getPort() {
+    checkState(server != null, "Not started.");
+    return server.getAddress().getPort();
+  }
+
+  /** Send the final progress and stop serving. */
+  @Override public void close() {
+    if (server == null) {
+      return;
+    }
+    publisher.shutdownNow();
+    publish();
+    for (Client client : clients) {
+      client.close();
+    }
+    server.stop(1);
+    executor.shutdown();
+  }
+
+  private synchronized void publish() {
+    long version = progress.getVersion();
+    if (version == publishedVersion) {
+      return;
+    }
+    publishedVersion = version;
+    latest = gson.toJson(progress.snapshot());
+    for (Client client : clients) {
+      client.offer(latest);
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath();
+      if (path.equals("/")) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(bytes, UTF_8)) {
+          PAGE.execute(writer, page(progress.snapshot()));
+        }
+        send(exchange, "text/html; charset=utf-8", bytes.toByteArray());
+      } else if (path.equals("/events")) {
+        stream(exchange);
+      } else if (path.startsWith("/static/") && STATIC_ASSETS.contains(path.substring(8))) {
+        send(exchange, HtmlServer.contentType(path),
+            Resources.toByteArray(Resources.getResource(HtmlDashboard.class, path)));
+      } else {
+        exchange.sendResponseHeaders(404, -1);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * The index page's model for the run so far, which lays out a row of the bird's-eye table for
+   * each device. The page fills the rows in as the progress arrives.
+   */
+  private static HtmlIndex page(RunProgress.Snapshot snapshot) {
+    List<HtmlIndex.Device> devices = new ArrayList<>(snapshot.devices.size());
+    for (RunProgress.Snapshot.Device device : snapshot.devices) {
+      devices.add(new HtmlIndex.Device(device.serial, device.name, Collections.emptyList(),
+          false));
+    }
+    return new HtmlIndex(snapshot.title, "Waiting for devices", devices, Collections.emptyList());
+  }
+
+  /** Send the progress to one page until it goes away or the dashboard is closed. */
+  private void stream(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    exchange.sendResponseHeaders(200, 0);
+    Client client = new Client();
+    client.offer(latest);
+    clients.add(client);
+    try (OutputStream out = exchange.getResponseBody()) {
+      String update;
+      while ((update = client.take()) != null) {
+        out.write((update.isEmpty() ? ":\n\n" : "data: " + update + "\n\n").getBytes(UTF_8));
+        out.flush();
+      }
+    } catch (IOException ignored) {
+      // The page was closed.
+    } finally {
+      clients.remove(client);
+    }
+  }
+
+  private static void send(HttpExchange exchange, String contentType, byte[] body)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /** The update waiting to be sent to one page. */
+  private static final class Client {
+    private String pending;
+    private boolean closed;
+
+    /** Replace the pending update with {@code update}. */
+    synchronized void offer(String update) {
+      pending = update;
+      notifyAll();
+    }
+
+    synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+
+    /**
+     * The latest update once there is one, an empty string if there has not been one for a
+     * while, or null once closed. Anything pending is still sent before closing.
+     */
+    synchronized String take() {
+      long deadline = System.currentTimeMillis() + KEEP_ALIVE_MS;
+      while (pending == null && !closed) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          return "";
+        }
+        try {
+          wait(wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+      String update = pending;
+      pending = null;
+      return update;
+    }
+  }
+}
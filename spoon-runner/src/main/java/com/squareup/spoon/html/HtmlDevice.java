@@ -50,24 +50,28 @@ final class HtmlDevice {
         .append(HtmlUtils.dateToString(result.getStarted()));
 
     String subtitle2 = HtmlUtils.deviceDetailsToString(details);
+    String phases = HtmlUtils.phaseDurationsToString(result.getPhaseDurations());
 
-    return new HtmlDevice(serial, title, subtitle1.toString(), subtitle2, testResults, exceptions);
+    return new HtmlDevice(serial, title, subtitle1.toString(), subtitle2, phases, testResults,
+        exceptions);
   }
 
   public final String serial;
   public final String title;
   public final String subtitle1;
   public final String subtitle2;
+  public final String phases;
   public final List<TestResult> testResults;
   public final boolean hasExceptions;
   public final List<HtmlUtils.ExceptionInfo> exceptions;
 
-  HtmlDevice(String serial, String title, String subtitle1, String subtitle2,
+  HtmlDevice(String serial, String title, String subtitle1, String subtitle2, String phases,
       List<TestResult> testResults, List<HtmlUtils.ExceptionInfo> exceptions) {
     this.serial = serial;
     this.title = title;
     this.subtitle1 = subtitle1;
     this.subtitle2 = subtitle2;
+    this.phases = phases;
     this.testResults = testResults;
     this.hasExceptions = !exceptions.isEmpty();
     this.exceptions = exceptions;
@@ -82,7 +86,7 @@ final class HtmlDevice {
       String status = HtmlUtils.getStatusCssClass(result);
       List<HtmlUtils.Screenshot> screenshots = result.getScreenshots()
           .stream()
-          .map(screenshot -> HtmlUtils.getScreenshot(screenshot, output))
+          .map(screenshot -> HtmlUtils.getScreenshot(screenshot, result, output))
           .collect(toList());
       List<HtmlUtils.SavedFile> files = result.getFiles()
           .stream()
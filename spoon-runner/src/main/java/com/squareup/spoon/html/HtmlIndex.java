@@ -5,6 +5,7 @@ import com.squareup.spoon.DeviceDetails;
 import com.squareup.spoon.DeviceResult;
 import com.squareup.spoon.DeviceTest;
 import com.squareup.spoon.DeviceTestResult;
+import com.squareup.spoon.ScreenshotDiff;
 import com.squareup.spoon.SpoonSummary;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -19,6 +20,8 @@ final class HtmlIndex {
   static HtmlIndex from(SpoonSummary summary) {
     int testsRun = 0;
     int totalSuccess = 0;
+    int screenshotsChanged = 0;
+    int screenshotsUnchanged = 0;
     List<Device> devices = new ArrayList<>();
     for (Map.Entry<String, DeviceResult> result : summary.getResults().entrySet()) {
       devices.add(Device.from(result.getKey(), result.getValue()));
@@ -28,6 +31,13 @@ final class HtmlIndex {
         if (entry.getValue().getStatus() == Status.PASS) {
           totalSuccess += 1;
         }
+        for (ScreenshotDiff diff : entry.getValue().getScreenshotDiffs().values()) {
+          if (diff.isChanged()) {
+            screenshotsChanged += 1;
+          } else {
+            screenshotsUnchanged += 1;
+          }
+        }
       }
     }
 
@@ -53,18 +63,31 @@ final class HtmlIndex {
           .append(HtmlUtils.humanReadableDuration(summary.getDuration()));
     }
     subtitle.append(" at ").append(started);
+    String screenshotChanges =
+        HtmlUtils.screenshotChangesToString(screenshotsChanged, screenshotsUnchanged);
+    if (screenshotChanges != null) {
+      subtitle.append(". ").append(screenshotChanges);
+    }
 
-    return new HtmlIndex(summary.getTitle(), subtitle.toString(),  devices);
+    List<FailureGroups.Group> failureGroups =
+        (totalFailure > 0) ? FailureGroups.from(summary) : Collections.emptyList();
+    return new HtmlIndex(summary.getTitle(), subtitle.toString(), devices, failureGroups);
   }
 
   public final String title;
   public final String subtitle;
   public final List<Device> devices;
+  /** The run's failures grouped by what looks like the same bug, most failures first. */
+  public final List<FailureGroups.Group> failureGroups;
+  public final boolean hasFailureGroups;
 
-  HtmlIndex(String title, String subtitle, List<Device> devices) {
+  HtmlIndex(String title, String subtitle, List<Device> devices,
+      List<FailureGroups.Group> failureGroups) {
     this.title = title;
     this.subtitle = subtitle;
     this.devices = devices;
+    this.failureGroups = failureGroups;
+    this.hasFailureGroups = !failureGroups.isEmpty();
   }
 
   static final class Device implements Comparable<Device> {
@@ -119,7 +142,11 @@ final class HtmlIndex {
       String classSimpleName = HtmlUtils.getClassSimpleName(className);
       String testId = HtmlUtils.testClassAndMethodToId(className, methodName);
       String status = HtmlUtils.getStatusCssClass(testResult);
-      return new TestResult(serial, classSimpleName, methodName, testId, status);
+      boolean changed = testResult.getScreenshotDiffs()
+          .values()
+          .stream()
+          .anyMatch(ScreenshotDiff::isChanged);
+      return new TestResult(serial, classSimpleName, methodName, testId, status, changed);
     }
 
     public final String serial;
@@ -127,14 +154,16 @@ final class HtmlIndex {
     public final String prettyMethodName;
     public final String testId;
     public final String status;
+    public final boolean changed;
 
     TestResult(String serial, String classSimpleName, String prettyMethodName, String testId,
-        String status) {
+        String status, boolean changed) {
       this.serial = serial;
       this.classSimpleName = classSimpleName;
       this.prettyMethodName = prettyMethodName;
       this.testId = testId;
       this.status = status;
+      this.changed = changed;
     }
 
     @Override public int compareTo(TestResult other) {
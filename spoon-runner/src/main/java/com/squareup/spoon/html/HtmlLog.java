@@ -10,6 +10,15 @@ import static java.util.stream.Collectors.toList;
 /** Model for representing a {@code log.html} page. */
 final class HtmlLog {
   public static HtmlLog from(String name, DeviceTest test, DeviceTestResult result) {
+    String title = test.getMethodName();
+    String subtitle = subtitle(name, result);
+
+    List<LogEntry> log = result.getLog().stream().map(LogEntry::from).collect(toList());
+
+    return new HtmlLog(title, subtitle, log);
+  }
+
+  static String subtitle(String name, DeviceTestResult result) {
     String status;
     switch (result.getStatus()) {
       case PASS:
@@ -22,14 +31,9 @@ final class HtmlLog {
         throw new IllegalArgumentException("Unknown status: " + result.getStatus());
     }
 
-    String title = test.getMethodName();
-    String subtitle = "Test " + status
+    return "Test " + status
         + " in " + HtmlUtils.humanReadableDuration(result.getDuration())
         + " on " + name;
-
-    List<LogEntry> log = result.getLog().stream().map(LogEntry::from).collect(toList());
-
-    return new HtmlLog(title, subtitle, log);
   }
 
   public final String title;
@@ -0,0 +1,157 @@
+package com.squareup.spoon.html;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.squareup.spoon.DeviceTest;
+import com.squareup.spoon.DeviceTestResult;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Model for representing a {@code log-paged.html} page, for a log too long to show as one table.
+ * Its entries are written as separate pages of {@link #PAGE_SIZE} entries which are loaded as they
+ * are scrolled into view. The page only holds how many entries of each tag and level every page
+ * has, so it can count and find the entries matching a filter without loading them.
+ */
+final class HtmlPagedLog {
+  static final int PAGE_SIZE = 1000;
+
+  /** Default escaping keeps {@code </script>} out of the index embedded in the page. */
+  private static final Gson GSON = new Gson();
+  private static final LogLevel[] LEVELS = LogLevel.values();
+
+  static boolean isPaged(DeviceTestResult result) {
+    return result.getLog().size() > PAGE_SIZE;
+  }
+
+  static int pageCount(DeviceTestResult result) {
+    return (result.getLog().size() + PAGE_SIZE - 1) / PAGE_SIZE;
+  }
+
+  public static HtmlPagedLog from(String name, DeviceTest test, DeviceTestResult result) {
+    String title = test.getMethodName();
+    String subtitle = HtmlLog.subtitle(name, result);
+    return new HtmlPagedLog(title, subtitle, test.getMethodName(), GSON.toJson(index(result)));
+  }
+
+  static Index index(DeviceTestResult result) {
+    List<LogCatMessage> log = result.getLog();
+    TreeSet<String> tags = new TreeSet<>();
+    List<Map<String, int[]>> pageCounts = new ArrayList<>();
+    for (int start = 0; start < log.size(); start += PAGE_SIZE) {
+      Map<String, int[]> counts = new LinkedHashMap<>();
+      for (LogCatMessage message : log.subList(start, Math.min(log.size(), start + PAGE_SIZE))) {
+        String tag = tag(message);
+        tags.add(tag);
+        counts.computeIfAbsent(tag, t -> new int[LEVELS.length])[level(message)]++;
+      }
+      pageCounts.add(counts);
+    }
+
+    Map<String, Integer> tagIndexes = new HashMap<>();
+    for (String tag : tags) {
+      tagIndexes.put(tag, tagIndexes.size());
+    }
+    List<List<int[]>> pages = new ArrayList<>(pageCounts.size());
+    for (Map<String, int[]> counts : pageCounts) {
+      List<int[]> page = new ArrayList<>(counts.size());
+      for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+        int[] tagCounts = new int[LEVELS.length + 1];
+        tagCounts[0] = tagIndexes.get(entry.getKey());
+        System.arraycopy(entry.getValue(), 0, tagCounts, 1, LEVELS.length);
+        page.add(tagCounts);
+      }
+      pages.add(page);
+    }
+
+    List<String> levels = new ArrayList<>(LEVELS.length);
+    for (LogLevel level : LEVELS) {
+      levels.add(level.getStringValue());
+    }
+    return new Index(log.size(), levels, new ArrayList<>(tags), pages);
+  }
+
+  public final String title;
+  public final String subtitle;
+  /** Directory of the pages of entries, relative to the page. */
+  public final String pages;
+  /** The {@link Index} as JSON. */
+  public final String index;
+
+  HtmlPagedLog(String title, String subtitle, String pages, String index) {
+    this.title = title;
+    this.subtitle = subtitle;
+    this.pages = pages;
+    this.index = index;
+  }
+
+  private static String tag(LogCatMessage message) {
+    return (message.getTag() != null) ? message.getTag() : "";
+  }
+
+  private static int level(LogCatMessage message) {
+    LogLevel level = message.getLogLevel();
+    return (level != null) ? level.ordinal() : 0;
+  }
+
+  /**
+   * The number of entries of each tag and level in every page. Each page lists the tags it has
+   * as their position in {@code tags} followed by their count at each of {@code levels}.
+   */
+  static final class Index {
+    final int pageSize = PAGE_SIZE;
+    final int count;
+    final List<String> levels;
+    final List<String> tags;
+    final List<List<int[]>> pages;
+
+    Index(int count, List<String> levels, List<String> tags, List<List<int[]>> pages) {
+      this.count = count;
+      this.levels = levels;
+      this.tags = tags;
+      this.pages = pages;
+    }
+  }
+
+  /** Model for a page of entries, which are each {@code [timestamp, level, tag, message]}. */
+  static final class Page {
+    static Page from(DeviceTestResult result, int number) {
+      List<LogCatMessage> log = result.getLog();
+      int start = number * PAGE_SIZE;
+      StringWriter entries = new StringWriter();
+      // Written directly rather than through a model since the pages of a long log are large.
+      try (JsonWriter writer = new JsonWriter(entries)) {
+        writer.setHtmlSafe(true);
+        writer.beginArray();
+        for (LogCatMessage message : log.subList(start, Math.min(log.size(), start + PAGE_SIZE))) {
+          writer.beginArray()
+              .value(message.getTimestamp().toString())
+              .value(level(message))
+              .value(tag(message))
+              .value(message.getMessage())
+              .endArray();
+        }
+        writer.endArray();
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      return new Page(number, entries.toString());
+    }
+
+    public final int number;
+    public final String entries;
+
+    Page(int number, String entries) {
+      this.number = number;
+      this.entries = entries;
+    }
+  }
+}
@@ -3,136 +3,259 @@ package com.squareup.spoon.html;
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import com.squareup.spoon.DeviceDetails;
 import com.squareup.spoon.DeviceResult;
 import com.squareup.spoon.DeviceTest;
 import com.squareup.spoon.DeviceTestResult;
+import com.squareup.spoon.ParallelZipWriter;
 import com.squareup.spoon.SpoonSummary;
+import com.squareup.spoon.TestHistory;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.lesscss.LessCompiler;
 
+import static com.google.common.base.Preconditions.checkState;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /** Renders a {@link com.squareup.spoon.SpoonSummary} as static HTML to an output directory. */
 public final class HtmlRenderer {
   public static final String INDEX_FILENAME = "index.html";
-  private static final String STATIC_DIRECTORY = "static";
-  private static final String[] STATIC_ASSETS = {
+  static final String STATIC_DIRECTORY = "static";
+  static final String[] STATIC_ASSETS = {
     "bootstrap.min.css", "bootstrap-responsive.min.css", "bootstrap.min.js", "jquery.min.js",
-    "jquery.nivo.slider.pack.js", "nivo-slider.css", "icon-animated.png", "icon-devices.png",
-    "icon-log.png", "ceiling_android.png", "arrows.png", "bullets.png", "loading.gif"
+    "icon-animated.png", "icon-devices.png", "icon-log.png", "ceiling_android.png", "loading.gif",
+    "spoon.css", "spoon-util.js", "spoon-list.js", "spoon-log.js", "spoon-tv.js"
   };
 
+  /**
+   * Hashes the inputs of each file when rendering incrementally. Only accidental collisions matter
+   * here, so a fast non-cryptographic hash is enough.
+   */
+  static final HashFunction HASH = Hashing.murmur3_128();
+
   private final SpoonSummary summary;
   private final Gson gson;
   private final File output;
+  private final TestHistory history;
+  private final boolean incremental;
+  /** The hash of the whole summary, shared by {@code result.json} and the pages built from it. */
+  private final Supplier<HashCode> summaryHash;
+  /** The hash of each test result's JSON, shared by the pages which show it. */
+  private final Map<DeviceTestResult, HashCode> resultHashes = new ConcurrentHashMap<>();
 
   public HtmlRenderer(SpoonSummary summary, Gson gson, File output) {
+    this(summary, gson, output, null);
+  }
+
+  /** Render with each test page showing the test's outcomes in {@code history}, if not null. */
+  public HtmlRenderer(SpoonSummary summary, Gson gson, File output, TestHistory history) {
+    this(summary, gson, output, history, false);
+  }
+
+  /**
+   * Render with each test page showing the test's outcomes in {@code history}, if not null. If
+   * {@code incremental}, files whose inputs are unchanged since the last incremental render into
+   * {@code output} are left as they are rather than rendered again.
+   */
+  public HtmlRenderer(SpoonSummary summary, Gson gson, File output, TestHistory history,
+      boolean incremental) {
     this.summary = summary;
     this.gson = gson;
     this.output = output;
+    this.history = history;
+    this.incremental = incremental;
+    summaryHash = Suppliers.memoize(() -> hashJson(summary));
   }
 
   public void render() {
     output.mkdirs();
 
-    copyStaticAssets();
-    generateCssFromLess();
-    writeResultJson();
+    RenderManifest manifest = null;
+    try {
+      if (incremental) {
+        manifest = RenderManifest.read(output);
+      } else {
+        // A full render leaves files behind which the old manifest no longer describes.
+        Files.deleteIfExists(new File(output, RenderManifest.FILE_NAME).toPath());
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read render manifest.", e);
+    }
 
-    MustacheFactory mustacheFactory = new DefaultMustacheFactory();
-    generateTvHtml(mustacheFactory);
-    generateIndexHtml(mustacheFactory);
-    generateDeviceHtml(mustacheFactory);
-    generateTestHtml(mustacheFactory);
-    generateLogHtml(mustacheFactory);
-  }
+    List<ForkJoinTask<?>> tasks = tasks(FileOutputStream::new, manifest);
 
-  private void copyStaticAssets() {
-    File statics = new File(output, STATIC_DIRECTORY);
-    statics.mkdirs();
-    for (String staticAsset : STATIC_ASSETS) {
-      copyStaticToOutput(staticAsset, statics);
+    // Every page's directory is created up front rather than checked for before each write.
+    Set<File> directories = new LinkedHashSet<>();
+    directories.add(FileUtils.getFile(output, STATIC_DIRECTORY));
+    for (ForkJoinTask<?> task : tasks) {
+      if (task instanceof Page) {
+        directories.add(((Page) task).file.getParentFile());
+      }
+    }
+    for (File directory : directories) {
+      directory.mkdirs();
+    }
+
+    invoke(tasks);
+
+    if (manifest != null) {
+      try {
+        manifest.commit();
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to write render manifest.", e);
+      }
     }
   }
 
-  private void generateCssFromLess() {
+  /**
+   * Render into {@code zip} instead of the output directory, each file as an entry named by its
+   * path relative to the directory. Nothing is written to the directory, which only locates the
+   * screenshots and other files which the pages link to. Pages are compressed as they are
+   * rendered, in parallel.
+   */
+  public void render(ParallelZipWriter zip) {
+    checkState(!incremental, "Only renders into the output directory can be incremental.");
+    Path root = output.toPath();
+    invoke(tasks(file -> {
+      String name = root.relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+      return zip.newEntry(name);
+    }, null));
+  }
+
+  private List<ForkJoinTask<?>> tasks(Output out, RenderManifest manifest) {
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    addStaticAssets(tasks, out, manifest);
+    tasks.add(new ResultJson(gson, summary, summaryHash, new File(output, "result.json"), out,
+        manifest));
+    addTvPages(tasks, out, manifest);
+    tasks.add(new Page(Templates.INDEX, () -> HtmlIndex.from(summary),
+        hasher -> hasher.putBytes(summaryHash.get().asBytes()), new File(output, INDEX_FILENAME),
+        out, manifest));
+    addDevicePages(tasks, out, manifest);
+    addTestPages(tasks, out, manifest);
+    addLogPages(tasks, out, manifest);
+    return tasks;
+  }
+
+  /** Run {@code tasks} in parallel, one thread per processor, and wait for them all to finish. */
+  static void invoke(List<ForkJoinTask<?>> tasks) {
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     try {
-      LessCompiler compiler = new LessCompiler();
-      String less = Resources.toString(getClass().getResource("/spoon.less"), UTF_8);
-      String css = compiler.compile(less);
-      File cssFile = FileUtils.getFile(output, STATIC_DIRECTORY, "spoon.css");
-      FileUtils.writeStringToFile(cssFile, css, UTF_8);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+      pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    } finally {
+      pool.shutdown();
     }
   }
 
-  private void writeResultJson() {
-    try (Writer result = new BufferedWriter(
-        new OutputStreamWriter(new FileOutputStream(new File(output, "result.json")), UTF_8))) {
-      gson.toJson(summary, result);
-    } catch (IOException e) {
-      throw new RuntimeException("Unable to write result.json file.", e);
-    }
+  private void addStaticAssets(List<ForkJoinTask<?>> tasks, Output out,
+      RenderManifest manifest) {
+    tasks.add(copyStatics(STATIC_ASSETS, new File(output, STATIC_DIRECTORY), out, manifest));
   }
 
-  private void generateTvHtml(MustacheFactory mustacheFactory) {
-    Mustache mustache = mustacheFactory.compile("page/tv.html");
-    HtmlTv scope = HtmlTv.from(gson, summary, output);
-    File file = new File(output, "tv.html");
-    renderMustacheToFile(mustache, scope, file);
+  /** Returns a task which copies each of {@code assets} into the {@code statics} directory. */
+  static ForkJoinTask<?> copyStatics(String[] assets, File statics, Output out,
+      RenderManifest manifest) {
+    return ForkJoinTask.adapt(() -> {
+      for (String staticAsset : assets) {
+        copyStatic(staticAsset, new File(statics, staticAsset), out, manifest);
+      }
+    });
   }
 
-  private void generateIndexHtml(MustacheFactory mustacheFactory) {
-    Mustache mustache = mustacheFactory.compile("page/index.html");
-    HtmlIndex scope = HtmlIndex.from(summary);
-    File file = new File(output, INDEX_FILENAME);
-    renderMustacheToFile(mustache, scope, file);
+  private void addTvPages(List<ForkJoinTask<?>> tasks, Output out, RenderManifest manifest) {
+    List<HtmlTv.Device> devices = HtmlTv.devices(summary);
+    tasks.add(new Page(Templates.TV, () -> HtmlTv.from(summary, devices),
+        hasher -> hasher.putBytes(summaryHash.get().asBytes()), new File(output, "tv.html"), out,
+        manifest));
+    // The tests and their screenshots are loaded by the page in chunks as it shows them.
+    for (int i = 0; i < HtmlTv.chunkCount(devices); i++) {
+      int number = i;
+      tasks.add(new Page(Templates.TV_CHUNK, () -> HtmlTv.Chunk.from(devices, output, number),
+          hasher -> HtmlTv.Chunk.forEachTest(devices, number, (device, test, result) -> {
+            hasher.putInt(device);
+            putTest(hasher, test);
+            hasher.putBytes(resultHash(result).asBytes());
+          }), FileUtils.getFile(output, "tv", number + ".js"), out, manifest));
+    }
   }
 
-  private void generateDeviceHtml(MustacheFactory mustacheFactory) {
-    Mustache mustache = mustacheFactory.compile("page/device.html");
+  private void addDevicePages(List<ForkJoinTask<?>> tasks, Output out,
+      RenderManifest manifest) {
     for (Map.Entry<String, DeviceResult> entry : summary.getResults().entrySet()) {
       String serial = entry.getKey();
-      HtmlDevice scope = HtmlDevice.from(serial, entry.getValue(), output);
-      File file = FileUtils.getFile(output, "device", serial + ".html");
-      renderMustacheToFile(mustache, scope, file);
+      DeviceResult result = entry.getValue();
+      tasks.add(new Page(Templates.DEVICE, () -> HtmlDevice.from(serial, result, output),
+          hasher -> {
+            putString(hasher, serial);
+            hasher.putBytes(hashJson(result).asBytes());
+          }, FileUtils.getFile(output, "device", serial + ".html"), out, manifest));
     }
   }
 
-  private void generateTestHtml(MustacheFactory mustacheFactory) {
-    Mustache mustache = mustacheFactory.compile("page/test.html");
-    // Create a set of unique tests.
-    Set<DeviceTest> tests = new LinkedHashSet<>();
-    for (DeviceResult deviceResult : summary.getResults().values()) {
-      tests.addAll(deviceResult.getTestResults().keySet());
+  private void addTestPages(List<ForkJoinTask<?>> tasks, Output out, RenderManifest manifest) {
+    // Generate a page for each unique test.
+    for (DeviceTest test : summary.getTests()) {
+      tasks.add(new Page(Templates.TEST, () -> HtmlTest.from(test, summary, output, history),
+          hasher -> hashTestInputs(hasher, test),
+          FileUtils.getFile(output, "test", test.getClassName(), test.getMethodName() + ".html"),
+          out, manifest));
     }
-    // Generate a page for each one.
-    for (DeviceTest test : tests) {
-      HtmlTest scope = HtmlTest.from(test, summary, output);
-      File file =
-          FileUtils.getFile(output, "test", test.getClassName(), test.getMethodName() + ".html");
-      renderMustacheToFile(mustache, scope, file);
+  }
+
+  /** Hash the test's result and name on each device, and its history, which its page shows. */
+  private void hashTestInputs(Hasher hasher, DeviceTest test) {
+    putTest(hasher, test);
+    for (Map.Entry<String, DeviceResult> entry : summary.getResults().entrySet()) {
+      DeviceTestResult result = entry.getValue().getTestResults().get(test);
+      if (result != null) {
+        DeviceDetails details = entry.getValue().getDeviceDetails();
+        putString(hasher, entry.getKey());
+        putString(hasher, details != null ? details.getName() : null);
+        hasher.putBytes(resultHash(result).asBytes());
+      }
+    }
+    if (history != null) {
+      for (TestHistory.Outcome outcome : history.getLastOutcomes(test, HtmlTest.HISTORY_OUTCOMES)) {
+        hasher.putLong(outcome.getStarted());
+        putString(hasher, outcome.getSerial());
+        putString(hasher, outcome.getStatus() != null ? outcome.getStatus().name() : null);
+        hasher.putLong(outcome.getDuration());
+      }
     }
   }
 
-  private void generateLogHtml(MustacheFactory mustacheFactory) {
-    Mustache mustache = mustacheFactory.compile("page/log.html");
+  private void addLogPages(List<ForkJoinTask<?>> tasks, Output out, RenderManifest manifest) {
     for (Map.Entry<String, DeviceResult> resultEntry : summary.getResults().entrySet()) {
       String serial = resultEntry.getKey();
       DeviceResult result = resultEntry.getValue();
@@ -140,36 +263,233 @@ public final class HtmlRenderer {
       String name = (details != null) ? details.getName() : serial;
       for (Map.Entry<DeviceTest, DeviceTestResult> entry : result.getTestResults().entrySet()) {
         DeviceTest test = entry.getKey();
-        HtmlLog scope = HtmlLog.from(name, test, entry.getValue());
+        DeviceTestResult testResult = entry.getValue();
         File file = FileUtils.getFile(output, "logs", serial, test.getClassName(),
             test.getMethodName() + ".html");
-        renderMustacheToFile(mustache, scope, file);
+        Inputs inputs = hasher -> {
+          putString(hasher, name);
+          putTest(hasher, test);
+          hasher.putBytes(resultHash(testResult).asBytes());
+        };
+        if (!HtmlPagedLog.isPaged(testResult)) {
+          tasks.add(new Page(Templates.LOG, () -> HtmlLog.from(name, test, testResult), inputs,
+              file, out, manifest));
+          continue;
+        }
+        // Long logs are written as pages of entries which the log page loads as they are viewed.
+        tasks.add(new Page(Templates.PAGED_LOG, () -> HtmlPagedLog.from(name, test, testResult),
+            inputs, file, out, manifest));
+        File pages = new File(file.getParentFile(), test.getMethodName());
+        for (int i = 0; i < HtmlPagedLog.pageCount(testResult); i++) {
+          int number = i;
+          tasks.add(new Page(Templates.LOG_PAGE, () -> HtmlPagedLog.Page.from(testResult, number),
+              hasher -> hasher.putInt(number).putBytes(resultHash(testResult).asBytes()),
+              new File(pages, number + ".js"), out, manifest));
+        }
       }
     }
   }
 
-  private static void renderMustacheToFile(Mustache mustache, Object scope, File file) {
-    file.getParentFile().mkdirs();
-    try (Writer writer = new BufferedWriter(
-        new OutputStreamWriter(new FileOutputStream(file), UTF_8))) {
-      mustache.execute(writer, scope);
+  private HashCode resultHash(DeviceTestResult result) {
+    return resultHashes.computeIfAbsent(result, this::hashJson);
+  }
+
+  /**
+   * Hash {@code value} as compact JSON as it streams by, since it can be too large to hold as a
+   * string. Indenting the JSON would only make hashing it slower.
+   */
+  private HashCode hashJson(Object value) {
+    HashingOutputStream hashing = new HashingOutputStream(HASH, ByteStreams.nullOutputStream());
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(hashing, UTF_8))) {
+      JsonWriter json = gson.newJsonWriter(writer);
+      json.setIndent("");
+      gson.toJson(value, value.getClass(), json);
+      json.flush();
     } catch (IOException e) {
-      throw new RuntimeException(e);
+      throw new AssertionError(e);
+    }
+    return hashing.hash();
+  }
+
+  private static void putTest(Hasher hasher, DeviceTest test) {
+    putString(hasher, test.getClassName());
+    putString(hasher, test.getMethodName());
+  }
+
+  /** Put {@code value} so that it can't run into the next value, or null into an empty string. */
+  private static void putString(Hasher hasher, String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(value.length()).putString(value, UTF_8);
+    }
+  }
+
+  /**
+   * Renders one page. Its scope is only created when it is rendered. When rendering incrementally
+   * the page is skipped, without creating its scope, if its template and inputs hash the same as
+   * last time.
+   */
+  private static final class Page extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    final Template template;
+    final Supplier<Object> scope;
+    final Inputs inputs;
+    final File file;
+    final Output out;
+    final RenderManifest manifest;
+
+    Page(Template template, Supplier<Object> scope, Inputs inputs, File file, Output out,
+        RenderManifest manifest) {
+      this.template = template;
+      this.scope = scope;
+      this.inputs = inputs;
+      this.file = file;
+      this.out = out;
+      this.manifest = manifest;
+    }
+
+    @Override protected void compute() {
+      if (manifest != null) {
+        Hasher hasher = HASH.newHasher().putString(template.hash, UTF_8);
+        putString(hasher, file.getAbsolutePath());
+        inputs.hash(hasher);
+        if (!manifest.update(file, hasher.hash().toString())) {
+          return;
+        }
+      }
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(out.open(file), UTF_8))) {
+        template.mustache.execute(writer, scope.get());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
-  private static void copyStaticToOutput(String resource, File output) {
-    InputStream is = null;
-    OutputStream os = null;
+  /**
+   * Puts everything a page's scope is created from into a hasher, which is much cheaper than
+   * creating the scope to hash it.
+   */
+  private interface Inputs {
+    void hash(Hasher hasher);
+  }
+
+  /** Writes {@code result.json}, unless rendering incrementally and it has not changed. */
+  static final class ResultJson extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    final Gson gson;
+    final SpoonSummary summary;
+    final Supplier<HashCode> hash;
+    final File file;
+    final Output out;
+    final RenderManifest manifest;
+
+    ResultJson(Gson gson, SpoonSummary summary, Supplier<HashCode> hash, File file, Output out,
+        RenderManifest manifest) {
+      this.gson = gson;
+      this.summary = summary;
+      this.hash = hash;
+      this.file = file;
+      this.out = out;
+      this.manifest = manifest;
+    }
+
+    /** Always writes {@code result.json} to {@code file}. */
+    ResultJson(Gson gson, SpoonSummary summary, File file, Output out) {
+      this(gson, summary, null, file, out, null);
+    }
+
+    @Override protected void compute() {
+      if (manifest != null && !manifest.update(file, hash.get().toString())) {
+        return;
+      }
+      try (Writer result = new BufferedWriter(new OutputStreamWriter(out.open(file), UTF_8))) {
+        gson.toJson(summary, result);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to write result.json file.", e);
+      }
+    }
+  }
+
+  /** A compiled page template and the hash of its source and of the templates it includes. */
+  static final class Template {
+    /** Matches a partial or parent template, such as {@code {{> birds-eye}}}. */
+    private static final Pattern INCLUDE = Pattern.compile("\\{\\{[<>]\\s*([^}\\s]+)\\s*}}");
+
+    final Mustache mustache;
+    final String hash;
+
+    Template(MustacheFactory factory, String name) {
+      this.mustache = factory.compile(name);
+      Hasher hasher = HASH.newHasher();
+      hashSource(hasher, name, new HashSet<>());
+      this.hash = hasher.hash().toString();
+    }
+
+    /** Hash the source of {@code name} and of each template it includes, each only once. */
+    private static void hashSource(Hasher hasher, String name, Set<String> hashed) {
+      if (!hashed.add(name)) {
+        return;
+      }
+      String source;
+      try {
+        source = Resources.toString(Resources.getResource(HtmlRenderer.class, "/" + name), UTF_8);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      putString(hasher, source);
+      // Included names are resolved as the mustache factory does: next to the template, with its
+      // extension unless they have one.
+      String directory = name.substring(0, name.lastIndexOf('/') + 1);
+      String extension = name.substring(name.lastIndexOf('.'));
+      Matcher include = INCLUDE.matcher(source);
+      while (include.find()) {
+        String included = include.group(1);
+        hashSource(hasher, directory + included + (included.contains(".") ? "" : extension),
+            hashed);
+      }
+    }
+  }
+
+  /**
+   * The page templates, compiled once and shared by every render. Compiled templates are thread
+   * safe.
+   */
+  static final class Templates {
+    private static final MustacheFactory FACTORY = new DefaultMustacheFactory();
+    static final Template TV = new Template(FACTORY, "page/tv.html");
+    static final Template TV_CHUNK = new Template(FACTORY, "page/tv-chunk.js");
+    static final Template INDEX = new Template(FACTORY, "page/index.html");
+    static final Template DEVICE = new Template(FACTORY, "page/device.html");
+    static final Template TEST = new Template(FACTORY, "page/test.html");
+    static final Template LOG = new Template(FACTORY, "page/log.html");
+    static final Template PAGED_LOG = new Template(FACTORY, "page/log-paged.html");
+    static final Template LOG_PAGE = new Template(FACTORY, "page/log-page.js");
+
+    private Templates() {
+      // No instances.
+    }
+  }
+
+  static void copyStatic(String resource, File file, Output out,
+      RenderManifest manifest) {
     try {
-      is = HtmlRenderer.class.getResourceAsStream("/static/" + resource);
-      os = new FileOutputStream(new File(output, resource));
-      IOUtils.copy(is, os);
+      byte[] bytes = Resources.toByteArray(
+          Resources.getResource(HtmlRenderer.class, "/static/" + resource));
+      if (manifest == null || manifest.update(file, HASH.hashBytes(bytes).toString())) {
+        try (OutputStream stream = out.open(file)) {
+          stream.write(bytes);
+        }
+      }
     } catch (IOException e) {
-      throw new RuntimeException("Unable to copy static resource " + resource + " to " + output, e);
-    } finally {
-      IOUtils.closeQuietly(is);
-      IOUtils.closeQuietly(os);
+      throw new RuntimeException("Unable to copy static resource " + resource + " to " + file, e);
     }
   }
+
+  /** Where rendered files are written. */
+  interface Output {
+    OutputStream open(File file) throws IOException;
+  }
 }
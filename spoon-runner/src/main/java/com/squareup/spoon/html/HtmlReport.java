@@ -0,0 +1,111 @@
+package com.squareup.spoon.html;
+
+import com.squareup.spoon.DeviceDetails;
+import com.squareup.spoon.DeviceResult;
+import com.squareup.spoon.DeviceTest;
+import com.squareup.spoon.DeviceTestResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.squareup.spoon.DeviceTestResult.Status;
+
+/**
+ * Model for the index data of the single-page report. Devices and tests are listed in the order of
+ * their data files, so the page finds a device's or test's data by its position.
+ */
+final class HtmlReport {
+  static HtmlReport from(HtmlIndex index, List<Map.Entry<String, DeviceResult>> results,
+      List<DeviceTest> tests, int testsPerChunk) {
+    List<Device> devices = new ArrayList<>(results.size());
+    for (Map.Entry<String, DeviceResult> result : results) {
+      devices.add(Device.from(result.getKey(), result.getValue()));
+    }
+    List<Test> testList = new ArrayList<>(tests.size());
+    for (DeviceTest test : tests) {
+      testList.add(Test.from(test, results));
+    }
+    return new HtmlReport(index.title, index.subtitle, devices, testList, testsPerChunk);
+  }
+
+  public final String title;
+  public final String subtitle;
+  public final List<Device> devices;
+  public final List<Test> tests;
+  public final int testsPerChunk;
+
+  HtmlReport(String title, String subtitle, List<Device> devices, List<Test> tests,
+      int testsPerChunk) {
+    this.title = title;
+    this.subtitle = subtitle;
+    this.devices = devices;
+    this.tests = tests;
+    this.testsPerChunk = testsPerChunk;
+  }
+
+  static final class Device {
+    static Device from(String serial, DeviceResult result) {
+      int passed = 0;
+      for (DeviceTestResult testResult : result.getTestResults().values()) {
+        if (testResult.getStatus() == Status.PASS) {
+          passed += 1;
+        }
+      }
+      int failed = result.getTestResults().size() - passed;
+      DeviceDetails details = result.getDeviceDetails();
+      String name = (details != null) ? details.getName() : serial;
+      boolean executionFailed =
+          result.getTestResults().isEmpty() && !result.getExceptions().isEmpty();
+      return new Device(serial, name, passed, failed, executionFailed);
+    }
+
+    public final String serial;
+    public final String name;
+    public final int passed;
+    public final int failed;
+    public final boolean executionFailed;
+
+    Device(String serial, String name, int passed, int failed, boolean executionFailed) {
+      this.serial = serial;
+      this.name = name;
+      this.passed = passed;
+      this.failed = failed;
+      this.executionFailed = executionFailed;
+    }
+  }
+
+  static final class Test {
+    static Test from(DeviceTest test, List<Map.Entry<String, DeviceResult>> results) {
+      int passed = 0;
+      int failed = 0;
+      for (Map.Entry<String, DeviceResult> result : results) {
+        DeviceTestResult testResult = result.getValue().getTestResults().get(test);
+        if (testResult == null) {
+          continue;
+        }
+        if (testResult.getStatus() == Status.PASS) {
+          passed += 1;
+        } else {
+          failed += 1;
+        }
+      }
+      String className = test.getClassName();
+      return new Test(className, test.getMethodName(), HtmlUtils.getClassSimpleName(className),
+          passed, failed);
+    }
+
+    public final String className;
+    public final String methodName;
+    public final String classSimpleName;
+    public final int passed;
+    public final int failed;
+
+    Test(String className, String methodName, String classSimpleName, int passed, int failed) {
+      this.className = className;
+      this.methodName = methodName;
+      this.classSimpleName = classSimpleName;
+      this.passed = passed;
+      this.failed = failed;
+    }
+  }
+}
@@ -0,0 +1,356 @@
+package com.squareup.spoon.html;
+
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.squareup.spoon.DeviceDetails;
+import com.squareup.spoon.DeviceResult;
+import com.squareup.spoon.DeviceTest;
+import com.squareup.spoon.DeviceTestResult;
+import com.squareup.spoon.SpoonSummary;
+import com.squareup.spoon.TestHistory;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.squareup.spoon.SpoonLogger.logError;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serves the report of a {@link SpoonSummary} over HTTP, rendering each page when it is first
+ * requested rather than every page up front as {@link HtmlRenderer} does. Pages have the same
+ * paths as in the static report, and the artifacts they link to are served from the output
+ * directory.
+ * <p>
+ * Rendered pages are kept in a cache of at most {@link #CACHE_BYTES} which evicts the least
+ * recently used. Every response has an entity tag so browsers can revalidate what they have.
+ */
+public final class HtmlServer implements Closeable {
+  static final long CACHE_BYTES = 64 * 1024 * 1024;
+
+  private static final String NO_CACHE = "no-cache";
+  /** Static assets only change with Spoon itself. */
+  private static final String STATIC_CACHE = "max-age=3600";
+
+  private final SpoonSummary summary;
+  private final File output;
+  private final TestHistory history;
+  /** Tests by their class and method name. */
+  private final Map<String, DeviceTest> tests = new HashMap<>();
+  private final Set<String> staticAssets;
+  /** The devices and tests the TV page shows, worked out once for it and all of its chunks. */
+  private final Supplier<List<HtmlTv.Device>> tvDevices;
+  private final Cache<String, Response> cache = CacheBuilder.newBuilder()
+      .maximumWeight(CACHE_BYTES)
+      .<String, Response>weigher((path, response) -> response.body.length)
+      .build();
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /** Serve with each test page showing the test's outcomes in {@code history}, if not null. */
+  public HtmlServer(SpoonSummary summary, File output, TestHistory history) {
+    this.summary = summary;
+    this.output = output;
+    this.history = history;
+    for (DeviceTest test : summary.getTests()) {
+      tests.put(test.getClassName() + '#' + test.getMethodName(), test);
+    }
+    this.staticAssets = new HashSet<>(Arrays.asList(HtmlRenderer.STATIC_ASSETS));
+    this.tvDevices = Suppliers.memoize(() -> HtmlTv.devices(summary));
+  }
+
+  /** Start serving on {@code port} of the loopback address, or any free port if it is 0. */
+  public void start(int port) throws IOException {
+    checkState(server == null, "Already started.");
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /** The port being served on. */
+  public int getPort() {
+    checkState(server != null, "Not started.");
+    return server.getAddress().getPort();
+  }
+
+  @Override public void close() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdown();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+      if (!method.equals("GET") && !method.equals("HEAD")) {
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      String path = exchange.getRequestURI().getPath().replaceFirst("^/+", "");
+      if (path.isEmpty()) {
+        path = HtmlRenderer.INDEX_FILENAME;
+      }
+
+      Response response;
+      try {
+        response = page(path);
+        if (response == null) {
+          response = artifact(path);
+        }
+      } catch (IOException | RuntimeException e) {
+        // The details are only logged, since they can reveal paths and contents of the results.
+        logError("Unable to serve /%s: %s", path, Throwables.getStackTraceAsString(e));
+        sendText(exchange, 500, "Internal server error");
+        return;
+      }
+      if (response == null) {
+        sendText(exchange, 404, "Not found: /" + path);
+        return;
+      }
+
+      Headers headers = exchange.getResponseHeaders();
+      headers.set("ETag", response.etag);
+      headers.set("Cache-Control", response.cacheControl);
+      if (response.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+      headers.set("Content-Type", contentType(path));
+      if (response.file != null) {
+        send(exchange, response.file);
+      } else {
+        send(exchange, 200, response.body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** The rendered page or static asset at {@code path}, or null if there is none. */
+  private Response page(String path) throws IOException {
+    Supplier<Response> render = route(path);
+    if (render == null) {
+      return null;
+    }
+    try {
+      return cache.get(path, render::get);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IOException("Unable to render " + path, e.getCause());
+    }
+  }
+
+  /** How to produce the page or static asset at {@code path}, or null if there is none. */
+  private Supplier<Response> route(String path) {
+    List<String> parts = Arrays.asList(path.split("/", -1));
+    if (path.equals(HtmlRenderer.INDEX_FILENAME)) {
+      return render(HtmlRenderer.Templates.INDEX, () -> HtmlIndex.from(summary));
+    }
+    if (path.equals("tv.html")) {
+      return render(HtmlRenderer.Templates.TV, () -> HtmlTv.from(summary, tvDevices.get()));
+    }
+    if (parts.size() == 2 && parts.get(0).equals("tv") && parts.get(1).matches("\\d{1,9}\\.js")) {
+      int number = Integer.parseInt(stripExtension(parts.get(1)));
+      return number >= HtmlTv.chunkCount(tvDevices.get()) ? null
+          : render(HtmlRenderer.Templates.TV_CHUNK,
+              () -> HtmlTv.Chunk.from(tvDevices.get(), output, number));
+    }
+    if (parts.size() == 2 && parts.get(0).equals(HtmlRenderer.STATIC_DIRECTORY)
+        && staticAssets.contains(parts.get(1))) {
+      return () -> {
+        try {
+          byte[] bytes = Resources.toByteArray(
+              Resources.getResource(HtmlServer.class, "/static/" + parts.get(1)));
+          return new Response(bytes, STATIC_CACHE);
+        } catch (IOException e) {
+          throw new RuntimeException("Unable to read static resource " + path, e);
+        }
+      };
+    }
+    if (parts.size() == 2 && parts.get(0).equals("device") && parts.get(1).endsWith(".html")) {
+      String serial = stripExtension(parts.get(1));
+      DeviceResult result = summary.getResults().get(serial);
+      return (result == null) ? null
+          : render(HtmlRenderer.Templates.DEVICE, () -> HtmlDevice.from(serial, result, output));
+    }
+    if (parts.size() == 3 && parts.get(0).equals("test") && parts.get(2).endsWith(".html")) {
+      DeviceTest test = tests.get(parts.get(1) + '#' + stripExtension(parts.get(2)));
+      return (test == null) ? null
+          : render(HtmlRenderer.Templates.TEST,
+              () -> HtmlTest.from(test, summary, output, history));
+    }
+    if ((parts.size() == 4 || parts.size() == 5) && parts.get(0).equals("logs")) {
+      return log(parts);
+    }
+    return null;
+  }
+
+  /**
+   * A test's log page, {@code logs/<serial>/<class>/<method>.html}, or a page of the entries of a
+   * long log, {@code logs/<serial>/<class>/<method>/<page>.js}.
+   */
+  private Supplier<Response> log(List<String> parts) {
+    String serial = parts.get(1);
+    DeviceResult result = summary.getResults().get(serial);
+    boolean page = parts.size() == 5;
+    String methodName = page ? parts.get(3) : stripExtension(parts.get(3));
+    DeviceTest test = tests.get(parts.get(2) + '#' + methodName);
+    DeviceTestResult testResult =
+        (result != null && test != null) ? result.getTestResults().get(test) : null;
+    if (testResult == null) {
+      return null;
+    }
+    if (page) {
+      if (!HtmlPagedLog.isPaged(testResult) || !parts.get(4).matches("\\d{1,9}\\.js")) {
+        return null;
+      }
+      int number = Integer.parseInt(stripExtension(parts.get(4)));
+      return number >= HtmlPagedLog.pageCount(testResult) ? null
+          : render(HtmlRenderer.Templates.LOG_PAGE,
+              () -> HtmlPagedLog.Page.from(testResult, number));
+    }
+    if (!parts.get(3).endsWith(".html")) {
+      return null;
+    }
+    DeviceDetails details = result.getDeviceDetails();
+    String name = (details != null) ? details.getName() : serial;
+    if (HtmlPagedLog.isPaged(testResult)) {
+      return render(HtmlRenderer.Templates.PAGED_LOG,
+          () -> HtmlPagedLog.from(name, test, testResult));
+    }
+    return render(HtmlRenderer.Templates.LOG, () -> HtmlLog.from(name, test, testResult));
+  }
+
+  private static Supplier<Response> render(HtmlRenderer.Template template,
+      Supplier<Object> scope) {
+    return () -> {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (Writer writer = new OutputStreamWriter(bytes, UTF_8)) {
+        template.mustache.execute(writer, scope.get());
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      return new Response(bytes.toByteArray(), NO_CACHE);
+    };
+  }
+
+  /** A file of the output directory, such as a screenshot, or null if there is none. */
+  private Response artifact(String path) throws IOException {
+    Path root = output.getCanonicalFile().toPath();
+    File file = root.resolve(path).toFile().getCanonicalFile();
+    if (!file.toPath().startsWith(root) || !file.isFile()) {
+      return null;
+    }
+    String etag = '"' + Long.toHexString(file.length()) + '-'
+        + Long.toHexString(file.lastModified()) + '"';
+    return new Response(file, etag);
+  }
+
+  private static void sendText(HttpExchange exchange, int status, String text)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    send(exchange, status, text.getBytes(UTF_8));
+  }
+
+  private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    boolean head = exchange.getRequestMethod().equals("HEAD");
+    exchange.sendResponseHeaders(status, head ? -1 : body.length);
+    if (!head) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private static void send(HttpExchange exchange, File file) throws IOException {
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      exchange.getResponseHeaders().set("Content-Length", Long.toString(file.length()));
+      exchange.sendResponseHeaders(200, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(200, file.length());
+    try (OutputStream out = exchange.getResponseBody()) {
+      Files.copy(file.toPath(), out);
+    }
+  }
+
+  private static String stripExtension(String name) {
+    int dot = name.lastIndexOf('.');
+    return (dot > 0) ? name.substring(0, dot) : name;
+  }
+
+  static String contentType(String path) {
+    String extension = path.substring(path.lastIndexOf('.') + 1);
+    switch (extension) {
+      case "html":
+        return "text/html; charset=utf-8";
+      case "css":
+        return "text/css; charset=utf-8";
+      case "js":
+        return "application/javascript; charset=utf-8";
+      case "json":
+        return "application/json; charset=utf-8";
+      case "png":
+        return "image/png";
+      case "gif":
+        return "image/gif";
+      case "jpg":
+      case "jpeg":
+        return "image/jpeg";
+      case "txt":
+        return "text/plain; charset=utf-8";
+      default:
+        return "application/octet-stream";
+    }
+  }
+
+  /** A rendered page or static asset held in memory, or a file of the output directory. */
+  private static final class Response {
+    final byte[] body;
+    final File file;
+    final String etag;
+    final String cacheControl;
+
+    Response(byte[] body, String cacheControl) {
+      this.body = body;
+      this.file = null;
+      this.etag = '"' + HtmlRenderer.HASH.hashBytes(body).toString() + '"';
+      this.cacheControl = cacheControl;
+    }
+
+    Response(File file, String etag) {
+      this.body = null;
+      this.file = file;
+      this.etag = etag;
+      this.cacheControl = NO_CACHE;
+    }
+  }
+}
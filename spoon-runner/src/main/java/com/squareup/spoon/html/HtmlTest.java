@@ -4,9 +4,12 @@ import com.squareup.spoon.DeviceDetails;
 import com.squareup.spoon.DeviceResult;
 import com.squareup.spoon.DeviceTest;
 import com.squareup.spoon.DeviceTestResult;
+import com.squareup.spoon.ScreenshotDiff;
 import com.squareup.spoon.SpoonSummary;
+import com.squareup.spoon.TestHistory;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -15,10 +18,16 @@ import static java.util.stream.Collectors.toList;
 
 /** Model for representing a {@code test.html} page. */
 final class HtmlTest {
-  public static HtmlTest from(DeviceTest test, SpoonSummary summary, File output) {
+  /** Number of recent outcomes shown in a test's history. */
+  static final int HISTORY_OUTCOMES = 50;
+
+  public static HtmlTest from(DeviceTest test, SpoonSummary summary, File output,
+      TestHistory history) {
     int deviceCount = 0;
     int testsPassed = 0;
-    int duration = 0;
+    long duration = 0;
+    int screenshotsChanged = 0;
+    int screenshotsUnchanged = 0;
     List<TestResult> devices = new ArrayList<>();
     for (Map.Entry<String, DeviceResult> entry : summary.getResults().entrySet()) {
       DeviceResult deviceResult = entry.getValue();
@@ -29,6 +38,13 @@ final class HtmlTest {
           testsPassed += 1;
           duration += testResult.getDuration();
         }
+        for (ScreenshotDiff diff : testResult.getScreenshotDiffs().values()) {
+          if (diff.isChanged()) {
+            screenshotsChanged += 1;
+          } else {
+            screenshotsUnchanged += 1;
+          }
+        }
         String serial = entry.getKey();
         DeviceDetails details = deviceResult.getDeviceDetails();
         String name = (details != null) ? details.getName() : serial;
@@ -52,11 +68,18 @@ final class HtmlTest {
       subtitle.append(" in an average of ")
         .append(HtmlUtils.humanReadableDuration(duration / testsPassed));
     }
+    String screenshotChanges =
+        HtmlUtils.screenshotChangesToString(screenshotsChanged, screenshotsUnchanged);
+    if (screenshotChanges != null) {
+      subtitle.append(". ").append(screenshotChanges);
+    }
 
     String className = test.getClassName();
     String methodName = test.getMethodName();
 
-    return new HtmlTest(title, subtitle.toString(), className, methodName, devices);
+    History testHistory = history != null ? History.from(test, history) : null;
+
+    return new HtmlTest(title, subtitle.toString(), className, methodName, devices, testHistory);
   }
 
   public final String title;
@@ -64,14 +87,39 @@ final class HtmlTest {
   public final String className;
   public final String methodName;
   public final List<TestResult> devices;
+  public final History history;
 
   HtmlTest(String title, String subtitle, String className, String methodName,
-      List<TestResult> devices) {
+      List<TestResult> devices, History history) {
     this.title = title;
     this.subtitle = subtitle;
     this.className = className;
     this.methodName = methodName;
     this.devices = devices;
+    this.history = history;
+  }
+
+  static final class History {
+    /** The test's recent outcomes, or null if it has none. */
+    static History from(DeviceTest test, TestHistory history) {
+      List<TestHistory.Outcome> outcomes = history.getLastOutcomes(test, HISTORY_OUTCOMES);
+      if (outcomes.isEmpty()) {
+        return null;
+      }
+      outcomes = new ArrayList<>(outcomes);
+      Collections.reverse(outcomes);
+      String sparkline = HtmlUtils.sparkline(outcomes);
+      String summary = HtmlUtils.historyToString(history.getStats(test, HISTORY_OUTCOMES));
+      return new History(sparkline, summary);
+    }
+
+    public final String sparkline;
+    public final String summary;
+
+    History(String sparkline, String summary) {
+      this.sparkline = sparkline;
+      this.summary = summary;
+    }
   }
 
   static final class TestResult implements Comparable<TestResult> {
@@ -80,7 +128,7 @@ final class HtmlTest {
 
       List<HtmlUtils.Screenshot> screenshots = result.getScreenshots()
           .stream()
-          .map(screenshot -> HtmlUtils.getScreenshot(screenshot, output))
+          .map(screenshot -> HtmlUtils.getScreenshot(screenshot, result, output))
           .collect(toList());
       String animatedGif = HtmlUtils.createRelativeUri(result.getAnimatedGif(), output);
       HtmlUtils.ExceptionInfo exception = HtmlUtils.processStackTrace(result.getException());
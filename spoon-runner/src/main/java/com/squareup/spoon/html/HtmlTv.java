@@ -3,76 +3,104 @@ package com.squareup.spoon.html;
 import com.google.gson.Gson;
 import com.squareup.spoon.DeviceDetails;
 import com.squareup.spoon.DeviceResult;
+import com.squareup.spoon.DeviceTest;
 import com.squareup.spoon.DeviceTestResult;
 import com.squareup.spoon.SpoonSummary;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
 
-/** Model for representing the {@code tv.html} page. */
+/**
+ * Model for representing the {@code tv.html} page. The page only holds the devices and how many
+ * tests each shows. The tests and their screenshots are written as separate chunks of
+ * {@link #CHUNK_SIZE} tests which the page loads as the slideshow reaches them.
+ */
 final class HtmlTv {
-  static HtmlTv from(Gson gson, SpoonSummary summary, File outputPath) {
-    String testDate = HtmlUtils.dateToTvString(summary.getStarted());
-    String title = summary.getTitle();
-    String duration = HtmlUtils.humanReadableDuration(summary.getDuration());
+  static final int CHUNK_SIZE = 100;
 
-    List<Device> devices = summary.getResults()
+  /** Default escaping keeps {@code </script>} out of the index embedded in the page. */
+  private static final Gson GSON = new Gson();
+
+  /** The devices in the order they are shown, with the tests which have screenshots. */
+  static List<Device> devices(SpoonSummary summary) {
+    return summary.getResults()
         .entrySet()
         .stream()
-        .map(result -> Device.from(result.getKey(), result.getValue(), outputPath))
+        .map(result -> Device.from(result.getKey(), result.getValue()))
         .sorted()
         .collect(Collectors.toList());
+  }
+
+  static int chunkCount(List<Device> devices) {
+    return (testCount(devices) + CHUNK_SIZE - 1) / CHUNK_SIZE;
+  }
+
+  static HtmlTv from(SpoonSummary summary, List<Device> devices) {
+    String testDate = HtmlUtils.dateToTvString(summary.getStarted());
+    String title = summary.getTitle();
+    String duration = HtmlUtils.humanReadableDuration(summary.getDuration());
 
-    return new HtmlTv(gson, title, testDate, duration, devices);
+    List<Index.Device> indexDevices = new ArrayList<>(devices.size());
+    for (Device device : devices) {
+      indexDevices.add(new Index.Device(device.name, device.details, device.tests.size()));
+    }
+    Index index = new Index(testCount(devices), indexDevices);
+    return new HtmlTv(title, testDate, duration, GSON.toJson(index));
+  }
+
+  private static int testCount(List<Device> devices) {
+    int count = 0;
+    for (Device device : devices) {
+      count += device.tests.size();
+    }
+    return count;
   }
 
   public final String title;
   public final String testDate;
   public final String duration;
-  public final String outputJson;
+  /** The {@link Index} as JSON. */
+  public final String index;
 
-  HtmlTv(Gson gson, String title, String testDate, String duration, List<Device> devices) {
+  HtmlTv(String title, String testDate, String duration, String index) {
     this.title = title;
     this.testDate = testDate;
     this.duration = duration;
-    this.outputJson = gson.toJson(devices);
+    this.index = index;
   }
 
+  /** A device and the tests of it which are shown. */
   static final class Device implements Comparable<Device> {
-    static Device from(String serial, DeviceResult result, File outputPath) {
-      List<TestResult> testResults = result.getTestResults()
+    static Device from(String serial, DeviceResult result) {
+      List<Map.Entry<DeviceTest, DeviceTestResult>> tests = result.getTestResults()
           .entrySet()
           .stream()
           // Only add tests where we have screenshots.
           .filter(entry -> !entry.getValue().getScreenshots().isEmpty())
-          .map(entry -> {
-            String classSimpleName = HtmlUtils.getClassSimpleName(entry.getKey().getClassName());
-            String prettyMethodName = entry.getKey().getMethodName();
-
-            return TestResult.from(serial, classSimpleName, prettyMethodName, entry.getValue(),
-                    outputPath);
-          })
           .collect(toList());
 
       DeviceDetails deviceDetails = result.getDeviceDetails();
       String name = (deviceDetails != null) ? deviceDetails.getName() : serial;
       String details = HtmlUtils.deviceDetailsToString(deviceDetails);
 
-      return new Device(serial, name, details, testResults);
+      return new Device(serial, name, details, tests);
     }
 
-    public final String serial;
-    public final String name;
-    public final String details;
-    public final List<TestResult> testResults;
+    final String serial;
+    final String name;
+    final String details;
+    final List<Map.Entry<DeviceTest, DeviceTestResult>> tests;
 
-    Device(String serial, String name, String details, List<TestResult> testResults) {
+    Device(String serial, String name, String details,
+        List<Map.Entry<DeviceTest, DeviceTestResult>> tests) {
       this.serial = serial;
       this.name = name;
       this.details = details;
-      this.testResults = testResults;
+      this.tests = tests;
     }
 
     @Override public int compareTo(Device other) {
@@ -93,35 +121,109 @@ final class HtmlTv {
     }
   }
 
-  static final class TestResult implements Comparable<TestResult> {
-    static TestResult from(String serial, String className, String name, DeviceTestResult result,
-        File output) {
-      String status = HtmlUtils.getStatusCssClass(result);
+  /** The devices shown and how many tests are shown for each, in order. */
+  static final class Index {
+    final int chunkSize = CHUNK_SIZE;
+    final int count;
+    final List<Device> devices;
+
+    Index(int count, List<Device> devices) {
+      this.count = count;
+      this.devices = devices;
+    }
+
+    static final class Device {
+      final String name;
+      final String details;
+      final int tests;
 
-      List<HtmlUtils.Screenshot> screenshots = result.getScreenshots()
+      Device(String name, String details, int tests) {
+        this.name = name;
+        this.details = details;
+        this.tests = tests;
+      }
+    }
+  }
+
+  /** Model for a chunk of the tests shown, numbered across every device in the order shown. */
+  static final class Chunk {
+    static Chunk from(List<Device> devices, File output, int number) {
+      List<TestResult> tests = new ArrayList<>(CHUNK_SIZE);
+      forEachTest(devices, number,
+          (device, test, result) -> tests.add(TestResult.from(device, test, result, output)));
+      return new Chunk(number, GSON.toJson(tests));
+    }
+
+    /** Call {@code action} with each test of chunk {@code number} and its device's index. */
+    static void forEachTest(List<Device> devices, int number, TestAction action) {
+      int start = number * CHUNK_SIZE;
+      int end = start + CHUNK_SIZE;
+      int position = 0;
+      for (int i = 0; i < devices.size() && position < end; i++) {
+        Device device = devices.get(i);
+        int size = device.tests.size();
+        if (position + size > start) {
+          int from = Math.max(0, start - position);
+          int to = Math.min(size, end - position);
+          for (Map.Entry<DeviceTest, DeviceTestResult> entry : device.tests.subList(from, to)) {
+            action.accept(i, entry.getKey(), entry.getValue());
+          }
+        }
+        position += size;
+      }
+    }
+
+    interface TestAction {
+      void accept(int device, DeviceTest test, DeviceTestResult result);
+    }
+
+    public final int number;
+    /** The chunk's {@link TestResult}s as JSON. */
+    public final String tests;
+
+    Chunk(int number, String tests) {
+      this.number = number;
+      this.tests = tests;
+    }
+  }
+
+  static final class TestResult {
+    static TestResult from(int device, DeviceTest test, DeviceTestResult result, File output) {
+      String status = HtmlUtils.getStatusCssClass(result);
+      List<Screenshot> screenshots = result.getScreenshots()
           .stream()
-          .map(screenshot -> HtmlUtils.getScreenshot(screenshot, output))
+          .map(screenshot -> new Screenshot(HtmlUtils.createRelativeUri(screenshot, output),
+              screenshot.getName()))
           .collect(toList());
-      return new TestResult(className, name, serial, status, screenshots);
+      return new TestResult(device, HtmlUtils.getClassSimpleName(test.getClassName()),
+          test.getMethodName(), status, screenshots);
     }
 
-    public final String classSimpleName;
-    public final String methodPrettyName;
-    public final String serial;
-    public final String status;
-    public final List<HtmlUtils.Screenshot> screenshots;
-
-    TestResult(String className, String methodPrettyName, String serial, String status,
-        List<HtmlUtils.Screenshot> screenshots) {
-      this.classSimpleName = className;
+    /** The position of the test's device in the {@link Index}. */
+    final int device;
+    final String classSimpleName;
+    final String methodPrettyName;
+    final String status;
+    final List<Screenshot> screenshots;
+
+    TestResult(int device, String classSimpleName, String methodPrettyName, String status,
+        List<Screenshot> screenshots) {
+      this.device = device;
+      this.classSimpleName = classSimpleName;
       this.methodPrettyName = methodPrettyName;
-      this.serial = serial;
       this.status = status;
       this.screenshots = screenshots;
     }
+  }
+
+  /** Only what a slide needs, leaving out the thumbnails and diffs the other pages show. */
+  static final class Screenshot {
+    final String path;
+    final String caption;
 
-    @Override public int compareTo(TestResult other) {
-      return methodPrettyName.compareTo(other.methodPrettyName);
+    Screenshot(String path, String caption) {
+      this.path = path;
+      this.caption = caption;
     }
   }
 }
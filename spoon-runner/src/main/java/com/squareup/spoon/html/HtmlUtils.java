@@ -1,15 +1,20 @@
 package com.squareup.spoon.html;
 
 import com.squareup.spoon.DeviceDetails;
+import com.squareup.spoon.DeviceResult;
 import com.squareup.spoon.DeviceTestResult;
+import com.squareup.spoon.ScreenshotDiff;
+import com.squareup.spoon.TestHistory;
 import com.squareup.spoon.misc.StackTrace;
 import java.io.File;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.text.Format;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.StringEscapeUtils;
 
@@ -18,6 +23,9 @@ import static java.util.stream.Collectors.toList;
 /** Utilities for representing the execution in HTML. */
 final class HtmlUtils {
   private static final String INVALID_ID_CHARS = "[^a-zA-Z0-9]";
+  private static final int SPARKLINE_WIDTH = 150;
+  private static final int SPARKLINE_HEIGHT = 30;
+  private static final int SPARKLINE_PADDING = 3;
   // TODO use local date/time format instances instead?
   private static final ThreadLocal<Format> DATE_FORMAT =
       ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd hh:mm a", Locale.US));
@@ -115,10 +123,100 @@ final class HtmlUtils {
   }
 
   /** Get a HTML representation of a screenshot with respect to {@code output} directory. */
-  static Screenshot getScreenshot(File screenshot, File output) {
+  static Screenshot getScreenshot(File screenshot, DeviceTestResult result, File output) {
     String relativePath = createRelativeUri(screenshot, output);
+    File thumbnail = result.getThumbnails().get(screenshot);
+    String thumbnailPath = thumbnail != null ? createRelativeUri(thumbnail, output) : relativePath;
+    ScreenshotDiff diff = result.getScreenshotDiffs().get(screenshot);
+    String diffPath = diff != null ? createRelativeUri(diff.getDiffImage(), output) : null;
     String caption = screenshot.getName();
-    return new Screenshot(relativePath, caption);
+    return new Screenshot(relativePath, thumbnailPath, diffPath, caption);
+  }
+
+  /** Describe how many screenshots visibly changed from the baseline run, if any were compared. */
+  static String screenshotChangesToString(int changed, int unchanged) {
+    int compared = changed + unchanged;
+    if (compared == 0) {
+      return null;
+    }
+    return changed + " of " + compared + " screenshot" + (compared != 1 ? "s" : "")
+        + " changed from the baseline";
+  }
+
+  /** Describe how long each phase of a device's run took, or null if none were recorded. */
+  static String phaseDurationsToString(Map<DeviceResult.Phase, Long> phaseDurations) {
+    if (phaseDurations.isEmpty()) {
+      return null;
+    }
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<DeviceResult.Phase, Long> entry : phaseDurations.entrySet()) {
+      if (builder.length() > 0) {
+        builder.append("; ");
+      }
+      String phase = entry.getKey().name().toLowerCase(Locale.US).replace('_', ' ');
+      if (builder.length() == 0) {
+        phase = Character.toUpperCase(phase.charAt(0)) + phase.substring(1);
+      }
+      builder.append(phase).append(": ").append(humanReadableDuration(entry.getValue()));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Describe a test's recent outcomes, or null if there are none. Each device of a run has its own
+   * outcome.
+   */
+  static String historyToString(TestHistory.Stats stats) {
+    if (stats.getOutcomes() == 0) {
+      return null;
+    }
+    StringBuilder builder = new StringBuilder();
+    builder.append("Last ")
+        .append(stats.getOutcomes())
+        .append(" outcome")
+        .append(stats.getOutcomes() != 1 ? "s" : "")
+        .append(" on any device: ")
+        .append(Math.round(stats.getFailureRate() * 100))
+        .append("% failed");
+    if (stats.getMedianDuration() != -1) {
+      builder.append(", median ")
+          .append(humanReadableDuration(stats.getMedianDuration()))
+          .append(", 95th percentile ")
+          .append(humanReadableDuration(stats.getP95Duration()));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Draw the durations of outcomes, oldest first, as an inline SVG line. Failures are marked with
+   * a red dot.
+   */
+  static String sparkline(List<TestHistory.Outcome> outcomes) {
+    int width = SPARKLINE_WIDTH - 2 * SPARKLINE_PADDING;
+    int height = SPARKLINE_HEIGHT - 2 * SPARKLINE_PADDING;
+    long max = 1;
+    for (TestHistory.Outcome outcome : outcomes) {
+      max = Math.max(max, outcome.getDuration());
+    }
+    StringBuilder points = new StringBuilder();
+    StringBuilder failures = new StringBuilder();
+    for (int i = 0; i < outcomes.size(); i++) {
+      TestHistory.Outcome outcome = outcomes.get(i);
+      long x = SPARKLINE_PADDING
+          + (outcomes.size() > 1 ? Math.round((double) i * width / (outcomes.size() - 1)) : 0);
+      long y = SPARKLINE_PADDING
+          + Math.round(height - (double) Math.max(outcome.getDuration(), 0) * height / max);
+      if (points.length() > 0) {
+        points.append(' ');
+      }
+      points.append(x).append(',').append(y);
+      if (outcome.getStatus() != DeviceTestResult.Status.PASS) {
+        failures.append("<circle cx=\"").append(x).append("\" cy=\"").append(y)
+            .append("\" r=\"2\" class=\"failure\"/>");
+      }
+    }
+    return "<svg class=\"sparkline\" width=\"" + SPARKLINE_WIDTH + "\" height=\""
+        + SPARKLINE_HEIGHT + "\"><polyline points=\"" + points + "\"/>" + failures + "</svg>";
   }
 
   public static HtmlUtils.SavedFile getFile(File file, File output) {
@@ -151,9 +249,21 @@ final class HtmlUtils {
     return new ExceptionInfo(message, lines);
   }
 
-  static String humanReadableDuration(long length) {
-    long minutes = length / 60;
-    long seconds = length - (minutes * 60);
+  /**
+   * Describe a duration given in milliseconds. Durations of less than a second are shown in
+   * milliseconds and those of less than a minute with two decimals of their seconds.
+   */
+  static String humanReadableDuration(long millis) {
+    if (millis < 1000) {
+      return millis + " millisecond" + (millis != 1 ? "s" : "");
+    }
+    if (millis < 60_000) {
+      BigDecimal seconds = BigDecimal.valueOf(millis / 10, 2).stripTrailingZeros();
+      boolean plural = seconds.compareTo(BigDecimal.ONE) != 0;
+      return seconds.toPlainString() + " second" + (plural ? "s" : "");
+    }
+    long minutes = millis / 60_000;
+    long seconds = millis / 1000 - (minutes * 60);
     StringBuilder builder = new StringBuilder();
     if (minutes != 0) {
       builder.append(minutes).append(" minute");
@@ -178,11 +288,15 @@ final class HtmlUtils {
 
     public final long id;
     public final String path;
+    public final String thumbnailPath;
+    public final String diffPath;
     public final String caption;
 
-    Screenshot(String path, String caption) {
+    Screenshot(String path, String thumbnailPath, String diffPath, String caption) {
       this.id = ID.getAndIncrement();
       this.path = path;
+      this.thumbnailPath = thumbnailPath;
+      this.diffPath = diffPath;
       this.caption = caption;
     }
   }
@@ -0,0 +1,95 @@
+package com.squareup.spoon.html;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The hash of the inputs of every file written by a render, keyed by its path relative to the
+ * output directory. A later render into the same directory uses it to skip the files whose inputs
+ * have not changed and to delete those it no longer writes.
+ * <p>
+ * Stored as one {@code <hash> <path>} line per file.
+ */
+final class RenderManifest {
+  static final String FILE_NAME = "render.manifest";
+
+  private final File output;
+  private final Map<String, String> previous;
+  private final Map<String, String> current = new ConcurrentHashMap<>();
+
+  private RenderManifest(File output, Map<String, String> previous) {
+    this.output = output;
+    this.previous = previous;
+  }
+
+  /** A manifest which skips nothing, as for a first render. */
+  static RenderManifest empty(File output) {
+    return new RenderManifest(output, Collections.emptyMap());
+  }
+
+  /** A manifest which skips what the last render into {@code output} wrote, if anything. */
+  static RenderManifest read(File output) throws IOException {
+    File file = new File(output, FILE_NAME);
+    if (!file.isFile()) {
+      return empty(output);
+    }
+    Map<String, String> previous = new HashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int space = line.indexOf(' ');
+        if (space > 0) {
+          previous.put(line.substring(space + 1), line.substring(0, space));
+        }
+      }
+    }
+    return new RenderManifest(output, previous);
+  }
+
+  /**
+   * Record that {@code file} has inputs hashing to {@code hash}, returning false if the file is
+   * already up to date and need not be written. Safe to call from several threads.
+   */
+  boolean update(File file, String hash) {
+    String path = relativePath(file);
+    current.put(path, hash);
+    return !hash.equals(previous.get(path)) || !file.isFile();
+  }
+
+  /** Delete the files which the last render wrote but this one did not, then save the manifest. */
+  void commit() throws IOException {
+    for (String path : previous.keySet()) {
+      if (!current.containsKey(path)) {
+        Files.deleteIfExists(output.toPath().resolve(path));
+      }
+    }
+
+    Path file = new File(output, FILE_NAME).toPath();
+    Path temp = new File(output, FILE_NAME + ".tmp").toPath();
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, UTF_8)) {
+      for (Map.Entry<String, String> entry : new TreeMap<>(current).entrySet()) {
+        writer.write(entry.getValue());
+        writer.write(' ');
+        writer.write(entry.getKey());
+        writer.write('\n');
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private String relativePath(File file) {
+    return output.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+  }
+}
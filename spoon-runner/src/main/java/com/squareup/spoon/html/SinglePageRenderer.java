@@ -0,0 +1,205 @@
+package com.squareup.spoon.html;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.google.gson.Gson;
+import com.squareup.spoon.DeviceDetails;
+import com.squareup.spoon.DeviceResult;
+import com.squareup.spoon.DeviceTest;
+import com.squareup.spoon.DeviceTestResult;
+import com.squareup.spoon.SpoonSummary;
+import com.squareup.spoon.TestHistory;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Renders a {@link com.squareup.spoon.SpoonSummary} as a single page which loads the results from
+ * compressed JSON data files as they are viewed, rather than as a static page per device, test and
+ * log. A run is written as a file per device plus one per chunk of tests and of each device's
+ * logs, which is far quicker to write, upload and serve from artifact storage for large runs.
+ * Logs too long for one file are written as pages of entries, as in the static report.
+ * <p>
+ * The data files are gzipped and decompressed by the page itself, so the report must be served
+ * over HTTP rather than opened from the file system.
+ */
+public final class SinglePageRenderer {
+  static final String DATA_DIRECTORY = "data";
+  /** Number of tests whose pages, or a device's logs, are stored in each data file of them. */
+  static final int TESTS_PER_CHUNK = 250;
+
+  /** Assets used only by the single page, copied alongside those of the static report. */
+  private static final String[] APP_ASSETS = {"spoon-app.js"};
+  private static final Mustache APP = new DefaultMustacheFactory().compile("page/app.html");
+  /** Data files are only read by the page, so they are written compactly. */
+  private static final Gson DATA_GSON = new Gson();
+
+  private final SpoonSummary summary;
+  private final Gson gson;
+  private final File output;
+  private final TestHistory history;
+
+  /** Render with each test showing its outcomes in {@code history}, if not null. */
+  public SinglePageRenderer(SpoonSummary summary, Gson gson, File output, TestHistory history) {
+    this.summary = summary;
+    this.gson = gson;
+    this.output = output;
+    this.history = history;
+  }
+
+  public void render() {
+    HtmlIndex index = HtmlIndex.from(summary);
+    // Devices are ordered by name, as on the index page of the static report.
+    List<Map.Entry<String, DeviceResult>> results =
+        new ArrayList<>(summary.getResults().entrySet());
+    results.sort(Comparator.comparing(
+        (Map.Entry<String, DeviceResult> entry) -> name(entry.getKey(), entry.getValue()))
+        .thenComparing(Map.Entry::getKey));
+    List<DeviceTest> tests = new ArrayList<>(summary.getTests());
+
+    File data = new File(output, DATA_DIRECTORY);
+    File statics = new File(output, HtmlRenderer.STATIC_DIRECTORY);
+    statics.mkdirs();
+    new File(data, "device").mkdirs();
+    new File(data, "test").mkdirs();
+
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    tasks.add(HtmlRenderer.copyStatics(HtmlRenderer.STATIC_ASSETS, statics, FileOutputStream::new,
+        null));
+    tasks.add(HtmlRenderer.copyStatics(APP_ASSETS, statics, FileOutputStream::new, null));
+    tasks.add(new HtmlRenderer.ResultJson(gson, summary, new File(output, "result.json"),
+        FileOutputStream::new));
+    tasks.add(ForkJoinTask.adapt(() -> writePage(index)));
+    tasks.add(data(new File(data, "index.json.gz"),
+        () -> HtmlReport.from(index, results, tests, TESTS_PER_CHUNK)));
+    for (int i = 0; i < results.size(); i++) {
+      String serial = results.get(i).getKey();
+      DeviceResult result = results.get(i).getValue();
+      tasks.add(data(FileUtils.getFile(data, "device", i + ".json.gz"),
+          () -> HtmlDevice.from(serial, result, output)));
+      addLogs(tasks, FileUtils.getFile(data, "log", String.valueOf(i)), serial, result);
+    }
+    for (int chunk = 0; chunk * TESTS_PER_CHUNK < tests.size(); chunk++) {
+      List<DeviceTest> chunkTests = tests.subList(chunk * TESTS_PER_CHUNK,
+          Math.min(tests.size(), (chunk + 1) * TESTS_PER_CHUNK));
+      tasks.add(data(FileUtils.getFile(data, "test", chunk + ".json.gz"), () -> {
+        List<HtmlTest> pages = new ArrayList<>(chunkTests.size());
+        for (DeviceTest test : chunkTests) {
+          pages.add(HtmlTest.from(test, summary, output, history));
+        }
+        return pages;
+      }));
+    }
+
+    HtmlRenderer.invoke(tasks);
+  }
+
+  /**
+   * Add the tasks which write the device's logs to {@code directory} in chunks, in the same order
+   * as the test results of its {@link HtmlDevice}. A long log is written as its
+   * {@link HtmlPagedLog.Index} in the chunk and its pages of entries in a directory of its own.
+   */
+  private static void addLogs(List<ForkJoinTask<?>> tasks, File directory, String serial,
+      DeviceResult result) {
+    String name = name(serial, result);
+    List<Map.Entry<DeviceTest, DeviceTestResult>> entries =
+        new ArrayList<>(result.getTestResults().entrySet());
+    directory.mkdirs();
+    for (int start = 0; start < entries.size(); start += TESTS_PER_CHUNK) {
+      List<Map.Entry<DeviceTest, DeviceTestResult>> chunk =
+          entries.subList(start, Math.min(entries.size(), start + TESTS_PER_CHUNK));
+      tasks.add(data(new File(directory, (start / TESTS_PER_CHUNK) + ".json.gz"), () -> {
+        List<Object> logs = new ArrayList<>(chunk.size());
+        for (Map.Entry<DeviceTest, DeviceTestResult> entry : chunk) {
+          logs.add(HtmlPagedLog.isPaged(entry.getValue())
+              ? PagedLog.from(name, entry.getKey(), entry.getValue())
+              : HtmlLog.from(name, entry.getKey(), entry.getValue()));
+        }
+        return logs;
+      }));
+    }
+    for (int i = 0; i < entries.size(); i++) {
+      DeviceTestResult testResult = entries.get(i).getValue();
+      if (!HtmlPagedLog.isPaged(testResult)) {
+        continue;
+      }
+      File pages = new File(directory, String.valueOf(i));
+      pages.mkdirs();
+      for (int page = 0; page < HtmlPagedLog.pageCount(testResult); page++) {
+        int number = page;
+        tasks.add(gzipped(new File(pages, number + ".json.gz"),
+            writer -> writer.write(HtmlPagedLog.Page.from(testResult, number).entries)));
+      }
+    }
+  }
+
+  private static String name(String serial, DeviceResult result) {
+    DeviceDetails details = result.getDeviceDetails();
+    return (details != null && details.getName() != null) ? details.getName() : serial;
+  }
+
+  private void writePage(HtmlIndex index) {
+    File file = new File(output, HtmlRenderer.INDEX_FILENAME);
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file), UTF_8))) {
+      APP.execute(writer, index);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Writes the model made by {@code model} to {@code file} as gzipped JSON. */
+  private static ForkJoinTask<?> data(File file, Supplier<Object> model) {
+    return gzipped(file, writer -> DATA_GSON.toJson(model.get(), writer));
+  }
+
+  private static ForkJoinTask<?> gzipped(File file, Content content) {
+    return ForkJoinTask.adapt(() -> {
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+          new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file))), UTF_8))) {
+        content.writeTo(writer);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to write report data " + file, e);
+      }
+    });
+  }
+
+  private interface Content {
+    void writeTo(Writer writer) throws IOException;
+  }
+
+  /**
+   * Model for a log too long for one data file. Its entries are in pages of
+   * {@link HtmlPagedLog#PAGE_SIZE}, each {@code [timestamp, level, tag, message]}.
+   */
+  static final class PagedLog {
+    static PagedLog from(String name, DeviceTest test, DeviceTestResult result) {
+      return new PagedLog(test.getMethodName(), HtmlLog.subtitle(name, result),
+          HtmlPagedLog.index(result));
+    }
+
+    final String title;
+    final String subtitle;
+    final HtmlPagedLog.Index paged;
+
+    PagedLog(String title, String subtitle, HtmlPagedLog.Index paged) {
+      this.title = title;
+      this.subtitle = subtitle;
+      this.paged = paged;
+    }
+  }
+}
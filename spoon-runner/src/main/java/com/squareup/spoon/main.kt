@@ -5,6 +5,14 @@ import com.xenomachina.argparser.ArgParser
 import com.xenomachina.argparser.runMain
 
 fun main(vararg args: String) {
+  when (args.firstOrNull()) {
+    "merge" -> merge(args.copyOfRange(1, args.size))
+    "serve" -> serve(args.copyOfRange(1, args.size))
+    else -> runTests(args)
+  }
+}
+
+private fun runTests(args: Array<out String>) {
   CliArgs(ArgParser(args)).runMain("spoon-runner") {
     val builder = SpoonRunner.Builder()
     builder.setApplicationApk(mainApk)
@@ -21,6 +29,15 @@ fun main(vararg args: String) {
     initScript?.let(builder::setInitScript)
     builder.setGrantAll(grantAll)
     builder.setNoAnimations(disableGif)
+    builder.setAnimationFormat(animationFormat)
+    builder.setNoThumbnails(noThumbnails)
+    baseline?.let(builder::setBaseline)
+    builder.setCompactJson(compactJson)
+    builder.setResultArchive(archive)
+    history?.let(builder::setHistoryDirectory)
+    builder.setSinglePageReport(singlePage)
+    zip?.let(builder::setOutputZip)
+    dashboard?.let(builder::setDashboardPort)
     adbTimeout?.let(builder::setAdbTimeout)
     serials.forEach { builder.addDevice(it) }
     skipSerials.forEach { builder.addDevice(it) }
@@ -33,3 +50,21 @@ fun main(vararg args: String) {
     }
   }
 }
+
+private fun merge(args: Array<out String>) {
+  MergeArgs(ArgParser(args)).runMain("spoon-runner merge") {
+    val builder = SpoonMerger.Builder()
+    builder.setOutputDirectory(output)
+    inputs.forEach { builder.addInput(it) }
+    title?.let(builder::setTitle)
+    builder.setMove(move)
+    builder.setIncremental(incremental)
+    builder.build().merge()
+  }
+}
+
+private fun serve(args: Array<out String>) {
+  ServeArgs(ArgParser(args)).runMain("spoon-runner serve") {
+    SpoonServer.serve(output, port, history)
+  }
+}
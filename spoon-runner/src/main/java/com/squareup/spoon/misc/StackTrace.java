@@ -1,30 +1,38 @@
 package com.squareup.spoon.misc;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.commons.lang3.StringUtils;
+import java.util.Objects;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-/** A representation of {@link Throwable} suitable for serialization. */
+/**
+ * A representation of {@link Throwable} suitable for serialization. Traces and their elements are
+ * equal if their values are.
+ */
 public class StackTrace {
-  private static final Pattern HEADER = Pattern.compile("(?:Caused by: )?([^:]+)(?::( .*)?)?");
-  private static final Pattern MORE = Pattern.compile("\\.\\.\\. \\d+ more");
-  private static final Pattern ELEMENT =
-      Pattern.compile("\\s*at (.*?)\\.([^.(]+)\\((?:([^:]+):(\\d+)|Native Method)\\)");
-
-  /** Convert a {@link Throwable} to its equivalent {@link StackTrace}. */
+  /**
+   * Traces and elements shared by the whole run. Failures repeat the same frames, and often the
+   * same traces, many times over.
+   */
+  private static final Interner<StackTrace> TRACES = Interners.newWeakInterner();
+  private static final Interner<Element> ELEMENTS = Interners.newWeakInterner();
+
+  /** Convert a {@link Throwable} to its equivalent, {@linkplain #intern() interned}, trace. */
   public static StackTrace from(Throwable exception) {
     checkNotNull(exception);
+    return convert(exception).intern();
+  }
 
+  private static StackTrace convert(Throwable exception) {
     StackTrace cause = null;
     Throwable realCause = exception.getCause();
     if (realCause != null && realCause != exception) {
-      cause = from(realCause);
+      cause = convert(realCause);
     }
 
     Deque<Element> elements = new ArrayDeque<>();
@@ -37,78 +45,28 @@ public class StackTrace {
     return new StackTrace(className, message, elements, cause);
   }
 
+  /**
+   * Parse the text of a {@link Throwable} as printed by {@link Throwable#printStackTrace()}, to an
+   * {@linkplain #intern() interned} trace. Text which doesn't look like an exception becomes the
+   * message of one with an empty class name.
+   */
   public static StackTrace from(String exception) {
     checkNotNull(exception);
-    String parts[] = exception.replace("\r\n", "\n").split("\n");
-
-    StackTrace last = null;
-    Deque<String> messageParts = new ArrayDeque<>();
-    Deque<Element> elements = new ArrayDeque<>();
-    boolean matchingElements = true; // Assume we will be matching elements first (bottom, up).
-    for (int i = parts.length - 1; i >= 0; i--) {
-      String part = parts[i];
-
-      Matcher elementMatch = ELEMENT.matcher(part);
-      Matcher moreMatch = MORE.matcher(part);
-      boolean moreMatches = moreMatch.matches();
-      if (elementMatch.matches() || moreMatches) {
-        if (!matchingElements) {
-          last = acceptTrace(messageParts, elements, last);
-          elements.clear();
-          messageParts.clear();
-        }
-        matchingElements = true;
-
-        if (!moreMatches) {
-          String className = elementMatch.group(1);
-          String methodName = elementMatch.group(2);
-          String fileName = elementMatch.group(3);
-          boolean isNative = fileName == null;
-          int line = isNative ? 0 : Integer.parseInt(elementMatch.group(4));
-
-          elements.addFirst(new Element(className, fileName, line, methodName, isNative));
-        }
-      } else {
-        matchingElements = false;
-        messageParts.addFirst(part);
-      }
-    }
-
-    return acceptTrace(messageParts, elements, last);
+    return new StackTraceParser(exception).parse().intern();
   }
 
-  private static StackTrace acceptTrace(Deque<String> messageParts, Deque<Element> elements,
-      StackTrace last) {
-    String header = messageParts.removeFirst();
-    Matcher headerMatch = HEADER.matcher(header);
-    if (!headerMatch.matches()) {
-      // The exception doesn't match our expected format, so fallback to something sensible so the
-      // user can still see their test results
-      return new StackTrace("", header, elements, last);
-    }
-    String exceptionClass = headerMatch.group(1);
-
-    String messagePart = headerMatch.group(2);
-    // Ensure we don't add empty leading lines.
-    if (!StringUtils.isEmpty(messagePart)) {
-      messageParts.addFirst(messagePart.trim());
-    }
-    // Remove trailing empty lines.
-    if (!messageParts.isEmpty() && StringUtils.isEmpty(messageParts.peekLast())) {
-      messageParts.removeLast();
-    }
-    String message = StringUtils.join(messageParts, "\n");
-    if (message.equals("")) {
-      message = null;
-    }
-
-    return new StackTrace(exceptionClass, message, elements, last);
+  /** The element equal to {@code element} which is shared by the whole run. */
+  public static Element intern(Element element) {
+    return ELEMENTS.intern(element);
   }
 
   private final String className;
   private final String message;
-  private final List<Element> elements;
+  private final ImmutableList<Element> elements;
   private final StackTrace cause;
+  private transient int hashCode;
+  /** Whether this is the instance shared by the whole run. */
+  private transient boolean interned;
 
   public StackTrace(String className, String message, Deque<Element> elements, StackTrace cause) {
     checkNotNull(elements);
@@ -119,6 +77,14 @@ public class StackTrace {
     this.cause = cause;
   }
 
+  StackTrace(String className, String message, ImmutableList<Element> elements,
+      StackTrace cause) {
+    this.className = className;
+    this.message = message;
+    this.elements = elements;
+    this.cause = cause;
+  }
+
   public String getClassName() {
     return className;
   }
@@ -135,6 +101,62 @@ public class StackTrace {
     return cause;
   }
 
+  /**
+   * The trace equal to this one which is shared by the whole run, with elements and causes which
+   * are shared too.
+   */
+  public StackTrace intern() {
+    if (interned) {
+      return this;
+    }
+    StackTrace internedCause = (cause != null) ? cause.intern() : null;
+    ImmutableList<Element> internedElements = elements;
+    for (int i = 0; i < elements.size(); i++) {
+      Element element = elements.get(i);
+      if (ELEMENTS.intern(element) != element) {
+        ImmutableList.Builder<Element> builder = ImmutableList.builder();
+        for (Element each : elements) {
+          builder.add(ELEMENTS.intern(each));
+        }
+        internedElements = builder.build();
+        break;
+      }
+    }
+    StackTrace trace = (internedCause == cause && internedElements == elements)
+        ? this
+        : new StackTrace(className, message, internedElements, internedCause);
+    StackTrace shared = TRACES.intern(trace);
+    shared.interned = true;
+    return shared;
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof StackTrace)) {
+      return false;
+    }
+    StackTrace other = (StackTrace) o;
+    return hashCode() == other.hashCode()
+        && Objects.equals(className, other.className)
+        && Objects.equals(message, other.message)
+        && elements.equals(other.elements)
+        && Objects.equals(cause, other.cause);
+  }
+
+  @Override public int hashCode() {
+    int result = hashCode;
+    if (result == 0) {
+      result = Objects.hashCode(className);
+      result = 31 * result + Objects.hashCode(message);
+      result = 31 * result + elements.hashCode();
+      result = 31 * result + Objects.hashCode(cause);
+      hashCode = result;
+    }
+    return result;
+  }
+
   @Override public String toString() {
     if (className != null) {
       if (message != null) {
@@ -187,6 +209,29 @@ public class StackTrace {
       return isNative;
     }
 
+    @Override public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Element)) {
+        return false;
+      }
+      Element other = (Element) o;
+      return line == other.line
+          && isNative == other.isNative
+          && Objects.equals(className, other.className)
+          && Objects.equals(methodName, other.methodName)
+          && Objects.equals(fileName, other.fileName);
+    }
+
+    @Override public int hashCode() {
+      int result = Objects.hashCode(className);
+      result = 31 * result + Objects.hashCode(methodName);
+      result = 31 * result + Objects.hashCode(fileName);
+      result = 31 * result + line;
+      return 31 * result + (isNative ? 1 : 0);
+    }
+
     @Override public String toString() {
       if (isNative) {
         return String.format("%s.%s(Native Method)", className, methodName);
@@ -0,0 +1,284 @@
+package com.squareup.spoon.misc;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Parses the text of a stack trace, as printed by {@link Throwable#printStackTrace()}, in one pass
+ * over its characters. Lines are not split out and no patterns are matched; only the strings which
+ * end up in the {@link StackTrace} are created.
+ * <p>
+ * The text is read like this line by line:
+ * <ul>
+ * <li>Elements are {@code at <class>.<method>(<file>:<line>)} or
+ * {@code at <class>.<method>(Native Method)}, after any whitespace. The method is what follows
+ * the last {@code .} before the first {@code (} which makes the rest of the line one of these.
+ * <li>Lines of {@code ... <n> more}, after any whitespace, are skipped like elements.
+ * <li>Anything else is part of a message. The first line of each message is the header,
+ * {@code [Caused by: ]<class>[: <message>]}, and each message and the elements following it are
+ * one exception, caused by the next.
+ * </ul>
+ */
+final class StackTraceParser {
+  private static final String CAUSED_BY = "Caused by: ";
+  private static final String NATIVE_METHOD = "Native Method)";
+  private static final String MORE_PREFIX = "... ";
+  private static final String MORE_SUFFIX = " more";
+
+  private final String text;
+  /** The elements of the exception being read, last first. */
+  private final List<StackTrace.Element> elements = new ArrayList<>();
+
+  StackTraceParser(String text) {
+    this.text = text;
+  }
+
+  /**
+   * Read the text from its last line to its first, so each exception's cause is known by the
+   * time the exception is created.
+   */
+  StackTrace parse() {
+    // Trailing empty lines are ignored.
+    int end = text.length();
+    int start = text.lastIndexOf('\n', end - 1) + 1;
+    boolean dropped = false;
+    while (start == end && start > 0) {
+      end = contentEnd(start - 1);
+      start = text.lastIndexOf('\n', end - 1) + 1;
+      dropped = true;
+    }
+    if (start == end && dropped) {
+      throw new NoSuchElementException("No stack trace: " + text);
+    }
+
+    StackTrace last = null;
+    boolean matchingElements = true; // Assume we will be matching elements first (bottom, up).
+    int messageStart = -1;
+    int messageEnd = -1;
+    while (true) {
+      StackTrace.Element element = element(start, end);
+      if (element != null || isMore(start, end)) {
+        if (!matchingElements) {
+          last = accept(messageStart, messageEnd, last);
+          messageEnd = -1;
+        }
+        matchingElements = true;
+        if (element != null) {
+          elements.add(element);
+        }
+      } else {
+        matchingElements = false;
+        if (messageEnd == -1) {
+          messageEnd = end;
+        }
+        messageStart = start;
+      }
+
+      if (start == 0) {
+        return accept(messageStart, messageEnd, last);
+      }
+      end = contentEnd(start - 1);
+      start = text.lastIndexOf('\n', end - 1) + 1;
+    }
+  }
+
+  /** Create the exception of the message from {@code start} to {@code end} and the elements. */
+  private StackTrace accept(int start, int end, StackTrace cause) {
+    if (end == -1) {
+      throw new NoSuchElementException("No exception header: " + text);
+    }
+    ImmutableList<StackTrace.Element> elements = ImmutableList.copyOf(Lists.reverse(this.elements));
+    this.elements.clear();
+
+    int newline = text.indexOf('\n', start);
+    boolean hasRest = newline != -1 && newline < end;
+    int headerEnd = hasRest ? contentEnd(newline) : end;
+
+    String className;
+    String messagePart;
+    int header = header(start, headerEnd);
+    if (header == -1) {
+      // The exception doesn't match our expected format, so fallback to something sensible so the
+      // user can still see their test results
+      return new StackTrace("", text.substring(start, headerEnd), elements, cause);
+    }
+    int colon = text.indexOf(':', header);
+    if (colon == -1 || colon >= headerEnd) {
+      className = text.substring(header, headerEnd);
+      messagePart = null;
+    } else {
+      className = text.substring(header, colon);
+      messagePart = (colon + 1 < headerEnd) ? text.substring(colon + 1, headerEnd).trim() : null;
+    }
+
+    String rest = null;
+    if (hasRest) {
+      int restStart = newline + 1;
+      int restEnd = end;
+      // Remove a trailing empty line.
+      int lastLine = text.lastIndexOf('\n', restEnd - 1) + 1;
+      if (lastLine == restEnd) {
+        hasRest = lastLine > restStart;
+        restEnd = contentEnd(lastLine - 1);
+      }
+      if (hasRest) {
+        rest = text.substring(restStart, restEnd);
+        if (rest.indexOf('\r') != -1) {
+          rest = rest.replace("\r\n", "\n");
+        }
+      }
+    } else if (messagePart != null && messagePart.isEmpty()) {
+      messagePart = null;
+    }
+
+    String message;
+    if (messagePart != null && rest != null) {
+      message = messagePart + '\n' + rest;
+    } else if (messagePart != null) {
+      message = messagePart;
+    } else {
+      message = rest;
+    }
+    if (message != null && message.isEmpty()) {
+      message = null;
+    }
+    return new StackTrace(className, message, elements, cause);
+  }
+
+  /**
+   * Where the class name starts in the header from {@code start} to {@code end}, after any
+   * {@code Caused by: }, or -1 if it is not a header.
+   */
+  private int header(int start, int end) {
+    if (text.startsWith(CAUSED_BY, start) && start + CAUSED_BY.length() <= end
+        && isHeader(start + CAUSED_BY.length(), end)) {
+      return start + CAUSED_BY.length();
+    }
+    return isHeader(start, end) ? start : -1;
+  }
+
+  /** Whether the text from {@code start} to {@code end} is {@code <class>[:[ <message>]]}. */
+  private boolean isHeader(int start, int end) {
+    int colon = text.indexOf(':', start);
+    if (colon == -1 || colon >= end) {
+      return end > start;
+    }
+    if (colon == start) {
+      return false;
+    }
+    if (colon + 1 == end) {
+      return true;
+    }
+    return text.charAt(colon + 1) == ' ' && indexOfLineTerminator(colon + 1, end) == -1;
+  }
+
+  /** The element on the line from {@code start} to {@code end}, or null if it is not one. */
+  private StackTrace.Element element(int start, int end) {
+    int at = start;
+    while (at < end && isWhitespace(text.charAt(at))) {
+      at++;
+    }
+    if (end - at < 3 || !text.startsWith("at ", at) || text.charAt(end - 1) != ')') {
+      return null;
+    }
+    int classStart = at + 3;
+    // The class name can hold anything but line terminators, and ends at the dot before the
+    // method's parenthesis, so the earliest parenthesis which ends a valid element is taken.
+    int terminator = indexOfLineTerminator(classStart, end);
+    int classLimit = (terminator == -1) ? end : terminator;
+    int previousParenthesis = classStart - 1;
+    for (int parenthesis = text.indexOf('(', classStart);
+        parenthesis != -1 && parenthesis < end;
+        parenthesis = text.indexOf('(', parenthesis + 1)) {
+      int dot = text.lastIndexOf('.', parenthesis - 1);
+      if (dot > previousParenthesis && dot < classLimit && dot + 1 < parenthesis) {
+        StackTrace.Element element = element(classStart, dot, parenthesis, end);
+        if (element != null) {
+          return element;
+        }
+      }
+      if (dot >= classLimit) {
+        return null;
+      }
+      previousParenthesis = parenthesis;
+    }
+    return null;
+  }
+
+  /**
+   * The element with its class before {@code dot} and method up to {@code parenthesis}, if the
+   * rest of the line up to {@code end} is {@code <file>:<line>)} or {@code Native Method)}.
+   */
+  private StackTrace.Element element(int classStart, int dot, int parenthesis, int end) {
+    int fileStart = parenthesis + 1;
+    int colon = text.indexOf(':', fileStart);
+    if (colon > fileStart && colon < end - 2 && isDigits(colon + 1, end - 1)) {
+      return new StackTrace.Element(text.substring(classStart, dot),
+          text.substring(fileStart, colon), parseInt(colon + 1, end - 1),
+          text.substring(dot + 1, parenthesis), false);
+    }
+    if (end - fileStart == NATIVE_METHOD.length() && text.startsWith(NATIVE_METHOD, fileStart)) {
+      return new StackTrace.Element(text.substring(classStart, dot), null, 0,
+          text.substring(dot + 1, parenthesis), true);
+    }
+    return null;
+  }
+
+  /** Whether the line from {@code start} to {@code end} is {@code ... <n> more}. */
+  private boolean isMore(int start, int end) {
+    while (start < end && isWhitespace(text.charAt(start))) {
+      start++;
+    }
+    int digitsStart = start + MORE_PREFIX.length();
+    int digitsEnd = end - MORE_SUFFIX.length();
+    return digitsStart < digitsEnd
+        && text.startsWith(MORE_PREFIX, start)
+        && text.startsWith(MORE_SUFFIX, digitsEnd)
+        && isDigits(digitsStart, digitsEnd);
+  }
+
+  private boolean isDigits(int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int parseInt(int start, int end) {
+    if (end - start > 9) {
+      // Could overflow, which should fail the same way.
+      return Integer.parseInt(text.substring(start, end));
+    }
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      value = value * 10 + (text.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  /** Where the line ended by the newline at {@code newline} ends, before any carriage return. */
+  private int contentEnd(int newline) {
+    return (newline > 0 && text.charAt(newline - 1) == '\r') ? newline - 1 : newline;
+  }
+
+  /** The first character from {@code start} to {@code end} which ends a line, or -1. */
+  private int indexOfLineTerminator(int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+}
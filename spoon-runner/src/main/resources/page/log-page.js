@@ -0,0 +1 @@
+spoonLog.page({{number}}, {{{entries}}});
@@ -0,0 +1 @@
+spoonTv.chunk({{number}}, {{{tests}}});
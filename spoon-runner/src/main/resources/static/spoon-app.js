@@ -0,0 +1,322 @@
+/*
+ * Single-page Spoon report. The results are read from the gzipped JSON files in data/ as each view
+ * needs them, and long lists only render the rows which are scrolled into view:
+ *
+ *   data/index.json.gz              title, devices and tests, in the order of their data files
+ *   data/device/<n>.json.gz         the results of the nth device
+ *   data/log/<n>/<c>.json.gz        the cth chunk of the nth device's logs, in result order
+ *   data/log/<n>/<r>/<p>.json.gz    the pth page of entries of a long log of the rth result
+ *   data/test/<n>.json.gz           the nth chunk of tests and their results on every device
+ *
+ * Views are addressed by the URL fragment: #/, #/device/<n>, #/device/<n>/<result>,
+ * #/log/<n>/<result>, #/test/<n> and #/test/<n>/log/<device>.
+ */
+(function() {
+  'use strict';
+
+  var virtualList = window.spoonVirtualList;
+  var escape = window.spoonEscape;
+  var app = document.getElementById('app');
+  var cache = {};
+  var ROW_CLASSES = {info: 'info', warn: 'warning', error: 'error'};
+
+  /**
+   * Load and decompress a data file, once. A server which sends the files with
+   * Content-Encoding: gzip has them decompressed already, so only data which still starts with
+   * the gzip magic bytes is decompressed here.
+   */
+  function load(path) {
+    if (!cache[path]) {
+      cache[path] = fetch(path).then(function(response) {
+        if (!response.ok) {
+          throw new Error('Unable to load ' + path + ': ' + response.status);
+        }
+        return response.arrayBuffer();
+      }).then(function(buffer) {
+        var bytes = new Uint8Array(buffer);
+        if (bytes.length >= 2 && bytes[0] === 0x1f && bytes[1] === 0x8b) {
+          var stream = new Blob([bytes]).stream().pipeThrough(new DecompressionStream('gzip'));
+          return new Response(stream).json();
+        }
+        return JSON.parse(new TextDecoder().decode(bytes));
+      });
+    }
+    return cache[path];
+  }
+
+  function hero(title, lines) {
+    var html = '<div class="hero-unit"><h1>' + escape(title) + '</h1>';
+    lines.forEach(function(line) {
+      if (line && (line.html || line.text)) {
+        html += '<p' + (line.cssClass ? ' class="' + line.cssClass + '"' : '') + '>'
+            + (line.html != null ? line.html : escape(line.text)) + '</p>';
+      }
+    });
+    return html + '</div>';
+  }
+
+  /** Exception titles and lines are escaped when the report is written. */
+  var exceptionId = 0;
+  function exception(info, status) {
+    if (!info) {
+      return '';
+    }
+    var id = 'stacktrace-' + (exceptionId++);
+    return '<div class="alert alert-error stacktrace ' + escape(status) + '">'
+        + '<h4 data-toggle="collapse" data-target="#' + id + '">' + info.title + '</h4>'
+        + '<div class="stacktrace-body collapse" id="' + id + '">'
+        + info.body.map(function(line) {
+          return '<div class="stacktrace-line">' + line + '</div>';
+        }).join('')
+        + '</div></div>';
+  }
+
+  function screenshots(list) {
+    if (!list || !list.length) {
+      return '';
+    }
+    return '<ul class="thumbnails">' + list.map(function(screenshot) {
+      return '<li class="span2"><a href="' + escape(screenshot.path) + '" class="thumbnail">'
+          + '<img src="' + escape(screenshot.thumbnailPath) + '" title="'
+          + escape(screenshot.caption) + '" loading="lazy"></a>'
+          + (screenshot.diffPath ? '<a href="' + escape(screenshot.diffPath)
+          + '" class="label label-warning" title="View changes from the baseline">Changed</a>'
+          : '')
+          + '</li>';
+    }).join('') + '</ul>';
+  }
+
+  function files(list) {
+    if (!list || !list.length) {
+      return '';
+    }
+    return '<ul class="files">' + list.map(function(file) {
+      return '<li class="span2"><a href="' + escape(file.path) + '" class="file">'
+          + escape(file.name) + '</a></li>';
+    }).join('') + '</ul>';
+  }
+
+  function icon(href, image, title) {
+    return '<a href="' + escape(href) + '" title="' + title + '" class="pull-right icon">'
+        + '<img src="static/' + image + '" alt="' + title + '"></a>';
+  }
+
+  function counts(passed, failed) {
+    return '<span class="counts"><span class="pass">' + passed + ' passed</span> '
+        + '<span class="fail">' + failed + ' failed</span></span>';
+  }
+
+  function showIndex(index) {
+    var html = hero(index.title, [{text: index.subtitle}]);
+    html += '<div class="row"><div class="span12"><h2>Devices</h2><table class="table devices">';
+    index.devices.forEach(function(device, i) {
+      var status = device.executionFailed ? 'error' : (device.failed > 0 ? 'fail' : 'pass');
+      html += '<tr class="test-result ' + status + '"><td><a href="#/device/' + i + '">'
+          + escape(device.name) + '</a></td><td>' + counts(device.passed, device.failed)
+          + '</td></tr>';
+    });
+    html += '</table><h2>Tests <input type="search" class="pull-right filter" '
+        + 'placeholder="Filter"></h2><div class="tests"></div></div></div>';
+    app.innerHTML = html;
+
+    var list = app.querySelector('.tests');
+    function filter(text) {
+      var matches = [];
+      index.tests.forEach(function(test, i) {
+        if (!text || (test.className + '.' + test.methodName).toLowerCase().indexOf(text) >= 0) {
+          matches.push(i);
+        }
+      });
+      virtualList(list, matches.length, function(row) {
+        var test = index.tests[matches[row]];
+        return '<a href="#/test/' + matches[row] + '" class="' + (test.failed ? 'fail' : 'pass')
+            + '">' + escape(test.methodName) + ' <small>' + escape(test.classSimpleName)
+            + '</small></a>' + counts(test.passed, test.failed);
+      });
+    }
+    app.querySelector('.filter').addEventListener('input', function(event) {
+      filter(event.target.value.toLowerCase());
+    });
+    filter('');
+  }
+
+  function showDevice(n, device) {
+    var html = hero(device.title, [{text: device.subtitle1}, {text: device.subtitle2},
+        device.phases ? {text: device.phases, cssClass: 'phases'} : null]);
+    if (device.exceptions.length) {
+      html += '<div class="row"><div class="span12">'
+          + device.exceptions.map(function(info) { return exception(info, 'error'); }).join('')
+          + '</div></div>';
+    }
+    html += '<div class="row"><div class="span12"><div class="results"></div></div></div>';
+    app.innerHTML = html;
+    virtualList(app.querySelector('.results'), device.testResults.length, function(i) {
+      var result = device.testResults[i];
+      return '<a href="#/device/' + n + '/' + i + '" class="' + escape(result.status) + '">'
+          + escape(result.prettyMethodName) + ' <small>' + escape(result.classSimpleName)
+          + '</small></a>' + (result.hasScreenshots ? '<span class="counts">'
+          + result.screenshots.length + ' screenshots</span>' : '');
+    });
+  }
+
+  function testIndex(index, className, methodName) {
+    if (!index.byName) {
+      index.byName = {};
+      index.tests.forEach(function(test, i) {
+        index.byName[test.className + '#' + test.methodName] = i;
+      });
+    }
+    return index.byName[className + '#' + methodName];
+  }
+
+  function showResult(index, n, i, device) {
+    var result = device.testResults[i];
+    var html = hero(result.prettyMethodName, [{text: result.className},
+        {text: device.title}]);
+    html += '<div class="row"><div class="span12"><h2 class="test-result '
+        + escape(result.status) + '">' + escape(device.title)
+        + icon('#/log/' + n + '/' + i, 'icon-log.png', 'View device log')
+        + icon('#/test/' + testIndex(index, result.className, result.methodName),
+            'icon-devices.png', 'View on all devices')
+        + (result.animatedGif
+            ? icon(result.animatedGif, 'icon-animated.png', 'View as animation') : '')
+        + '</h2>' + exception(result.exception, result.status) + screenshots(result.screenshots)
+        + files(result.files) + '</div></div>';
+    app.innerHTML = html;
+  }
+
+  function logEntry(level, rowClass, timestamp, tag, message) {
+    return '<div class="log-entry level-' + escape(level) + ' ' + escape(rowClass)
+        + '" title="' + escape(message) + '"><span>' + escape(timestamp) + '</span><span>'
+        + escape(level) + '</span><span>' + escape(tag) + '</span><span>' + escape(message)
+        + '</span></div>';
+  }
+
+  /**
+   * Show the log of the rth result of the nth device. A long log only holds how many entries it
+   * has, and its pages of entries are loaded as they are scrolled into view.
+   */
+  function showLog(page, n, r) {
+    app.innerHTML = hero(page.title, [{text: page.subtitle}])
+        + '<div class="row log"><div class="span12"><div class="log-header">'
+        + '<span>Timestamp</span><span>Level</span><span>Tag</span><span>Message</span></div>'
+        + '<div class="entries"></div></div></div>';
+    var entries = app.querySelector('.entries');
+    if (!page.paged) {
+      virtualList(entries, page.log.length, function(row) {
+        var entry = page.log[row];
+        return logEntry(entry.level, entry.rowClass, entry.timestamp, entry.tag, entry.message);
+      });
+      return;
+    }
+    var paged = page.paged;
+    var pages = [];
+    var requested = [];
+    var list = virtualList(entries, paged.count, function(row) {
+      var number = Math.floor(row / paged.pageSize);
+      if (!pages[number]) {
+        if (!requested[number]) {
+          requested[number] = true;
+          load('data/log/' + n + '/' + r + '/' + number + '.json.gz').then(function(loaded) {
+            pages[number] = loaded;
+            list.refresh();
+          });
+        }
+        return '<div class="log-entry loading"><span>Loading&hellip;</span></div>';
+      }
+      var entry = pages[number][row % paged.pageSize];
+      var level = paged.levels[entry[1]];
+      return logEntry(level, ROW_CLASSES[level] || '', entry[0], entry[2], entry[3]);
+    });
+  }
+
+  /** The log of the rth result of the nth device, from the chunk of its logs holding it. */
+  function loadLog(index, n, r) {
+    var chunk = Math.floor(r / index.testsPerChunk);
+    return load('data/log/' + n + '/' + chunk + '.json.gz').then(function(logs) {
+      return logs[r % index.testsPerChunk];
+    });
+  }
+
+  function showTest(index, n, test) {
+    var html = hero(test.title, [{text: test.subtitle},
+        test.history ? {html: test.history.sparkline + ' ' + escape(test.history.summary),
+            cssClass: 'history'} : null]);
+    var devices = {};
+    index.devices.forEach(function(device, i) {
+      devices[device.serial] = i;
+    });
+    test.devices.forEach(function(result) {
+      var device = devices[result.serial];
+      html += '<div class="row"><div class="span12"><h2 class="test-result '
+          + escape(result.status) + '">' + escape(result.name)
+          + icon('#/test/' + n + '/log/' + device, 'icon-log.png', 'View device log')
+          + icon('#/device/' + device, 'icon-devices.png', 'View only this device')
+          + (result.animatedGif
+              ? icon(result.animatedGif, 'icon-animated.png', 'View as animation') : '')
+          + '</h2>' + exception(result.exception, result.status)
+          + screenshots(result.screenshots) + '</div></div>';
+    });
+    app.innerHTML = html;
+  }
+
+  /** The position of a test's result among a device's results, and so of its log. */
+  function resultIndex(index, n, test) {
+    var name = index.tests[test];
+    return load('data/device/' + n + '.json.gz').then(function(device) {
+      for (var i = 0; i < device.testResults.length; i++) {
+        var result = device.testResults[i];
+        if (result.className === name.className && result.methodName === name.methodName) {
+          return i;
+        }
+      }
+      throw new Error('No result for ' + name.methodName + ' on ' + device.title);
+    });
+  }
+
+  function route() {
+    var parts = window.location.hash.replace(/^#\/?/, '').split('/');
+    window.scrollTo(0, 0);
+    load('data/index.json.gz').then(function(index) {
+      var n = parseInt(parts[1], 10);
+      var i = parseInt(parts[2], 10);
+      switch (parts[0]) {
+        case 'device':
+          return load('data/device/' + n + '.json.gz').then(function(device) {
+            if (isNaN(i)) {
+              showDevice(n, device);
+            } else {
+              showResult(index, n, i, device);
+            }
+          });
+        case 'log':
+          return loadLog(index, n, i).then(function(log) {
+            showLog(log, n, i);
+          });
+        case 'test':
+          if (parts[2] === 'log') {
+            var device = parseInt(parts[3], 10);
+            return resultIndex(index, device, n).then(function(r) {
+              return loadLog(index, device, r).then(function(log) {
+                showLog(log, device, r);
+              });
+            });
+          }
+          var chunk = Math.floor(n / index.testsPerChunk);
+          return load('data/test/' + chunk + '.json.gz').then(function(tests) {
+            showTest(index, n, tests[n % index.testsPerChunk]);
+          });
+        default:
+          document.title = index.title;
+          showIndex(index);
+      }
+    }).then(function() {
+      $('.icon, .thumbnail img').tooltip({container: 'body'});
+    }).catch(function(error) {
+      app.innerHTML = hero('Unable to show the report', [{text: error.message}]);
+    });
+  }
+
+  window.addEventListener('hashchange', route);
+  route();
+})();
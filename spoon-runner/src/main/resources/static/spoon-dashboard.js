@@ -0,0 +1,101 @@
+/*
+ * Live dashboard of a run's progress. The progress is pushed by the server with server-sent
+ * events, and each device's row of the bird's-eye table is updated in place as its tests finish.
+ */
+(function() {
+  'use strict';
+
+  var escape = window.spoonEscape;
+
+  var table = document.querySelector('.birds-eye');
+  var rows = {};
+
+  table.className += ' live';
+  Array.prototype.forEach.call(table.querySelectorAll('.device'), function(device) {
+    rows[device.getAttribute('data-serial')] = device;
+  });
+
+  function duration(millis) {
+    var minutes = Math.round(millis / 60000);
+    if (minutes < 1) {
+      return 'less than a minute';
+    }
+    if (minutes < 60) {
+      return minutes + ' minute' + (minutes != 1 ? 's' : '');
+    }
+    var hours = Math.floor(minutes / 60);
+    minutes = minutes % 60;
+    return hours + ' hour' + (hours != 1 ? 's' : '')
+        + (minutes ? ' ' + minutes + ' minute' + (minutes != 1 ? 's' : '') : '');
+  }
+
+  /** The header row of the device, added if it was not known when the page was served. */
+  function row(serial) {
+    if (!rows[serial]) {
+      var body = table.querySelector('tbody');
+      var device = document.createElement('tr');
+      device.className = 'device';
+      device.appendChild(document.createElement('th'));
+      var result = document.createElement('tr');
+      result.className = 'result';
+      body.appendChild(device);
+      body.appendChild(result);
+      rows[serial] = device;
+    }
+    return rows[serial];
+  }
+
+  function showDevice(device) {
+    var header = row(device.serial);
+    var count = Math.max(device.expected, 1);
+    var th = header.querySelector('th');
+    th.colSpan = count;
+    th.innerHTML = escape(device.name) + ' <small>'
+        + escape(device.current ? device.current.replace('#', ' ') : device.state)
+        + ' &middot; ' + device.passed + ' passed, ' + device.failed + ' failed'
+        + (device.expected ? ' of ' + device.expected : '') + '</small>';
+
+    // Results only grow, so only the cells of the newly finished tests change.
+    var cells = header.nextElementSibling;
+    if (cells.children.length != count) {
+      var html = '';
+      for (var i = 0; i < count; i++) {
+        html += '<td class="test pending"></td>';
+      }
+      cells.innerHTML = html;
+      header.shown = 0;
+    }
+    for (var j = header.shown || 0; j < device.results.length; j++) {
+      cells.children[j].className = 'test ' + (device.results[j] == 'p' ? 'pass' : 'fail');
+    }
+    header.shown = device.results.length;
+  }
+
+  function show(progress) {
+    var done = progress.passed + progress.failed;
+    document.getElementById('summary').textContent = done + ' of ' + progress.expected
+        + ' tests run with ' + progress.passed + ' passing and ' + progress.failed + ' failing';
+    document.getElementById('rate').textContent = done == 0 ? ''
+        : Math.round(progress.testsPerMinute) + ' tests per minute'
+            + (progress.remaining != null ? ', about ' + duration(progress.remaining)
+                + ' remaining' : '');
+    progress.devices.forEach(showDevice);
+  }
+
+  var last = null;
+  var events = new EventSource('events');
+  events.onmessage = function(event) {
+    last = JSON.parse(event.data);
+    show(last);
+  };
+  events.onerror = function() {
+    // The dashboard stops with the run.
+    var finished = last && last.devices.every(function(device) {
+      return device.state == 'done';
+    });
+    document.getElementById('rate').textContent = finished ? 'Finished' : 'Reconnecting';
+    if (finished) {
+      events.close();
+    }
+  };
+})();
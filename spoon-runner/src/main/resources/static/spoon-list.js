@@ -0,0 +1,58 @@
+/*
+ * Virtualized lists for the Spoon report, which only create the rows scrolled into view so that
+ * lists of many thousands of rows stay responsive.
+ */
+var spoonVirtualList = (function() {
+  'use strict';
+
+  var ROW_HEIGHT = 30;
+  var OVERSCAN = 10;
+
+  /**
+   * Show {@code count} rows of fixed height in {@code container}, only creating the elements of
+   * those which are scrolled into view. Call {@code refresh()} on the result to render the visible
+   * rows again, such as once the data they show has loaded.
+   */
+  return function(container, count, renderRow) {
+    container.innerHTML = '<div class="virtual-list"><div class="virtual-spacer"></div></div>';
+    var viewport = container.firstChild;
+    var spacer = viewport.firstChild;
+    spacer.style.height = (count * ROW_HEIGHT) + 'px';
+    var first = -1;
+    var last = -1;
+    var scheduled = false;
+
+    function update() {
+      scheduled = false;
+      var from = Math.max(0, Math.floor(viewport.scrollTop / ROW_HEIGHT) - OVERSCAN);
+      var to = Math.min(count,
+          Math.ceil((viewport.scrollTop + viewport.clientHeight) / ROW_HEIGHT) + OVERSCAN);
+      if (from === first && to === last) {
+        return;
+      }
+      first = from;
+      last = to;
+      var html = '';
+      for (var i = from; i < to; i++) {
+        html += '<div class="virtual-row" style="top: ' + (i * ROW_HEIGHT) + 'px">'
+            + renderRow(i) + '</div>';
+      }
+      spacer.innerHTML = html;
+    }
+
+    viewport.addEventListener('scroll', function() {
+      if (!scheduled) {
+        scheduled = true;
+        window.requestAnimationFrame(update);
+      }
+    });
+    update();
+
+    return {
+      refresh: function() {
+        first = -1;
+        update();
+      }
+    };
+  };
+})();
@@ -0,0 +1,119 @@
+/*
+ * Viewer for logs too long to show as one table. The page holds an index of how many entries of
+ * each tag and level are in each page of entries, and the pages themselves are loaded as they
+ * are scrolled into view. Each page is a script which passes its entries to spoonLog.page(), so
+ * it can be loaded from the file system as well as over HTTP.
+ */
+var spoonLog = (function() {
+  'use strict';
+
+  var ROW_CLASSES = {info: 'info', warn: 'warning', error: 'error'};
+
+  var index = window.spoonLogIndex;
+  var container = document.querySelector('.log .entries');
+  var base = encodeURIComponent(container.getAttribute('data-pages')) + '/';
+  var levelSelect = document.querySelector('.log-filters .level');
+  var tagSelect = document.querySelector('.log-filters .tag');
+  var count = document.querySelector('.log-filters .count');
+
+  var pages = [];
+  var requested = [];
+  var list = null;
+
+  var escape = window.spoonEscape;
+
+  function load(page) {
+    if (!requested[page]) {
+      requested[page] = true;
+      var script = document.createElement('script');
+      script.src = base + page + '.js';
+      document.body.appendChild(script);
+    }
+  }
+
+  /** The number of entries in a page of at least {@code level}, and of {@code tag} if not -1. */
+  function matching(page, level, tag) {
+    var total = 0;
+    index.pages[page].forEach(function(counts) {
+      if (tag === -1 || counts[0] === tag) {
+        for (var i = level; i < index.levels.length; i++) {
+          total += counts[i + 1];
+        }
+      }
+    });
+    return total;
+  }
+
+  function render(entry) {
+    var level = index.levels[entry[1]];
+    return '<div class="log-entry level-' + escape(level) + ' ' + (ROW_CLASSES[level] || '')
+        + '" title="' + escape(entry[3]) + '"><span>' + escape(entry[0]) + '</span><span>'
+        + escape(level) + '</span><span>' + escape(entry[2]) + '</span><span>'
+        + escape(entry[3]) + '</span></div>';
+  }
+
+  /** Show the entries which match the selected filters. */
+  function show() {
+    var level = parseInt(levelSelect.value, 10);
+    var tag = parseInt(tagSelect.value, 10);
+    var tagName = index.tags[tag];
+
+    // The position of the first matching entry of each page among all those which match.
+    var starts = [0];
+    for (var page = 0; page < index.pages.length; page++) {
+      starts.push(starts[page] + matching(page, level, tag));
+    }
+    var total = starts[index.pages.length];
+    count.textContent = total + ' of ' + index.count + ' entries';
+
+    var filtered = [];
+    list = spoonVirtualList(container, total, function(row) {
+      // Binary search for the page holding the row.
+      var low = 0;
+      var high = index.pages.length - 1;
+      while (low < high) {
+        var middle = (low + high + 1) >> 1;
+        if (starts[middle] <= row) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+      if (!pages[low]) {
+        load(low);
+        return '<div class="log-entry loading"><span>Loading&hellip;</span></div>';
+      }
+      if (!filtered[low]) {
+        filtered[low] = pages[low].filter(function(entry) {
+          return entry[1] >= level && (tag === -1 || entry[2] === tagName);
+        });
+      }
+      return render(filtered[low][row - starts[low]]);
+    });
+  }
+
+  var levelOptions = '';
+  index.levels.forEach(function(level, i) {
+    levelOptions += '<option value="' + i + '">'
+        + (i === 0 ? 'All levels' : escape(level) + ' and above') + '</option>';
+  });
+  levelSelect.innerHTML = levelOptions;
+  var tagOptions = '<option value="-1">All tags</option>';
+  index.tags.forEach(function(tag, i) {
+    tagOptions += '<option value="' + i + '">' + escape(tag) + '</option>';
+  });
+  tagSelect.innerHTML = tagOptions;
+  levelSelect.addEventListener('change', show);
+  tagSelect.addEventListener('change', show);
+  show();
+
+  return {
+    /** Called by each page of entries once it has loaded. */
+    page: function(page, entries) {
+      pages[page] = entries;
+      if (list) {
+        list.refresh();
+      }
+    }
+  };
+})();
@@ -0,0 +1,139 @@
+/*
+ * Slideshow of the screenshots of every test, one device after another. The page holds only the
+ * devices and how many tests each shows. The tests are loaded in chunks as the slideshow reaches
+ * them, and only the next few screenshots are fetched ahead of being shown. Each chunk is a script
+ * which passes its tests to spoonTv.chunk(), so it can be loaded from the file system as well as
+ * over HTTP.
+ */
+var spoonTv = (function() {
+  'use strict';
+
+  /** How long each screenshot is shown. */
+  var PAUSE_MS = 3000;
+  /** How many of the screenshots after the one shown are fetched ahead of it. */
+  var PREFETCH = 3;
+
+  var index = window.spoonTvIndex;
+  var slide = document.getElementById('slide');
+  var chunkCount = Math.ceil(index.count / index.chunkSize);
+  var chunks = [];
+  var requested = [];
+  var prefetched = {};
+  // The test shown, by its position across every device, and which of its screenshots.
+  var test = 0;
+  var screenshot = 0;
+  var timer = null;
+
+  // The position of each device's first test.
+  var firsts = [];
+  index.devices.reduce(function(first, device) {
+    firsts.push(first);
+    return first + device.tests;
+  }, 0);
+
+  function text(id, value) {
+    document.getElementById(id).textContent = value;
+  }
+
+  function load(chunk) {
+    if (chunk < chunkCount && !requested[chunk]) {
+      requested[chunk] = true;
+      var script = document.createElement('script');
+      script.src = 'tv/' + chunk + '.js';
+      document.body.appendChild(script);
+    }
+  }
+
+  /** The test at {@code position}, or null until its chunk has loaded. */
+  function get(position) {
+    var chunk = chunks[Math.floor(position / index.chunkSize)];
+    return chunk ? chunk[position % index.chunkSize] : null;
+  }
+
+  /** Fetch the next few screenshots, loading the next chunk of tests once they reach it. */
+  function prefetch() {
+    var position = test;
+    var next = screenshot + 1;
+    var fetched = 0;
+    while (fetched < PREFETCH && position < index.count) {
+      var result = get(position);
+      if (!result) {
+        load(Math.floor(position / index.chunkSize));
+        return;
+      }
+      if (next < result.screenshots.length) {
+        var path = result.screenshots[next].path;
+        if (!prefetched[path]) {
+          prefetched[path] = true;
+          new Image().src = path;
+        }
+        fetched++;
+        next++;
+      } else {
+        position++;
+        next = 0;
+      }
+    }
+  }
+
+  function show() {
+    clearTimeout(timer);
+    if (test >= index.count) {
+      location.reload(); // Reload at end to load new spoon results.
+      return;
+    }
+    var result = get(test);
+    if (!result) {
+      // Shown once its chunk has loaded.
+      load(Math.floor(test / index.chunkSize));
+      return;
+    }
+    var device = index.devices[result.device];
+    text('title', device.name);
+    text('subtitle', device.details);
+    text('total-test-size', device.tests);
+    text('current-test-number', test - firsts[result.device] + 1);
+    document.getElementById('current-test-info').className = 'test-result ' + result.status;
+    text('test-name', result.methodPrettyName);
+    text('test-class-name', result.classSimpleName);
+
+    var shown = result.screenshots[screenshot];
+    text('caption', shown.caption);
+    slide.className = 'loading';
+    slide.alt = shown.caption;
+    slide.src = shown.path;
+    delete prefetched[shown.path];
+    prefetch();
+    timer = setTimeout(advance, PAUSE_MS);
+  }
+
+  function advance() {
+    screenshot++;
+    if (screenshot >= get(test).screenshots.length) {
+      test++;
+      screenshot = 0;
+    }
+    show();
+  }
+
+  slide.onload = function() {
+    slide.className = '';
+  };
+
+  if (index.count === 0) {
+    text('test-name', 'No screenshots');
+  } else {
+    show();
+  }
+
+  return {
+    chunk: function(number, tests) {
+      chunks[number] = tests;
+      if (number === Math.floor(test / index.chunkSize)) {
+        show();
+      } else {
+        prefetch();
+      }
+    }
+  };
+})();
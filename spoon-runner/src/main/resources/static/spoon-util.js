@@ -0,0 +1,14 @@
+/*
+ * Helpers shared by the scripts of the Spoon report.
+ */
+
+/** {@code value} as text which is safe to put in HTML, or an empty string if null. */
+function spoonEscape(value) {
+  'use strict';
+  return String(value == null ? '' : value)
+      .replace(/&/g, '&amp;')
+      .replace(/</g, '&lt;')
+      .replace(/>/g, '&gt;')
+      .replace(/"/g, '&quot;')
+      .replace(/'/g, '&#39;');
+}
@@ -0,0 +1,191 @@
+package com.squareup.spoon;
+
+import com.madgag.gif.fmsware.AnimatedGifEncoder;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Measures the CPU time, allocation and peak heap of turning 1080x2400 screenshots into an
+ * animation. The encoder {@link SpoonUtils} used to have, which decoded every screenshot twice, is
+ * compared to the same encoder sizing its canvas from the image headers, and to the current
+ * encoders. CPU time and allocation are of every thread in the process. Not run as part of the
+ * tests.
+ * <p>
+ * Usage: {@code AnimationBenchmark [<frames>]}
+ */
+public final class AnimationBenchmark {
+  private static final int WIDTH = 1080;
+  private static final int HEIGHT = 2400;
+  private static final int ITERATIONS = 2;
+
+  public static void main(String... args) throws IOException {
+    int frameCount = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+    File root = Files.createTempDirectory("spoon-animation").toFile();
+    ForkJoinPool oneThread = new ForkJoinPool(1);
+    ForkJoinPool allThreads = new ForkJoinPool();
+    try {
+      List<File> frames = new ArrayList<>();
+      for (int i = 0; i < frameCount; i++) {
+        frames.add(screenshot(new File(root, i + ".png"), i));
+      }
+      System.out.printf("%d frames of %dx%d%n", frameCount, WIDTH, HEIGHT);
+
+      measure("GIF, decoded twice", frames, root, AnimationBenchmark::decodedTwice);
+      measure("GIF, decoded once", frames, root, AnimationBenchmark::decodedOnce);
+      measure("GIF, 1 thread", frames, root,
+          AnimationFormat.GIF.createEncoder(oneThread)::encode);
+      measure("GIF, " + allThreads.getParallelism() + " threads", frames, root,
+          AnimationFormat.GIF.createEncoder(allThreads)::encode);
+      measure("APNG, 1 thread", frames, root,
+          AnimationFormat.APNG.createEncoder(oneThread)::encode);
+    } finally {
+      oneThread.shutdown();
+      allThreads.shutdown();
+      FileUtils.deleteDirectory(root);
+    }
+  }
+
+  private static void measure(String name, List<File> frames, File root,
+      AnimationEncoder encoder) throws IOException {
+    com.sun.management.OperatingSystemMXBean os =
+        (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    File animation = new File(root, "animation");
+    long bestWall = Long.MAX_VALUE;
+    long bestCpu = Long.MAX_VALUE;
+    long bestAllocated = Long.MAX_VALUE;
+    long bestPeak = Long.MAX_VALUE;
+    for (int i = 0; i < ITERATIONS; i++) {
+      System.gc();
+      resetPeakHeap();
+      Map<Long, Long> allocated = allocatedBytes();
+      long cpu = os.getProcessCpuTime();
+      long start = System.nanoTime();
+      encoder.encode(frames, animation);
+      bestWall = Math.min(bestWall, System.nanoTime() - start);
+      bestCpu = Math.min(bestCpu, os.getProcessCpuTime() - cpu);
+      bestPeak = Math.min(bestPeak, peakHeap());
+      long total = 0;
+      for (Map.Entry<Long, Long> thread : allocatedBytes().entrySet()) {
+        total += thread.getValue() - allocated.getOrDefault(thread.getKey(), 0L);
+      }
+      bestAllocated = Math.min(bestAllocated, total);
+    }
+    System.out.printf("%-20s %6d ms wall %7d ms CPU %6d MB allocated %5d MB peak heap %6d KB%n",
+        name, bestWall / 1_000_000, bestCpu / 1_000_000, bestAllocated >> 20, bestPeak >> 20,
+        animation.length() >> 10);
+  }
+
+  /** How {@link SpoonUtils} created animated GIFs before, reading every screenshot twice. */
+  private static void decodedTwice(List<File> frames, File gif) throws IOException {
+    AnimatedGifEncoder encoder = newAnimatedGifEncoder(gif);
+    int width = 0;
+    int height = 0;
+    for (File frame : frames) {
+      BufferedImage image = ImageIO.read(frame);
+      width = Math.max(image.getWidth(), width);
+      height = Math.max(image.getHeight(), height);
+    }
+    encoder.setSize(width, height);
+    for (File frame : frames) {
+      encoder.addFrame(ImageIO.read(frame));
+    }
+    encoder.finish();
+  }
+
+  /** The same encoder with its canvas sized from the image headers. */
+  private static void decodedOnce(List<File> frames, File gif) throws IOException {
+    AnimatedGifEncoder encoder = newAnimatedGifEncoder(gif);
+    int width = 0;
+    int height = 0;
+    for (File frame : frames) {
+      Dimension size = SpoonUtils.readImageSize(frame);
+      width = Math.max(size.width, width);
+      height = Math.max(size.height, height);
+    }
+    encoder.setSize(width, height);
+    for (File frame : frames) {
+      encoder.addFrame(ImageIO.read(frame));
+    }
+    encoder.finish();
+  }
+
+  private static AnimatedGifEncoder newAnimatedGifEncoder(File gif) {
+    AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+    encoder.start(gif.getAbsolutePath());
+    encoder.setDelay(1500);
+    encoder.setQuality(1);
+    encoder.setRepeat(0);
+    encoder.setTransparent(Color.WHITE);
+    return encoder;
+  }
+
+  /** A screenshot of a list of items, scrolled by {@code index} items. */
+  private static File screenshot(File file, int index) throws IOException {
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, WIDTH, HEIGHT);
+    graphics.setColor(new Color(0x3F51B5));
+    graphics.fillRect(0, 0, WIDTH, 220);
+    graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 48));
+    for (int row = 0; row < 14; row++) {
+      int item = row + index;
+      int y = 260 + row * 150;
+      graphics.setColor(Color.getHSBColor(item / 14f, 0.6f, 0.9f));
+      graphics.fillOval(40, y, 100, 100);
+      graphics.setColor(Color.DARK_GRAY);
+      graphics.drawString("List item number " + item, 180, y + 65);
+      graphics.setColor(Color.LIGHT_GRAY);
+      graphics.drawLine(180, y + 130, WIDTH, y + 130);
+    }
+    graphics.dispose();
+    ImageIO.write(image, "png", file);
+    return file;
+  }
+
+  private static Map<Long, Long> allocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long[] ids = threads.getAllThreadIds();
+    long[] bytes = threads.getThreadAllocatedBytes(ids);
+    Map<Long, Long> allocated = new HashMap<>();
+    for (int i = 0; i < ids.length; i++) {
+      allocated.put(ids[i], bytes[i]);
+    }
+    return allocated;
+  }
+
+  private static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+}
@@ -0,0 +1,173 @@
+package com.squareup.spoon;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ApngEncoderTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test public void matchingPngFramesAreCopied() throws IOException {
+    Color[] colors = {Color.RED, Color.BLUE, Color.GREEN};
+    List<File> frames = new ArrayList<>();
+    for (int i = 0; i < colors.length; i++) {
+      frames.add(frame(i + ".png", colors[i], 30, 50, "png"));
+    }
+    File apng = testFolder.newFile("animated.png");
+    new ApngEncoder(pool).encode(frames, apng);
+
+    List<Chunk> chunks = readChunks(apng);
+    assertThat(chunks.get(0).type).isEqualTo("IHDR");
+    assertThat(chunks.get(0).data).isEqualTo(readChunks(frames.get(0)).get(0).data);
+    assertThat(chunks.get(1).type).isEqualTo("acTL");
+    assertThat(ByteBuffer.wrap(chunks.get(1).data).getInt()).isEqualTo(colors.length);
+
+    // Every frame's image data is carried over byte for byte, with one sequence across frames.
+    List<byte[]> frameData = new ArrayList<>();
+    int sequence = 0;
+    for (Chunk chunk : chunks) {
+      switch (chunk.type) {
+        case "fcTL":
+          assertThat(ByteBuffer.wrap(chunk.data).getInt()).isEqualTo(sequence++);
+          frameData.add(new byte[0]);
+          break;
+        case "IDAT":
+          frameData.set(frameData.size() - 1, concat(frameData.get(frameData.size() - 1),
+              chunk.data));
+          break;
+        case "fdAT":
+          assertThat(ByteBuffer.wrap(chunk.data).getInt()).isEqualTo(sequence++);
+          frameData.set(frameData.size() - 1, concat(frameData.get(frameData.size() - 1),
+              Arrays.copyOfRange(chunk.data, 4, chunk.data.length)));
+          break;
+        default:
+      }
+    }
+    assertThat(frameData).hasSize(colors.length);
+    for (int i = 0; i < colors.length; i++) {
+      assertThat(frameData.get(i)).isEqualTo(imageData(frames.get(i)));
+    }
+
+    // Viewers without animation support show the first frame.
+    BufferedImage still = ImageIO.read(apng);
+    assertThat(still.getRGB(10, 10)).isEqualTo(Color.RED.getRGB());
+  }
+
+  @Test public void mixedFramesAreReencoded() throws IOException {
+    List<File> frames = new ArrayList<>();
+    frames.add(frame("1.png", Color.RED, 30, 50, "png"));
+    frames.add(frame("2.jpg", Color.BLUE, 40, 20, "jpg"));
+    File apng = testFolder.newFile("animated.png");
+    new ApngEncoder(pool).encode(frames, apng);
+
+    List<Chunk> chunks = readChunks(apng);
+    ByteBuffer header = ByteBuffer.wrap(chunks.get(0).data);
+    assertThat(header.getInt()).isEqualTo(40);
+    assertThat(header.getInt()).isEqualTo(50);
+    assertThat(ByteBuffer.wrap(chunks.get(1).data).getInt()).isEqualTo(2);
+    long frameControls = chunks.stream().filter(chunk -> chunk.type.equals("fcTL")).count();
+    assertThat(frameControls).isEqualTo(2);
+
+    BufferedImage still = ImageIO.read(apng);
+    assertThat(still.getRGB(10, 10)).isEqualTo(Color.RED.getRGB());
+  }
+
+  @Test(expected = IOException.class)
+  public void undecodableFrameFails() throws IOException {
+    File bogus = testFolder.newFile("bogus.png");
+    List<File> frames = new ArrayList<>();
+    frames.add(frame("1.png", Color.RED, 10, 10, "png"));
+    frames.add(bogus);
+    new ApngEncoder(pool).encode(frames, testFolder.newFile("animated.png"));
+  }
+
+  private File frame(String name, Color color, int width, int height, String format)
+      throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(color);
+    graphics.fillRect(0, 0, width, height);
+    graphics.dispose();
+    File file = testFolder.newFile(name);
+    ImageIO.write(image, format, file);
+    return file;
+  }
+
+  private static byte[] imageData(File png) throws IOException {
+    byte[] data = new byte[0];
+    for (Chunk chunk : readChunks(png)) {
+      if (chunk.type.equals("IDAT")) {
+        data = concat(data, chunk.data);
+      }
+    }
+    return data;
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(first, 0, first.length);
+    out.write(second, 0, second.length);
+    return out.toByteArray();
+  }
+
+  /** Read every chunk of {@code png}, verifying the signature and checksums. */
+  private static List<Chunk> readChunks(File png) throws IOException {
+    List<Chunk> chunks = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(new FileInputStream(png))) {
+      byte[] signature = new byte[8];
+      in.readFully(signature);
+      assertThat(signature).isEqualTo(SpoonUtils.PNG_SIGNATURE);
+      while (true) {
+        byte[] data = new byte[in.readInt()];
+        byte[] type = new byte[4];
+        in.readFully(type);
+        in.readFully(data);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+        assertThat(in.readInt()).isEqualTo((int) crc.getValue());
+
+        Chunk chunk = new Chunk(new String(type, StandardCharsets.US_ASCII), data);
+        if (chunk.type.equals("IEND")) {
+          return chunks;
+        }
+        chunks.add(chunk);
+      }
+    }
+  }
+
+  private static final class Chunk {
+    final String type;
+    final byte[] data;
+
+    Chunk(String type, byte[] data) {
+      this.type = type;
+      this.data = data;
+    }
+  }
+}
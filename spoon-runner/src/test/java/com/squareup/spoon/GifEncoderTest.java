@@ -0,0 +1,77 @@
+package com.squareup.spoon;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class GifEncoderTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test public void framesAreDecodableInOrder() throws IOException {
+    Color[] colors = {Color.RED, Color.BLUE, Color.GREEN, Color.BLACK, Color.ORANGE};
+    List<File> frames = new ArrayList<>();
+    for (int i = 0; i < colors.length; i++) {
+      frames.add(frame(i + ".png", colors[i], 40 + i, 60));
+    }
+    File gif = testFolder.newFile("animated.gif");
+    new GifEncoder(pool).encode(frames, gif);
+
+    try (ImageInputStream in = ImageIO.createImageInputStream(gif)) {
+      ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+      reader.setInput(in);
+      assertThat(reader.getNumImages(true)).isEqualTo(colors.length);
+      for (int i = 0; i < colors.length; i++) {
+        BufferedImage image = reader.read(i);
+        assertThat(image.getWidth()).isEqualTo(44);
+        assertThat(image.getHeight()).isEqualTo(60);
+        assertClose(new Color(image.getRGB(10, 10)), colors[i]);
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void undecodableFrameFails() throws IOException {
+    File bogus = testFolder.newFile("bogus.png");
+    List<File> frames = new ArrayList<>();
+    frames.add(frame("1.png", Color.RED, 10, 10));
+    frames.add(bogus);
+    new GifEncoder(pool).encode(frames, testFolder.newFile("animated.gif"));
+  }
+
+  private File frame(String name, Color color, int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(color);
+    graphics.fillRect(0, 0, width, height);
+    graphics.dispose();
+    File file = testFolder.newFile(name);
+    ImageIO.write(image, "png", file);
+    return file;
+  }
+
+  private static void assertClose(Color actual, Color expected) {
+    assertThat(Math.abs(actual.getRed() - expected.getRed())).isAtMost(8);
+    assertThat(Math.abs(actual.getGreen() - expected.getGreen())).isAtMost(8);
+    assertThat(Math.abs(actual.getBlue() - expected.getBlue())).isAtMost(8);
+  }
+}
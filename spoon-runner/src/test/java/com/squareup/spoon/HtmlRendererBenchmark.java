@@ -0,0 +1,93 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.squareup.spoon.html.HtmlRenderer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Measures how long {@link HtmlRenderer} takes to render runs of increasing numbers of devices and
+ * tests. The first render in the JVM, which pays for loading and initializing the renderer, is
+ * reported separately, as is an incremental render after one test's result changed. Not run as
+ * part of the tests.
+ * <p>
+ * Usage: {@code HtmlRendererBenchmark [<devices>x<tests>...]}
+ */
+public final class HtmlRendererBenchmark {
+  private static final int ITERATIONS = 3;
+  private static final int LOG_LINES = 20;
+
+  public static void main(String... args) throws IOException {
+    String[] sizes = args.length > 0 ? args : new String[] {"1x100", "1x1000", "10x100", "10x1000",
+        "40x250", "40x1000"};
+    File root = Files.createTempDirectory("spoon-render").toFile();
+    try {
+      File first = new File(root, "first");
+      long firstStart = System.nanoTime();
+      new HtmlRenderer(summary(1, 1, -1), SpoonUtils.GSON, first).render();
+      System.out.printf("first render: %d ms%n", (System.nanoTime() - firstStart) / 1_000_000);
+      FileUtils.deleteDirectory(first);
+
+      for (String size : sizes) {
+        String[] parts = size.split("x");
+        int devices = Integer.parseInt(parts[0]);
+        int tests = Integer.parseInt(parts[1]);
+        SpoonSummary summary = summary(devices, tests, -1);
+        long best = Long.MAX_VALUE;
+        long bestIncremental = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+          File output = new File(root, size + "-" + i);
+          long start = System.nanoTime();
+          new HtmlRenderer(summary, SpoonUtils.GSON, output, null, true).render();
+          best = Math.min(best, System.nanoTime() - start);
+
+          SpoonSummary changed = summary(devices, tests, i);
+          start = System.nanoTime();
+          new HtmlRenderer(changed, SpoonUtils.GSON, output, null, true).render();
+          bestIncremental = Math.min(bestIncremental, System.nanoTime() - start);
+          FileUtils.deleteDirectory(output);
+        }
+        System.out.printf("%3d devices x %5d tests: %6d ms, one changed: %6d ms (%d pages)%n",
+            devices, tests, best / 1_000_000, bestIncremental / 1_000_000,
+            2 + devices + tests + devices * tests);
+      }
+    } finally {
+      FileUtils.deleteDirectory(root);
+    }
+  }
+
+  /** A run in which every test passes except for the one at index {@code failing}, if any. */
+  private static SpoonSummary summary(int devices, int tests, int failing) {
+    List<LogCatMessage> log = new ArrayList<>();
+    for (int i = 0; i < LOG_LINES; i++) {
+      log.add(new LogCatMessage(Log.LogLevel.INFO, 100, 101, "com.example", "Tag",
+          new LogCatTimestamp(10, 19, 2, 3, 4, i), "Log line number " + i));
+    }
+    Map<String, DeviceResult> results = new HashMap<>();
+    for (int d = 0; d < devices; d++) {
+      String serial = "emulator-" + (5554 + 2 * d);
+      Map<DeviceTest, DeviceTestResult> testResults = new HashMap<>();
+      for (int t = 0; t < tests; t++) {
+        DeviceTest test = DeviceTest.of("com.example.Test" + (t / 25), "method" + t);
+        DeviceTestResult.Status status =
+            t == failing ? DeviceTestResult.Status.FAIL : DeviceTestResult.Status.PASS;
+        testResults.put(test, new DeviceTestResult(status, null, 1234,
+            Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), null, log,
+            Collections.emptyList()));
+      }
+      results.put(serial, new DeviceResult(false, null,
+          new DeviceDetails("Nexus 5", "LGE", "7.1", 25, "en", "US", true, "Nexus_5"),
+          testResults, 0, 0, Collections.emptyMap(), Collections.emptyList()));
+    }
+    return new SpoonSummary("Benchmark", null, 0, 0, results);
+  }
+}
@@ -0,0 +1,98 @@
+package com.squareup.spoon;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class LzwEncoderTest {
+  @Test public void singlePixel() {
+    byte[] pixels = {7};
+    assertThat(decode(LzwEncoder.encode(pixels, 8))).isEqualTo(pixels);
+  }
+
+  @Test public void flatColor() {
+    byte[] pixels = new byte[100_000];
+    assertThat(decode(LzwEncoder.encode(pixels, 8))).isEqualTo(pixels);
+  }
+
+  @Test public void noiseFillsTheTableRepeatedly() {
+    byte[] pixels = new byte[300_000];
+    new Random(42).nextBytes(pixels);
+    assertThat(decode(LzwEncoder.encode(pixels, 8))).isEqualTo(pixels);
+  }
+
+  @Test public void smallPalette() {
+    byte[] pixels = new byte[50_000];
+    Random random = new Random(7);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(4) : pixels[Math.max(0, i - 1)]);
+    }
+    assertThat(decode(LzwEncoder.encode(pixels, 2))).isEqualTo(pixels);
+  }
+
+  /** A straightforward GIF LZW decoder to check the encoder against. */
+  private static byte[] decode(byte[] encoded) {
+    int minCodeSize = encoded[0];
+    // Join the data sub-blocks.
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    int position = 1;
+    while (encoded[position] != 0) {
+      int length = encoded[position] & 0xff;
+      data.write(encoded, position + 1, length);
+      position += length + 1;
+    }
+    assertThat(position).isEqualTo(encoded.length - 1);
+    byte[] bytes = data.toByteArray();
+
+    int clearCode = 1 << minCodeSize;
+    int endCode = clearCode + 1;
+    byte[][] table = new byte[4096][];
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int codeSize = minCodeSize + 1;
+    int next = clearCode + 2;
+    byte[] previous = null;
+    int bit = 0;
+    while (true) {
+      int code = 0;
+      for (int i = 0; i < codeSize; i++, bit++) {
+        code |= ((bytes[bit >> 3] >> (bit & 7)) & 1) << i;
+      }
+      if (code == clearCode) {
+        for (int i = 0; i < clearCode; i++) {
+          table[i] = new byte[] {(byte) i};
+        }
+        codeSize = minCodeSize + 1;
+        next = clearCode + 2;
+        previous = null;
+        continue;
+      }
+      if (code == endCode) {
+        return out.toByteArray();
+      }
+      byte[] entry;
+      if (code < next) {
+        entry = table[code];
+      } else {
+        assertThat(code).isEqualTo(next);
+        entry = append(previous, previous[0]);
+      }
+      out.write(entry, 0, entry.length);
+      if (previous != null && next < 4096) {
+        table[next++] = append(previous, entry[0]);
+        if (next == 1 << codeSize && codeSize < 12) {
+          codeSize++;
+        }
+      }
+      previous = entry;
+    }
+  }
+
+  private static byte[] append(byte[] prefix, byte suffix) {
+    byte[] result = new byte[prefix.length + 1];
+    System.arraycopy(prefix, 0, result, 0, prefix.length);
+    result[prefix.length] = suffix;
+    return result;
+  }
+}
@@ -0,0 +1,102 @@
+package com.squareup.spoon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class ParallelZipWriterTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test public void entriesAddedInParallelCanBeRead() throws IOException {
+    File file = testFolder.newFile("archive.zip");
+    try (ParallelZipWriter writer = new ParallelZipWriter(file)) {
+      IntStream.range(0, 200).parallel().forEach(i -> {
+        try (OutputStream entry = writer.newEntry("page/" + i + ".html")) {
+          for (int line = 0; line < i; line++) {
+            entry.write(("Line " + line + " of page " + i + "\n").getBytes(UTF_8));
+          }
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      });
+      writer.write("empty.txt", new byte[0]);
+      writer.write("Ложка.txt", "spoon".getBytes(UTF_8));
+    }
+
+    try (ZipFile zip = new ZipFile(file)) {
+      assertThat(zip.size()).isEqualTo(202);
+      String page = IOUtils.toString(zip.getInputStream(zip.getEntry("page/150.html")), UTF_8);
+      assertThat(page).startsWith("Line 0 of page 150\n");
+      assertThat(page).endsWith("Line 149 of page 150\n");
+      assertThat(zip.getEntry("page/150.html").getCompressedSize())
+          .isLessThan(zip.getEntry("page/150.html").getSize());
+      assertThat(IOUtils.toByteArray(zip.getInputStream(zip.getEntry("empty.txt")))).isEmpty();
+      assertThat(IOUtils.toString(
+          zip.getInputStream(zip.getEntry("Ложка.txt")), UTF_8))
+          .isEqualTo("spoon");
+    }
+  }
+
+  @Test public void compressedFilesAreStored() throws IOException {
+    File directory = testFolder.newFolder("output");
+    File screenshot = FileUtils.getFile(directory, "image", "serial", "shot.png");
+    FileUtils.writeStringToFile(screenshot, "png png png png png png png png", UTF_8);
+    File log = FileUtils.getFile(directory, "work", "log.txt");
+    FileUtils.writeStringToFile(log, "log log log log log log log log", UTF_8);
+
+    File file = testFolder.newFile("archive.zip");
+    try (ParallelZipWriter writer = new ParallelZipWriter(file)) {
+      writer.writeTree(directory);
+      try (OutputStream entry = writer.newEntry("animation.gif")) {
+        entry.write("gif gif gif gif gif gif gif gif".getBytes(UTF_8));
+      }
+    }
+
+    try (ZipFile zip = new ZipFile(file)) {
+      ZipEntry png = zip.getEntry("image/serial/shot.png");
+      assertThat(png.getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(IOUtils.toString(zip.getInputStream(png), UTF_8))
+          .isEqualTo("png png png png png png png png");
+      assertThat(zip.getEntry("animation.gif").getMethod()).isEqualTo(ZipEntry.STORED);
+      ZipEntry txt = zip.getEntry("work/log.txt");
+      assertThat(txt.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(IOUtils.toString(zip.getInputStream(txt), UTF_8))
+          .isEqualTo("log log log log log log log log");
+    }
+  }
+
+  @Test public void moreEntriesThanTheOriginalFormatAllows() throws IOException {
+    File file = testFolder.newFile("archive.zip");
+    int count = 70000;
+    try (ParallelZipWriter writer = new ParallelZipWriter(file)) {
+      for (int i = 0; i < count; i++) {
+        writer.write(i + ".png", new byte[] {(byte) i});
+      }
+    }
+
+    try (ZipFile zip = new ZipFile(file)) {
+      assertThat(zip.size()).isEqualTo(count);
+      List<String> names = new ArrayList<>();
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        names.add(entry.getName());
+      }
+      assertThat(names.get(count - 1)).isEqualTo((count - 1) + ".png");
+      assertThat(IOUtils.toByteArray(zip.getInputStream(zip.getEntry("69999.png"))))
+          .isEqualTo(new byte[] {(byte) 69999});
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.squareup.spoon;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+public final class ResultArchiveTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private SpoonSummary summary;
+  private File file;
+
+  @Before public void setUp() throws IOException {
+    summary = SpoonJsonTest.summary();
+    file = new File(testFolder.getRoot(), ResultArchive.FILE_NAME);
+    ResultArchiveWriter.write(summary, file);
+  }
+
+  @Test public void convertsToIdenticalJson() throws IOException {
+    ResultArchive archive = ResultArchive.open(file);
+    StringWriter pretty = new StringWriter();
+    archive.writeJson(pretty, false);
+    assertThat(pretty.toString()).isEqualTo(SpoonUtils.GSON.toJson(summary));
+    StringWriter compact = new StringWriter();
+    archive.writeJson(compact, true);
+    assertThat(compact.toString()).isEqualTo(SpoonUtils.COMPACT_GSON.toJson(summary));
+    assertThat(SpoonUtils.GSON.toJson(archive.toSummary()))
+        .isEqualTo(SpoonUtils.GSON.toJson(summary));
+  }
+
+  @Test public void readsSingleDeviceAndTest() throws IOException {
+    ResultArchive archive = ResultArchive.open(file);
+    assertThat(archive.getTitle()).isEqualTo("Test <run>");
+    assertThat(archive.getSerials()).containsExactly("123", "emulator-5554");
+    assertThat(archive.getTests("123")).containsExactly(
+        DeviceTest.of("com.example.FooTest", "bar"),
+        DeviceTest.of("com.example.FooTest", "baz")).inOrder();
+    assertThat(archive.getTests("unknown")).isEmpty();
+
+    DeviceResult failedInstall = archive.getDeviceResult("emulator-5554");
+    assertThat(failedInstall.getInstallFailed()).isTrue();
+    assertThat(failedInstall.getInstallMessage()).isEqualTo("Unable to install application APK.");
+    assertThat(archive.getDeviceResult("unknown")).isNull();
+
+    DeviceTestResult result = archive.getTestResult("123", "com.example.FooTest", "bar");
+    assertThat(result.getStatus()).isEqualTo(DeviceTestResult.Status.FAIL);
+    assertThat(result.getException().getCause().getMessage()).isEqualTo("Root cause");
+    assertThat(result.getLog().get(1).getMessage()).isEqualTo("Line one\nLine two");
+    assertThat(archive.getTestResult("123", "com.example.FooTest", "baz").getStatus())
+        .isEqualTo(DeviceTestResult.Status.PASS);
+    assertThat(archive.getTestResult("123", "com.example.FooTest", "qux")).isNull();
+    assertThat(archive.getTestResult("emulator-5554", "com.example.FooTest", "bar")).isNull();
+  }
+
+  @Test public void rejectsOtherFiles() throws IOException {
+    File json = testFolder.newFile("result.json");
+    Files.write(SpoonUtils.GSON.toJson(summary), json, UTF_8);
+    try {
+      ResultArchive.open(json);
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).startsWith("Not a result archive");
+    }
+  }
+
+  @Test public void leavesNoTemporaryFile() throws IOException {
+    ResultArchiveWriter.write(summary, file);
+    assertThat(testFolder.getRoot().list()).asList().containsExactly(ResultArchive.FILE_NAME);
+  }
+
+  @Test public void rejectsTruncatedArchive() throws IOException {
+    byte[] bytes = Files.toByteArray(file);
+    for (int length : new int[] {bytes.length / 2, bytes.length - 1}) {
+      Files.write(Arrays.copyOf(bytes, length), file);
+      try {
+        ResultArchive.open(file);
+        fail();
+      } catch (IOException e) {
+        assertThat(e.getMessage()).contains("result archive");
+      }
+    }
+  }
+
+  @Test public void rejectsHeaderWithoutOffsets() throws IOException {
+    // What a writer stopped before filling in the header would leave.
+    ByteBuffer bytes = ByteBuffer.allocate(64);
+    bytes.put(ResultArchive.MAGIC).putInt(ResultArchive.VERSION).putInt(0).putInt(0);
+    Files.write(bytes.array(), file);
+    try {
+      ResultArchive.open(file);
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).startsWith("Truncated or corrupt result archive");
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.testrunner.TestIdentifier;
+import com.squareup.spoon.html.HtmlDashboard;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.squareup.spoon.SpoonUtils.COMPACT_GSON;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class RunProgressTest {
+  private final AtomicLong now = new AtomicLong(1000);
+
+  @Test public void countsTestsAsTheyEnd() {
+    RunProgress progress =
+        new RunProgress("Run", Arrays.asList("serial1", "serial2"), now::get);
+    progress.apply("serial1", ProgressEvent.device("Pixel"));
+    progress.apply("serial1", ProgressEvent.runStarted(3));
+    run(progress, "serial1", "passes");
+    progress.apply("serial1", ProgressEvent.test(ProgressEvent.Type.TEST_STARTED, test("fails")));
+    progress.apply("serial1", ProgressEvent.test(ProgressEvent.Type.TEST_FAILED, test("fails")));
+
+    RunProgress.Snapshot snapshot = progress.snapshot();
+    assertThat(snapshot.title).isEqualTo("Run");
+    assertThat(snapshot.passed).isEqualTo(1);
+    assertThat(snapshot.failed).isEqualTo(0);
+    assertThat(snapshot.expected).isEqualTo(3);
+    RunProgress.Snapshot.Device device = snapshot.devices.get(0);
+    assertThat(device.name).isEqualTo("Pixel");
+    assertThat(device.state).isEqualTo("running");
+    assertThat(device.current).isEqualTo("com.example.Test#fails");
+    assertThat(device.results).isEqualTo("p");
+    assertThat(snapshot.devices.get(1).name).isEqualTo("serial2");
+    assertThat(snapshot.devices.get(1).state).isEqualTo("waiting");
+
+    progress.apply("serial1", ProgressEvent.test(ProgressEvent.Type.TEST_ENDED, test("fails")));
+    progress.apply("serial1", ProgressEvent.runEnded());
+    progress.apply("serial1", ProgressEvent.done());
+    snapshot = progress.snapshot();
+    assertThat(snapshot.failed).isEqualTo(1);
+    assertThat(snapshot.devices.get(0).results).isEqualTo("pf");
+    assertThat(snapshot.devices.get(0).state).isEqualTo("done");
+    assertThat(snapshot.devices.get(0).current).isNull();
+  }
+
+  @Test public void estimatesRemainingTimeFromTheSlowestDevice() {
+    RunProgress progress =
+        new RunProgress("Run", Arrays.asList("fast", "slow"), now::get);
+    assertThat(progress.snapshot().remaining).isNull();
+
+    progress.apply("fast", ProgressEvent.runStarted(10));
+    progress.apply("slow", ProgressEvent.runStarted(10));
+    now.addAndGet(1000);
+    run(progress, "fast", "one");
+    now.addAndGet(1000);
+    run(progress, "fast", "two");
+    run(progress, "slow", "one");
+
+    RunProgress.Snapshot snapshot = progress.snapshot();
+    // The slow device took 2s for a test and has 9 left.
+    assertThat(snapshot.remaining).isEqualTo(18000L);
+    assertThat(snapshot.testsPerMinute).isWithin(0.001).of(90);
+
+    now.addAndGet(500);
+    assertThat(progress.snapshot().remaining).isEqualTo(17500L);
+  }
+
+  @Test public void eventsSurviveBeingSentFromAnotherProcess() {
+    RunProgress progress = new RunProgress("Run", Collections.singleton("serial"), now::get);
+    ProgressEvent started = ProgressEvent.test(ProgressEvent.Type.TEST_STARTED, test("sent"));
+    String line = ProgressEvent.PREFIX + COMPACT_GSON.toJson(started);
+    assertThat(line).doesNotContain("\n");
+    progress.apply("serial", COMPACT_GSON.fromJson(
+        line.substring(ProgressEvent.PREFIX.length()), ProgressEvent.class));
+    assertThat(progress.snapshot().devices.get(0).current).isEqualTo("com.example.Test#sent");
+  }
+
+  @Test public void dashboardStreamsProgress() throws IOException {
+    RunProgress progress = new RunProgress("Streamed", Collections.singleton("serial"));
+    try (HtmlDashboard dashboard = new HtmlDashboard(progress)) {
+      dashboard.start(0);
+      String page = IOUtils.toString(
+          new URL("http://localhost:" + dashboard.getPort() + "/"), UTF_8);
+      assertThat(page).contains("Streamed");
+      assertThat(page).contains("<tr class=\"device\" data-serial=\"serial\">");
+      assertThat(page).contains("static/spoon-dashboard.js");
+
+      HttpURLConnection script = (HttpURLConnection) new URL("http://localhost:"
+          + dashboard.getPort() + "/static/spoon-dashboard.js").openConnection();
+      assertThat(script.getContentType()).startsWith("application/javascript");
+      script.disconnect();
+
+      HttpURLConnection events = (HttpURLConnection) new URL(
+          "http://localhost:" + dashboard.getPort() + "/events").openConnection();
+      assertThat(events.getContentType()).startsWith("text/event-stream");
+      try (BufferedReader reader =
+               new BufferedReader(new InputStreamReader(events.getInputStream(), UTF_8))) {
+        assertThat(nextEvent(reader)).contains("\"state\":\"waiting\"");
+        progress.apply("serial", ProgressEvent.device("Pixel"));
+        assertThat(nextEvent(reader)).contains("\"name\":\"Pixel\"");
+      } finally {
+        events.disconnect();
+      }
+    }
+  }
+
+  private static String nextEvent(BufferedReader reader) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.startsWith("data: ")) {
+        return line;
+      }
+    }
+    throw new AssertionError("Stream ended.");
+  }
+
+  private static void run(RunProgress progress, String serial, String method) {
+    progress.apply(serial, ProgressEvent.test(ProgressEvent.Type.TEST_STARTED, test(method)));
+    progress.apply(serial, ProgressEvent.test(ProgressEvent.Type.TEST_ENDED, test(method)));
+  }
+
+  private static TestIdentifier test(String method) {
+    return new TestIdentifier("com.example.Test", method);
+  }
+}
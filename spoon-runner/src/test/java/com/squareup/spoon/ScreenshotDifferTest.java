@@ -0,0 +1,109 @@
+package com.squareup.spoon;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ScreenshotDifferTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test public void screenshotsMatchedByTagInOrder() throws IOException {
+    File baselineDir = testFolder.newFolder("baseline");
+    File baselineA1 = new File(baselineDir, "100_a.png");
+    File baselineB = new File(baselineDir, "200_b.png");
+    File baselineA2 = new File(baselineDir, "300_a.png");
+    for (File file : Arrays.asList(baselineA1, baselineB, baselineA2)) {
+      assertThat(file.createNewFile()).isTrue();
+    }
+    File a1 = new File("1000_a.png");
+    File a2 = new File("1500_a.png");
+    File a3 = new File("1700_a.png");
+    File c = new File("2000_c.png");
+
+    Map<File, File> matches =
+        ScreenshotDiffer.matchBaseline(Arrays.asList(a1, c, a2, a3), baselineDir);
+    assertThat(matches).containsExactly(a1, baselineA1, a2, baselineA2);
+  }
+
+  @Test public void missingBaselineMatchesNothing() {
+    Map<File, File> matches = ScreenshotDiffer.matchBaseline(
+        Arrays.asList(new File("1000_a.png")), new File(testFolder.getRoot(), "missing"));
+    assertThat(matches).isEmpty();
+  }
+
+  @Test public void identicalPixelsAreUnchanged() throws IOException {
+    // Different bytes on disk but the same pixels.
+    File screenshot = image("actual.png", BufferedImage.TYPE_INT_RGB, 20, 20, null);
+    File baseline = image("baseline.png", BufferedImage.TYPE_INT_ARGB, 20, 20, null);
+    File diffImage = new File(testFolder.getRoot(), "diff.png");
+
+    ScreenshotDiff diff = ScreenshotDiffer.compare(screenshot, baseline, diffImage);
+    assertThat(diff.isChanged()).isFalse();
+    assertThat(diff.getBaseline()).isEqualTo(baseline);
+    assertThat(diff.getDiffImage()).isNull();
+    assertThat(diffImage.exists()).isFalse();
+  }
+
+  @Test public void imperceptibleChangesAreIgnored() throws IOException {
+    File screenshot = image("actual.png", BufferedImage.TYPE_INT_RGB, 20, 20, new Color(0x7f7f7f));
+    File baseline = image("baseline.png", BufferedImage.TYPE_INT_RGB, 20, 20, new Color(0x808080));
+
+    ScreenshotDiff diff = ScreenshotDiffer.compare(screenshot, baseline,
+        new File(testFolder.getRoot(), "diff.png"));
+    assertThat(diff.isChanged()).isFalse();
+  }
+
+  @Test public void changedPixelsAreHighlighted() throws IOException {
+    File screenshot = image("actual.png", BufferedImage.TYPE_INT_RGB, 20, 20, Color.BLACK);
+    File baseline = image("baseline.png", BufferedImage.TYPE_INT_RGB, 20, 20, null);
+    File diffImage = new File(testFolder.getRoot(), "diff/diff.png");
+
+    ScreenshotDiff diff = ScreenshotDiffer.compare(screenshot, baseline, diffImage);
+    assertThat(diff.isChanged()).isTrue();
+    assertThat(diff.getChangedPixels()).isEqualTo(25);
+    assertThat(diff.getDiffImage()).isEqualTo(diffImage);
+
+    BufferedImage image = ImageIO.read(diffImage);
+    assertThat(image.getRGB(5, 5)).isEqualTo(0xFFFF0000);
+    assertThat(image.getRGB(15, 15) & 0xff).isAtLeast(0xe0); // Faded.
+  }
+
+  @Test public void resizedScreenshotIsChanged() throws IOException {
+    File screenshot = image("actual.png", BufferedImage.TYPE_INT_RGB, 20, 30, null);
+    File baseline = image("baseline.png", BufferedImage.TYPE_INT_RGB, 20, 20, null);
+    File diffImage = new File(testFolder.getRoot(), "diff.png");
+
+    ScreenshotDiff diff = ScreenshotDiffer.compare(screenshot, baseline, diffImage);
+    assertThat(diff.getChangedPixels()).isEqualTo(200);
+    BufferedImage image = ImageIO.read(diffImage);
+    assertThat(image.getWidth()).isEqualTo(20);
+    assertThat(image.getHeight()).isEqualTo(30);
+  }
+
+  /** A white image with a 5x5 square of {@code mark} at (5, 5), if not null. */
+  private File image(String name, int type, int width, int height, Color mark)
+      throws IOException {
+    BufferedImage image = new BufferedImage(width, height, type);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, width, height);
+    if (mark != null) {
+      graphics.setColor(mark);
+      graphics.fillRect(5, 5, 5, 5);
+    }
+    graphics.dispose();
+    File file = testFolder.newFile(name);
+    ImageIO.write(image, "png", file);
+    return file;
+  }
+}
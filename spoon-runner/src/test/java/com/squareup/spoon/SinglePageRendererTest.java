@@ -0,0 +1,148 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.spoon.html.SinglePageRenderer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class SinglePageRendererTest {
+  private static final int TESTS = 300;
+
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test public void writesShardedDataInsteadOfPages() throws IOException {
+    File output = testFolder.getRoot();
+    new SinglePageRenderer(summary(), SpoonUtils.GSON, output, null).render();
+
+    assertThat(new File(output, "index.html").isFile()).isTrue();
+    assertThat(new File(output, "result.json").isFile()).isTrue();
+    assertThat(new File(output, "test").exists()).isFalse();
+    assertThat(new File(output, "logs").exists()).isFalse();
+    // The index, two chunks of tests, and each device's results and two chunks of logs.
+    assertThat(FileUtils.listFiles(new File(output, "data"), null, true)).hasSize(9);
+
+    JsonObject index = read(output, "data", "index.json.gz").getAsJsonObject();
+    assertThat(index.get("title").getAsString()).isEqualTo("Single page");
+    JsonArray devices = index.getAsJsonArray("devices");
+    assertThat(devices.size()).isEqualTo(2);
+    // Ordered by name rather than by serial.
+    assertThat(devices.get(0).getAsJsonObject().get("serial").getAsString()).isEqualTo("b");
+    assertThat(devices.get(0).getAsJsonObject().get("failed").getAsInt()).isEqualTo(1);
+    JsonArray tests = index.getAsJsonArray("tests");
+    assertThat(tests.size()).isEqualTo(TESTS);
+    int testsPerChunk = index.get("testsPerChunk").getAsInt();
+
+    int chunked = 0;
+    for (File chunk : FileUtils.getFile(output, "data", "test").listFiles()) {
+      chunked += read(chunk).getAsJsonArray().size();
+    }
+    assertThat(chunked).isEqualTo(TESTS);
+    int last = TESTS - 1;
+    JsonObject lastTest = read(output, "data", "test", (last / testsPerChunk) + ".json.gz")
+        .getAsJsonArray()
+        .get(last % testsPerChunk)
+        .getAsJsonObject();
+    assertThat(lastTest.get("methodName").getAsString())
+        .isEqualTo(tests.get(last).getAsJsonObject().get("methodName").getAsString());
+
+    JsonArray results = read(output, "data", "device", "0.json.gz").getAsJsonObject()
+        .getAsJsonArray("testResults");
+    JsonArray logs = new JsonArray();
+    for (int chunk = 0; chunk * testsPerChunk < TESTS; chunk++) {
+      logs.addAll(read(output, "data", "log", "0", chunk + ".json.gz").getAsJsonArray());
+    }
+    assertThat(logs.size()).isEqualTo(results.size());
+    for (int i = 0; i < results.size(); i++) {
+      JsonObject log = logs.get(i).getAsJsonObject();
+      assertThat(log.get("title").getAsString())
+          .isEqualTo(results.get(i).getAsJsonObject().get("methodName").getAsString());
+      assertThat(log.getAsJsonArray("log").get(0).getAsJsonObject().get("message").getAsString())
+          .isEqualTo("Line of " + log.get("title").getAsString());
+    }
+  }
+
+  @Test public void longLogsArePaged() throws IOException {
+    File output = testFolder.getRoot();
+    List<LogCatMessage> log = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      log.add(new LogCatMessage(Log.LogLevel.INFO, 1, 1, "app", "Tag",
+          new LogCatTimestamp(1, 1, 0, 0, 0, 0), "Line " + i));
+    }
+    DeviceTestResult result = new DeviceTestResult(DeviceTestResult.Status.PASS, null, 10,
+        Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), null, log,
+        Collections.emptyList());
+    DeviceResult device = new DeviceResult(false, null, null,
+        Collections.singletonMap(DeviceTest.of("com.example.LogTest", "longLog"), result), 1000,
+        100, Collections.emptyMap(), Collections.emptyList());
+    new SinglePageRenderer(new SpoonSummary("Logs", null, 1000, 100,
+        Collections.singletonMap("serial", device)), SpoonUtils.GSON, output, null).render();
+
+    JsonObject paged = read(output, "data", "log", "0", "0.json.gz").getAsJsonArray().get(0)
+        .getAsJsonObject();
+    assertThat(paged.has("log")).isFalse();
+    assertThat(paged.getAsJsonObject("paged").get("count").getAsInt()).isEqualTo(2500);
+    File pages = FileUtils.getFile(output, "data", "log", "0", "0");
+    assertThat(pages.list()).asList().containsExactly("0.json.gz", "1.json.gz", "2.json.gz");
+    JsonArray last = read(pages, "2.json.gz").getAsJsonArray();
+    assertThat(last.size()).isEqualTo(500);
+    assertThat(last.get(499).getAsJsonArray().get(3).getAsString()).isEqualTo("Line 2499");
+  }
+
+  private static JsonElement read(File directory, String... names) throws IOException {
+    return read(FileUtils.getFile(directory, names));
+  }
+
+  private static JsonElement read(File file) throws IOException {
+    try (Reader reader =
+        new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), UTF_8)) {
+      return new JsonParser().parse(reader);
+    }
+  }
+
+  private static SpoonSummary summary() {
+    Map<String, DeviceResult> results = new LinkedHashMap<>();
+    results.put("a", device("Nexus 9", -1));
+    results.put("b", device("Nexus 5", 7));
+    return new SpoonSummary("Single page", null, 1000, 100, results);
+  }
+
+  private static DeviceResult device(String name, int failing) {
+    Map<DeviceTest, DeviceTestResult> tests = new LinkedHashMap<>();
+    for (int i = 0; i < TESTS; i++) {
+      String method = "test" + i;
+      LogCatMessage line = new LogCatMessage(Log.LogLevel.INFO, 1, 1, "app", "Tag",
+          new LogCatTimestamp(1, 1, 0, 0, 0, 0), "Line of " + method);
+      DeviceTestResult.Status status =
+          i == failing ? DeviceTestResult.Status.FAIL : DeviceTestResult.Status.PASS;
+      tests.put(DeviceTest.of("com.example.PageTest", method),
+          new DeviceTestResult(status, null, 10, Collections.emptyList(), Collections.emptyMap(),
+              Collections.emptyMap(), null, Collections.singletonList(line),
+              Collections.emptyList()));
+    }
+    DeviceDetails details = new DeviceDetails(name, "LGE", "7.1", 25, "en", "US", true, name);
+    return new DeviceResult(false, null, details, tests, 1000, 100, Collections.emptyMap(),
+        Collections.emptyList());
+  }
+}
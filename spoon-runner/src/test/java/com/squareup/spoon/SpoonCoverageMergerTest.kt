@@ -1,11 +1,18 @@
 package com.squareup.spoon
 
+import com.google.common.truth.Truth.assertThat
 import com.squareup.spoon.SpoonUtils.sanitizeSerial
+import org.jacoco.core.data.ExecutionData
+import org.jacoco.core.data.ExecutionDataWriter
+import org.jacoco.core.data.SessionInfo
+import org.jacoco.core.tools.ExecFileLoader
 import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
 import org.junit.Rule
 import org.junit.Test
 import org.junit.rules.TemporaryFolder
 import java.io.File
+import java.io.FileNotFoundException
 import java.lang.String.format
 
 class SpoonCoverageMergerTest {
@@ -22,10 +29,87 @@ class SpoonCoverageMergerTest {
     assertTrue(mergedCoverageFile.exists())
   }
 
+  @Test fun mergesProbesOfEachDevice() {
+    val outputDirectory = testFolder.newFolder("output")
+    writeCoverage(outputDirectory, "device1", booleanArrayOf(true, false, false))
+    writeCoverage(outputDirectory, "device2", booleanArrayOf(false, false, true))
+
+    val merger = CoverageMerger(outputDirectory)
+    assertThat(merger.add("device1")).isTrue()
+    assertThat(merger.add("device2")).isTrue()
+    val merged = ExecFileLoader()
+    merged.load(merger.save())
+
+    assertThat(merged.executionDataStore.get(CLASS_ID).probes.toList())
+        .containsExactly(true, false, true).inOrder()
+    assertThat(merged.sessionInfoStore.infos.map { it.id })
+        .containsExactly("device1", "device2")
+  }
+
+  @Test fun leavesOutDevicesWithoutCoverage() {
+    val outputDirectory = testFolder.newFolder("output")
+    writeCoverage(outputDirectory, "device1", booleanArrayOf(true, false, false))
+    testFolder.newFolder("output", "coverage", "device2")
+    File(outputDirectory, "coverage/device2/coverage.ec").writeText("Not coverage")
+
+    val merger = CoverageMerger(outputDirectory)
+    assertThat(merger.add("device1")).isTrue()
+    assertThat(merger.add("device2")).isFalse()
+    assertThat(merger.add("device3")).isFalse()
+    val merged = ExecFileLoader()
+    merged.load(merger.save())
+
+    assertThat(merged.executionDataStore.get(CLASS_ID).probes.toList())
+        .containsExactly(true, false, false).inOrder()
+  }
+
+  @Test fun failsWithoutAnyCoverage() {
+    val outputDirectory = testFolder.newFolder("output")
+    val merger = CoverageMerger(outputDirectory)
+    assertThat(merger.add("device1")).isFalse()
+    try {
+      merger.save()
+      fail()
+    } catch (expected: FileNotFoundException) {
+    }
+    assertThat(File(outputDirectory, "coverage/merged-coverage.ec").exists()).isFalse()
+  }
+
+  @Test fun savingReplacesTheMergedFileWithoutLeavingTemporaryFiles() {
+    val outputDirectory = testFolder.newFolder("output")
+    writeCoverage(outputDirectory, "device1", booleanArrayOf(true, false, false))
+    testFolder.newFile("output/coverage/merged-coverage.ec").writeText("Stale")
+
+    val merger = CoverageMerger(outputDirectory)
+    merger.add("device1")
+    val file = merger.save()
+
+    assertThat(file).isEqualTo(File(outputDirectory, "coverage/merged-coverage.ec"))
+    assertThat(File(outputDirectory, "coverage").list().toList())
+        .containsExactly("device1", "merged-coverage.ec")
+    val merged = ExecFileLoader()
+    merged.load(file)
+    assertThat(merged.executionDataStore.contents).hasSize(1)
+  }
+
+  private fun writeCoverage(outputDirectory: File, serial: String, probes: BooleanArray) {
+    val directory = File(outputDirectory, "coverage/$serial")
+    directory.mkdirs()
+    File(directory, "coverage.ec").outputStream().use {
+      val writer = ExecutionDataWriter(it)
+      writer.visitSessionInfo(SessionInfo(serial, 1, 2))
+      writer.visitClassExecution(ExecutionData(CLASS_ID, "com/example/Foo", probes))
+    }
+  }
+
   private fun createTemporaryCoverageFiles(serialId1: String, serialId2: String) {
     testFolder.newFolder("output", "coverage", sanitizeSerial(serialId1))
     testFolder.newFolder("output", "coverage", sanitizeSerial(serialId2))
     testFolder.newFile(format("output/coverage/%s/coverage.ec", sanitizeSerial(serialId1)))
     testFolder.newFile(format("output/coverage/%s/coverage.ec", sanitizeSerial(serialId2)))
   }
+
+  companion object {
+    private const val CLASS_ID = 0x1234L
+  }
 }
@@ -1,5 +1,12 @@
 package com.squareup.spoon;
 
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.squareup.spoon.html.HtmlRenderer;
 import java.io.File;
 import java.io.FileInputStream;
@@ -11,11 +18,27 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.lesscss.LessCompiler;
+import org.lesscss.LessException;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.squareup.spoon.DeviceTestResult.Status.FAIL;
+import static com.squareup.spoon.DeviceTestResult.Status.PASS;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public final class SpoonHtmlRendererTest {
 
@@ -51,8 +74,258 @@ public final class SpoonHtmlRendererTest {
     }
   }
 
+  @Test
+  public void stylesheetIsCompiledFromLess() throws IOException, LessException {
+    File folder = testFolder.getRoot();
+    new HtmlRenderer(prepareNonLatinSummary(), SpoonUtils.GSON, folder).render();
+
+    String css = new LessCompiler().compile(new File("src/main/less/spoon.less"));
+    assertThat(FileUtils.readFileToString(FileUtils.getFile(folder, "static", "spoon.css"),
+        StandardCharsets.UTF_8)).isEqualTo(css);
+  }
+
+  @Test
+  public void incrementalRenderOnlyRewritesChangedFiles() throws IOException {
+    File folder = testFolder.getRoot();
+    DeviceTest foo = DeviceTest.of("com.example.IncrementalTest", "foo");
+    DeviceTest bar = DeviceTest.of("com.example.IncrementalTest", "bar");
+    DeviceTest baz = DeviceTest.of("com.example.IncrementalTest", "baz");
+    new HtmlRenderer(summary(foo, PASS, bar, PASS, baz, PASS), SpoonUtils.GSON, folder, null,
+        true).render();
+
+    File fooPage = FileUtils.getFile(folder, "test", foo.getClassName(), "foo.html");
+    File barPage = FileUtils.getFile(folder, "test", bar.getClassName(), "bar.html");
+    File bazPage = FileUtils.getFile(folder, "test", baz.getClassName(), "baz.html");
+    File css = FileUtils.getFile(folder, "static", "spoon.css");
+    for (File file : new File[] {fooPage, barPage, css}) {
+      FileUtils.writeStringToFile(file, "unchanged", StandardCharsets.UTF_8);
+    }
+
+    // foo fails this time and baz no longer runs.
+    new HtmlRenderer(summary(foo, FAIL, bar, PASS, null, null), SpoonUtils.GSON, folder, null,
+        true).render();
+
+    assertThat(FileUtils.readFileToString(fooPage, StandardCharsets.UTF_8)).contains("<html");
+    assertThat(FileUtils.readFileToString(barPage, StandardCharsets.UTF_8)).isEqualTo("unchanged");
+    assertThat(FileUtils.readFileToString(css, StandardCharsets.UTF_8)).isEqualTo("unchanged");
+    assertThat(bazPage.exists()).isFalse();
+
+    // A full render rewrites everything and forgets the manifest.
+    new HtmlRenderer(summary(foo, FAIL, bar, PASS, null, null), SpoonUtils.GSON, folder).render();
+    assertThat(FileUtils.readFileToString(barPage, StandardCharsets.UTF_8)).contains("<html");
+    assertThat(new File(folder, "render.manifest").exists()).isFalse();
+  }
+
+  @Test
+  public void longLogsArePaged() throws IOException {
+    File folder = testFolder.getRoot();
+    DeviceTest shortLog = DeviceTest.of("com.example.LogTest", "shortLog");
+    DeviceTest longLog = DeviceTest.of("com.example.LogTest", "longLog");
+    Map<DeviceTest, DeviceTestResult> tests = new LinkedHashMap<>();
+    tests.put(shortLog, result(log(10)));
+    tests.put(longLog, result(log(2500)));
+    DeviceResult device = new DeviceResult(false, null, null, tests, 1000, 100,
+        Collections.emptyMap(), Collections.emptyList());
+    new HtmlRenderer(new SpoonSummary("Logs", null, 1000, 100,
+        Collections.singletonMap("serial", device)), SpoonUtils.GSON, folder).render();
+
+    File logs = FileUtils.getFile(folder, "logs", "serial", "com.example.LogTest");
+    String shortPage = FileUtils.readFileToString(new File(logs, "shortLog.html"), UTF_8);
+    assertThat(shortPage).contains("Message 9");
+    assertThat(shortPage).doesNotContain("spoonLogIndex");
+
+    String longPage = FileUtils.readFileToString(new File(logs, "longLog.html"), UTF_8);
+    assertThat(longPage).doesNotContain("Message 0");
+    String indexJson = longPage.substring(longPage.indexOf("var spoonLogIndex = ") + 20);
+    JsonObject index =
+        new JsonParser().parse(indexJson.substring(0, indexJson.indexOf(";</script>")))
+            .getAsJsonObject();
+    assertThat(index.get("count").getAsInt()).isEqualTo(2500);
+    // Even and odd entries are tagged differently, and every tenth is an error.
+    assertThat(index.getAsJsonArray("tags").toString()).isEqualTo("[\"Even\",\"Odd\"]");
+    // Counts follow the position of the tag.
+    int error = Log.LogLevel.ERROR.ordinal() + 1;
+    JsonArray lastPage = index.getAsJsonArray("pages").get(2).getAsJsonArray();
+    int errors = 0;
+    for (JsonElement counts : lastPage) {
+      errors += counts.getAsJsonArray().get(error).getAsInt();
+    }
+    assertThat(errors).isEqualTo(50);
+
+    File[] pages = new File(logs, "longLog").listFiles();
+    assertThat(pages).hasLength(3);
+    String page = FileUtils.readFileToString(new File(logs, "longLog/2.js"), UTF_8);
+    assertThat(page).startsWith("spoonLog.page(2, ");
+    JsonArray entries =
+        new JsonParser().parse(page.substring(17, page.lastIndexOf(')'))).getAsJsonArray();
+    assertThat(entries.size()).isEqualTo(500);
+    JsonArray first = entries.get(0).getAsJsonArray();
+    assertThat(first.get(1).getAsInt()).isEqualTo(Log.LogLevel.ERROR.ordinal());
+    assertThat(first.get(2).getAsString()).isEqualTo("Even");
+    assertThat(first.get(3).getAsString()).isEqualTo("Message 2000");
+  }
+
+  @Test
+  public void rendersIntoZipTheFilesItWouldWrite() throws IOException {
+    File folder = testFolder.newFolder("output");
+    DeviceTest longLog = DeviceTest.of("com.example.LogTest", "longLog");
+    Map<DeviceTest, DeviceTestResult> tests = new LinkedHashMap<>();
+    tests.put(longLog, result(log(1500)));
+    DeviceResult device = new DeviceResult(false, null, null, tests, 1000, 100,
+        Collections.emptyMap(), Collections.emptyList());
+    SpoonSummary summary = new SpoonSummary("Zipped", null, 1000, 100,
+        Collections.singletonMap("serial", device));
+
+    File zipFile = testFolder.newFile("report.zip");
+    try (ParallelZipWriter zip = new ParallelZipWriter(zipFile)) {
+      new HtmlRenderer(summary, SpoonUtils.GSON, folder).render(zip);
+    }
+    assertThat(folder.list()).isEmpty();
+
+    new HtmlRenderer(summary, SpoonUtils.GSON, folder).render();
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      Map<String, String> entries = new TreeMap<>();
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        entries.put(entry.getName(), IOUtils.toString(zip.getInputStream(entry), UTF_8));
+      }
+      Map<String, String> files = new TreeMap<>();
+      for (File file : FileUtils.listFiles(folder, null, true)) {
+        String name = folder.toPath().relativize(file.toPath()).toString().replace('\\', '/');
+        files.put(name, FileUtils.readFileToString(file, UTF_8));
+      }
+      assertThat(entries.keySet()).containsExactlyElementsIn(files.keySet()).inOrder();
+      assertThat(entries).containsEntry("test/com.example.LogTest/longLog.html",
+          files.get("test/com.example.LogTest/longLog.html"));
+      assertThat(entries).containsEntry("logs/serial/com.example.LogTest/longLog/1.js",
+          files.get("logs/serial/com.example.LogTest/longLog/1.js"));
+      assertThat(zip.getEntry("index.html").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(zip.getEntry("static/icon-log.png").getMethod()).isEqualTo(ZipEntry.STORED);
+    }
+  }
+
+  @Test
+  public void tvScreenshotsAreLoadedInChunks() throws IOException {
+    File folder = testFolder.getRoot();
+    Map<String, DeviceResult> devices = new LinkedHashMap<>();
+    for (String serial : new String[] {"serial1", "serial2"}) {
+      Map<DeviceTest, DeviceTestResult> tests = new LinkedHashMap<>();
+      for (int i = 0; i < 80; i++) {
+        DeviceTestResult.Builder result = new DeviceTestResult.Builder();
+        if (i % 4 != 0) {
+          result.addScreenshot(FileUtils.getFile(folder, "image", serial, "shot" + i + ".png"));
+        }
+        tests.put(DeviceTest.of("com.example.TvTest", "test" + i), result.build());
+      }
+      devices.put(serial, new DeviceResult(false, null, null, tests, 1000, 100,
+          Collections.emptyMap(), Collections.emptyList()));
+    }
+    new HtmlRenderer(new SpoonSummary("TV", null, 1000, 100, devices), SpoonUtils.GSON, folder)
+        .render();
+
+    String page = FileUtils.readFileToString(new File(folder, "tv.html"), UTF_8);
+    assertThat(page).doesNotContain("shot");
+    String indexJson = page.substring(page.indexOf("var spoonTvIndex = ") + 19);
+    JsonObject index =
+        new JsonParser().parse(indexJson.substring(0, indexJson.indexOf(";</script>")))
+            .getAsJsonObject();
+    // Only tests with screenshots are shown.
+    assertThat(index.get("count").getAsInt()).isEqualTo(120);
+    assertThat(index.getAsJsonArray("devices").get(1).getAsJsonObject().get("tests").getAsInt())
+        .isEqualTo(60);
+
+    assertThat(new File(folder, "tv").list()).asList().containsExactly("0.js", "1.js");
+    String chunk = FileUtils.readFileToString(FileUtils.getFile(folder, "tv", "1.js"), UTF_8);
+    assertThat(chunk).startsWith("spoonTv.chunk(1, ");
+    JsonArray tests =
+        new JsonParser().parse(chunk.substring(17, chunk.lastIndexOf(')'))).getAsJsonArray();
+    assertThat(tests.size()).isEqualTo(20);
+    JsonObject first = tests.get(0).getAsJsonObject();
+    assertThat(first.get("device").getAsInt()).isEqualTo(1);
+    String method = first.get("methodPrettyName").getAsString();
+    assertThat(first.getAsJsonArray("screenshots").get(0).getAsJsonObject().get("path")
+        .getAsString()).isEqualTo("image/serial2/" + method.replace("test", "shot") + ".png");
+  }
+
+  @Test
+  public void indexGroupsFailuresOfTheSameCrash() throws IOException {
+    File folder = testFolder.getRoot();
+    SpoonSummary.Builder summary = new SpoonSummary.Builder().setTitle("Crash").start();
+    for (int device = 0; device < 3; device++) {
+      DeviceResult.Builder result = new DeviceResult.Builder().startTests();
+      for (int test = 0; test < 4; test++) {
+        String crash = ""
+            + "java.lang.RuntimeException: Unable to start activity " + test + "\n"
+            + "\tat android.app.ActivityThread.performLaunchActivity(ActivityThread.java:2416)\n"
+            + "Caused by: java.lang.NullPointerException: On device " + device + "\n"
+            + "\tat com.example.Presenter.bind(Presenter.java:" + (40 + device) + ")\n"
+            + "\tat com.example.MainActivity.onCreate(MainActivity.java:20)";
+        result.addTestResultBuilder(DeviceTest.of("com.example.CrashTest", "test" + test),
+            new DeviceTestResult.Builder().startTest().markTestAsFailed(crash).endTest());
+      }
+      result.addTestResultBuilder(DeviceTest.of("com.example.CrashTest", "passes"),
+          new DeviceTestResult.Builder().startTest().endTest());
+      summary.addResult("serial" + device, result.endTests().build());
+    }
+    new HtmlRenderer(summary.end().build(), SpoonUtils.GSON, folder).render();
+
+    String page = FileUtils.readFileToString(new File(folder, "index.html"), UTF_8);
+    assertThat(page).contains("Failure groups");
+    assertThat(page).contains("id=\"failure-group-0\"");
+    assertThat(page).doesNotContain("id=\"failure-group-1\"");
+    assertThat(page).contains("12 failures of 4 tests on 3 devices");
+    assertThat(page)
+        .contains("java.lang.NullPointerException <small>at com.example.Presenter.bind");
+    assertThat(page).contains("href=\"test/com.example.CrashTest/test3.html\"");
+    assertThat(page).doesNotContain("test/com.example.CrashTest/passes.html");
+  }
+
+  @Test
+  public void indexHasNoFailureGroupsWhenEverythingPasses() throws IOException {
+    File folder = testFolder.getRoot();
+    DeviceTest test = DeviceTest.of("com.example.Test", "passes");
+    new HtmlRenderer(summary(test, PASS, test, PASS, test, PASS), SpoonUtils.GSON, folder)
+        .render();
+    String page = FileUtils.readFileToString(new File(folder, "index.html"), UTF_8);
+    assertThat(page).doesNotContain("Failure groups");
+  }
+
+  private static SpoonSummary summary(DeviceTest first, DeviceTestResult.Status firstStatus,
+      DeviceTest second, DeviceTestResult.Status secondStatus, DeviceTest third,
+      DeviceTestResult.Status thirdStatus) {
+    Map<DeviceTest, DeviceTestResult> tests = new LinkedHashMap<>();
+    tests.put(first, result(firstStatus));
+    tests.put(second, result(secondStatus));
+    if (third != null) {
+      tests.put(third, result(thirdStatus));
+    }
+    DeviceResult device = new DeviceResult(false, null, null, tests, 1000, 100,
+        Collections.emptyMap(), Collections.emptyList());
+    return new SpoonSummary("Incremental", null, 1000, 100,
+        Collections.singletonMap("serial", device));
+  }
+
+  private static DeviceTestResult result(DeviceTestResult.Status status) {
+    return new DeviceTestResult(status, null, 10, Collections.emptyList(), Collections.emptyMap(),
+        Collections.emptyMap(), null, Collections.emptyList(), Collections.emptyList());
+  }
+
+  private static DeviceTestResult result(List<LogCatMessage> log) {
+    return new DeviceTestResult(PASS, null, 10, Collections.emptyList(), Collections.emptyMap(),
+        Collections.emptyMap(), null, log, Collections.emptyList());
+  }
+
+  private static List<LogCatMessage> log(int size) {
+    List<LogCatMessage> log = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      Log.LogLevel level = (i % 10 == 0) ? Log.LogLevel.ERROR : Log.LogLevel.DEBUG;
+      log.add(new LogCatMessage(level, 1, 1, "app", (i % 2 == 0) ? "Even" : "Odd",
+          new LogCatTimestamp(1, 1, 0, 0, 0, 0), "Message " + i));
+    }
+    return log;
+  }
+
   private SpoonSummary prepareNonLatinSummary() {
-    DeviceTest device = new DeviceTest("foo", "bar");
+    DeviceTest device = DeviceTest.of("foo", "bar");
     return new SpoonSummary.Builder() //
         .setTitle(SPOON_IN_RUSSIAN) //
         .start() //
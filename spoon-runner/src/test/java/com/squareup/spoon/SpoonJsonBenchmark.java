@@ -0,0 +1,122 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.reflect.TypeToken;
+import com.squareup.spoon.misc.StackTrace;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how long writing and reading {@code result.json} takes, and how much it allocates, for
+ * runs of increasing numbers of devices and tests, with the streaming adapters of
+ * {@link SpoonJson} compared to the reflection based Gson configuration they replaced. That is
+ * only helped to read the immutable lists stack traces now hold. Not run as part of the tests.
+ * <p>
+ * Usage: {@code SpoonJsonBenchmark [<devices>x<tests>...]}
+ */
+public final class SpoonJsonBenchmark {
+  private static final int ITERATIONS = 3;
+  private static final int LOG_LINES = 20;
+  private static final Gson REFLECTIVE_GSON = new GsonBuilder() //
+      .registerTypeAdapter(File.class, SpoonJson.FILE) //
+      .registerTypeAdapter(ImmutableList.class, (JsonDeserializer<ImmutableList<?>>)
+          (json, type, context) -> ImmutableList.copyOf((List<?>) context.deserialize(json,
+              TypeToken.getParameterized(List.class,
+                  ((ParameterizedType) type).getActualTypeArguments()[0]).getType()))) //
+      .enableComplexMapKeySerialization() //
+      .setPrettyPrinting() //
+      .create();
+
+  public static void main(String... args) {
+    String[] sizes = args.length > 0 ? args : new String[] {"1x100", "10x1000", "40x1000"};
+    for (String size : sizes) {
+      String[] parts = size.split("x");
+      SpoonSummary summary = summary(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+      // Check they agree before timing them.
+      String json = SpoonUtils.GSON.toJson(summary);
+      if (!json.equals(REFLECTIVE_GSON.toJson(summary))) {
+        throw new AssertionError("Adapters disagree on " + size);
+      }
+      System.out.printf("%s (%d KB):%n", size, json.length() >> 10);
+      measure("streaming", SpoonUtils.GSON, summary, json);
+      measure("reflective", REFLECTIVE_GSON, summary, json);
+    }
+  }
+
+  private static void measure(String name, Gson gson, SpoonSummary summary, String json) {
+    long bestWrite = Long.MAX_VALUE;
+    long bestRead = Long.MAX_VALUE;
+    long writeBytes = 0;
+    long readBytes = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      gson.toJson(summary);
+      bestWrite = Math.min(bestWrite, System.nanoTime() - start);
+      writeBytes = allocatedBytes() - allocated;
+
+      allocated = allocatedBytes();
+      start = System.nanoTime();
+      gson.fromJson(json, SpoonSummary.class);
+      bestRead = Math.min(bestRead, System.nanoTime() - start);
+      readBytes = allocatedBytes() - allocated;
+    }
+    System.out.printf("  %-10s write %6d ms %6d MB, read %6d ms %6d MB%n", name,
+        bestWrite / 1_000_000, writeBytes >> 20, bestRead / 1_000_000, readBytes >> 20);
+  }
+
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /** A run in which every tenth test fails with a screenshot and the same crash. */
+  private static SpoonSummary summary(int devices, int tests) {
+    List<LogCatMessage> log = new ArrayList<>();
+    for (int i = 0; i < LOG_LINES; i++) {
+      log.add(new LogCatMessage(Log.LogLevel.INFO, 100, 101, "com.example", "Tag",
+          new LogCatTimestamp(10, 19, 2, 3, 4, i), "Log line number " + i));
+    }
+    Map<String, DeviceResult> results = new HashMap<>();
+    for (int d = 0; d < devices; d++) {
+      String serial = "emulator-" + (5554 + 2 * d);
+      Map<DeviceTest, DeviceTestResult> testResults = new HashMap<>();
+      for (int t = 0; t < tests; t++) {
+        DeviceTest test = DeviceTest.of("com.example.Test" + (t / 25), "method" + t);
+        DeviceTestResult result;
+        if (t % 10 == 0) {
+          File screenshot = new File("/out/image/" + serial + "/" + t + ".png");
+          result = new DeviceTestResult(DeviceTestResult.Status.FAIL,
+              StackTrace.from(new IllegalStateException("Failure " + t)), 1234,
+              Collections.singletonList(screenshot),
+              Collections.singletonMap(screenshot, new File("/out/thumbnail/" + t + ".jpg")),
+              Collections.emptyMap(), null, log, Collections.emptyList());
+        } else {
+          result = new DeviceTestResult(DeviceTestResult.Status.PASS, null, 1234,
+              Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), null, log,
+              Collections.emptyList());
+        }
+        testResults.put(test, result);
+      }
+      Map<DeviceResult.Phase, Long> phases = new HashMap<>();
+      phases.put(DeviceResult.Phase.INSTALL, 1500L);
+      results.put(serial, new DeviceResult(false, null,
+          new DeviceDetails("Nexus 5", "LGE", "7.1", 25, "en", "US", true, "Nexus_5"),
+          testResults, 0, 0, phases, Collections.emptyList()));
+    }
+    return new SpoonSummary("Benchmark", null, 0, 0, results);
+  }
+}
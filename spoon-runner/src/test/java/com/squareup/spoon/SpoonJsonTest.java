@@ -0,0 +1,221 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.android.ddmlib.testrunner.IRemoteAndroidTestRunner;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.squareup.spoon.misc.StackTrace;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public final class SpoonJsonTest {
+  /** The reflection based configuration which the adapters replace. */
+  private static final Gson REFLECTIVE_GSON = new GsonBuilder() //
+      .registerTypeAdapter(File.class, SpoonJson.FILE) //
+      .enableComplexMapKeySerialization() //
+      .setPrettyPrinting() //
+      .create();
+
+  @Test public void summaryMatchesReflectiveOutput() {
+    SpoonSummary summary = summary();
+    assertThat(SpoonUtils.GSON.toJson(summary)).isEqualTo(REFLECTIVE_GSON.toJson(summary));
+  }
+
+  @Test public void compactOutputHasNoWhitespace() {
+    SpoonSummary summary = summary();
+    String compact = SpoonUtils.COMPACT_GSON.toJson(summary);
+    assertThat(compact).doesNotContain("\n");
+    SpoonSummary read = SpoonUtils.GSON.fromJson(compact, SpoonSummary.class);
+    assertThat(SpoonUtils.GSON.toJson(read)).isEqualTo(SpoonUtils.GSON.toJson(summary));
+  }
+
+  @Test public void compactOutputWritesRepeatedTracesAndFramesOnce() {
+    StackTrace first = StackTrace.from(""
+        + "java.lang.IllegalStateException: First\n"
+        + "\tat com.example.Presenter.bind(Presenter.java:40)\n"
+        + "\tat android.app.Activity.performCreate(Activity.java:6237)\n");
+    StackTrace second = StackTrace.from(""
+        + "java.lang.IllegalStateException: Second\n"
+        + "\tat com.example.Presenter.unbind(Presenter.java:50)\n"
+        + "\tat android.app.Activity.performCreate(Activity.java:6237)\n");
+    Map<DeviceTest, DeviceTestResult> testResults = new TreeMap<>();
+    for (int i = 0; i < 3; i++) {
+      testResults.put(DeviceTest.of("com.example.FooTest", "first" + i),
+          new DeviceTestResult(DeviceTestResult.Status.FAIL, first, 1, Collections.emptyList(),
+              Collections.emptyMap(), Collections.emptyMap(), null, Collections.emptyList(),
+              Collections.emptyList()));
+    }
+    testResults.put(DeviceTest.of("com.example.FooTest", "second"),
+        new DeviceTestResult(DeviceTestResult.Status.FAIL, second, 1, Collections.emptyList(),
+            Collections.emptyMap(), Collections.emptyMap(), null, Collections.emptyList(),
+            Collections.emptyList()));
+    DeviceResult device = new DeviceResult(false, null, null, testResults, 0, 0,
+        Collections.emptyMap(), Collections.singletonList(first));
+
+    String compact = SpoonUtils.COMPACT_GSON.toJson(device);
+    // Frames are numbered across traces; the first trace is numbered once written.
+    assertThat(compact.split("performCreate", -1)).hasLength(2);
+    assertThat(compact.split("\"First\"", -1)).hasLength(2);
+    assertThat(compact).contains("\"exception\":0");
+    assertThat(compact).contains("\"elements\":[{\"className\":\"com.example.Presenter\","
+        + "\"fileName\":\"Presenter.java\",\"line\":50,\"methodName\":\"unbind\","
+        + "\"isNative\":false},1]");
+    assertThat(compact).contains("\"exceptions\":[0]");
+    assertThat(compact.length())
+        .isLessThan(SpoonUtils.GSON.toJson(device).replaceAll("\\s", "").length());
+
+    DeviceResult read = SpoonUtils.COMPACT_GSON.fromJson(compact, DeviceResult.class);
+    assertThat(SpoonUtils.GSON.toJson(read)).isEqualTo(SpoonUtils.GSON.toJson(device));
+    StackTrace readFirst =
+        read.getTestResults().get(DeviceTest.of("com.example.FooTest", "first2")).getException();
+    StackTrace readSecond =
+        read.getTestResults().get(DeviceTest.of("com.example.FooTest", "second")).getException();
+    assertThat(readFirst).isSameAs(first);
+    assertThat(read.getExceptions().get(0)).isSameAs(first);
+    assertThat(readSecond.getElements().get(1)).isSameAs(first.getElements().get(1));
+  }
+
+  @Test public void summaryRoundTrips() {
+    String json = SpoonUtils.GSON.toJson(summary());
+    SpoonSummary read = SpoonUtils.GSON.fromJson(json, SpoonSummary.class);
+    assertThat(SpoonUtils.GSON.toJson(read)).isEqualTo(json);
+
+    DeviceTestResult testResult = read.getResults()
+        .get("123")
+        .getTestResults()
+        .get(DeviceTest.of("com.example.FooTest", "bar"));
+    assertThat(testResult.getStatus()).isEqualTo(DeviceTestResult.Status.FAIL);
+    assertThat(testResult.getException().getCause().getMessage()).isEqualTo("Root cause");
+    assertThat(testResult.getLog().get(1).getLogLevel()).isEqualTo(Log.LogLevel.ERROR);
+    assertThat(testResult.getLog().get(1).getTimestamp().toString())
+        .isEqualTo("10-19 02:03:04.005");
+    assertThat(testResult.getScreenshotDiffs().get(new File("/out/image/1_a.png")).isChanged())
+        .isTrue();
+  }
+
+  @Test public void summaryIsReadADeviceAtATime() throws IOException {
+    SpoonSummary summary = summary();
+    String json = SpoonUtils.COMPACT_GSON.toJson(summary);
+    assertThat(SpoonJson.readSerials(new JsonReader(new StringReader(json))))
+        .containsExactlyElementsIn(summary.getResults().keySet());
+
+    Map<String, DeviceResult> results = new LinkedHashMap<>();
+    SpoonSummary read = SpoonJson.readSummary(new JsonReader(new StringReader(json)),
+        results::put);
+    assertThat(read.getTitle()).isEqualTo(summary.getTitle());
+    assertThat(read.getResults()).isEmpty();
+    assertThat(SpoonUtils.GSON.toJson(results.get("123")))
+        .isEqualTo(SpoonUtils.GSON.toJson(summary.getResults().get("123")));
+  }
+
+  @Test public void deviceResultWrittenByReflectionIsRead() {
+    DeviceResult result = summary().getResults().get("123");
+    String json = REFLECTIVE_GSON.toJson(result);
+    DeviceResult read = SpoonUtils.COMPACT_GSON.fromJson(json, DeviceResult.class);
+    assertThat(REFLECTIVE_GSON.toJson(read)).isEqualTo(json);
+    assertThat(read.getPhaseDurations()).containsEntry(DeviceResult.Phase.INSTALL, 1500L);
+  }
+
+  @Test public void readTestsAreCanonical() {
+    DeviceResult read = SpoonUtils.GSON.fromJson(
+        SpoonUtils.GSON.toJson(summary().getResults().get("123")), DeviceResult.class);
+    DeviceTest test = read.getTestResults().keySet().iterator().next();
+    assertThat(test).isSameAs(DeviceTest.of("com.example.FooTest", "bar"));
+  }
+
+  @Test public void unknownFieldsAreSkipped() {
+    DeviceResult read = SpoonUtils.GSON.fromJson(
+        "{\"installFailed\":true,\"extra\":{\"nested\":[1,2]},\"duration\":42}",
+        DeviceResult.class);
+    assertThat(read.getInstallFailed()).isTrue();
+    assertThat(read.getDuration()).isEqualTo(42);
+    assertThat(read.getTestResults()).isEmpty();
+  }
+
+  @Test public void unknownPhasesAndConstantsAreSkipped() {
+    DeviceResult read = SpoonUtils.GSON.fromJson(""
+        + "{\"phaseDurations\":{\"INSTALL\":1500,\"WARP_DRIVE\":7},"
+        + "\"testResults\":[[{\"className\":\"Foo\",\"methodName\":\"bar\"},"
+        + "{\"status\":\"QUARANTINED\",\"duration\":3}]]}", DeviceResult.class);
+    assertThat(read.getPhaseDurations()).containsExactly(DeviceResult.Phase.INSTALL, 1500L);
+    DeviceTestResult result = read.getTestResults().get(DeviceTest.of("Foo", "bar"));
+    assertThat(result.getStatus()).isNull();
+    assertThat(result.getDuration()).isEqualTo(3);
+  }
+
+  @Test public void unknownReferencesAreRejected() {
+    String[] documents = {
+        "{\"exceptions\":[0]}",
+        "{\"exceptions\":[{\"className\":\"Foo\",\"elements\":[-1]}]}"
+    };
+    for (String json : documents) {
+      try {
+        SpoonUtils.COMPACT_GSON.fromJson(json, DeviceResult.class);
+        fail();
+      } catch (JsonSyntaxException e) {
+        assertThat(e.getMessage()).contains("before it was read at $.exceptions[0]");
+      }
+    }
+  }
+
+  static SpoonSummary summary() {
+    StackTrace cause = StackTrace.from(new IllegalStateException("Root cause"));
+    StackTrace exception = StackTrace.from(""
+        + "java.lang.AssertionError: Expected <1> but was <2>\n"
+        + "\tat com.example.FooTest.bar(FooTest.java:12)\n"
+        + "\tat java.lang.reflect.Method.invoke(Native Method)\n");
+    exception = new StackTrace(exception.getClassName(), exception.getMessage(),
+        new ArrayDeque<>(exception.getElements()), cause);
+
+    File screenshot = new File("/out/image/1_a.png");
+    Map<File, File> thumbnails = new LinkedHashMap<>();
+    thumbnails.put(screenshot, new File("/out/thumbnail/1_a.jpg"));
+    Map<File, ScreenshotDiff> diffs = new LinkedHashMap<>();
+    diffs.put(screenshot, new ScreenshotDiff(new File("/base/image/1_a.png"), 12,
+        new File("/out/diff/1_a.png")));
+    DeviceTestResult failed = new DeviceTestResult(DeviceTestResult.Status.FAIL, exception, 1234,
+        Collections.singletonList(screenshot), thumbnails, diffs, new File("/out/image/bar.gif"),
+        Arrays.asList(
+            new LogCatMessage(Log.LogLevel.INFO, 10, 11, "com.example", "Tag",
+                new LogCatTimestamp(10, 19, 2, 3, 4, 1), "Hello <world> & \"friends\""),
+            new LogCatMessage(Log.LogLevel.ERROR, 10, 12, "com.example", "Tag",
+                new LogCatTimestamp(10, 19, 2, 3, 4, 5), "Line one\nLine two")),
+        Collections.singletonList(new File("/out/files/data.txt")));
+    DeviceTestResult passed = new DeviceTestResult.Builder().startTest().endTest().build();
+
+    Map<DeviceTest, DeviceTestResult> testResults = new TreeMap<>();
+    testResults.put(DeviceTest.of("com.example.FooTest", "bar"), failed);
+    testResults.put(DeviceTest.of("com.example.FooTest", "baz"), passed);
+    Map<DeviceResult.Phase, Long> phases = new TreeMap<>();
+    phases.put(DeviceResult.Phase.TEST_RUN, 60_000L);
+    phases.put(DeviceResult.Phase.INSTALL, 1500L);
+    DeviceResult device = new DeviceResult(false, null,
+        new DeviceDetails("Nexus 5", "LGE", "7.1", 25, "en", "US", false, null), testResults,
+        1_476_838_984_000L, 61_500, phases,
+        Collections.singletonList(StackTrace.from("Unable to pull files.")));
+    DeviceResult failedInstall = new DeviceResult(true, "Unable to install application APK.",
+        null, Collections.emptyMap(), 1_476_838_984_000L, -1, Collections.emptyMap(),
+        Collections.emptyList());
+
+    Map<String, DeviceResult> results = new LinkedHashMap<>();
+    results.put("123", device);
+    results.put("emulator-5554", failedInstall);
+    return new SpoonSummary("Test <run>", IRemoteAndroidTestRunner.TestSize.SMALL,
+        1_476_838_983_000L, 62_000, results);
+  }
+}
@@ -0,0 +1,127 @@
+package com.squareup.spoon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class SpoonMergerTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test public void mergesShardsWithConflictingSerials() throws IOException {
+    File first = shard("first", "FooTest", 1000);
+    File second = shard("second", "BarTest", 5000);
+    File output = new File(testFolder.getRoot(), "merged");
+
+    SpoonSummary merged = new SpoonMerger.Builder() //
+        .addInput(first) //
+        .addInput(second) //
+        .setOutputDirectory(output) //
+        .build() //
+        .merge();
+
+    assertThat(merged.getTitle()).isEqualTo("Shard first");
+    assertThat(merged.getStarted()).isEqualTo(1000);
+    assertThat(merged.getDuration()).isEqualTo(4100);
+    assertThat(merged.getResults().keySet()).containsExactly("emulator-5554", "emulator-5554_2");
+
+    DeviceTestResult bar = merged.getResults()
+        .get("emulator-5554_2")
+        .getTestResults()
+        .get(DeviceTest.of("com.example.BarTest", "run"));
+    File screenshot = FileUtils.getFile(output, "image", "emulator-5554_2", "com.example.BarTest",
+        "run", "1_a.png");
+    assertThat(bar.getScreenshots()).containsExactly(screenshot);
+    assertThat(FileUtils.readFileToString(screenshot, UTF_8)).isEqualTo("BarTest");
+    // Hard linked rather than copied, so the input is left in place.
+    assertThat(FileUtils.getFile(second, "image", "emulator-5554", "com.example.BarTest", "run",
+        "1_a.png").isFile()).isTrue();
+    assertThat(FileUtils.getFile(output, "junit-reports", "emulator-5554_2.xml").isFile()).isTrue();
+
+    assertThat(new File(output, "index.html").isFile()).isTrue();
+    SpoonSummary written = SpoonUtils.GSON.fromJson(
+        FileUtils.readFileToString(new File(output, "result.json"), UTF_8), SpoonSummary.class);
+    assertThat(written.getResults().keySet()).containsExactly("emulator-5554", "emulator-5554_2");
+  }
+
+  @Test public void movesArtifacts() throws IOException {
+    File input = shard("only", "FooTest", 1000);
+    File output = new File(testFolder.getRoot(), "merged");
+
+    new SpoonMerger.Builder().addInput(input).setOutputDirectory(output).setMove(true).build()
+        .merge();
+
+    assertThat(FileUtils.getFile(output, "image", "emulator-5554", "com.example.FooTest", "run",
+        "1_a.png").isFile()).isTrue();
+    assertThat(FileUtils.getFile(input, "image", "emulator-5554", "com.example.FooTest", "run",
+        "1_a.png").exists()).isFalse();
+  }
+
+  @Test public void mergesIncrementally() throws IOException {
+    File first = shard("first", "FooTest", 1000);
+    File output = new File(testFolder.getRoot(), "merged");
+    new SpoonMerger.Builder().addInput(first).setOutputDirectory(output).setIncremental(true)
+        .build()
+        .merge();
+    File fooPage = FileUtils.getFile(output, "test", "com.example.FooTest", "run.html");
+    FileUtils.writeStringToFile(fooPage, "unchanged", UTF_8);
+
+    File second = shard("second", "BarTest", 5000);
+    new SpoonMerger.Builder().addInput(first)
+        .addInput(second)
+        .setOutputDirectory(output)
+        .setIncremental(true)
+        .build()
+        .merge();
+
+    assertThat(FileUtils.readFileToString(fooPage, UTF_8)).isEqualTo("unchanged");
+    assertThat(FileUtils.getFile(output, "test", "com.example.BarTest", "run.html").isFile())
+        .isTrue();
+    assertThat(FileUtils.getFile(output, "image", "emulator-5554", "com.example.FooTest", "run",
+        "1_a.png").isFile()).isTrue();
+    assertThat(FileUtils.getFile(output, "image", "emulator-5554_2", "com.example.BarTest",
+        "run", "1_a.png").isFile()).isTrue();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void outputMustNotContainAnInput() throws IOException {
+    File output = testFolder.newFolder("merged");
+    new SpoonMerger.Builder().addInput(testFolder.newFolder("merged", "input"))
+        .setOutputDirectory(output)
+        .build();
+  }
+
+  /** An output directory as written on another host, whose paths do not exist here. */
+  private File shard(String name, String testClass, long started) throws IOException {
+    File input = testFolder.newFolder(name);
+    String className = "com.example." + testClass;
+    File screenshot = FileUtils.getFile(input, "image", "emulator-5554", className, "run",
+        "1_a.png");
+    FileUtils.writeStringToFile(screenshot, testClass, UTF_8);
+    FileUtils.writeStringToFile(FileUtils.getFile(input, "junit-reports", "emulator-5554.xml"),
+        "<testsuite/>", UTF_8);
+
+    File remote = new File("/ci/" + name + "/spoon-output/image/emulator-5554/" + className
+        + "/run/1_a.png");
+    DeviceTestResult result = new DeviceTestResult(DeviceTestResult.Status.PASS, null, 100,
+        Collections.singletonList(remote), Collections.emptyMap(), Collections.emptyMap(), null,
+        Collections.emptyList(), Collections.emptyList());
+    Map<DeviceTest, DeviceTestResult> tests =
+        Collections.singletonMap(DeviceTest.of(className, "run"), result);
+    DeviceResult device = new DeviceResult(false, null, null, tests, started, 100,
+        Collections.emptyMap(), Collections.emptyList());
+    SpoonSummary summary = new SpoonSummary("Shard " + name, null, started, 100,
+        Collections.singletonMap("emulator-5554", device));
+    Files.write(new File(input, "result.json").toPath(),
+        SpoonUtils.GSON.toJson(summary).getBytes(UTF_8));
+    return input;
+  }
+}
@@ -0,0 +1,181 @@
+package com.squareup.spoon;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class SpoonPostProcessorTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test public void animatedGifCreatedForMultipleScreenshots() throws Exception {
+    File output = testFolder.getRoot();
+    DeviceTest multiple = DeviceTest.of("foo", "multiple");
+    DeviceTest single = DeviceTest.of("foo", "single");
+    DeviceResult result = new DeviceResult.Builder() //
+        .startTests() //
+        .addTestResultBuilder(multiple, new DeviceTestResult.Builder() //
+            .startTest() //
+            .addScreenshot(screenshot(output, "multiple", "1.png")) //
+            .addScreenshot(screenshot(output, "multiple", "2.png")) //
+            .endTest()) //
+        .addTestResultBuilder(single, new DeviceTestResult.Builder() //
+            .startTest() //
+            .addScreenshot(screenshot(output, "single", "1.png")) //
+            .endTest()) //
+        .endTests() //
+        .startPhase(DeviceResult.Phase.PULL) //
+        .endPhase(DeviceResult.Phase.PULL) //
+        .build();
+    assertThat(result.getPhaseDurations()).containsKey(DeviceResult.Phase.PULL);
+
+    SpoonPostProcessor postProcessor =
+        new SpoonPostProcessor(output, true, true, AnimationFormat.GIF, null, false);
+    DeviceResult processed = postProcessor.process("123", result).join();
+    postProcessor.shutdown();
+
+    File animatedGif = processed.getTestResults().get(multiple).getAnimatedGif();
+    assertThat(animatedGif).isEqualTo(FileUtils.getFile(output, "image", "123", "foo",
+        "multiple.gif"));
+    assertThat(animatedGif.exists()).isTrue();
+    assertThat(processed.getTestResults().get(single).getAnimatedGif()).isNull();
+    assertThat(processed.getExceptions()).isEmpty();
+    assertThat(processed.getPhaseDurations().keySet())
+        .containsExactly(DeviceResult.Phase.PULL, DeviceResult.Phase.POST_PROCESSING)
+        .inOrder();
+  }
+
+  @Test public void thumbnailCreatedForEveryScreenshot() throws Exception {
+    File output = testFolder.getRoot();
+    DeviceTest test = DeviceTest.of("foo", "single");
+    File screenshot = screenshot(output, "single", "1.png");
+    File bogus = FileUtils.getFile(output, "image", "123", "foo", "single", "2.png");
+    FileUtils.touch(bogus);
+    DeviceResult result = new DeviceResult.Builder() //
+        .startTests() //
+        .addTestResultBuilder(test, new DeviceTestResult.Builder() //
+            .startTest() //
+            .addScreenshot(screenshot) //
+            .addScreenshot(bogus) //
+            .endTest()) //
+        .endTests() //
+        .build();
+
+    SpoonPostProcessor postProcessor =
+        new SpoonPostProcessor(output, true, false, AnimationFormat.GIF, null, false);
+    DeviceResult processed = postProcessor.process("123", result).join();
+    postProcessor.shutdown();
+
+    // Screenshots whose thumbnail fails are left to fall back to the original.
+    File thumbnail = FileUtils.getFile(output, "thumbnail", "123", "foo", "single", "1.jpg");
+    assertThat(processed.getTestResults().get(test).getThumbnails())
+        .containsExactly(screenshot, thumbnail);
+    assertThat(thumbnail.exists()).isTrue();
+    assertThat(processed.getExceptions()).isEmpty();
+  }
+
+  @Test public void noThumbnailsWhenDisabled() throws Exception {
+    File output = testFolder.getRoot();
+    DeviceTest test = DeviceTest.of("foo", "single");
+    DeviceResult result = new DeviceResult.Builder() //
+        .startTests() //
+        .addTestResultBuilder(test, new DeviceTestResult.Builder() //
+            .startTest() //
+            .addScreenshot(screenshot(output, "single", "1.png")) //
+            .endTest()) //
+        .endTests() //
+        .build();
+
+    SpoonPostProcessor postProcessor =
+        new SpoonPostProcessor(output, false, true, AnimationFormat.GIF, null, false);
+    DeviceResult processed = postProcessor.process("123", result).join();
+    postProcessor.shutdown();
+
+    assertThat(processed).isSameAs(result);
+    assertThat(processed.getTestResults().get(test).getThumbnails()).isEmpty();
+    assertThat(new File(output, "thumbnail").exists()).isFalse();
+  }
+
+  @Test public void apngAnimationCreatedWithPngExtension() throws Exception {
+    File output = testFolder.getRoot();
+    DeviceTest multiple = DeviceTest.of("foo", "multiple");
+    DeviceResult result = new DeviceResult.Builder() //
+        .startTests() //
+        .addTestResultBuilder(multiple, new DeviceTestResult.Builder() //
+            .startTest() //
+            .addScreenshot(screenshot(output, "multiple", "1.png")) //
+            .addScreenshot(screenshot(output, "multiple", "2.png")) //
+            .endTest()) //
+        .endTests() //
+        .build();
+
+    SpoonPostProcessor postProcessor =
+        new SpoonPostProcessor(output, true, true, AnimationFormat.APNG, null, false);
+    DeviceResult processed = postProcessor.process("123", result).join();
+    postProcessor.shutdown();
+
+    File animation = processed.getTestResults().get(multiple).getAnimatedGif();
+    assertThat(animation).isEqualTo(FileUtils.getFile(output, "image", "123", "foo",
+        "multiple.png"));
+    assertThat(animation.exists()).isTrue();
+    assertThat(processed.getExceptions()).isEmpty();
+  }
+
+  @Test public void screenshotsComparedWithBaseline() throws Exception {
+    File output = testFolder.newFolder("output");
+    File baseline = testFolder.newFolder("baseline");
+    screenshot(baseline, "multiple", "3_a.png");
+    screenshot(baseline, "multiple", "400_b.png");
+    DeviceTest test = DeviceTest.of("foo", "multiple");
+    File a = screenshot(output, "multiple", "1_a.png");
+    File b = screenshot(output, "multiple", "2_b.png");
+    File c = screenshot(output, "multiple", "5_c.png");
+    DeviceResult result = new DeviceResult.Builder() //
+        .startTests() //
+        .addTestResultBuilder(test, new DeviceTestResult.Builder() //
+            .startTest() //
+            .addScreenshot(a) //
+            .addScreenshot(b) //
+            .addScreenshot(c) //
+            .endTest()) //
+        .endTests() //
+        .build();
+
+    SpoonPostProcessor postProcessor =
+        new SpoonPostProcessor(output, true, false, AnimationFormat.GIF, baseline, false);
+    DeviceResult processed = postProcessor.process("123", result).join();
+    postProcessor.shutdown();
+
+    Map<File, ScreenshotDiff> diffs = processed.getTestResults().get(test).getScreenshotDiffs();
+    assertThat(diffs.keySet()).containsExactly(a, b).inOrder();
+    assertThat(diffs.get(a).isChanged()).isFalse();
+    assertThat(diffs.get(b).isChanged()).isTrue();
+    assertThat(diffs.get(b).getDiffImage()).isEqualTo(FileUtils.getFile(output, "diff", "123",
+        "foo", "multiple", "2_b.png"));
+    assertThat(diffs.get(b).getDiffImage().exists()).isTrue();
+  }
+
+  @Test public void disabledAnimationsReturnsResultUnchanged() {
+    DeviceResult result = new DeviceResult.Builder().build();
+    SpoonPostProcessor postProcessor = new SpoonPostProcessor(testFolder.getRoot(), true,
+        false, AnimationFormat.GIF, null, false);
+    assertThat(postProcessor.process("123", result).join()).isSameAs(result);
+    postProcessor.shutdown();
+  }
+
+  private static File screenshot(File output, String methodName, String name) throws IOException {
+    File file = FileUtils.getFile(output, "image", "123", "foo", methodName, name);
+    file.getParentFile().mkdirs();
+    BufferedImage image = new BufferedImage(20, 40, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(name.length(), 5, 0xFF0000);
+    ImageIO.write(image, "png", file);
+    return file;
+  }
+}
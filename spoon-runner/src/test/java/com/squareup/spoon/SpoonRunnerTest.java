@@ -8,7 +8,7 @@ import static com.squareup.spoon.SpoonRunner.parseOverallSuccess;
 public final class SpoonRunnerTest {
   @Test public void parsingSuccess() {
     SpoonSummary summary;
-    DeviceTest device = new DeviceTest("foo", "bar");
+    DeviceTest device = DeviceTest.of("foo", "bar");
 
     // PASS: No devices attached.
     summary = new SpoonSummary.Builder() //
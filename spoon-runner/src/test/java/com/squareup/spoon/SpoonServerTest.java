@@ -0,0 +1,168 @@
+package com.squareup.spoon;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.squareup.spoon.html.HtmlServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class SpoonServerTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private File output;
+  private HtmlServer server;
+
+  @Before public void setUp() throws IOException {
+    output = testFolder.newFolder("output");
+    FileUtils.writeStringToFile(FileUtils.getFile(output, "image", "serial", "shot.png"), "png",
+        UTF_8);
+    FileUtils.writeStringToFile(testFolder.newFile("secret.txt"), "secret", UTF_8);
+    FileUtils.writeStringToFile(new File(output, "result.json"), SpoonUtils.GSON.toJson(summary()),
+        UTF_8);
+    server = new HtmlServer(SpoonServer.readSummary(output), output, null);
+    server.start(0);
+  }
+
+  @After public void tearDown() {
+    server.close();
+  }
+
+  @Test public void rendersPagesWhenRequested() throws IOException {
+    assertThat(get("/").body).contains("Served");
+    assertThat(get("/device/serial.html").body).contains("com.example.ServerTest");
+    assertThat(get("/test/com.example.ServerTest/shortLog.html").body).contains("shortLog");
+    assertThat(get("/logs/serial/com.example.ServerTest/shortLog.html").body)
+        .contains("Message 9");
+    assertThat(get("/static/spoon.css").type).startsWith("text/css");
+    assertThat(get("/tv.html").body).contains("spoonTvIndex");
+
+    String longLog = get("/logs/serial/com.example.ServerTest/longLog.html").body;
+    assertThat(longLog).contains("spoonLogIndex");
+    assertThat(longLog).doesNotContain("Message 0");
+    assertThat(get("/logs/serial/com.example.ServerTest/longLog/1.js").body)
+        .contains("Message 1499");
+
+    // Nothing is written to the output directory.
+    assertThat(new File(output, "index.html").exists()).isFalse();
+    assertThat(new File(output, "test").exists()).isFalse();
+  }
+
+  @Test public void unknownPagesAreNotFound() throws IOException {
+    assertThat(get("/device/other.html").status).isEqualTo(404);
+    assertThat(get("/test/com.example.ServerTest/missing.html").status).isEqualTo(404);
+    assertThat(get("/logs/serial/com.example.ServerTest/shortLog/0.js").status).isEqualTo(404);
+    assertThat(get("/logs/serial/com.example.ServerTest/longLog/2.js").status).isEqualTo(404);
+    assertThat(get("/static/missing.css").status).isEqualTo(404);
+    // None of the tests have screenshots to show.
+    assertThat(get("/tv/0.js").status).isEqualTo(404);
+  }
+
+  @Test public void failuresAreNotDescribedToClients() throws IOException {
+    Map<DeviceTest, DeviceTestResult> tests = Collections.singletonMap(
+        DeviceTest.of("com.example.ServerTest", "broken"),
+        new DeviceTestResult(null, null, 10, Collections.emptyList(), Collections.emptyMap(),
+            Collections.emptyMap(), null, Collections.emptyList(), Collections.emptyList()));
+    DeviceResult device = new DeviceResult(false, null, null, tests, 1000, 100,
+        Collections.emptyMap(), Collections.emptyList());
+    server.close();
+    server = new HtmlServer(new SpoonSummary("Broken", null, 1000, 100,
+        Collections.singletonMap("serial", device)), output, null);
+    server.start(0);
+
+    Response response = get("/logs/serial/com.example.ServerTest/broken.html");
+    assertThat(response.status).isEqualTo(500);
+    assertThat(response.body).isEqualTo("Internal server error");
+  }
+
+  @Test public void servesArtifactsFromOutputOnly() throws IOException {
+    Response image = get("/image/serial/shot.png");
+    assertThat(image.body).isEqualTo("png");
+    assertThat(image.type).isEqualTo("image/png");
+    assertThat(get("/%2e%2e/secret.txt").status).isEqualTo(404);
+  }
+
+  @Test public void unchangedPagesAreRevalidated() throws IOException {
+    for (String path : new String[] {"/test/com.example.ServerTest/shortLog.html",
+        "/image/serial/shot.png"}) {
+      Response first = get(path);
+      assertThat(first.etag).isNotNull();
+      assertThat(get(path).etag).isEqualTo(first.etag);
+      assertThat(get(path, first.etag).status).isEqualTo(304);
+      assertThat(get(path, "\"other\"").status).isEqualTo(200);
+    }
+  }
+
+  private Response get(String path) throws IOException {
+    return get(path, null);
+  }
+
+  private Response get(String path, String etag) throws IOException {
+    URL url = new URL("http://localhost:" + server.getPort() + path);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    if (etag != null) {
+      connection.setRequestProperty("If-None-Match", etag);
+    }
+    try {
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      String body = (in != null) ? IOUtils.toString(in, UTF_8) : "";
+      return new Response(status, connection.getContentType(),
+          connection.getHeaderField("ETag"), body);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static SpoonSummary summary() {
+    Map<DeviceTest, DeviceTestResult> tests = new LinkedHashMap<>();
+    tests.put(DeviceTest.of("com.example.ServerTest", "shortLog"), result(10));
+    tests.put(DeviceTest.of("com.example.ServerTest", "longLog"), result(1500));
+    DeviceResult device = new DeviceResult(false, null, null, tests, 1000, 100,
+        Collections.emptyMap(), Collections.emptyList());
+    return new SpoonSummary("Served", null, 1000, 100,
+        Collections.singletonMap("serial", device));
+  }
+
+  private static DeviceTestResult result(int logSize) {
+    List<LogCatMessage> log = new ArrayList<>(logSize);
+    for (int i = 0; i < logSize; i++) {
+      log.add(new LogCatMessage(Log.LogLevel.INFO, 1, 1, "app", "Tag",
+          new LogCatTimestamp(1, 1, 0, 0, 0, 0), "Message " + i));
+    }
+    return new DeviceTestResult(DeviceTestResult.Status.PASS, null, 10, Collections.emptyList(),
+        Collections.emptyMap(), Collections.emptyMap(), null, log, Collections.emptyList());
+  }
+
+  private static final class Response {
+    final int status;
+    final String type;
+    final String etag;
+    final String body;
+
+    Response(int status, String type, String etag, String body) {
+      this.status = status;
+      this.type = type;
+      this.etag = etag;
+      this.body = body;
+    }
+  }
+}
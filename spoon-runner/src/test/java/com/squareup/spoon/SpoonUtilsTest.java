@@ -1,14 +1,38 @@
 package com.squareup.spoon;
 
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static com.google.common.truth.Truth.assertThat;
 
 public final class SpoonUtilsTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
   @Test public void serialSanitizer() {
     assertThat(SpoonUtils.sanitizeSerial("1234")).isEqualTo("1234");
     assertThat(SpoonUtils.sanitizeSerial("FooBarBaz")).isEqualTo("FooBarBaz");
     assertThat(SpoonUtils.sanitizeSerial("ST-398H984")).isEqualTo("ST-398H984");
     assertThat(SpoonUtils.sanitizeSerial("10.0.0.1:1234")).isEqualTo("10_0_0_1_1234");
   }
+
+  @Test public void imageSizeReadFromHeader() throws IOException {
+    assertThat(SpoonUtils.readImageSize(image("a.png", "png", 30, 50)))
+        .isEqualTo(new Dimension(30, 50));
+    assertThat(SpoonUtils.readImageSize(image("b.jpg", "jpg", 70, 20)))
+        .isEqualTo(new Dimension(70, 20));
+  }
+
+  private File image(String name, String format, int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(1, 1, 0x00FF00);
+    File file = testFolder.newFile(name);
+    ImageIO.write(image, format, file);
+    return file;
+  }
 }
@@ -0,0 +1,153 @@
+package com.squareup.spoon;
+
+import com.squareup.spoon.html.HtmlRenderer;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.squareup.spoon.DeviceTestResult.Status.FAIL;
+import static com.squareup.spoon.DeviceTestResult.Status.PASS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class TestHistoryTest {
+  private static final DeviceTest FOO = DeviceTest.of("com.example.HistoryTest", "foo");
+  private static final DeviceTest BAR = DeviceTest.of("com.example.HistoryTest", "bar");
+
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test public void outcomesAreReadNewestFirstAcrossReopening() throws IOException {
+    File directory = testFolder.newFolder("history");
+    try (TestHistory history = TestHistory.open(directory)) {
+      history.append(run(1000, PASS, 100));
+      history.append(run(2000, FAIL, 300));
+    }
+    try (TestHistory history = TestHistory.open(directory)) {
+      history.append(run(3000, PASS, 200));
+
+      List<TestHistory.Outcome> outcomes = history.getLastOutcomes(FOO, 10);
+      assertThat(outcomes).hasSize(3);
+      assertThat(outcomes.get(0).getStarted()).isEqualTo(3000);
+      assertThat(outcomes.get(0).getSerial()).isEqualTo("serial");
+      assertThat(outcomes.get(1).getStatus()).isEqualTo(FAIL);
+      assertThat(outcomes.get(2).getDuration()).isEqualTo(100);
+      assertThat(history.getLastOutcomes(FOO, 2)).hasSize(2);
+      assertThat(history.getLastOutcomes(BAR, 10)).hasSize(3);
+      assertThat(history.getLastOutcomes(DeviceTest.of("com.example.HistoryTest", "baz"), 10))
+          .isEmpty();
+
+      TestHistory.Stats stats = history.getStats(FOO, 10);
+      assertThat(stats.getOutcomes()).isEqualTo(3);
+      assertThat(stats.getFailures()).isEqualTo(1);
+      assertThat(stats.getMedianDuration()).isEqualTo(100);
+      assertThat(stats.getP95Duration()).isEqualTo(200);
+    }
+  }
+
+  @Test public void recoversFromInterruptedAppend() throws IOException {
+    File directory = testFolder.newFolder("history");
+    try (TestHistory history = TestHistory.open(directory)) {
+      history.append(run(1000, PASS, 100));
+      history.append(run(2000, PASS, 200));
+    }
+    // Lose the index and leave half a record behind.
+    assertThat(new File(directory, TestHistory.HEADS_FILE).delete()).isTrue();
+    try (RandomAccessFile outcomes =
+        new RandomAccessFile(new File(directory, TestHistory.OUTCOMES_FILE), "rw")) {
+      outcomes.seek(outcomes.length());
+      outcomes.write(new byte[10]);
+    }
+
+    try (TestHistory history = TestHistory.open(directory)) {
+      assertThat(history.getLastOutcomes(FOO, 10)).hasSize(2);
+      history.append(run(3000, FAIL, 300));
+      List<TestHistory.Outcome> outcomes = history.getLastOutcomes(FOO, 10);
+      assertThat(outcomes).hasSize(3);
+      assertThat(outcomes.get(0).getStatus()).isEqualTo(FAIL);
+      assertThat(outcomes.get(2).getStarted()).isEqualTo(1000);
+    }
+  }
+
+  @Test public void storesShareAppends() throws IOException {
+    File directory = testFolder.newFolder("history");
+    try (TestHistory first = TestHistory.open(directory);
+         TestHistory second = TestHistory.open(directory)) {
+      first.append(run(1000, PASS, 100));
+      second.append(run(2000, FAIL, 200));
+      first.append(run(3000, PASS, 300));
+      assertThat(first.getLastOutcomes(FOO, 10)).hasSize(3);
+    }
+    try (TestHistory history = TestHistory.open(directory)) {
+      List<TestHistory.Outcome> outcomes = history.getLastOutcomes(FOO, 10);
+      assertThat(outcomes).hasSize(3);
+      assertThat(outcomes.get(0).getStarted()).isEqualTo(3000);
+      assertThat(outcomes.get(1).getStatus()).isEqualTo(FAIL);
+      assertThat(outcomes.get(2).getStarted()).isEqualTo(1000);
+    }
+  }
+
+  @Test public void percentileUsesNearestRank() {
+    List<Long> values = Arrays.asList(10L, 20L, 30L, 40L);
+    assertThat(TestHistory.percentile(values, 50)).isEqualTo(20);
+    assertThat(TestHistory.percentile(values, 95)).isEqualTo(40);
+    assertThat(TestHistory.percentile(Collections.emptyList(), 50)).isEqualTo(-1);
+  }
+
+  @Test public void testPageShowsHistory() throws IOException {
+    File output = testFolder.newFolder("output");
+    try (TestHistory history = TestHistory.open(testFolder.newFolder("history"))) {
+      history.append(run(1000, PASS, 100));
+      history.append(run(2000, FAIL, 300));
+      SpoonSummary summary = run(3000, PASS, 200);
+      history.append(summary);
+      new HtmlRenderer(summary, SpoonUtils.GSON, output, history).render();
+    }
+    String page = FileUtils.readFileToString(
+        FileUtils.getFile(output, "test", FOO.getClassName(), "foo.html"), UTF_8);
+    assertThat(page).contains("<svg class=\"sparkline\"");
+    assertThat(page).contains("class=\"failure\"");
+    assertThat(page).contains("Last 3 outcomes on any device: 33% failed, median 100 milliseconds");
+  }
+
+  @Test public void incrementalRenderRewritesTestPageWhenHistoryChanges() throws IOException {
+    File output = testFolder.newFolder("output");
+    File page = FileUtils.getFile(output, "test", FOO.getClassName(), "foo.html");
+    SpoonSummary summary = run(3000, PASS, 200);
+    try (TestHistory history = TestHistory.open(testFolder.newFolder("history"))) {
+      history.append(run(1000, PASS, 100));
+      new HtmlRenderer(summary, SpoonUtils.GSON, output, history, true).render();
+      FileUtils.writeStringToFile(page, "unchanged", UTF_8);
+      new HtmlRenderer(summary, SpoonUtils.GSON, output, history, true).render();
+      assertThat(FileUtils.readFileToString(page, UTF_8)).isEqualTo("unchanged");
+
+      history.append(run(2000, FAIL, 300));
+      new HtmlRenderer(summary, SpoonUtils.GSON, output, history, true).render();
+    }
+    assertThat(FileUtils.readFileToString(page, UTF_8)).contains("Last 2 outcomes");
+  }
+
+  private static SpoonSummary run(long started, DeviceTestResult.Status status, long duration) {
+    Map<DeviceTest, DeviceTestResult> tests = new LinkedHashMap<>();
+    tests.put(FOO, result(status, duration));
+    tests.put(BAR, result(PASS, 10));
+    DeviceResult device = new DeviceResult(false, null, null, tests, started, duration,
+        Collections.emptyMap(), Collections.emptyList());
+    return new SpoonSummary("History", null, started, duration,
+        Collections.singletonMap("serial", device));
+  }
+
+  private static DeviceTestResult result(DeviceTestResult.Status status, long duration) {
+    return new DeviceTestResult(status, null, duration, Collections.emptyList(),
+        Collections.emptyMap(), Collections.emptyMap(), null, Collections.emptyList(),
+        Collections.emptyList());
+  }
+}
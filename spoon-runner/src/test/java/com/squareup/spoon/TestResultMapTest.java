@@ -0,0 +1,40 @@
+package com.squareup.spoon;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class TestResultMapTest {
+  @Test public void iteratesInTestOrderAndLooksUpById() {
+    DeviceTest b = DeviceTest.of("com.example.ResultMapTest", "b");
+    DeviceTest a = DeviceTest.of("com.example.ResultMapTest", "a");
+    DeviceTest missing = DeviceTest.of("com.example.ResultMapTest", "missing");
+    DeviceTest c = DeviceTest.of("com.example.ResultMapTest", "c");
+    DeviceTestResult passed = new DeviceTestResult.Builder().startTest().endTest().build();
+    DeviceTestResult failed =
+        new DeviceTestResult.Builder().startTest().markTestAsFailed("Boom").endTest().build();
+    Map<DeviceTest, DeviceTestResult> results = new LinkedHashMap<>();
+    results.put(c, passed);
+    results.put(b, failed);
+    results.put(a, passed);
+
+    TestResultMap map = TestResultMap.copyOf(results);
+    assertThat(map).isEqualTo(results);
+    assertThat(map.keySet()).containsExactly(a, b, c).inOrder();
+    assertThat(map.get(b)).isSameAs(failed);
+    assertThat(map.get(missing)).isNull();
+    assertThat(map.containsKey(missing)).isFalse();
+    assertThat(map.get(DeviceTest.of("com.example.Other", "a"))).isNull();
+    assertThat(TestResultMap.copyOf(map)).isSameAs(map);
+  }
+
+  @Test public void internedTestsShareClassName() {
+    DeviceTest first = DeviceTest.of(new String("com.example.Shared"), "a");
+    DeviceTest second = DeviceTest.of(new String("com.example.Shared"), "b");
+    assertThat(second.getClassName()).isSameAs(first.getClassName());
+    assertThat(DeviceTest.of("com.example.Shared", "a")).isSameAs(first);
+    assertThat(second.getId()).isGreaterThan(first.getId());
+  }
+}
@@ -0,0 +1,71 @@
+package com.squareup.spoon;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ThumbnailWriterTest {
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test public void largeImageIsDownscaled() throws IOException {
+    File screenshot = image("large.png", 1080, 2400, Color.BLUE);
+    File thumbnail = new File(testFolder.getRoot(), "thumbnail/large.jpg");
+    ThumbnailWriter.write(screenshot, thumbnail);
+
+    BufferedImage image = ImageIO.read(thumbnail);
+    assertThat(image.getWidth()).isEqualTo(ThumbnailWriter.MAX_WIDTH);
+    assertThat(image.getHeight()).isEqualTo(711);
+    assertClose(new Color(image.getRGB(100, 100)), Color.BLUE);
+  }
+
+  @Test public void smallImageKeepsItsSize() throws IOException {
+    File screenshot = image("small.png", 100, 50, Color.RED);
+    File thumbnail = testFolder.newFile("small.jpg");
+    ThumbnailWriter.write(screenshot, thumbnail);
+
+    BufferedImage image = ImageIO.read(thumbnail);
+    assertThat(image.getWidth()).isEqualTo(100);
+    assertThat(image.getHeight()).isEqualTo(50);
+  }
+
+  @Test public void transparencyBecomesWhite() throws IOException {
+    File screenshot = image("transparent.png", 100, 50, new Color(0, 0, 0, 0));
+    File thumbnail = testFolder.newFile("transparent.jpg");
+    ThumbnailWriter.write(screenshot, thumbnail);
+
+    assertClose(new Color(ImageIO.read(thumbnail).getRGB(10, 10)), Color.WHITE);
+  }
+
+  @Test(expected = IOException.class)
+  public void undecodableImageFails() throws IOException {
+    File bogus = testFolder.newFile("bogus.png");
+    ThumbnailWriter.write(bogus, testFolder.newFile("bogus.jpg"));
+  }
+
+  private File image(String name, int width, int height, Color color) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setComposite(AlphaComposite.Src);
+    graphics.setColor(color);
+    graphics.fillRect(0, 0, width, height);
+    graphics.dispose();
+    File file = testFolder.newFile(name);
+    ImageIO.write(image, "png", file);
+    return file;
+  }
+
+  private static void assertClose(Color actual, Color expected) {
+    assertThat(Math.abs(actual.getRed() - expected.getRed())).isAtMost(8);
+    assertThat(Math.abs(actual.getGreen() - expected.getGreen())).isAtMost(8);
+    assertThat(Math.abs(actual.getBlue() - expected.getBlue())).isAtMost(8);
+  }
+}
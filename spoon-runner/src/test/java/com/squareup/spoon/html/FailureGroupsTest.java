@@ -0,0 +1,67 @@
+package com.squareup.spoon.html;
+
+import com.squareup.spoon.misc.StackTrace;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class FailureGroupsTest {
+  /** Fails the same way on every test, but with messages and lines which differ. */
+  private static StackTrace crash(int device, int test) {
+    return StackTrace.from(""
+        + "java.lang.RuntimeException: Unable to start activity " + test + "\n"
+        + "\tat android.app.ActivityThread.performLaunchActivity(ActivityThread.java:2416)\n"
+        + "Caused by: java.lang.NullPointerException: Attempt on object #" + device + "\n"
+        + "\tat com.example.Presenter.bind(Presenter.java:" + (40 + device) + ")\n"
+        + "\tat java.util.ArrayList.forEach(ArrayList.java:1249)\n"
+        + "\tat com.example.MainActivity.onCreate(MainActivity.java:20)\n"
+        + "\tat android.app.Activity.performCreate(Activity.java:6237)\n"
+        + "\t... 1 more");
+  }
+
+  @Test public void fingerprintIsRootCauseAndAppFrames() {
+    StackTrace root = FailureGroups.rootCause(crash(0, 0));
+    assertThat(root.getMessage()).isEqualTo("Attempt on object #0");
+
+    FailureGroups.Fingerprint fingerprint = FailureGroups.Fingerprint.of(root);
+    assertThat(fingerprint.className).isEqualTo("java.lang.NullPointerException");
+    assertThat(fingerprint.frames)
+        .containsExactly("com.example.Presenter.bind", "com.example.MainActivity.onCreate")
+        .inOrder();
+  }
+
+  @Test public void fingerprintIgnoresMessagesAndLines() {
+    FailureGroups.Fingerprint first = FailureGroups.Fingerprint.of(
+        FailureGroups.rootCause(crash(0, 0)));
+    FailureGroups.Fingerprint second = FailureGroups.Fingerprint.of(
+        FailureGroups.rootCause(crash(3, 7)));
+    assertThat(second).isEqualTo(first);
+    assertThat(second.hashCode()).isEqualTo(first.hashCode());
+  }
+
+  @Test public void fingerprintHasAtMostFiveFrames() {
+    StringBuilder exception = new StringBuilder("java.lang.StackOverflowError\n");
+    for (int i = 0; i < 20; i++) {
+      exception.append("\tat com.example.Recursive.call").append(i).append("(Recursive.java:1)\n");
+    }
+    FailureGroups.Fingerprint fingerprint =
+        FailureGroups.Fingerprint.of(StackTrace.from(exception.toString()));
+    assertThat(fingerprint.frames).hasSize(FailureGroups.FRAMES);
+    assertThat(fingerprint.frames.get(0)).isEqualTo("com.example.Recursive.call0");
+  }
+
+  @Test public void frameworkOnlyTracesAreFingerprintedByTheirFrames() {
+    FailureGroups.Fingerprint open = FailureGroups.Fingerprint.of(StackTrace.from(""
+        + "java.io.IOException\n"
+        + "\tat java.io.File.open(File.java:1)\n"
+        + "\tat java.lang.reflect.Method.invoke(Native Method)"));
+    FailureGroups.Fingerprint close = FailureGroups.Fingerprint.of(StackTrace.from(""
+        + "java.io.IOException\n"
+        + "\tat java.io.File.close(File.java:1)\n"
+        + "\tat java.lang.reflect.Method.invoke(Native Method)"));
+    assertThat(open.frames)
+        .containsExactly("java.io.File.open", "java.lang.reflect.Method.invoke")
+        .inOrder();
+    assertThat(open).isNotEqualTo(close);
+  }
+}
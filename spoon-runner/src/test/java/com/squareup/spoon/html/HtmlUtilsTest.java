@@ -1,7 +1,10 @@
 package com.squareup.spoon.html;
 
+import com.squareup.spoon.DeviceResult;
 import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import org.junit.Test;
 import com.squareup.spoon.html.HtmlUtils.ExceptionInfo;
 import com.squareup.spoon.misc.StackTrace;
@@ -10,6 +13,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.squareup.spoon.html.HtmlUtils.createRelativeUri;
 import static com.squareup.spoon.html.HtmlUtils.processStackTrace;
 import static com.squareup.spoon.html.HtmlUtils.humanReadableDuration;
+import static com.squareup.spoon.html.HtmlUtils.phaseDurationsToString;
 
 public final class HtmlUtilsTest {
   @Test public void relativeUriCreation() {
@@ -25,15 +29,31 @@ public final class HtmlUtilsTest {
   }
 
   @Test public void humanReadableDurationCases() {
-    assertThat(humanReadableDuration(0)).isEqualTo("0 seconds");
-    assertThat(humanReadableDuration(1)).isEqualTo("1 second");
-    assertThat(humanReadableDuration(2)).isEqualTo("2 seconds");
-    assertThat(humanReadableDuration(59)).isEqualTo("59 seconds");
-    assertThat(humanReadableDuration(60)).isEqualTo("1 minute");
-    assertThat(humanReadableDuration(61)).isEqualTo("1 minute, 1 second");
-    assertThat(humanReadableDuration(62)).isEqualTo("1 minute, 2 seconds");
-    assertThat(humanReadableDuration(122)).isEqualTo("2 minutes, 2 seconds");
-    assertThat(humanReadableDuration(3661)).isEqualTo("61 minutes, 1 second");
+    assertThat(humanReadableDuration(0)).isEqualTo("0 milliseconds");
+    assertThat(humanReadableDuration(1)).isEqualTo("1 millisecond");
+    assertThat(humanReadableDuration(999)).isEqualTo("999 milliseconds");
+    assertThat(humanReadableDuration(1_000)).isEqualTo("1 second");
+    assertThat(humanReadableDuration(1_009)).isEqualTo("1 second");
+    assertThat(humanReadableDuration(1_500)).isEqualTo("1.5 seconds");
+    assertThat(humanReadableDuration(2_000)).isEqualTo("2 seconds");
+    assertThat(humanReadableDuration(2_345)).isEqualTo("2.34 seconds");
+    assertThat(humanReadableDuration(59_990)).isEqualTo("59.99 seconds");
+    assertThat(humanReadableDuration(60_000)).isEqualTo("1 minute");
+    assertThat(humanReadableDuration(61_000)).isEqualTo("1 minute, 1 second");
+    assertThat(humanReadableDuration(62_500)).isEqualTo("1 minute, 2 seconds");
+    assertThat(humanReadableDuration(122_000)).isEqualTo("2 minutes, 2 seconds");
+    assertThat(humanReadableDuration(3_661_000)).isEqualTo("61 minutes, 1 second");
+  }
+
+  @Test public void phaseDurationsCases() {
+    Map<DeviceResult.Phase, Long> phases = new TreeMap<>();
+    assertThat(phaseDurationsToString(phases)).isNull();
+    phases.put(DeviceResult.Phase.TEST_RUN, 61_000L);
+    phases.put(DeviceResult.Phase.INSTALL, 2_500L);
+    phases.put(DeviceResult.Phase.LOG_MAPPING, 40L);
+    assertThat(phaseDurationsToString(phases))
+        .isEqualTo("Install: 2.5 seconds; test run: 1 minute, 1 second; "
+            + "log mapping: 40 milliseconds");
   }
 
   /**
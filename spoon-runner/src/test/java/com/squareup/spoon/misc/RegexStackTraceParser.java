@@ -0,0 +1,88 @@
+package com.squareup.spoon.misc;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The pattern matching parser {@link StackTrace#from(String)} used before
+ * {@link StackTraceParser}, kept to check that one against and to measure it by.
+ */
+final class RegexStackTraceParser {
+  private static final Pattern HEADER = Pattern.compile("(?:Caused by: )?([^:]+)(?::( .*)?)?");
+  private static final Pattern MORE = Pattern.compile("\\.\\.\\. \\d+ more");
+  private static final Pattern ELEMENT =
+      Pattern.compile("\\s*at (.*?)\\.([^.(]+)\\((?:([^:]+):(\\d+)|Native Method)\\)");
+
+  static StackTrace parse(String exception) {
+    String parts[] = exception.replace("\r\n", "\n").split("\n");
+
+    StackTrace last = null;
+    Deque<String> messageParts = new ArrayDeque<>();
+    Deque<StackTrace.Element> elements = new ArrayDeque<>();
+    boolean matchingElements = true; // Assume we will be matching elements first (bottom, up).
+    for (int i = parts.length - 1; i >= 0; i--) {
+      String part = parts[i];
+
+      Matcher elementMatch = ELEMENT.matcher(part);
+      Matcher moreMatch = MORE.matcher(part);
+      boolean moreMatches = moreMatch.matches();
+      if (elementMatch.matches() || moreMatches) {
+        if (!matchingElements) {
+          last = acceptTrace(messageParts, elements, last);
+          elements.clear();
+          messageParts.clear();
+        }
+        matchingElements = true;
+
+        if (!moreMatches) {
+          String className = elementMatch.group(1);
+          String methodName = elementMatch.group(2);
+          String fileName = elementMatch.group(3);
+          boolean isNative = fileName == null;
+          int line = isNative ? 0 : Integer.parseInt(elementMatch.group(4));
+
+          elements.addFirst(
+              new StackTrace.Element(className, fileName, line, methodName, isNative));
+        }
+      } else {
+        matchingElements = false;
+        messageParts.addFirst(part);
+      }
+    }
+
+    return acceptTrace(messageParts, elements, last);
+  }
+
+  private static StackTrace acceptTrace(Deque<String> messageParts,
+      Deque<StackTrace.Element> elements, StackTrace last) {
+    String header = messageParts.removeFirst();
+    Matcher headerMatch = HEADER.matcher(header);
+    if (!headerMatch.matches()) {
+      return new StackTrace("", header, elements, last);
+    }
+    String exceptionClass = headerMatch.group(1);
+
+    String messagePart = headerMatch.group(2);
+    // Ensure we don't add empty leading lines.
+    if (!StringUtils.isEmpty(messagePart)) {
+      messageParts.addFirst(messagePart.trim());
+    }
+    // Remove trailing empty lines.
+    if (!messageParts.isEmpty() && StringUtils.isEmpty(messageParts.peekLast())) {
+      messageParts.removeLast();
+    }
+    String message = StringUtils.join(messageParts, "\n");
+    if (message.equals("")) {
+      message = null;
+    }
+
+    return new StackTrace(exceptionClass, message, elements, last);
+  }
+
+  private RegexStackTraceParser() {
+    // No instances.
+  }
+}
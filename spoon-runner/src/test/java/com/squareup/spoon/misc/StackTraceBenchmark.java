@@ -0,0 +1,87 @@
+package com.squareup.spoon.misc;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how long {@link StackTrace#from(String)} takes, and how much it allocates, to parse
+ * stack traces of increasing length compared to the pattern matching parser it replaced. Not run
+ * as part of the tests.
+ * <p>
+ * Usage: {@code StackTraceBenchmark [<elements>x<causes>...]}
+ */
+public final class StackTraceBenchmark {
+  private static final int ITERATIONS = 5;
+  private static final long MIN_NANOS = 500_000_000L;
+
+  public static void main(String... args) {
+    String[] sizes = args.length > 0 ? args : new String[] {"10x0", "40x2", "200x5"};
+    for (String size : sizes) {
+      String[] parts = size.split("x");
+      String exception = exception(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+      // Check they agree before timing them.
+      if (!StackTrace.from(exception).toString()
+          .equals(RegexStackTraceParser.parse(exception).toString())) {
+        throw new AssertionError("Parsers disagree on " + size);
+      }
+      System.out.printf("%4s elements x %s causes: scanner %7.2f us %7d B, "
+          + "patterns %7.2f us %7d B%n", parts[0], parts[1], micros(exception, true),
+          bytes(exception, true), micros(exception, false), bytes(exception, false));
+    }
+  }
+
+  private static double micros(String exception, boolean scanner) {
+    double best = Double.MAX_VALUE;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long count = 0;
+      long start = System.nanoTime();
+      long elapsed;
+      do {
+        parse(exception, scanner);
+        count++;
+        elapsed = System.nanoTime() - start;
+      } while (elapsed < MIN_NANOS / ITERATIONS);
+      best = Math.min(best, elapsed / 1_000.0 / count);
+    }
+    return best;
+  }
+
+  private static long bytes(String exception, boolean scanner) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    int count = 1_000;
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < count; i++) {
+      parse(exception, scanner);
+    }
+    return (threads.getThreadAllocatedBytes(thread) - before) / count;
+  }
+
+  private static StackTrace parse(String exception, boolean scanner) {
+    return scanner ? StackTrace.from(exception) : RegexStackTraceParser.parse(exception);
+  }
+
+  /** An exception with {@code causes} causes, each with {@code elements} elements. */
+  private static String exception(int elements, int causes) {
+    StringBuilder exception = new StringBuilder();
+    for (int cause = 0; cause <= causes; cause++) {
+      if (cause > 0) {
+        exception.append("Caused by: ");
+      }
+      exception.append("java.lang.IllegalStateException: Failure ").append(cause)
+          .append("\nwith a second line\n");
+      for (int i = 0; i < elements; i++) {
+        if (i % 10 == 9) {
+          exception.append("\tat java.lang.reflect.Method.invoke(Native Method)\n");
+        } else {
+          exception.append("\tat com.example.app.SomeClass$Inner.method").append(i)
+              .append("(SomeClass.java:").append(100 + i).append(")\n");
+        }
+      }
+      if (cause > 0) {
+        exception.append("\t... ").append(elements).append(" more\n");
+      }
+    }
+    return exception.toString();
+  }
+}
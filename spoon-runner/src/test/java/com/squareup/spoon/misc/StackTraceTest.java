@@ -1,12 +1,18 @@
 package com.squareup.spoon.misc;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
 import org.junit.Test;
 
 import static com.google.common.truth.Truth.assertThat;
 
 public final class StackTraceTest {
+  private static final Pattern INDENTED_MORE = Pattern.compile("\\s+\\.\\.\\. \\d+ more");
+
   @Test public void recursiveCause() {
     Exception e = new IllegalArgumentException("To understand recursion...") {
       @Override public synchronized Throwable getCause() {
@@ -190,6 +196,22 @@ public final class StackTraceTest {
     assertThat(inner.getElements()).hasSize(1);
   }
 
+  @Test public void nestedExceptionWithIndentedMore() {
+    String exception = ""
+        + "java.lang.RuntimeException: Unable to start activity\n"
+        + "\tat android.app.ActivityThread.performLaunchActivity(ActivityThread.java:2416)\n"
+        + "Caused by: java.lang.NullPointerException: Null\n"
+        + "\tat com.example.Presenter.bind(Presenter.java:40)\n"
+        + "\t... 1 more\n";
+
+    StackTrace actual = StackTrace.from(exception);
+    StackTrace inner = actual.getCause();
+    assertThat(inner.getClassName()).isEqualTo("java.lang.NullPointerException");
+    assertThat(inner.getMessage()).isEqualTo("Null");
+    assertThat(inner.getElements()).hasSize(1);
+    assertThat(inner.getCause()).isNull();
+  }
+
   @Test public void mockitoException() {
     String exception = "org.mockito.exceptions.misusing.InvalidUseOfMatchersException:\n"
         + "Invalid use of argument matchers!\n"
@@ -234,6 +256,144 @@ public final class StackTraceTest {
     assertThat(actual.getMessage()).isEqualTo(expected);
   }
 
+  @Test public void parsedTracesAreShared() {
+    String exception = ""
+        + "java.lang.IllegalStateException: Broken\n"
+        + "\tat com.example.Presenter.bind(Presenter.java:40)\n"
+        + "Caused by: java.lang.NullPointerException\n"
+        + "\tat android.app.Activity.performCreate(Activity.java:6237)\n";
+    StackTrace first = StackTrace.from(exception);
+    StackTrace second = StackTrace.from(exception);
+    assertThat(second).isSameAs(first);
+    assertThat(second.getCause()).isSameAs(first.getCause());
+
+    StackTrace other = StackTrace.from(exception.replace("Broken", "Other"));
+    assertThat(other).isNotEqualTo(first);
+    assertThat(other.getElements().get(0)).isSameAs(first.getElements().get(0));
+    assertThat(other.getCause()).isSameAs(first.getCause());
+  }
+
+  @Test public void internSharesEqualTracesAndElements() {
+    Deque<StackTrace.Element> elements = new ArrayDeque<>();
+    elements.add(new StackTrace.Element("com.example.Foo", "Foo.java", 12, "bar", false));
+    elements.add(new StackTrace.Element("java.lang.reflect.Method", null, 0, "invoke", true));
+    StackTrace cause = new StackTrace("java.lang.Error", null, new ArrayDeque<>(), null);
+    StackTrace trace = new StackTrace("java.lang.RuntimeException", "Hi", elements, cause);
+    StackTrace copy = new StackTrace("java.lang.RuntimeException", "Hi", new ArrayDeque<>(elements),
+        new StackTrace("java.lang.Error", null, new ArrayDeque<>(), null));
+    assertThat(copy).isEqualTo(trace);
+    assertThat(copy.hashCode()).isEqualTo(trace.hashCode());
+    assertThat(copy).isNotSameAs(trace);
+
+    StackTrace interned = trace.intern();
+    assertThat(copy.intern()).isSameAs(interned);
+    assertThat(interned.intern()).isSameAs(interned);
+    assertThat(interned.getElements()).containsExactlyElementsIn(elements).inOrder();
+    assertThat(StackTrace.intern(
+        new StackTrace.Element("com.example.Foo", "Foo.java", 12, "bar", false)))
+        .isSameAs(interned.getElements().get(0));
+    assertThat(interned.toString()).isEqualTo("java.lang.RuntimeException: Hi");
+  }
+
+  @Test public void unusualLinesParseAsTheyDidWithPatterns() {
+    List<String> exceptions = Arrays.asList(
+        "",
+        "java.lang.Error",
+        "java.lang.Error:",
+        "java.lang.Error: ",
+        "java.lang.Error:no space",
+        "java.lang.Error: a\u2028b",
+        ": no class",
+        "Caused by: java.lang.Error: Caused",
+        "Caused by: : odd",
+        "java.lang.Error: Windows\r\nsecond line\r\n\r\nat a.B.c(B.java:1)\r\n",
+        "java.lang.Error: lone\rcarriage return\n\rat a.B.c(B.java:1)",
+        "java.lang.Error\n\n\n",
+        "java.lang.Error\n\nat a.B.c(B.java:1)\n\n",
+        "java.lang.Error\n \t at a.B.c(B.java:1)\n\tat a.B.c(Native Method)",
+        "java.lang.Error\nat a.B.c(B.java:1)x\nat a.B.c(B.java:)\nat a.B.c(:1)\nat a.B.c(B.java)",
+        "java.lang.Error\nat a.B$1.lambda$c$0(B.java:123456789)\nat .c(B.java:1)\nat a.(B.java:1)",
+        "java.lang.Error\nat a(b).c.d(B.java:1)\nat a.b(c.d(B.java:1)\nat a.b(c)(d:1)",
+        "java.lang.Error\nat a.b(c:d:1)\nat a\u2028b.c(B.java:1)\nat a.b\u2028(B.java:1)",
+        "java.lang.Error\nat a.b(B.java:1) \n... 1 more\n ... 1 more\n... more\n... 1x more",
+        "java.lang.Error\nCaused by: java.lang.Exception\nat a.B.c(B.java:1)",
+        "java.lang.Error: a\nat a.B.c(B.java:1)\nmessage\nat a.B.c(B.java:1)\n... 2 more");
+    for (String exception : exceptions) {
+      assertParsesAsPatternsDid(exception);
+    }
+  }
+
+  @Test public void arbitraryTextParsesAsItDidWithPatterns() {
+    String[] pieces = {
+        "at ", "a.B", ".", "c", "(", ")", ":", "12", "B.java", "Native Method", "Caused by: ",
+        "java.lang.Error", ": ", "... 3 more", "...", " more", "\n", "\n", "\r\n", "\r", " ",
+        "\t", "\u2028", "\nat a.B.c(B.java:1)", "\n\tat a.B.c(Native Method)"
+    };
+    Random random = new Random(0);
+    StringBuilder exception = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) {
+      exception.setLength(0);
+      for (int count = random.nextInt(16); count > 0; count--) {
+        exception.append(pieces[random.nextInt(pieces.length)]);
+      }
+      assertParsesAsPatternsDid(exception.toString());
+    }
+  }
+
+  /**
+   * Check {@code exception} parses as it did with patterns, other than indented
+   * {@code ... <n> more} lines, which the patterns took for part of a message.
+   */
+  private static void assertParsesAsPatternsDid(String exception) {
+    String expected;
+    try {
+      expected = describe(RegexStackTraceParser.parse(unindentMore(exception)));
+    } catch (RuntimeException e) {
+      expected = e.getClass().getName();
+    }
+    String actual;
+    try {
+      actual = describe(StackTrace.from(exception));
+    } catch (RuntimeException e) {
+      actual = e.getClass().getName();
+    }
+    assertThat(actual).named(exception).isEqualTo(expected);
+  }
+
+  /** {@code exception} with the indentation of its {@code ... <n> more} lines removed. */
+  private static String unindentMore(String exception) {
+    String[] lines = exception.split("\n", -1);
+    for (int i = 0; i < lines.length; i++) {
+      // The patterns were matched against lines without the carriage return of a "\r\n".
+      String line = lines[i];
+      if (i < lines.length - 1 && line.endsWith("\r")) {
+        line = line.substring(0, line.length() - 1);
+      }
+      if (INDENTED_MORE.matcher(line).matches()) {
+        lines[i] = lines[i].replaceFirst("^\\s+", "");
+      }
+    }
+    return String.join("\n", lines);
+  }
+
+  private static String describe(StackTrace trace) {
+    if (trace == null) {
+      return "";
+    }
+    StringBuilder description = new StringBuilder()
+        .append('[').append(trace.getClassName()).append("][").append(trace.getMessage())
+        .append(']');
+    for (StackTrace.Element element : trace.getElements()) {
+      description.append("\n  [").append(element.getClassName())
+          .append("][").append(element.getMethodName())
+          .append("][").append(element.getFileName())
+          .append("][").append(element.getLine())
+          .append("][").append(element.isNative())
+          .append(']');
+    }
+    return description.append('\n').append(describe(trace.getCause())).toString();
+  }
+
   @Test public void toStringFormat() {
     Deque<StackTrace.Element> elements = new ArrayDeque<>();
 